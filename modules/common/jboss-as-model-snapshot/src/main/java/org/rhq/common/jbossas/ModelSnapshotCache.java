@@ -0,0 +1,434 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.common.jbossas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Snapshots of the management model of one connection to an AS7 or WildFly server, i.e. the results of recursive
+ * read-resource operations on an address, or of recursive read-children-resources operations for one child type of an
+ * address, which read operations on the addresses below them are answered from for a short while.
+ * <p/>
+ * Only read operations whose result can be taken from the snapshot are answered; these are read-resource (without
+ * runtime attributes, recursive or not), read-attribute, read-children-names and recursive read-children-resources.
+ * A non-recursive read-resource lists the child types without their children, as the server does. The child types of
+ * each resource are taken from the recursive resource description read along with the snapshot; a non-recursive
+ * read-resource of a resource whose description is not known goes to the server. Everything else, as well as reads of
+ * addresses, attributes or child types a snapshot does not know about, goes to the server. Any operation that is not
+ * known to be read-only drops all the snapshots.
+ * <p/>
+ * Addresses are given as lists of "type=name" segments, operations as their name and their additional properties,
+ * so that the plugins of the different server versions can share the snapshots.
+ */
+public class ModelSnapshotCache {
+
+    public static final String TTL_SYSPROP = "as7plugin.modelSnapshotTtl";
+    public static final long DEFAULT_TTL = 30 * 1000L;
+
+    private static final int MAX_SNAPSHOTS = 16;
+
+    private static final Set<String> READ_ONLY_OPERATIONS = new HashSet<String>(Arrays.asList("read-resource",
+        "read-attribute", "read-children-names", "read-children-resources", "read-children-types",
+        "read-resource-description", "read-operation-names", "read-operation-description", "resolve-expression",
+        "whoami"));
+
+    private final long ttl;
+
+    // keyed by address path, or by address path and child type; a null node means the snapshot could not be read
+    private final LinkedHashMap<String, Snapshot> snapshots = new LinkedHashMap<String, Snapshot>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+            return size() > MAX_SNAPSHOTS;
+        }
+    };
+
+    public ModelSnapshotCache() {
+        this(Long.getLong(TTL_SYSPROP, DEFAULT_TTL));
+    }
+
+    public ModelSnapshotCache(long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * @return true if the operation is known not to change the model
+     */
+    public static boolean isReadOnly(String operation) {
+        return READ_ONLY_OPERATIONS.contains(operation);
+    }
+
+    /**
+     * @param address the address to read
+     * @param childType the type of the children of the address to read, or null for the address itself
+     * @return true if the given address or children have been read recently (whether that succeeded or not), or if
+     *         they are part of another snapshot
+     */
+    public synchronized boolean covers(List<String> address, String childType) {
+        Snapshot snapshot = snapshots.get(getKey(address, childType));
+        if (snapshot != null && !snapshot.isExpired()) {
+            return true;
+        }
+        Node node = findNode(address);
+        if (node == null && childType != null) {
+            node = getSnapshotNode(getKey(address, childType));
+        }
+        return node != null && (childType == null || node.model.containsKey(childType));
+    }
+
+    /**
+     * @param address the address that was read
+     * @param childType the type of the children that were read, or null if the address itself was read
+     * @param model the result of the recursive read-resource operation, or of the recursive read-children-resources
+     *        operation, or null if it failed
+     * @param description the result of the recursive read-resource-description operation on the address, or on the
+     *        children of the type (i.e. with a wildcard name), or null if it is not known
+     */
+    public synchronized void put(List<String> address, String childType, Map<String, Object> model,
+        Map<String, Object> description) {
+        Types types = (description != null) ? Types.fromDescription(description) : null;
+        if (childType != null && model != null) {
+            Map<String, Object> parent = new LinkedHashMap<String, Object>();
+            parent.put(childType, model);
+            model = parent;
+            if (types != null) {
+                Types parentTypes = new Types();
+                parentTypes.put(childType, "*", types);
+                types = parentTypes;
+            }
+        }
+        Node node = (model != null) ? new Node(model, types) : null;
+        snapshots.put(getKey(address, childType), new Snapshot(node, System.currentTimeMillis() + ttl));
+    }
+
+    public synchronized void invalidate() {
+        snapshots.clear();
+    }
+
+    /**
+     * Drops all the snapshots if the operation is not known to be read-only, i.e. if it could change the model.
+     */
+    public void invalidateIfWrite(String operation) {
+        if (!isReadOnly(operation)) {
+            invalidate();
+        }
+    }
+
+    /**
+     * @param address the address of the operation
+     * @param operation the name of the operation
+     * @param properties the additional properties of the operation, may be null
+     * @return the result of the operation as taken from a snapshot, or null if it has to be sent to the server
+     */
+    @SuppressWarnings("unchecked")
+    public CachedResult lookup(List<String> address, String operation, Map<String, Object> properties) {
+        if (properties == null) {
+            properties = Collections.emptyMap();
+        }
+        Object value;
+        if ("read-resource".equals(operation)) {
+            if (!hasOnly(properties, "include-defaults", true, "include-runtime", false, "attributes-only", false,
+                "recursive", null)) {
+                return null;
+            }
+            Node node = findNode(address);
+            if (node == null) {
+                return null;
+            }
+            if (isTrue(properties.get("recursive"))) {
+                value = node.model;
+            } else if (node.types != null) {
+                value = withoutChildren(node);
+            } else {
+                // the attributes can't be told apart from the child types
+                return null;
+            }
+        } else if ("read-attribute".equals(operation)) {
+            if (!hasOnly(properties, "name", null, "include-defaults", true)) {
+                return null;
+            }
+            Node node = findNode(address);
+            Object name = properties.get("name");
+            if (node == null || !node.model.containsKey(name)
+                || (node.types != null && node.types.getChildTypes().contains(name))) {
+                return null;
+            }
+            value = node.model.get(name);
+        } else if ("read-children-names".equals(operation) || "read-children-resources".equals(operation)) {
+            boolean namesOnly = "read-children-names".equals(operation);
+            if ((namesOnly && !hasOnly(properties, "child-type", null))
+                || (!namesOnly && (!hasOnly(properties, "child-type", null, "recursive", true, "include-defaults",
+                    true, "include-runtime", false) || !isTrue(properties.get("recursive"))))) {
+                return null;
+            }
+            String childType = (String) properties.get("child-type");
+            Node node = findNode(address);
+            if (node == null) {
+                node = getSnapshotNode(getKey(address, childType));
+            }
+            if (node == null || !node.model.containsKey(childType)) {
+                return null;
+            }
+            Object children = node.model.get(childType);
+            if (children == null) {
+                value = namesOnly ? new ArrayList<String>() : new LinkedHashMap<String, Object>();
+            } else if (!(children instanceof Map)) {
+                return null;
+            } else if (namesOnly) {
+                value = new ArrayList<String>(((Map<String, ?>) children).keySet());
+            } else {
+                value = children;
+            }
+        } else {
+            return null;
+        }
+
+        return new CachedResult(copy(value));
+    }
+
+    /**
+     * Finds the node of the given address in the snapshot of the nearest ancestor (or the address itself), or in the
+     * snapshot of the children of the nearest ancestor that the address is part of.
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized Node findNode(List<String> address) {
+        List<String> ancestor = address;
+        while (true) {
+            Node node = getSnapshotNode(getKey(ancestor, null));
+            if (node == null && ancestor.size() < address.size()) {
+                String segment = address.get(ancestor.size());
+                node = getSnapshotNode(getKey(ancestor, segment.substring(0, segment.indexOf('='))));
+            }
+            if (node == null) {
+                if (ancestor.isEmpty()) {
+                    return null;
+                }
+                ancestor = ancestor.subList(0, ancestor.size() - 1);
+                continue;
+            }
+
+            Map<String, Object> model = node.model;
+            Types types = node.types;
+            for (int i = ancestor.size(); i < address.size() && model != null; i++) {
+                String segment = address.get(i);
+                int separator = segment.indexOf('=');
+                String type = segment.substring(0, separator);
+                String name = segment.substring(separator + 1);
+                Object children = model.get(type);
+                Object child = (children instanceof Map) ? ((Map<String, Object>) children).get(name) : null;
+                model = (child instanceof Map) ? (Map<String, Object>) child : null;
+                types = (types != null) ? types.getChild(type, name) : null;
+            }
+            return (model != null) ? new Node(model, types) : null;
+        }
+    }
+
+    /**
+     * @return the node of the snapshot with the given key, or null if there is none, or it has expired or failed
+     */
+    private synchronized Node getSnapshotNode(String key) {
+        Snapshot snapshot = snapshots.get(key);
+        return (snapshot == null || snapshot.isExpired()) ? null : snapshot.node;
+    }
+
+    // as the path segments contain a '=', the key of the children of a type can't be the path of an address
+    private static String getKey(List<String> address, String childType) {
+        StringBuilder key = new StringBuilder();
+        for (String segment : address) {
+            if (key.length() > 0) {
+                key.append(',');
+            }
+            key.append(segment);
+        }
+        if (childType != null) {
+            if (key.length() > 0) {
+                key.append(',');
+            }
+            key.append(childType);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the attributes of the given node with the children of each type left undefined, as in the result of a
+     * non-recursive read-resource operation.
+     */
+    private static Map<String, Object> withoutChildren(Node node) {
+        Map<String, Object> attributes = new LinkedHashMap<String, Object>(node.model);
+        for (String childType : node.types.getChildTypes()) {
+            if (attributes.containsKey(childType)) {
+                attributes.put(childType, null);
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Returns true if the given properties contain nothing but the given keys, each of which has either the given
+     * value or no value at all. A null expected value allows any value.
+     */
+    private static boolean hasOnly(Map<String, Object> properties, Object... keysAndValues) {
+        int matched = 0;
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            Object key = keysAndValues[i];
+            if (properties.containsKey(key)) {
+                matched++;
+                Object expected = keysAndValues[i + 1];
+                if (expected != null && isTrue(properties.get(key)) != (Boolean) expected) {
+                    return false;
+                }
+            }
+        }
+        return matched == properties.size();
+    }
+
+    // the plugins pass booleans as well as strings
+    private static boolean isTrue(Object value) {
+        return value != null && Boolean.parseBoolean(value.toString());
+    }
+
+    /**
+     * Deep copy of a part of a snapshot, so that callers can't change the snapshot.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object copy(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> copy = new LinkedHashMap<String, Object>();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                copy.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return copy;
+        }
+        if (value instanceof List) {
+            List<Object> copy = new ArrayList<Object>();
+            for (Object element : (List<Object>) value) {
+                copy.add(copy(element));
+            }
+            return copy;
+        }
+        return value;
+    }
+
+    /**
+     * The result of an operation answered from a snapshot; the result itself may be null, e.g. for an undefined
+     * attribute.
+     */
+    public static final class CachedResult {
+        private final Object result;
+
+        private CachedResult(Object result) {
+            this.result = result;
+        }
+
+        public Object getResult() {
+            return result;
+        }
+    }
+
+    /**
+     * The child types of a resource, and the child types of its children by type and name, as described by a
+     * recursive resource description. A wildcard name stands for any child of the type.
+     */
+    private static class Types {
+        private final Map<String, Map<String, Types>> children = new LinkedHashMap<String, Map<String, Types>>();
+
+        @SuppressWarnings("unchecked")
+        private static Types fromDescription(Map<String, Object> description) {
+            Types types = new Types();
+            Object children = description.get("children");
+            if (!(children instanceof Map)) {
+                return types;
+            }
+            for (Map.Entry<String, Object> child : ((Map<String, Object>) children).entrySet()) {
+                types.children.put(child.getKey(), new LinkedHashMap<String, Types>());
+                Object models = (child.getValue() instanceof Map) ? ((Map<String, Object>) child.getValue())
+                    .get("model-description") : null;
+                if (!(models instanceof Map)) {
+                    continue;
+                }
+                for (Map.Entry<String, Object> model : ((Map<String, Object>) models).entrySet()) {
+                    if (model.getValue() instanceof Map) {
+                        types.put(child.getKey(), model.getKey(),
+                            fromDescription((Map<String, Object>) model.getValue()));
+                    }
+                }
+            }
+            return types;
+        }
+
+        private void put(String childType, String name, Types types) {
+            Map<String, Types> byName = children.get(childType);
+            if (byName == null) {
+                byName = new LinkedHashMap<String, Types>();
+                children.put(childType, byName);
+            }
+            byName.put(name, types);
+        }
+
+        private Set<String> getChildTypes() {
+            return children.keySet();
+        }
+
+        /**
+         * @return the types of the given child, or null if its description is not known
+         */
+        private Types getChild(String childType, String name) {
+            Map<String, Types> byName = children.get(childType);
+            if (byName == null) {
+                return null;
+            }
+            Types types = byName.get(name);
+            return (types != null) ? types : byName.get("*");
+        }
+    }
+
+    private static class Node {
+        private final Map<String, Object> model;
+        // null if the description of the node is not known
+        private final Types types;
+
+        private Node(Map<String, Object> model, Types types) {
+            this.model = model;
+            this.types = types;
+        }
+    }
+
+    private static class Snapshot {
+        private final Node node;
+        private final long expirationTime;
+
+        private Snapshot(Node node, long expirationTime) {
+            this.node = node;
+            this.expirationTime = expirationTime;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expirationTime;
+        }
+    }
+}
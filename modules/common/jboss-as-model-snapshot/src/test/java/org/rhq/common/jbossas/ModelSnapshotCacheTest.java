@@ -0,0 +1,246 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.common.jbossas;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.common.jbossas.ModelSnapshotCache.CachedResult;
+
+@Test
+public class ModelSnapshotCacheTest {
+
+    private static final List<String> SUBSYSTEM = Arrays.asList("subsystem=datasources");
+    private static final List<String> DATASOURCE = Arrays.asList("subsystem=datasources", "data-source=ExampleDS");
+
+    private ModelSnapshotCache cache;
+
+    @BeforeMethod
+    public void setup() {
+        cache = new ModelSnapshotCache(60 * 1000L);
+        cache.put(SUBSYSTEM, null, newSubsystemNode(), newSubsystemDescription());
+    }
+
+    public void testCovers() {
+        assertTrue(cache.covers(SUBSYSTEM, null));
+        assertTrue(cache.covers(DATASOURCE, null));
+        assertFalse(cache.covers(Arrays.asList("subsystem=datasources", "data-source=Unknown"), null));
+        assertFalse(cache.covers(Arrays.asList("subsystem=web"), null));
+    }
+
+    public void testReadResource() {
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        properties.put("include-defaults", true);
+        CachedResult result = cache.lookup(DATASOURCE, "read-resource", properties);
+        assertNotNull(result);
+        assertEquals(((Map<?, ?>) result.getResult()).get("jndi-name"), "java:jboss/datasources/ExampleDS");
+
+        properties.put("include-runtime", true);
+        assertNull(cache.lookup(DATASOURCE, "read-resource", properties),
+            "Runtime attributes are not part of the snapshot");
+    }
+
+    public void testReadResourceWithoutChildren() {
+        CachedResult result = cache.lookup(SUBSYSTEM, "read-resource", null);
+        assertNotNull(result);
+        Map<?, ?> node = (Map<?, ?>) result.getResult();
+        assertTrue(node.containsKey("data-source"));
+        assertNull(node.get("data-source"), "A non-recursive read should leave the children undefined");
+        assertEquals(((Map<?, ?>) cache.lookup(DATASOURCE, "read-resource", null).getResult()).get("properties"),
+            newProperties(), "Attributes of type OBJECT are no children and should be kept");
+
+        node = (Map<?, ?>) cache.lookup(SUBSYSTEM, "read-resource", Collections.<String, Object> singletonMap(
+            "recursive", true)).getResult();
+        assertEquals(((Map<?, ?>) node.get("data-source")).keySet(), newDatasourceNodes().keySet());
+    }
+
+    public void testReadResourceWithoutDescription() {
+        cache.invalidate();
+        cache.put(SUBSYSTEM, null, newSubsystemNode(), null);
+        assertNull(cache.lookup(SUBSYSTEM, "read-resource", null),
+            "Without a description the child types are not known");
+        assertNotNull(cache.lookup(SUBSYSTEM, "read-resource", Collections.<String, Object> singletonMap(
+            "recursive", true)));
+        assertEquals(cache.lookup(DATASOURCE, "read-attribute", Collections.<String, Object> singletonMap("name",
+            "enabled")).getResult(), Boolean.TRUE);
+    }
+
+    public void testChildrenSnapshot() {
+        cache.invalidate();
+        cache.put(SUBSYSTEM, "data-source", newDatasourceNodes(), newDatasourceDescription());
+        assertTrue(cache.covers(SUBSYSTEM, "data-source"));
+        assertTrue(cache.covers(DATASOURCE, null));
+        assertFalse(cache.covers(SUBSYSTEM, null), "Only the children of one type have been read");
+        assertFalse(cache.covers(SUBSYSTEM, "xa-data-source"));
+
+        assertNull(cache.lookup(SUBSYSTEM, "read-resource", null));
+        assertNull(cache.lookup(SUBSYSTEM, "read-children-names", Collections.<String, Object> singletonMap(
+            "child-type", "xa-data-source")));
+        CachedResult result = cache.lookup(SUBSYSTEM, "read-children-names",
+            Collections.<String, Object> singletonMap("child-type", "data-source"));
+        assertNotNull(result);
+        assertEquals(result.getResult(), Arrays.asList("ExampleDS", "OtherDS"));
+
+        result = cache.lookup(DATASOURCE, "read-resource", null);
+        assertNotNull(result, "The description of the children is known");
+        assertEquals(((Map<?, ?>) result.getResult()).get("properties"), newProperties());
+    }
+
+    public void testReadAttribute() {
+        CachedResult result = cache.lookup(DATASOURCE, "read-attribute", Collections.<String, Object> singletonMap(
+            "name", "enabled"));
+        assertNotNull(result);
+        assertEquals(result.getResult(), Boolean.TRUE);
+
+        result = cache.lookup(DATASOURCE, "read-attribute", Collections.<String, Object> singletonMap("name",
+            "user-name"));
+        assertNotNull(result);
+        assertNull(result.getResult(), "An undefined attribute should be read as null");
+
+        assertNull(cache.lookup(DATASOURCE, "read-attribute", Collections.<String, Object> singletonMap("name",
+            "unknown")));
+        assertNull(cache.lookup(SUBSYSTEM, "read-attribute", Collections.<String, Object> singletonMap("name",
+            "data-source")), "Child types are no attributes");
+    }
+
+    public void testReadChildren() {
+        CachedResult result = cache.lookup(SUBSYSTEM, "read-children-names",
+            Collections.<String, Object> singletonMap("child-type", "data-source"));
+        assertNotNull(result);
+        assertEquals(result.getResult(), Arrays.asList("ExampleDS", "OtherDS"));
+
+        result = cache.lookup(SUBSYSTEM, "read-children-names", Collections.<String, Object> singletonMap(
+            "child-type", "xa-data-source"));
+        assertNotNull(result);
+        assertEquals(result.getResult(), Arrays.asList());
+
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        properties.put("child-type", "data-source");
+        assertNull(cache.lookup(SUBSYSTEM, "read-children-resources", properties),
+            "A non-recursive read-children-resources lists children without attributes");
+        properties.put("recursive", true);
+        result = cache.lookup(SUBSYSTEM, "read-children-resources", properties);
+        assertNotNull(result);
+        assertEquals(((Map<?, ?>) result.getResult()).keySet(), newDatasourceNodes().keySet());
+    }
+
+    public void testResultsAreCopies() {
+        CachedResult result = cache.lookup(DATASOURCE, "read-resource", null);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> node = (Map<String, Object>) result.getResult();
+        node.put("enabled", false);
+
+        assertEquals(cache.lookup(DATASOURCE, "read-attribute", Collections.<String, Object> singletonMap("name",
+            "enabled")).getResult(), Boolean.TRUE);
+    }
+
+    public void testInvalidation() {
+        cache.invalidateIfWrite("read-resource");
+        assertTrue(cache.covers(DATASOURCE, null));
+
+        cache.invalidateIfWrite("write-attribute");
+        assertFalse(cache.covers(DATASOURCE, null));
+        assertNull(cache.lookup(DATASOURCE, "read-attribute", Collections.<String, Object> singletonMap("name",
+            "enabled")));
+    }
+
+    public void testExpiration() throws Exception {
+        cache = new ModelSnapshotCache(1);
+        cache.put(SUBSYSTEM, null, newSubsystemNode(), newSubsystemDescription());
+        Thread.sleep(10);
+        assertFalse(cache.covers(DATASOURCE, null));
+        assertNull(cache.lookup(DATASOURCE, "read-attribute", Collections.<String, Object> singletonMap("name",
+            "enabled")));
+    }
+
+    public void testFailedSnapshot() {
+        List<String> web = Arrays.asList("subsystem=web");
+        cache.put(web, null, null, null);
+        assertTrue(cache.covers(web, null), "A failed read should not be retried right away");
+        assertNull(cache.lookup(web, "read-resource", null));
+    }
+
+    private static Map<String, Object> newSubsystemNode() {
+        Map<String, Object> subsystem = new LinkedHashMap<String, Object>();
+        subsystem.put("data-source", newDatasourceNodes());
+        subsystem.put("xa-data-source", null);
+        return subsystem;
+    }
+
+    private static Map<String, Object> newDatasourceNodes() {
+        Map<String, Object> datasources = new LinkedHashMap<String, Object>();
+        for (String name : Arrays.asList("ExampleDS", "OtherDS")) {
+            Map<String, Object> datasource = new LinkedHashMap<String, Object>();
+            datasource.put("jndi-name", "java:jboss/datasources/" + name);
+            datasource.put("enabled", true);
+            datasource.put("user-name", null);
+            datasource.put("properties", newProperties());
+            datasources.put(name, datasource);
+        }
+        return datasources;
+    }
+
+    // an attribute of type OBJECT, whose value looks like the children of a type
+    private static Map<String, Object> newProperties() {
+        Map<String, Object> url = new LinkedHashMap<String, Object>();
+        url.put("value", "jdbc:h2:mem:test");
+        Map<String, Object> properties = new LinkedHashMap<String, Object>();
+        properties.put("url", url);
+        return properties;
+    }
+
+    private static Map<String, Object> newSubsystemDescription() {
+        Map<String, Object> children = new LinkedHashMap<String, Object>();
+        children.put("data-source", newChildDescription(newDatasourceDescription()));
+        children.put("xa-data-source", newChildDescription(newDatasourceDescription()));
+        Map<String, Object> description = new LinkedHashMap<String, Object>();
+        description.put("description", "The data-sources subsystem");
+        description.put("children", children);
+        return description;
+    }
+
+    private static Map<String, Object> newChildDescription(Map<String, Object> modelDescription) {
+        Map<String, Object> child = new LinkedHashMap<String, Object>();
+        child.put("description", "A data source");
+        child.put("model-description", Collections.singletonMap("*", modelDescription));
+        return child;
+    }
+
+    private static Map<String, Object> newDatasourceDescription() {
+        Map<String, Object> description = new LinkedHashMap<String, Object>();
+        description.put("description", "A data source");
+        description.put("attributes", Collections.singletonMap("properties", Collections.singletonMap("type",
+            "OBJECT")));
+        description.put("children", new LinkedHashMap<String, Object>());
+        return description;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.db;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.testng.annotations.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Runs the statement of the 2.169 schema upgrade that populates RHQ_RESOURCE_ANCESTOR against copies of the tables,
+ * and checks the closure it computes from the parent references.
+ */
+@Test
+public class ResourceAncestorUpgradeTest extends AbstractDatabaseTestUtil {
+
+    public void testPopulatePostgres() throws Exception {
+        testPopulate("postgresql");
+    }
+
+    public void testPopulateOracle() throws Exception {
+        testPopulate("oracle");
+    }
+
+    private void testPopulate(String db) throws Exception {
+        Connection conn = getConnection(db);
+
+        // skip test if it is to be skipped
+        if (conn == null) {
+            return;
+        }
+
+        // the trees 1 - 2 - 4 - 5, 1 - 3 and the single 6, by child id and parent id
+        Map<Integer, Integer> parents = new TreeMap<Integer, Integer>();
+        parents.put(1, null);
+        parents.put(2, 1);
+        parents.put(3, 1);
+        parents.put(4, 2);
+        parents.put(5, 4);
+        parents.put(6, null);
+
+        Statement stmt = conn.createStatement();
+        try {
+            stmt.executeUpdate("CREATE TABLE TEST_RES ( ID INTEGER, PARENT_RESOURCE_ID INTEGER )");
+            stmt.executeUpdate("CREATE TABLE TEST_RES_ANCESTOR ( ANCESTOR_ID INTEGER, DESCENDANT_ID INTEGER, "
+                + "DEPTH INTEGER )");
+            for (Map.Entry<Integer, Integer> resource : parents.entrySet()) {
+                stmt.executeUpdate("INSERT INTO TEST_RES ( ID, PARENT_RESOURCE_ID ) VALUES ( " + resource.getKey()
+                    + ", " + resource.getValue() + " )");
+            }
+
+            String populate = getPopulateStatement(db).replace("RHQ_RESOURCE_ANCESTOR", "TEST_RES_ANCESTOR")
+                .replaceAll("\\bRHQ_RESOURCE\\b", "TEST_RES");
+            stmt.executeUpdate(populate);
+
+            Set<String> expected = new HashSet<String>();
+            for (Integer descendant : parents.keySet()) {
+                int depth = 0;
+                for (Integer ancestor = descendant; ancestor != null; ancestor = parents.get(ancestor)) {
+                    expected.add(ancestor + "/" + descendant + "/" + depth++);
+                }
+            }
+
+            Set<String> actual = new HashSet<String>();
+            ResultSet rs = stmt.executeQuery("SELECT ANCESTOR_ID, DESCENDANT_ID, DEPTH FROM TEST_RES_ANCESTOR");
+            while (rs.next()) {
+                assert actual.add(rs.getInt(1) + "/" + rs.getInt(2) + "/" + rs.getInt(3)) : "Duplicate row";
+            }
+            rs.close();
+
+            assert expected.equals(actual) : "Expected " + expected + " but was " + actual;
+        } finally {
+            dropTable(stmt, "TEST_RES_ANCESTOR");
+            dropTable(stmt, "TEST_RES");
+            stmt.close();
+        }
+    }
+
+    private void dropTable(Statement stmt, String table) {
+        try {
+            stmt.executeUpdate("DROP TABLE " + table);
+        } catch (Exception ignore) {
+            // the table was not created
+        }
+    }
+
+    /**
+     * @return the statement of the 2.169 schema upgrade that populates RHQ_RESOURCE_ANCESTOR on the given database
+     */
+    private String getPopulateStatement(String db) throws Exception {
+        File testResources = new File(System.getProperty("AntDatabaseTest.test-resources"));
+        File dbUpgrade = new File(testResources, "../../main/scripts/dbupgrade/db-upgrade.xml");
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(dbUpgrade);
+
+        NodeList schemaSpecs = doc.getElementsByTagName("schemaSpec");
+        for (int i = 0; i < schemaSpecs.getLength(); i++) {
+            Element schemaSpec = (Element) schemaSpecs.item(i);
+            if (!"2.169".equals(schemaSpec.getAttribute("version"))) {
+                continue;
+            }
+            NodeList statements = schemaSpec.getElementsByTagName("statement");
+            for (int j = 0; j < statements.getLength(); j++) {
+                Element statement = (Element) statements.item(j);
+                if (db.equals(statement.getAttribute("targetDBVendor"))
+                    && statement.getAttribute("desc").startsWith("Populating")) {
+                    return statement.getTextContent().trim();
+                }
+            }
+        }
+        throw new IllegalStateException("No 2.169 populate statement for " + db + " in " + dbUpgrade);
+    }
+}
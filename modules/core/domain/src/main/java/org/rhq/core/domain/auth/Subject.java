@@ -220,6 +220,31 @@ import org.rhq.core.domain.resource.group.ResourceGroup;
         + "FROM Subject s, IN (s.roles) r, IN (r.permissions) p, IN (r.resourceGroups) g, IN (g.implicitResources) res "
         + "WHERE s = :subject AND p = :permission AND res.inventoryStatus = 'COMMITTED'"),
 
+    /* queries loading the authorization snapshot of a subject, see AuthorizationCache */
+    @NamedQuery(name = Subject.QUERY_GET_ROLE_PERMISSIONS_BY_SUBJECT_ID, query = "" //
+        + "SELECT r.id, p " //
+        + "  FROM Subject s, IN (s.roles) r, IN (r.permissions) p " //
+        + " WHERE s.id = :subjectId"), //
+    @NamedQuery(name = Subject.QUERY_GET_ROLE_RESOURCE_IDS_BY_SUBJECT_ID, query = "" //
+        + "SELECT DISTINCT r.id, res.id " //
+        + "  FROM Subject s, IN (s.roles) r, IN (r.resourceGroups) g, IN (g.implicitResources) res " //
+        + " WHERE s.id = :subjectId"), //
+    @NamedQuery(name = Subject.QUERY_GET_ROLE_GROUP_IDS_BY_SUBJECT_ID, query = "" //
+        + "SELECT r.id, g.id " //
+        + "  FROM Subject s, IN (s.roles) r, IN (r.resourceGroups) g " //
+        + " WHERE s.id = :subjectId"), //
+    @NamedQuery(name = Subject.QUERY_GET_ROLE_CLUSTER_BACKING_GROUP_IDS_BY_SUBJECT_ID, query = "" //
+        + "SELECT DISTINCT r.id, g.id " //
+        + "  FROM ResourceGroup g " //
+        + "  JOIN g.clusterResourceGroup crg " //
+        + "  JOIN crg.roles r " //
+        + "  JOIN r.subjects s " //
+        + " WHERE crg.recursive = true AND s.id = :subjectId"), //
+    @NamedQuery(name = Subject.QUERY_GET_PRIVATE_GROUP_IDS_BY_SUBJECT_ID, query = "" //
+        + "SELECT g.id " //
+        + "  FROM ResourceGroup g " //
+        + " WHERE g.subject.id = :subjectId"), //
+
     /*
      * No easy way to test whether ALL bundles are      in some bundle group     in some role     in some subject     where
      * subject.id = <id> & role.permission = <perm>
@@ -288,6 +313,12 @@ public class Subject implements Serializable {
     public static final String QUERY_GET_BUNDLES_BY_PERMISSION = "Subject.getBundlesByPermission";
     public static final String QUERY_GET_RESOURCES_BY_PERMISSION = "Subject.getResourcesByPermission";
 
+    public static final String QUERY_GET_ROLE_PERMISSIONS_BY_SUBJECT_ID = "Subject.getRolePermissionsBySubjectId";
+    public static final String QUERY_GET_ROLE_RESOURCE_IDS_BY_SUBJECT_ID = "Subject.getRoleResourceIdsBySubjectId";
+    public static final String QUERY_GET_ROLE_GROUP_IDS_BY_SUBJECT_ID = "Subject.getRoleGroupIdsBySubjectId";
+    public static final String QUERY_GET_ROLE_CLUSTER_BACKING_GROUP_IDS_BY_SUBJECT_ID = "Subject.getRoleClusterBackingGroupIdsBySubjectId";
+    public static final String QUERY_GET_PRIVATE_GROUP_IDS_BY_SUBJECT_ID = "Subject.getPrivateGroupIdsBySubjectId";
+
     public static final String QUERY_FIND_AVAILABLE_SUBJECTS_FOR_ROLE_WITH_EXCLUDES = "Subject.findAvailableSubjectsForRoleWithExcludes";
     public static final String QUERY_FIND_AVAILABLE_SUBJECTS_FOR_ROLE = "Subject.findAvailableSubjectsForRole";
 
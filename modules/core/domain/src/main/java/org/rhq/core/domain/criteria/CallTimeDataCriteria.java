@@ -136,38 +136,74 @@ public class CallTimeDataCriteria extends Criteria {
         this.filterResourceId = filterResourceId;
     }
 
+    public Integer getFilterResourceId() {
+        return filterResourceId;
+    }
+
     public void addFilterResourceGroupId(Integer filterResourceGroupId) {
         this.filterResourceGroupId = filterResourceGroupId;
     }
 
+    public Integer getFilterResourceGroupId() {
+        return filterResourceGroupId;
+    }
+
     public void addFilterAutoGroupResourceTypeId(Integer filterAutoGroupResourceTypeId) {
         this.filterAutoGroupResourceTypeId = filterAutoGroupResourceTypeId;
     }
 
+    public Integer getFilterAutoGroupResourceTypeId() {
+        return filterAutoGroupResourceTypeId;
+    }
+
     public void addFilterAutoGroupParentResourceId(Integer filterAutoGroupParentResourceId) {
         this.filterAutoGroupParentResourceId = filterAutoGroupParentResourceId;
     }
 
+    public Integer getFilterAutoGroupParentResourceId() {
+        return filterAutoGroupParentResourceId;
+    }
+
     public void addFilterBeginTime(Long filterBeginTime) {
         this.filterBeginTime = filterBeginTime;
     }
 
+    public Long getFilterBeginTime() {
+        return filterBeginTime;
+    }
+
     public void addFilterEndTime(Long filterEndTime) {
         this.filterEndTime = filterEndTime;
     }
 
+    public Long getFilterEndTime() {
+        return filterEndTime;
+    }
+
     public void addFilterMinimum(Double filterMinimum) {
         this.filterMinimum = filterMinimum;
     }
 
+    public Double getFilterMinimum() {
+        return filterMinimum;
+    }
+
     public void addFilterMaximum(Double filterMaximum) {
         this.filterMaximum = filterMaximum;
     }
 
+    public Double getFilterMaximum() {
+        return filterMaximum;
+    }
+
     public void addFilterTotal(Double filterTotal) {
         this.filterTotal = filterTotal;
     }
 
+    public Double getFilterTotal() {
+        return filterTotal;
+    }
+
     // use basic type not object wrapper because it requires non-null value
     public void addFilterCount(long filterCount) {
         if (filterCount < 1) {
@@ -176,10 +212,18 @@ public class CallTimeDataCriteria extends Criteria {
         this.filterCount = filterCount;
     }
 
+    public Long getFilterCount() {
+        return filterCount;
+    }
+
     public void addFilterDestination(String filterDestination) {
         this.filterDestination = filterDestination;
     }
 
+    public String getFilterDestination() {
+        return filterDestination;
+    }
+
     public void addFilterDataType(DataType filterDataType) {
         if (true) {
             throw new IllegalArgumentException(
@@ -116,6 +116,7 @@ public abstract class Criteria implements Serializable, BaseCriteria {
     private String[] strictFilters;
     private Restriction restriction = null;
     private boolean supportsAddSortId = true;
+    private Integer pagingAfterId;
 
     protected Map<String, String> filterOverrides;
     protected Map<String, String> sortOverrides;
@@ -381,6 +382,26 @@ public abstract class Criteria implements Serializable, BaseCriteria {
         return this.restriction;
     }
 
+    /**
+     * Turns on keyset (a.k.a. seek) paging: the page starts right after the entity with the given id instead of at
+     * <code>pageNumber * pageSize</code>, and the page number only serves as a label of the returned page. The total
+     * cardinality of the result set is not computed either, so the returned
+     * {@link org.rhq.core.domain.util.PageList} is unbounded. This keeps the cost of fetching a page constant no matter
+     * how deep into the result set it is, but it requires the results to be sorted on the id alone (the implicit sort),
+     * in which case the next page starts after the id of the last entity of the current page.
+     *
+     * Keyset paging, once set, can be turned off by passing NULL to this method.
+     *
+     * @param pagingAfterId the id of the last entity of the previous page, or null for regular paging
+     */
+    public void setPagingAfterId(Integer pagingAfterId) {
+        this.pagingAfterId = pagingAfterId;
+    }
+
+    public Integer getPagingAfterId() {
+        return this.pagingAfterId;
+    }
+
     public void setSearchExpression(String searchExpression) {
         this.searchExpression = searchExpression;
     }
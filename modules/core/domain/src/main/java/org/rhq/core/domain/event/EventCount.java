@@ -0,0 +1,214 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.domain.event;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+
+import org.rhq.core.domain.resource.Resource;
+
+/**
+ * The number of {@link Event}s of a given severity that a resource produced within a time bucket. These counters are
+ * maintained as events are stored so that event histograms and per-severity totals do not need to scan the events
+ * themselves.
+ *
+ * Counters are first kept per {@link #BUCKET_SIZE minute}; once they are old enough, the data purge job rolls them up
+ * into {@link #ROLLUP_BUCKET_SIZE hourly} counters. A counter's time bucket is always aligned on its size, and an
+ * hourly counter is keyed by the start of its hour, so every counter falls entirely within one hour.
+ *
+ * @since 4.14
+ */
+@Entity
+@NamedQueries( {
+    @NamedQuery(name = EventCount.QUERY_DELETE_BY_RESOURCES, query = "" //
+        + "DELETE FROM EventCount ec WHERE ec.resourceId IN ( :resourceIds )"),
+    @NamedQuery(name = EventCount.DELETE_ALL_BY_RESOURCE, query = "" //
+        + "DELETE FROM EventCount ec WHERE ec.resourceId = :resourceId"),
+    @NamedQuery(name = EventCount.DELETE_ALL_BY_RESOURCE_GROUP, query = "" //
+        + "DELETE FROM EventCount ec " //
+        + " WHERE ec.resourceId IN ( SELECT res.id " //
+        + "                            FROM Resource res " //
+        + "                            JOIN res.explicitGroups ig " // use explicit here, this is not an authz check
+        + "                           WHERE ig.id = :groupId )"),
+    @NamedQuery(name = EventCount.UPDATE_DECREMENT, query = "" //
+        + "UPDATE EventCount ec " //
+        + "   SET ec.eventCount = ec.eventCount - :delta " //
+        + " WHERE ec.resourceId = :resourceId " //
+        + "   AND ec.severity = :severity " //
+        + "   AND ec.timeBucket = :timeBucket"),
+    @NamedQuery(name = EventCount.QUERY_EVENT_COUNTS_BY_SEVERITY, query = "" //
+        + "  SELECT ec.severity, SUM(ec.eventCount) " //
+        + "    FROM EventCount ec " //
+        + "   WHERE ec.resourceId = :resourceId " //
+        + "     AND ec.timeBucket >= :start AND ec.timeBucket < :end " //
+        + "GROUP BY ec.severity"), //
+    @NamedQuery(name = EventCount.QUERY_EVENT_COUNTS_BY_SEVERITY_GROUP, query = "" //
+        + "  SELECT ec.severity, SUM(ec.eventCount) " //
+        + "    FROM EventCount ec JOIN ec.resource res JOIN res.implicitGroups ig " //
+        + "   WHERE ig.id = :groupId " //
+        + "     AND ec.timeBucket >= :start AND ec.timeBucket < :end " //
+        + "GROUP BY ec.severity"), //
+    @NamedQuery(name = EventCount.QUERY_FIND_BY_RESOURCE, query = "" //
+        + "SELECT ec.timeBucket, ec.severity, ec.eventCount " //
+        + "  FROM EventCount ec " //
+        + " WHERE ec.resourceId = :resourceId " //
+        + "   AND ec.timeBucket >= :start AND ec.timeBucket < :end"), //
+    @NamedQuery(name = EventCount.QUERY_FIND_BY_RESOURCE_GROUP, query = "" //
+        + "SELECT ec.timeBucket, ec.severity, ec.eventCount " //
+        + "  FROM EventCount ec " //
+        + " WHERE ec.resourceId IN ( SELECT res.id " //
+        + "                            FROM Resource res " //
+        + "                            JOIN res.implicitGroups ig " //
+        + "                           WHERE ig.id = :groupId ) " //
+        + "   AND ec.timeBucket >= :start AND ec.timeBucket < :end"), //
+    @NamedQuery(name = EventCount.QUERY_FIND_BY_AUTOGROUP, query = "" //
+        + "SELECT ec.timeBucket, ec.severity, ec.eventCount " //
+        + "  FROM EventCount ec " //
+        + " WHERE ec.resourceId IN ( SELECT res.id " //
+        + "                            FROM Resource res " //
+        + "                           WHERE res.parentResource.id = :parentResourceId " //
+        + "                             AND res.resourceType.id = :resourceTypeId ) " //
+        + "   AND ec.timeBucket >= :start AND ec.timeBucket < :end") })
+@Table(name = EventCount.TABLE_NAME)
+@SequenceGenerator(allocationSize = org.rhq.core.domain.util.Constants.ALLOCATION_SIZE, name = EventCount.TABLE_NAME
+    + "_ID_SEQ", sequenceName = EventCount.TABLE_NAME + "_ID_SEQ")
+public class EventCount implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final String TABLE_NAME = "RHQ_EVENT_COUNT";
+
+    /**
+     * The size, in milliseconds, of the time buckets that events are counted in as they are stored.
+     */
+    public static final long BUCKET_SIZE = 60L * 1000L;
+
+    /**
+     * The size, in milliseconds, of the time buckets that old counters are rolled up into.
+     */
+    public static final long ROLLUP_BUCKET_SIZE = 60L * 60L * 1000L;
+
+    /**
+     * The age, in milliseconds, past which minute counters are rolled up into hourly counters. The counters of the
+     * hours starting less than this long ago are still per minute.
+     */
+    public static final long ROLLUP_AGE = 24L * ROLLUP_BUCKET_SIZE;
+
+    public static final String QUERY_DELETE_BY_RESOURCES = "EventCount.deleteByResources";
+    public static final String DELETE_ALL_BY_RESOURCE = "EventCount.deleteAllByResource";
+    public static final String DELETE_ALL_BY_RESOURCE_GROUP = "EventCount.deleteAllByResourceGroup";
+    public static final String UPDATE_DECREMENT = "EventCount.updateDecrement";
+    public static final String QUERY_EVENT_COUNTS_BY_SEVERITY = "EventCount.eventCountsBySeverity";
+    public static final String QUERY_EVENT_COUNTS_BY_SEVERITY_GROUP = "EventCount.eventCountsBySeverityGroup";
+    public static final String QUERY_FIND_BY_RESOURCE = "EventCount.findByResource";
+    public static final String QUERY_FIND_BY_RESOURCE_GROUP = "EventCount.findByResourceGroup";
+    public static final String QUERY_FIND_BY_AUTOGROUP = "EventCount.findByAutoGroup";
+
+    @Id
+    @Column(name = "ID", nullable = false)
+    @GeneratedValue(strategy = GenerationType.AUTO, generator = EventCount.TABLE_NAME + "_ID_SEQ")
+    private int id;
+
+    @JoinColumn(name = "RESOURCE_ID", nullable = false)
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    private Resource resource;
+
+    @Column(name = "RESOURCE_ID", insertable = false, updatable = false)
+    private int resourceId;
+
+    @Column(name = "SEVERITY", length = 20, nullable = false)
+    @Enumerated(EnumType.STRING)
+    private EventSeverity severity;
+
+    @Column(name = "TIME_BUCKET", nullable = false)
+    private long timeBucket;
+
+    @Column(name = "EVENT_COUNT", nullable = false)
+    private int eventCount;
+
+    /* no-arg constructor required by EJB spec */
+    protected EventCount() {
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Resource getResource() {
+        return resource;
+    }
+
+    public int getResourceId() {
+        return resourceId;
+    }
+
+    public EventSeverity getSeverity() {
+        return severity;
+    }
+
+    /**
+     * @return the start of the time bucket, in epoch milliseconds
+     */
+    public long getTimeBucket() {
+        return timeBucket;
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * @param timestamp an event timestamp, in epoch milliseconds
+     * @return the start of the {@link #BUCKET_SIZE minute} bucket the timestamp falls into
+     */
+    public static long getTimeBucket(long timestamp) {
+        return timestamp - (timestamp % BUCKET_SIZE);
+    }
+
+    /**
+     * @param timestamp an event timestamp, in epoch milliseconds
+     * @return the start of the {@link #ROLLUP_BUCKET_SIZE hour} bucket the timestamp falls into
+     */
+    public static long getRollupTimeBucket(long timestamp) {
+        return timestamp - (timestamp % ROLLUP_BUCKET_SIZE);
+    }
+
+    @Override
+    public String toString() {
+        return "EventCount[id=" + id + ", resourceId=" + resourceId + ", severity=" + severity + ", timeBucket="
+            + timeBucket + ", eventCount=" + eventCount + "]";
+    }
+}
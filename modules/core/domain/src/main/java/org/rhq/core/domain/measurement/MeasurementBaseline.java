@@ -72,6 +72,12 @@ public class MeasurementBaseline implements Serializable {
     public static final String QUERY_DELETE_EXISTING_AUTOBASELINES = "MeasurementBaseline.deleteExistingAutoBaseline";
     public static final String QUERY_BY_SCHEDULE_IDS = "MeasurementBaseline.queryByScheduleIds";
 
+    /** The bounds of the baselines computed (or entered) after the given time, in no particular order */
+    public static final String QUERY_NATIVE_FIND_BOUNDS_COMPUTED_AFTER = "" //
+        + "SELECT SCHEDULE_ID, BL_MIN, BL_MAX " //
+        + "  FROM RHQ_MEASUREMENT_BLINE " //
+        + " WHERE BL_COMPUTE_TIME > ? ";
+
     private static final long serialVersionUID = 1L;
     @GeneratedValue(strategy = GenerationType.AUTO, generator = "RHQ_MEASUREMENT_BLINE_ID_SEQ")
     @Id
@@ -146,6 +146,10 @@ public class MeasurementOOB {
      */
     @Deprecated
     public static final String DELETE_OUTDATED = "DeleteOutdatedOOBs";
+    /**
+     * @deprecated as of RHQ 4.14, no longer used
+     */
+    @Deprecated
     public static final String COUNT_FOR_DATE = "CountOOBForDate";
     public static final String GET_HIGHEST_FACTORS_FOR_RESOURCE = "GetHighestOOBFactorForResource";
     public static final String GET_HIGHEST_FACTORS_FOR_GROUP = "GetHighestOOBFactorForGroup";
@@ -162,7 +166,10 @@ public class MeasurementOOB {
      *                  or not sensitive enough, respectively.  The next improvement to the baseline system probably
      *                  needs to use a sliding scale for this threshold, to more accurately characterize "problem"
      *                  metrics across varying magnitudes of metric baseline deltas.
+     *
+     * @deprecated as of RHQ 4.14, no longer used
      */
+    @Deprecated
     public static final String INSERT_QUERY = "" //
         + "INSERT INTO rhq_measurement_oob_tmp (oob_factor, schedule_id, time_stamp ) \n" //
         + "     ( SELECT max(mx*100) as mxdiff, id, ? \n" //  ?1 = begin
@@ -195,6 +202,10 @@ public class MeasurementOOB {
         + "GROUP BY id, mx \n" //
         + "  HAVING mx > 0.05 )";
 
+    /**
+     * @deprecated as of RHQ 4.14, no longer used
+     */
+    @Deprecated
     public static final String UPDATE_MASTER_POSTGRES = "" //
         + "UPDATE rhq_measurement_oob \n"
         + "   SET oob_factor = rhq_measurement_oob_tmp.oob_factor,time_stamp=rhq_measurement_oob_tmp.time_stamp \n"
@@ -202,6 +213,10 @@ public class MeasurementOOB {
         + " WHERE rhq_measurement_oob_tmp.oob_factor > rhq_measurement_oob.oob_factor \n"
         + "   AND rhq_measurement_oob_tmp.schedule_id = rhq_measurement_oob.schedule_id ";
 
+    /**
+     * @deprecated as of RHQ 4.14, no longer used
+     */
+    @Deprecated
     public static final String MERGE_TABLES_ORACLE = "" //
         + "MERGE INTO rhq_measurement_oob oob_ \n" //
         + "     USING rhq_measurement_oob_tmp tmp_ \n" //
@@ -214,7 +229,10 @@ public class MeasurementOOB {
      * H2 syntax doesn't support the more complex SET...FROM...WHERE like Postgres, and although it does support
      * MERGE it doesn't support the WHEN [NOT] MATCHED syntax; so we'll just delete any and all OOBs that have become
      * obsolete, and follow that up with a call to INSERT_NEW_ONES, which should give us the same effect as row updates
+     *
+     * @deprecated as of RHQ 4.14, no longer used
      */
+    @Deprecated
     public static final String UPDATE_MASTER_GENERIC = "" //
         + "DELETE FROM rhq_measurement_oob \n" //
         + "      WHERE EXISTS ( SELECT oob_tmp.schedule_id \n" //
@@ -222,6 +240,10 @@ public class MeasurementOOB {
         + "                      WHERE oob_tmp.oob_factor > rhq_measurement_oob.oob_factor \n" //
         + "                        AND oob_tmp.schedule_id = rhq_measurement_oob.schedule_id ) ";
 
+    /**
+     * @deprecated as of RHQ 4.14, no longer used
+     */
+    @Deprecated
     public static final String INSERT_NEW_ONES = "" //
         + "INSERT INTO rhq_measurement_oob (oob_factor, schedule_id, time_stamp) \n"
         + "     ( SELECT oob_factor, schedule_id,  time_stamp \n"
@@ -230,6 +252,17 @@ public class MeasurementOOB {
         + "                             FROM rhq_measurement_oob \n "
         + "                            WHERE rhq_measurement_oob.schedule_id = rhq_measurement_oob_tmp.schedule_id ) )";
 
+    public static final String NATIVE_FIND_FOR_SCHEDULES = "" //
+        + "SELECT schedule_id, time_stamp, oob_factor \n" //
+        + "  FROM rhq_measurement_oob \n" //
+        + " WHERE schedule_id IN ( @@SCHEDULE_IDS@@ )";
+
+    public static final String NATIVE_INSERT = "" //
+        + "INSERT INTO rhq_measurement_oob (oob_factor, schedule_id, time_stamp) VALUES (?, ?, ?)";
+
+    public static final String NATIVE_UPDATE = "" //
+        + "UPDATE rhq_measurement_oob SET oob_factor = ?, time_stamp = ? WHERE schedule_id = ?";
+
     /**
      * @deprecated as of RHQ 4.13, no longer used
      */
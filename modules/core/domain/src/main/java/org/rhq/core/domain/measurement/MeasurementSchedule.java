@@ -109,6 +109,10 @@ import org.rhq.core.domain.resource.Resource;
     @NamedQuery(name = MeasurementSchedule.DISABLE_ALL, query = "" //
         + "UPDATE MeasurementSchedule ms " //
         + "   SET ms.enabled = false"), //
+    @NamedQuery(name = MeasurementSchedule.FIND_RESOURCE_IDS_BY_IDS, query = "" //
+        + "SELECT DISTINCT ms.resource.id " //
+        + "  FROM MeasurementSchedule ms " //
+        + " WHERE ms.id IN ( :scheduleIds )"), //
     @NamedQuery(name = MeasurementSchedule.DELETE_BY_RESOURCES, query = "" //
         + "DELETE MeasurementSchedule ms " //
         + " WHERE ms.resource.id IN ( :resourceIds )")})
@@ -147,6 +151,7 @@ public class MeasurementSchedule implements Serializable {
     public static final String FIND_ENABLED_BY_RESOURCES_AND_RESOURCE_TYPE = "MeasurementSchedule.FIND_ENABLED_BY_ResourcesS_AND_RESOURCE_TYPE";
     public static final String FIND_ENABLED_BY_RESOURCE_IDS_AND_RESOURCE_TYPE_ID = "MeasurementSchedule.FIND_ENABLED_BY_ResourceIds_AND_RESOURCE_TYPE";
     public static final String DELETE_BY_RESOURCES = "MeasurementSchedule.deleteByResources";
+    public static final String FIND_RESOURCE_IDS_BY_IDS = "MeasurementSchedule.findResourceIdsByIds";
     public static final String FIND_ALL_FOR_DEFINITIONS = "MeasurementSchedule.FIND_ALL_FOR_DEFINITIONS";
 
     public static final String FIND_BY_IDS = "MeasurementSchedule.findByIds";
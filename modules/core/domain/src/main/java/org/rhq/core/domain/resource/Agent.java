@@ -108,6 +108,10 @@ import org.rhq.core.domain.cloud.Server;
         + "  FROM Agent a " //
         + " WHERE a.id = :agentId " //
         + "   AND a.backFilled = true "), //
+    @NamedQuery(name = Agent.QUERY_FIND_ALL_BACKFILLED_NAMES, query = "" //
+        + "SELECT a.name " //
+        + "  FROM Agent a " //
+        + " WHERE a.backFilled = true "), //
     @NamedQuery(name = Agent.QUERY_UPDATE_STATUS_BY_RESOURCE, query = "" //
         + " UPDATE Agent a " //
         + "    SET a.status = -1 " // negative numbers so that bitmask strategy does not conflict with this one
@@ -180,6 +184,7 @@ public class Agent implements Serializable {
     public static final String QUERY_FIND_WITHOUT_AFFINITY_GROUP = "Agent.findWithoutAffinityGroup";
     public static final String QUERY_SET_AGENT_BACKFILLED = "Agent.setAgentBackfilled";
     public static final String QUERY_IS_AGENT_BACKFILLED = "Agent.isAgentBackfilled";
+    public static final String QUERY_FIND_ALL_BACKFILLED_NAMES = "Agent.findAllBackfilledNames";
 
     // HA queries
     public static final String QUERY_FIND_ALL_WITH_STATUS_BY_SERVER = "Agent.findAllWithStatusByServer";
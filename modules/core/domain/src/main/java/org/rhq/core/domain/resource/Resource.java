@@ -379,6 +379,10 @@ import org.rhq.core.domain.util.Summary;
         + "SELECT res.id " //
         + "  FROM ResourceGroup rg, IN (rg.explicitResources) res " //
         + " WHERE rg.id = :groupId AND res.inventoryStatus = 'COMMITTED' "),
+    @NamedQuery(name = Resource.QUERY_FIND_EXPLICIT_IDS_BY_RESOURCE_GROUP_AND_IDS_ADMIN, query = "" //
+        + "SELECT res.id " //
+        + "  FROM ResourceGroup rg, IN (rg.explicitResources) res " //
+        + " WHERE rg.id = :groupId AND res.id IN ( :resourceIds ) AND res.inventoryStatus = 'COMMITTED' "),
     @NamedQuery(name = Resource.QUERY_FIND_IMPLICIT_IDS_BY_RESOURCE_GROUP_ADMIN, query = "" //
         + "SELECT res.id " //
         + "  FROM ResourceGroup rg, IN (rg.implicitResources) res " //
@@ -685,32 +689,6 @@ import org.rhq.core.domain.util.Summary;
     @NamedQuery(name = Resource.QUERY_FIND_BY_ID_WITH_INSTALLED_PACKAGE_HIST, query = "SELECT r FROM Resource AS r LEFT JOIN r.installedPackageHistory ip WHERE r.id = :id"),
     @NamedQuery(name = Resource.QUERY_FIND_PLATFORM_BY_AGENT, query = "SELECT res FROM Resource res WHERE res.resourceType.category = :category AND res.agent = :agent"),
     @NamedQuery(name = Resource.QUERY_FIND_PARENT_ID, query = "SELECT res.parentResource.id FROM Resource AS res WHERE res.id = :id"),
-    @NamedQuery(name = Resource.QUERY_FIND_ROOT_PLATFORM_OF_RESOURCE, query = ""
-        + "SELECT DISTINCT r FROM Resource r "
-        + "WHERE r.parentResource.id is null "
-        + "AND "
-        + "  ( "
-        + "    r.id = :resourceId "
-        + "    OR EXISTS (SELECT rr FROM Resource rr WHERE rr.id = :resourceId AND rr.parentResource = r) "
-        + "    OR EXISTS (SELECT rr FROM Resource rr WHERE rr.id = :resourceId AND rr.parentResource.parentResource = r) "
-        + "    OR EXISTS (SELECT rr FROM Resource rr WHERE rr.id = :resourceId AND rr.parentResource.parentResource.parentResource = r) "
-        + "    OR EXISTS (SELECT rr FROM Resource rr WHERE rr.id = :resourceId AND rr.parentResource.parentResource.parentResource.parentResource = r) "
-        + "    OR EXISTS (SELECT rr FROM Resource rr WHERE rr.id = :resourceId AND rr.parentResource.parentResource.parentResource.parentResource.parentResource = r) "
-        + "    OR EXISTS (SELECT rr FROM Resource rr WHERE rr.id = :resourceId AND rr.parentResource.parentResource.parentResource.parentResource.parentResource.parentResource = r) "
-        + "  )"), //
-    @NamedQuery(name = Resource.QUERY_FIND_DESCENDANTS_BY_TYPE_AND_NAME, query = "" //
-        + "SELECT r.id " //
-        + "  FROM Resource r " //
-        + " WHERE ( r.resourceType.id = :resourceTypeId OR :resourceTypeId = 0 ) " //
-        + "   AND ( UPPER(r.name) like :resourceName OR :resourceName = '$$$null$$$' ) " //
-        + "   AND ( r.id = :resourceId " //
-        + "         OR r.id IN (SELECT rr.id FROM Resource rr WHERE rr.parentResource.id = :resourceId) "
-        + "         OR r.id IN (SELECT rr.id FROM Resource rr WHERE rr.parentResource.parentResource.id = :resourceId) "
-        + "         OR r.id IN (SELECT rr.id FROM Resource rr WHERE rr.parentResource.parentResource.parentResource.id = :resourceId) "
-        + "         OR r.id IN (SELECT rr.id FROM Resource rr WHERE rr.parentResource.parentResource.parentResource.parentResource.id = :resourceId) "
-        + "         OR r.id IN (SELECT rr.id FROM Resource rr WHERE rr.parentResource.parentResource.parentResource.parentResource.parentResource.id = :resourceId) "
-        + "         OR r.id IN (SELECT rr.id FROM Resource rr WHERE rr.parentResource.parentResource.parentResource.parentResource.parentResource.parentResource.id = :resourceId) "
-        + "      ) "),
     @NamedQuery(name = Resource.QUERY_FIND_DESCENDANTS, query = "" //
         + "SELECT r.id " //
         + "  FROM Resource r " //
@@ -838,6 +816,7 @@ public class Resource implements Comparable<Resource>, Serializable {
     public static final String QUERY_FIND_BY_PARENT_AND_KEY = "Resource.findByParentAndKey";
 
     public static final String QUERY_FIND_EXPLICIT_IDS_BY_RESOURCE_GROUP_ADMIN = "Resource.findExplicitIdsByResourceGroup_admin";
+    public static final String QUERY_FIND_EXPLICIT_IDS_BY_RESOURCE_GROUP_AND_IDS_ADMIN = "Resource.findExplicitIdsByResourceGroupAndIds_admin";
     public static final String QUERY_FIND_IMPLICIT_IDS_BY_RESOURCE_GROUP_ADMIN = "Resource.findImplicitIdsByResourceGroup_admin";
 
     public static final String QUERY_FIND_FLY_WEIGHTS_BY_RESOURCE_IDS = "Resource.findFlyWeights";
@@ -892,10 +871,6 @@ public class Resource implements Comparable<Resource>, Serializable {
     public static final String QUERY_FIND_PLATFORM_BY_AGENT = "Resource.findPlatformByAgent";
 
     public static final String QUERY_FIND_PARENT_ID = "Resource.findParentId";
-
-    public static final String QUERY_FIND_ROOT_PLATFORM_OF_RESOURCE = "Resource.findRootPlatformOfResource";
-
-    public static final String QUERY_FIND_DESCENDANTS_BY_TYPE_AND_NAME = "Resource.findDescendantsByTypeAndName";
     public static final String QUERY_FIND_DESCENDANTS = "Resource.findDescendants";
     public static final String QUERY_MARK_RESOURCES_FOR_ASYNC_DELETION_QUICK = "Resource.markResourcesForAsyncDeletionQuick";
     public static final String QUERY_FIND_RESOURCES_MARKED_FOR_ASYNC_DELETION = "Resource.findResourcesMarkedForAsyncDeletion";
@@ -926,60 +901,6 @@ public class Resource implements Comparable<Resource>, Serializable {
         + " SELECT id " //
         + "   FROM childResource ";
 
-    /**
-     *  Note, special parameter values to represent NULL, do not use NULL:<pre>
-     *    :resourceTypeId = 0
-     *    :resourceName   = "$$$null$$$"</pre>
-     */
-    public static final String QUERY_NATIVE_FIND_DESCENDANTS_BY_TYPE_AND_NAME_ORACLE = "" //
-        + "           SELECT r.id " //
-        + "             FROM rhq_resource r " //
-        + "            WHERE ( r.resource_type_id = :resourceTypeId OR :resourceTypeId = 0 ) " //
-        + "              AND ( UPPER(r.name) LIKE :resourceName OR :resourceName = '$$$null$$$' ) " //
-        + "       START WITH r.id = :resourceId " //
-        + " CONNECT BY PRIOR r.id = r.parent_resource_id ";
-    /**
-     *  Note, special parameter values to represent NULL, do not use NULL:<pre>
-     *    :resourceTypeId = 0
-     *    :resourceName   = "$$$null$$$"</pre>
-     */
-    public static final String QUERY_NATIVE_FIND_DESCENDANTS_BY_TYPE_AND_NAME_POSTGRES = "" //
-        + " WITH RECURSIVE childResource AS " //
-        + " (    SELECT r.id AS resourceId, r.name AS resourceName, r.resource_type_id AS resourceTypeId " //
-        + "        FROM rhq_resource AS r " //
-        + "       WHERE r.id = :resourceId " //
-        + "   UNION ALL " //
-        + "      SELECT r.id AS resourceId, r.name AS resourceName, r.resource_type_id AS resourceTypeId " //
-        + "        FROM rhq_resource AS r " //
-        + "        JOIN childResource AS cr " //
-        + "          ON (r.parent_resource_id = cr.resourceId) " //
-        + " ) " //
-        + " SELECT cr.resourceId " //
-        + "   FROM childResource AS cr " //
-        + "  WHERE ( cr.resourceTypeId = :resourceTypeId OR :resourceTypeId = 0 ) " //
-        + "    AND ( UPPER(cr.resourceName) LIKE :resourceName OR :resourceName = '$$$null$$$' ) ";
-
-    public static final String QUERY_NATIVE_FIND_RESOURCE_PLATFORM_ORACLE = "" //
-        + "           SELECT r.id " //
-        + "             FROM rhq_resource r " //
-        + "            WHERE r.parent_resource_id IS NULL " //
-        + "       START WITH r.id = :resourceId " //
-        + " CONNECT BY PRIOR r.parent_resource_id = r.id ";
-    public static final String QUERY_NATIVE_FIND_RESOURCE_PLATFORM_POSTGRES = "" //
-        + " WITH RECURSIVE parentResource AS " //
-        + " (       SELECT r.id AS resourceId, r.parent_resource_id AS parentResourceId " //
-        + "           FROM rhq_resource AS r " //
-        + "          WHERE r.id = :resourceId " //
-        + "          UNION " //
-        + "         SELECT r.id AS resourceId, r.parent_resource_id AS parentResourceId " //
-        + "           FROM rhq_resource AS r " //
-        + "           JOIN parentResource AS pr " //
-        + "             ON (r.id = pr.parentResourceId) " //
-        + "  ) " //
-        + "  SELECT pr.resourceId " //
-        + "    FROM parentResource AS pr " //
-        + "   WHERE ( pr.parentResourceId IS NULL ) ";
-
     private static final int UUID_LENGTH = 36;
 
     private static final long serialVersionUID = 1L;
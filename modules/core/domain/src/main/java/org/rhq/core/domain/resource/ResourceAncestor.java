@@ -0,0 +1,203 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.domain.resource;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * One row of the closure of the resource hierarchy: the resource with id {@link #getAncestorId() ancestorId} is an
+ * ancestor of the resource with id {@link #getDescendantId() descendantId}, {@link #getDepth() depth} levels above
+ * it. Every resource is its own ancestor at depth 0, so the descendants of a resource include the resource itself.
+ * <p/>
+ * This lets the hierarchy be queried in one step, at any depth, instead of walking it one parent at a time. The rows
+ * are maintained by the server when resources are added, moved to a new parent or uninventoried; the parent
+ * reference of the {@link Resource} remains the authoritative hierarchy.
+ *
+ * @since 4.14
+ */
+@Entity
+@IdClass(ResourceAncestorPK.class)
+@NamedQueries( {
+    @NamedQuery(name = ResourceAncestor.QUERY_FIND_DESCENDANT_IDS, query = "" //
+        + "SELECT ra.descendantId " //
+        + "  FROM ResourceAncestor ra " //
+        + " WHERE ra.ancestorId = :resourceId "),
+    @NamedQuery(name = ResourceAncestor.QUERY_FIND_DESCENDANT_IDS_BY_TYPE_AND_NAME, query = "" //
+        + "SELECT res.id " //
+        + "  FROM ResourceAncestor ra, Resource res " //
+        + " WHERE ra.ancestorId = :resourceId " //
+        + "   AND res.id = ra.descendantId " //
+        + "   AND ( res.resourceType.id = :resourceTypeId OR :resourceTypeId = 0 ) " //
+        + "   AND ( UPPER(res.name) LIKE :resourceName OR :resourceName = '$$$null$$$' ) "),
+    @NamedQuery(name = ResourceAncestor.QUERY_FIND_ANCESTOR_IDS, query = "" //
+        + "  SELECT ra.ancestorId " //
+        + "    FROM ResourceAncestor ra " //
+        + "   WHERE ra.descendantId = :resourceId " //
+        + "     AND ra.depth > 0 " //
+        + "ORDER BY ra.depth "),
+    @NamedQuery(name = ResourceAncestor.QUERY_FIND_LINEAGE, query = "" //
+        + "  SELECT res " //
+        + "    FROM ResourceAncestor ra, Resource res " //
+        + "   WHERE ra.descendantId = :resourceId " //
+        + "     AND res.id = ra.ancestorId " //
+        + "ORDER BY ra.depth DESC "),
+    @NamedQuery(name = ResourceAncestor.QUERY_FIND_ROOT_ID, query = "" //
+        + "SELECT res.id " //
+        + "  FROM ResourceAncestor ra, Resource res " //
+        + " WHERE ra.descendantId = :resourceId " //
+        + "   AND res.id = ra.ancestorId " //
+        + "   AND res.parentResource IS NULL ") })
+@Table(name = "RHQ_RESOURCE_ANCESTOR")
+public class ResourceAncestor implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** The ids of the resource and of all of its descendants, at any depth */
+    public static final String QUERY_FIND_DESCENDANT_IDS = "ResourceAncestor.findDescendantIds";
+    /**
+     *  Note, special parameter values to represent NULL, do not use NULL:<pre>
+     *    :resourceTypeId = 0
+     *    :resourceName   = "$$$null$$$"</pre>
+     */
+    public static final String QUERY_FIND_DESCENDANT_IDS_BY_TYPE_AND_NAME = "ResourceAncestor.findDescendantIdsByTypeAndName";
+    /** The ids of the ancestors of the resource, starting with its parent */
+    public static final String QUERY_FIND_ANCESTOR_IDS = "ResourceAncestor.findAncestorIds";
+    /** The resource and its ancestors, starting with the platform and ending with the resource itself */
+    public static final String QUERY_FIND_LINEAGE = "ResourceAncestor.findLineage";
+    /** The id of the platform (the root resource) of the resource */
+    public static final String QUERY_FIND_ROOT_ID = "ResourceAncestor.findRootId";
+
+    /**
+     * Adds a newly persisted resource below the ancestors of its parent, and as its own ancestor. The parent must have
+     * been added before. Bind the resource id to both parameters.
+     */
+    public static final String QUERY_NATIVE_ADD_RESOURCE = "" //
+        + "INSERT INTO RHQ_RESOURCE_ANCESTOR ( ANCESTOR_ID, DESCENDANT_ID, DEPTH ) " //
+        + "     SELECT res.ID, res.ID, 0 " //
+        + "       FROM RHQ_RESOURCE res " //
+        + "      WHERE res.ID = ? " // resourceId
+        + "  UNION ALL " //
+        + "     SELECT ra.ANCESTOR_ID, res.ID, ra.DEPTH + 1 " //
+        + "       FROM RHQ_RESOURCE res " //
+        + "       JOIN RHQ_RESOURCE_ANCESTOR ra ON ra.DESCENDANT_ID = res.PARENT_RESOURCE_ID " //
+        + "      WHERE res.ID = ? "; // resourceId
+
+    /**
+     * Detaches the subtree rooted at a resource from the ancestors of the resource, keeping the rows within the
+     * subtree. Bind the resource id to both parameters.
+     */
+    public static final String QUERY_NATIVE_DETACH_SUBTREE = "" //
+        + "DELETE FROM RHQ_RESOURCE_ANCESTOR " //
+        + " WHERE DESCENDANT_ID IN ( SELECT sub.DESCENDANT_ID " //
+        + "                            FROM RHQ_RESOURCE_ANCESTOR sub " //
+        + "                           WHERE sub.ANCESTOR_ID = ? ) " // resourceId
+        + "   AND ANCESTOR_ID NOT IN ( SELECT sub.DESCENDANT_ID " //
+        + "                              FROM RHQ_RESOURCE_ANCESTOR sub " //
+        + "                             WHERE sub.ANCESTOR_ID = ? ) "; // resourceId
+
+    /**
+     * Attaches the (detached) subtree rooted at a resource below the ancestors of the current parent of the resource.
+     */
+    public static final String QUERY_NATIVE_ATTACH_SUBTREE = "" //
+        + "INSERT INTO RHQ_RESOURCE_ANCESTOR ( ANCESTOR_ID, DESCENDANT_ID, DEPTH ) " //
+        + "     SELECT sup.ANCESTOR_ID, sub.DESCENDANT_ID, sup.DEPTH + sub.DEPTH + 1 " //
+        + "       FROM RHQ_RESOURCE res " //
+        + "       JOIN RHQ_RESOURCE_ANCESTOR sup ON sup.DESCENDANT_ID = res.PARENT_RESOURCE_ID " //
+        + "       JOIN RHQ_RESOURCE_ANCESTOR sub ON sub.ANCESTOR_ID = res.ID " //
+        + "      WHERE res.ID = ? "; // resourceId
+
+    /**
+     * Unlinks resources from all of their ancestors but themselves, as when their parent reference is cleared.
+     */
+    public static final String QUERY_NATIVE_UNLINK_BY_RESOURCE_IDS = "" //
+        + "DELETE FROM RHQ_RESOURCE_ANCESTOR " //
+        + " WHERE DESCENDANT_ID IN ( :resourceIds ) " //
+        + "   AND ANCESTOR_ID <> DESCENDANT_ID ";
+
+    @Column(name = "ANCESTOR_ID", nullable = false)
+    @Id
+    private int ancestorId;
+
+    @Column(name = "DESCENDANT_ID", nullable = false)
+    @Id
+    private int descendantId;
+
+    @Column(name = "DEPTH", nullable = false)
+    private int depth;
+
+    protected ResourceAncestor() {
+    }
+
+    public ResourceAncestor(int ancestorId, int descendantId, int depth) {
+        this.ancestorId = ancestorId;
+        this.descendantId = descendantId;
+        this.depth = depth;
+    }
+
+    public int getAncestorId() {
+        return ancestorId;
+    }
+
+    public int getDescendantId() {
+        return descendantId;
+    }
+
+    /**
+     * @return the number of levels between the ancestor and the descendant, 0 if they are the same resource
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceAncestor: ancestorId=[" + ancestorId + "]; descendantId=[" + descendantId + "]; depth=["
+            + depth + "]";
+    }
+
+    @Override
+    public int hashCode() {
+        return (31 * ancestorId) + descendantId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof ResourceAncestor)) {
+            return false;
+        }
+
+        final ResourceAncestor other = (ResourceAncestor) obj;
+        return (ancestorId == other.ancestorId) && (descendantId == other.descendantId);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.domain.resource;
+
+import java.io.Serializable;
+
+/**
+ * This is the composite primary key for the {@link ResourceAncestor} entity: the ids of the ancestor and of the
+ * descendant resource.
+ */
+public class ResourceAncestorPK implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int ancestorId;
+
+    private int descendantId;
+
+    public ResourceAncestorPK() {
+    }
+
+    public ResourceAncestorPK(int ancestorId, int descendantId) {
+        this.ancestorId = ancestorId;
+        this.descendantId = descendantId;
+    }
+
+    public int getAncestorId() {
+        return ancestorId;
+    }
+
+    public void setAncestorId(int ancestorId) {
+        this.ancestorId = ancestorId;
+    }
+
+    public int getDescendantId() {
+        return descendantId;
+    }
+
+    public void setDescendantId(int descendantId) {
+        this.descendantId = descendantId;
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceAncestorPK: ancestorId=[" + ancestorId + "]; descendantId=[" + descendantId + "]";
+    }
+
+    @Override
+    public int hashCode() {
+        return (31 * ancestorId) + descendantId;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (!(obj instanceof ResourceAncestorPK)) {
+            return false;
+        }
+
+        final ResourceAncestorPK other = (ResourceAncestorPK) obj;
+        return (ancestorId == other.ancestorId) && (descendantId == other.descendantId);
+    }
+}
@@ -64,6 +64,17 @@ import org.rhq.core.domain.util.StringUtils;
         + "SELECT COUNT(rg.id) " //
         + "  FROM ResourceGroup rg " //
         + " WHERE rg.groupDefinition.id = :groupDefinitionId "),
+    @NamedQuery(name = GroupDefinition.QUERY_FIND_MANAGED_MEMBERS_BY_RESOURCE_IDS_ADMIN, query = "" //
+        + "SELECT rg.id, res.id " //
+        + "  FROM ResourceGroup rg JOIN rg.explicitResources res " //
+        + " WHERE rg.groupDefinition.id = :groupDefinitionId " //
+        + "   AND res.id IN ( :resourceIds ) "),
+    @NamedQuery(name = GroupDefinition.QUERY_FIND_EMPTY_MANAGED_RESOURCE_GROUP_IDS_ADMIN, query = "" //
+        + "SELECT rg.id " //
+        + "  FROM ResourceGroup rg " //
+        + " WHERE rg.groupDefinition.id = :groupDefinitionId " //
+        + "   AND rg.id IN ( :groupIds ) " //
+        + "   AND rg.explicitResources IS EMPTY "),
     /*
      * the next recalculation interval is defined as:
      * 
@@ -107,6 +118,8 @@ public class GroupDefinition implements Serializable {
     public static final String QUERY_FIND_ALL_MEMBERS = "GroupDefinition.findAllMembers_admin";
     public static final String QUERY_FIND_MANAGED_RESOURCE_GROUP_IDS_ADMIN = "GroupDefinition.findManagedResourceGroupIds_admin";
     public static final String QUERY_FIND_MANAGED_RESOURCE_GROUP_SIZE_ADMIN = "GroupDefinition.findManagedResourceGroupSize_admin";
+    public static final String QUERY_FIND_MANAGED_MEMBERS_BY_RESOURCE_IDS_ADMIN = "GroupDefinition.findManagedMembersByResourceIds_admin";
+    public static final String QUERY_FIND_EMPTY_MANAGED_RESOURCE_GROUP_IDS_ADMIN = "GroupDefinition.findEmptyManagedResourceGroupIds_admin";
     public static final String QUERY_FIND_IDS_FOR_RECALCULATION = "GroupDefinition.findIdsForRecalculation_admin";
     public static final String QUERY_FIND_ALL_RECALCULATING = "GroupDefinition.findAllRecalculating_admin";
     public static final String QUERY_FIND_BY_CANNED_EXPR_NAME = "GroupDefinition.findByCannedExpessionName";
@@ -375,26 +375,12 @@ public class ResourceGroup extends Group {
         + "          where res.ID in ( @@RESOURCE_IDS@@ ) ";
     public static final String QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT_RECURSIVE = "" //
         + "    insert into RHQ_RESOURCE_GROUP_RES_IMP_MAP ( RESOURCE_ID, RESOURCE_GROUP_ID ) " //
-        + "         select res.ID, ? " // groupId
-        + "           from RHQ_RESOURCE res " //
-        + "left outer join RHQ_RESOURCE g1parent on res.PARENT_RESOURCE_ID = g1parent.ID " //
-        + "left outer join RHQ_RESOURCE g2parent on g1parent.PARENT_RESOURCE_ID = g2parent.ID " //
-        + "left outer join RHQ_RESOURCE g3parent on g2parent.PARENT_RESOURCE_ID = g3parent.ID " //
-        + "left outer join RHQ_RESOURCE g4parent on g3parent.PARENT_RESOURCE_ID = g4parent.ID " //
-        + "left outer join RHQ_RESOURCE g5parent on g4parent.PARENT_RESOURCE_ID = g5parent.ID " //
-        + "left outer join RHQ_RESOURCE g6parent on g5parent.PARENT_RESOURCE_ID = g6parent.ID " //
-        + "          where ( res.ID = ? or " // resourceId
-        + "                  g1parent.ID = ? or " // resourceId
-        + "                  g2parent.ID = ? or " // resourceId
-        + "                  g3parent.ID = ? or " // resourceId
-        + "                  g4parent.ID = ? or " // resourceId
-        + "                  g5parent.ID = ? or " // resourceId
-        + "                  g6parent.ID = ? ) " // resourceId
-        + "            and ( res.ID not in ( select impRes.ID " //
-        + "                                    from RHQ_RESOURCE_GROUP rg " //
-        + "                              inner join RHQ_RESOURCE_GROUP_RES_IMP_MAP implicitMap on rg.ID = implicitMap.RESOURCE_GROUP_ID " //
-        + "                              inner join RHQ_RESOURCE impRes on implicitMap.RESOURCE_ID = impRes.ID " //
-        + "                                   where rg.ID = ? ) ) "; // groupId
+        + "         select distinct ra.DESCENDANT_ID, ? " // groupId
+        + "           from RHQ_RESOURCE_ANCESTOR ra " // any descendant of the resources, including themselves
+        + "          where ra.ANCESTOR_ID in ( @@RESOURCE_IDS@@ ) " //
+        + "            and ra.DESCENDANT_ID not in ( select implicitMap.RESOURCE_ID " //
+        + "                                            from RHQ_RESOURCE_GROUP_RES_IMP_MAP implicitMap " //
+        + "                                           where implicitMap.RESOURCE_GROUP_ID = ? ) "; // groupId
     public static final String QUERY_NATIVE_REMOVE_RESOURCES_FROM_GROUP_EXPLICIT = "" //
         + "    delete from RHQ_RESOURCE_GROUP_RES_EXP_MAP " //
         + "          where RESOURCE_GROUP_ID = ? " // groupId
@@ -406,40 +392,16 @@ public class ResourceGroup extends Group {
     public static final String QUERY_NATIVE_REMOVE_RESOURCES_FROM_GROUP_IMPLICIT_RECURSIVE = "" //
         + "   delete from RHQ_RESOURCE_GROUP_RES_IMP_MAP " // delete mappings
         + "         where RESOURCE_GROUP_ID = ? " // groupId
-        + "           and RESOURCE_ID in " // from any descendant of resourceId, including itself
-        + "               ( select res.id " //
-        + "                   from RHQ_RESOURCE res " //
-        + "        left outer join RHQ_RESOURCE g1parent on res.PARENT_RESOURCE_ID = g1parent.ID " //
-        + "        left outer join RHQ_RESOURCE g2parent on g1parent.PARENT_RESOURCE_ID = g2parent.ID " //
-        + "        left outer join RHQ_RESOURCE g3parent on g2parent.PARENT_RESOURCE_ID = g3parent.ID " //
-        + "        left outer join RHQ_RESOURCE g4parent on g3parent.PARENT_RESOURCE_ID = g4parent.ID " //
-        + "        left outer join RHQ_RESOURCE g5parent on g4parent.PARENT_RESOURCE_ID = g5parent.ID " //
-        + "        left outer join RHQ_RESOURCE g6parent on g5parent.PARENT_RESOURCE_ID = g6parent.ID " //
-        + "                  where ( res.ID = ? or " // resourceId
-        + "                          g1parent.ID = ? or " // resourceId
-        + "                          g2parent.ID = ? or " // resourceId
-        + "                          g3parent.ID = ? or " // resourceId
-        + "                          g4parent.ID = ? or " // resourceId
-        + "                          g5parent.ID = ? or " // resourceId
-        + "                          g6parent.ID = ? ) ) " // resourceId
-        + "           and RESOURCE_ID not in " // which aren't already descendants of members in the explicit set
-        + "               ( select res.id " //
-        + "                   from RHQ_RESOURCE_GROUP_RES_EXP_MAP alreadyMember, RHQ_RESOURCE res " //
-        + "        left outer join RHQ_RESOURCE g1parent on res.PARENT_RESOURCE_ID = g1parent.ID " //
-        + "        left outer join RHQ_RESOURCE g2parent on g1parent.PARENT_RESOURCE_ID = g2parent.ID " //
-        + "        left outer join RHQ_RESOURCE g3parent on g2parent.PARENT_RESOURCE_ID = g3parent.ID " //
-        + "        left outer join RHQ_RESOURCE g4parent on g3parent.PARENT_RESOURCE_ID = g4parent.ID " //
-        + "        left outer join RHQ_RESOURCE g5parent on g4parent.PARENT_RESOURCE_ID = g5parent.ID " //
-        + "        left outer join RHQ_RESOURCE g6parent on g5parent.PARENT_RESOURCE_ID = g6parent.ID " //
+        + "           and RESOURCE_ID in " // from any descendant of the resources, including themselves
+        + "               ( select ra.DESCENDANT_ID " //
+        + "                   from RHQ_RESOURCE_ANCESTOR ra " //
+        + "                  where ra.ANCESTOR_ID in ( @@RESOURCE_IDS@@ ) ) " //
+        + "           and RESOURCE_ID not in " // which aren't also descendants of the remaining explicit members
+        + "               ( select ra.DESCENDANT_ID " //
+        + "                   from RHQ_RESOURCE_GROUP_RES_EXP_MAP alreadyMember " //
+        + "                   join RHQ_RESOURCE_ANCESTOR ra on ra.ANCESTOR_ID = alreadyMember.RESOURCE_ID " //
         + "                  where alreadyMember.RESOURCE_GROUP_ID = ? " // groupId
-        + "                    and alreadyMember.RESOURCE_ID <> ? " // resourceId
-        + "                    and ( res.ID = alreadyMember.RESOURCE_ID or " //
-        + "                          g1parent.ID = alreadyMember.RESOURCE_ID or " //
-        + "                          g2parent.ID = alreadyMember.RESOURCE_ID or " //
-        + "                          g3parent.ID = alreadyMember.RESOURCE_ID or " //
-        + "                          g4parent.ID = alreadyMember.RESOURCE_ID or " //
-        + "                          g5parent.ID = alreadyMember.RESOURCE_ID or " //
-        + "                          g6parent.ID = alreadyMember.RESOURCE_ID ) ) ";
+        + "                    and alreadyMember.RESOURCE_ID not in ( @@RESOURCE_IDS@@ ) ) ";
 
     @Column(name = "ID", nullable = false)
     @GeneratedValue(strategy = GenerationType.AUTO, generator = "RHQ_RESOURCE_GROUP_ID_SEQ")
@@ -55,6 +55,25 @@ public class NetworkAdapterStats {
         this.txCarrier = nis.getTxCarrier();
     }
 
+    /**
+     * @param counters the counters of the interface, indexed by the <code>NET_</code> columns of {@link ProcStats}
+     */
+    NetworkAdapterStats(long[] counters) {
+        this.rxBytes = counters[ProcStats.NET_RX_BYTES];
+        this.rxPackets = counters[ProcStats.NET_RX_PACKETS];
+        this.rxErrors = counters[ProcStats.NET_RX_ERRORS];
+        this.rxDropped = counters[ProcStats.NET_RX_DROPPED];
+        this.rxOverruns = counters[ProcStats.NET_RX_OVERRUNS];
+        this.rxFrame = counters[ProcStats.NET_RX_FRAME];
+        this.txBytes = counters[ProcStats.NET_TX_BYTES];
+        this.txPackets = counters[ProcStats.NET_TX_PACKETS];
+        this.txErrors = counters[ProcStats.NET_TX_ERRORS];
+        this.txDropped = counters[ProcStats.NET_TX_DROPPED];
+        this.txOverruns = counters[ProcStats.NET_TX_OVERRUNS];
+        this.txCollisions = counters[ProcStats.NET_TX_COLLISIONS];
+        this.txCarrier = counters[ProcStats.NET_TX_CARRIER];
+    }
+
     public long getRxBytes() {
         return rxBytes;
     }
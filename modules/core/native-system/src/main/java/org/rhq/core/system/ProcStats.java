@@ -0,0 +1,434 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.system;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot of the system-wide Linux counters of <code>/proc/stat</code>, <code>/proc/meminfo</code>,
+ * <code>/proc/net/dev</code> and <code>/proc/diskstats</code>, read in one pass (see {@link #read(File)}).
+ * <p/>
+ * Counters are kept in primitive arrays, one row per CPU, network interface or disk, indexed by the
+ * <code>CPU_</code>, <code>NET_</code> and <code>DISK_</code> column constants. Values are converted to the units
+ * SIGAR reports on Linux, i.e. CPU times in milliseconds and memory and disk transfers in bytes, so that metrics read
+ * from a snapshot match those read through SIGAR. The arrays returned by the getters must not be modified.
+ */
+public class ProcStats {
+
+    // the columns of the CPU times, in the order of /proc/stat
+    public static final int CPU_USER = 0;
+    public static final int CPU_NICE = 1;
+    public static final int CPU_SYS = 2;
+    public static final int CPU_IDLE = 3;
+    public static final int CPU_WAIT = 4;
+    public static final int CPU_IRQ = 5;
+    public static final int CPU_SOFT_IRQ = 6;
+    public static final int CPU_STOLEN = 7;
+    private static final int CPU_COLUMNS = 8;
+
+    // the names of the CPU times, as the properties of SIGAR's Cpu and CpuPerc
+    private static final String[] CPU_COLUMN_NAMES = { "user", "nice", "sys", "idle", "wait", "irq", "softIrq",
+        "stolen" };
+
+    // the columns of the network interface counters, in the order of /proc/net/dev
+    public static final int NET_RX_BYTES = 0;
+    public static final int NET_RX_PACKETS = 1;
+    public static final int NET_RX_ERRORS = 2;
+    public static final int NET_RX_DROPPED = 3;
+    public static final int NET_RX_OVERRUNS = 4;
+    public static final int NET_RX_FRAME = 5;
+    public static final int NET_TX_BYTES = 8;
+    public static final int NET_TX_PACKETS = 9;
+    public static final int NET_TX_ERRORS = 10;
+    public static final int NET_TX_DROPPED = 11;
+    public static final int NET_TX_OVERRUNS = 12;
+    public static final int NET_TX_COLLISIONS = 13;
+    public static final int NET_TX_CARRIER = 14;
+    private static final int NET_COLUMNS = 16;
+
+    public static final int DISK_READS = 0;
+    public static final int DISK_READ_BYTES = 1;
+    public static final int DISK_WRITES = 2;
+    public static final int DISK_WRITE_BYTES = 3;
+    private static final int DISK_COLUMNS = 4;
+
+    // the kernel reports CPU times in USER_HZ ticks, which is 100 on all the architectures Linux runs on
+    private static final long MILLIS_PER_TICK = 10L;
+
+    private static final long SECTOR_SIZE = 512L;
+
+    private final long timestamp;
+
+    private long[] cpuTotal;
+    private final Map<Integer, long[]> cpus = new HashMap<Integer, long[]>();
+    private long contextSwitches;
+    private long processesCreated;
+    private long runningProcesses;
+    private long blockedProcesses;
+
+    private long memTotal;
+    private long memFree;
+    private long buffers;
+    private long cached;
+    private long swapTotal;
+    private long swapFree;
+
+    private final List<String> netInterfaces = new ArrayList<String>();
+    private final List<long[]> netCounters = new ArrayList<long[]>();
+
+    private final List<String> disks = new ArrayList<String>();
+    private final List<long[]> diskCounters = new ArrayList<long[]>();
+
+    ProcStats(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Reads a snapshot from the given proc file system. <code>stat</code> is required; the other files are skipped if
+     * they do not exist, e.g. in containers which do not expose them.
+     *
+     * @param procDir the proc file system, i.e. <code>/proc</code>
+     * @return the snapshot
+     * @throws IOException if <code>stat</code> can't be read
+     */
+    public static ProcStats read(File procDir) throws IOException {
+        ProcStats stats = new ProcStats(System.currentTimeMillis());
+        stats.readStat(new File(procDir, "stat"));
+        try {
+            stats.readMemInfo(new File(procDir, "meminfo"));
+        } catch (FileNotFoundException ignore) {
+        }
+        try {
+            stats.readNetDev(new File(new File(procDir, "net"), "dev"));
+        } catch (FileNotFoundException ignore) {
+        }
+        try {
+            stats.readDiskStats(new File(procDir, "diskstats"));
+        } catch (FileNotFoundException ignore) {
+        }
+        return stats;
+    }
+
+    private void readStat(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] fields = split(line);
+                if (fields.length < 2) {
+                    continue;
+                }
+                String name = fields[0];
+                if (name.startsWith("cpu")) {
+                    long[] times = new long[CPU_COLUMNS];
+                    for (int i = 0; i < CPU_COLUMNS && i + 1 < fields.length; i++) {
+                        times[i] = parseLong(fields[i + 1]) * MILLIS_PER_TICK;
+                    }
+                    // CPUs are indexed by their number, offline CPUs are not listed
+                    if (name.length() == 3) {
+                        cpuTotal = times;
+                    } else {
+                        try {
+                            cpus.put(Integer.valueOf(name.substring(3)), times);
+                        } catch (NumberFormatException ignore) {
+                        }
+                    }
+                } else if (name.equals("ctxt")) {
+                    contextSwitches = parseLong(fields[1]);
+                } else if (name.equals("processes")) {
+                    processesCreated = parseLong(fields[1]);
+                } else if (name.equals("procs_running")) {
+                    runningProcesses = parseLong(fields[1]);
+                } else if (name.equals("procs_blocked")) {
+                    blockedProcesses = parseLong(fields[1]);
+                }
+            }
+        } finally {
+            close(reader);
+        }
+    }
+
+    private void readMemInfo(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                // MemTotal:       16318412 kB
+                String[] fields = split(line);
+                if (fields.length < 2) {
+                    continue;
+                }
+                long value = parseLong(fields[1]) * 1024L;
+                String name = fields[0];
+                if (name.equals("MemTotal:")) {
+                    memTotal = value;
+                } else if (name.equals("MemFree:")) {
+                    memFree = value;
+                } else if (name.equals("Buffers:")) {
+                    buffers = value;
+                } else if (name.equals("Cached:")) {
+                    cached = value;
+                } else if (name.equals("SwapTotal:")) {
+                    swapTotal = value;
+                } else if (name.equals("SwapFree:")) {
+                    swapFree = value;
+                }
+            }
+        } finally {
+            close(reader);
+        }
+    }
+
+    private void readNetDev(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                // the two header lines have no colon before the counters, e.g. "  eth0: 1234 56 ..."
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String[] fields = split(line.substring(colon + 1));
+                long[] counters = new long[NET_COLUMNS];
+                for (int i = 0; i < NET_COLUMNS && i < fields.length; i++) {
+                    counters[i] = parseLong(fields[i]);
+                }
+                netInterfaces.add(line.substring(0, colon).trim());
+                netCounters.add(counters);
+            }
+        } finally {
+            close(reader);
+        }
+    }
+
+    private void readDiskStats(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                // major minor name reads merged sectors ms writes merged sectors ms ...
+                String[] fields = split(line);
+                if (fields.length < 10) {
+                    continue;
+                }
+                long[] counters = new long[DISK_COLUMNS];
+                counters[DISK_READS] = parseLong(fields[3]);
+                counters[DISK_READ_BYTES] = parseLong(fields[5]) * SECTOR_SIZE;
+                counters[DISK_WRITES] = parseLong(fields[7]);
+                counters[DISK_WRITE_BYTES] = parseLong(fields[9]) * SECTOR_SIZE;
+                disks.add(fields[2]);
+                diskCounters.add(counters);
+            }
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * @return the time the snapshot was read at
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the times of all the CPUs together, in milliseconds and indexed by the <code>CPU_</code> columns, or
+     *         null if they were not found
+     */
+    public long[] getCpuTotal() {
+        return cpuTotal;
+    }
+
+    public int getNumberOfCpus() {
+        return cpus.size();
+    }
+
+    /**
+     * @param cpuIndex the index of the CPU, as in {@link SystemInfo#getCpu(int)}
+     * @return the times of the CPU, in milliseconds and indexed by the <code>CPU_</code> columns, or null if there is
+     *         no such CPU
+     */
+    public long[] getCpu(int cpuIndex) {
+        return cpus.get(cpuIndex);
+    }
+
+    /**
+     * @param name the name of a CPU time, as a property of SIGAR's <code>Cpu</code> (e.g. <code>user</code>)
+     * @return the <code>CPU_</code> column of the time, or -1 if it is not known
+     */
+    public static int getCpuColumn(String name) {
+        for (int i = 0; i < CPU_COLUMN_NAMES.length; i++) {
+            if (CPU_COLUMN_NAMES[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Calculates the share of a CPU time over an interval the same way SIGAR calculates its <code>CpuPerc</code>
+     * (see sigar_cpu_perc_calculate() in sigar_format.c).
+     *
+     * @param previous the CPU times at the start of the interval, indexed by the <code>CPU_</code> columns
+     * @param current the CPU times at the end of the interval
+     * @param column the <code>CPU_</code> column of the time
+     * @return the share of the time, between 0 and 1, or NaN if no time elapsed
+     */
+    public static double getCpuPercentage(long[] previous, long[] current, int column) {
+        double total = 0;
+        double diff = 0;
+        for (int i = 0; i < CPU_COLUMNS; i++) {
+            // like SIGAR, ignore counters which went backwards
+            double columnDiff = Math.max(0, current[i] - previous[i]);
+            total += columnDiff;
+            if (i == column) {
+                diff = columnDiff;
+            }
+        }
+        return diff / total;
+    }
+
+    public long getContextSwitches() {
+        return contextSwitches;
+    }
+
+    public long getProcessesCreated() {
+        return processesCreated;
+    }
+
+    public long getRunningProcesses() {
+        return runningProcesses;
+    }
+
+    public long getBlockedProcesses() {
+        return blockedProcesses;
+    }
+
+    /**
+     * @return true if memory information was read
+     */
+    public boolean hasMemoryInfo() {
+        return memTotal > 0;
+    }
+
+    public long getMemTotal() {
+        return memTotal;
+    }
+
+    public long getMemFree() {
+        return memFree;
+    }
+
+    public long getMemUsed() {
+        return memTotal - memFree;
+    }
+
+    /**
+     * @return the free memory, including buffers and the page cache, as SIGAR's <code>Mem.getActualFree()</code>
+     */
+    public long getMemActualFree() {
+        return memFree + buffers + cached;
+    }
+
+    /**
+     * @return the used memory, excluding buffers and the page cache, as SIGAR's <code>Mem.getActualUsed()</code>
+     */
+    public long getMemActualUsed() {
+        return getMemUsed() - buffers - cached;
+    }
+
+    public long getSwapTotal() {
+        return swapTotal;
+    }
+
+    public long getSwapFree() {
+        return swapFree;
+    }
+
+    public long getSwapUsed() {
+        return swapTotal - swapFree;
+    }
+
+    /**
+     * @param name the name of the network interface
+     * @return the counters of the interface, indexed by the <code>NET_</code> columns, or null if it is not known
+     */
+    public long[] getNetCounters(String name) {
+        int index = netInterfaces.indexOf(name);
+        return (index >= 0) ? netCounters.get(index) : null;
+    }
+
+    /**
+     * @param name the name of the network interface
+     * @return the statistics of the interface, or null if it is not known
+     */
+    public NetworkAdapterStats getNetworkAdapterStats(String name) {
+        long[] counters = getNetCounters(name);
+        return (counters != null) ? new NetworkAdapterStats(counters) : null;
+    }
+
+    /**
+     * @param devName the device of a file system, e.g. <code>/dev/sda1</code>; symbolic links such as
+     *        <code>/dev/mapper/*</code> are followed
+     * @return the counters of the device, indexed by the <code>DISK_</code> columns, or null if it is not known
+     */
+    public long[] getDiskCounters(String devName) {
+        if (devName == null) {
+            return null;
+        }
+        String name = devName;
+        if (name.startsWith("/dev/")) {
+            try {
+                name = new File(name).getCanonicalPath();
+            } catch (IOException ignore) {
+            }
+            name = name.substring(name.lastIndexOf('/') + 1);
+        }
+        int index = disks.indexOf(name);
+        return (index >= 0) ? diskCounters.get(index) : null;
+    }
+
+    private static String[] split(String line) {
+        return line.trim().split("\\s+");
+    }
+
+    private static long parseLong(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    private static void close(BufferedReader reader) {
+        try {
+            reader.close();
+        } catch (IOException ignore) {
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.system;
+
+import java.io.File;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Reads the system-wide Linux counters (see {@link ProcStats}) for all the components of the agent, so that the
+ * platform metrics of a collection are all served from one read of <code>/proc</code> rather than from a SIGAR call
+ * per metric and per resource. A snapshot is read at most once per interval (see {@link #SAMPLE_INTERVAL_SYSPROP}).
+ * <p/>
+ * This does not need the SIGAR native library. On other operating systems, or if <code>/proc/stat</code> can't be
+ * read, there is no snapshot and callers should fall back to {@link SystemInfo}.
+ */
+public class ProcStatsSampler {
+    private static final Log LOG = LogFactory.getLog(ProcStatsSampler.class);
+
+    public static final String SAMPLE_INTERVAL_SYSPROP = "rhq.proc-stats.sample-interval";
+    static final long DEFAULT_SAMPLE_INTERVAL = 5000L;
+
+    private static ProcStatsSampler instance;
+
+    private final File procDir;
+    private final long sampleInterval;
+
+    private ProcStats snapshot;
+    private boolean failed;
+
+    /**
+     * @return the sampler shared by all the components of the agent
+     */
+    public static synchronized ProcStatsSampler getInstance() {
+        if (instance == null) {
+            String osName = System.getProperty("os.name", "");
+            File procDir = osName.startsWith("Linux") ? new File("/proc") : null;
+            instance = new ProcStatsSampler(procDir, Long.getLong(SAMPLE_INTERVAL_SYSPROP, DEFAULT_SAMPLE_INTERVAL));
+        }
+        return instance;
+    }
+
+    /**
+     * @param procDir the proc file system, or null if there is none
+     * @param sampleInterval the minimum time between two reads, in milliseconds
+     */
+    ProcStatsSampler(File procDir, long sampleInterval) {
+        this.procDir = procDir;
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * @return the last snapshot, read again if it is older than the sample interval, or null if the counters can't be
+     *         read on this system
+     */
+    public synchronized ProcStats getSnapshot() {
+        if (procDir == null || failed) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (snapshot == null || now - snapshot.getTimestamp() >= sampleInterval) {
+            try {
+                snapshot = ProcStats.read(procDir);
+            } catch (Exception e) {
+                // most likely a restricted /proc; there is no point in trying again each time
+                LOG.warn("Cannot read system statistics from [" + procDir + "], falling back to native calls: " + e);
+                failed = true;
+                snapshot = null;
+            }
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.system;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hyperic.sigar.ProcState;
+import org.hyperic.sigar.SigarPermissionDeniedException;
+import org.hyperic.sigar.SigarProxy;
+
+/**
+ * Tracks whether processes are alive for all the components of the agent, so that availability checks do not have to
+ * refresh a whole {@link ProcessInfo} (state, memory, cpu, fd... i.e. several SIGAR calls) each time.
+ * <p/>
+ * Components {@link #subscribe(long) subscribe} to the pids they watch, then {@link #isRunning(long)} answers from a
+ * table of the subscribed pids, which is sampled in one pass at most once per interval (see
+ * {@link #SAMPLE_INTERVAL_SYSPROP}). On Linux, the pass reads <code>/proc/&lt;pid&gt;/stat</code> of each subscribed
+ * pid, which also detects a pid reused by another process; elsewhere it uses one SIGAR process list, and the state of
+ * the subscribed pids found in it.
+ * <p/>
+ * A process is considered running in the same states as {@link ProcessInfo.ProcessInfoSnapshot#isRunning()}.
+ */
+public class ProcessTableSampler {
+    private static final Log LOG = LogFactory.getLog(ProcessTableSampler.class);
+
+    public static final String SAMPLE_INTERVAL_SYSPROP = "rhq.process-table.sample-interval";
+    static final long DEFAULT_SAMPLE_INTERVAL = 5000L;
+
+    // the stat files of other proc file systems (e.g. Solaris) are not in the Linux format
+    private static final File PROC_DIR = System.getProperty("os.name", "").startsWith("Linux") ? new File("/proc")
+        : null;
+
+    private static ProcessTableSampler instance;
+
+    private final long sampleInterval;
+
+    private final Map<Long, TrackedProcess> trackedProcesses = new HashMap<Long, TrackedProcess>();
+
+    // 0 forces a pass at the next lookup
+    private long lastSampleTime;
+
+    /**
+     * @return the sampler shared by all the components of the agent
+     */
+    public static synchronized ProcessTableSampler getInstance() {
+        if (instance == null) {
+            instance = new ProcessTableSampler(Long.getLong(SAMPLE_INTERVAL_SYSPROP, DEFAULT_SAMPLE_INTERVAL));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Process table sample interval is " + instance.sampleInterval + " ms");
+            }
+        }
+        return instance;
+    }
+
+    protected ProcessTableSampler(long sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * Starts tracking the given pid; each call must be matched by a call to {@link #unsubscribe(long)} once the caller
+     * does not watch the process anymore.
+     */
+    public synchronized void subscribe(long pid) {
+        TrackedProcess trackedProcess = trackedProcesses.get(pid);
+        if (trackedProcess == null) {
+            trackedProcess = new TrackedProcess();
+            trackedProcesses.put(pid, trackedProcess);
+            // sample the new pid at the next lookup rather than wait for the end of the interval
+            lastSampleTime = 0;
+        }
+        trackedProcess.subscribers++;
+    }
+
+    public synchronized void unsubscribe(long pid) {
+        TrackedProcess trackedProcess = trackedProcesses.get(pid);
+        if (trackedProcess != null && --trackedProcess.subscribers <= 0) {
+            trackedProcesses.remove(pid);
+        }
+    }
+
+    /**
+     * Checks if the process is alive, as of the last pass over the subscribed pids. A pid which has not been
+     * subscribed to is checked right away.
+     * <p/>
+     * Once a subscribed process has been seen dead, it is reported dead until all its subscribers unsubscribed, even
+     * if its pid gets reused.
+     *
+     * @param pid the pid of the process
+     * @return true if the process is running, sleeping or idle
+     */
+    public synchronized boolean isRunning(long pid) {
+        TrackedProcess trackedProcess = trackedProcesses.get(pid);
+        if (trackedProcess == null) {
+            return sample(Collections.singleton(pid)).containsKey(pid);
+        }
+        long now = System.currentTimeMillis();
+        if (lastSampleTime == 0 || now - lastSampleTime >= sampleInterval) {
+            update(sample(trackedProcesses.keySet()));
+            lastSampleTime = now;
+        }
+        return trackedProcess.running;
+    }
+
+    private void update(Map<Long, Long> runningProcesses) {
+        for (Map.Entry<Long, TrackedProcess> entry : trackedProcesses.entrySet()) {
+            TrackedProcess trackedProcess = entry.getValue();
+            if (!trackedProcess.running && trackedProcess.sampled) {
+                continue;
+            }
+            Long startTime = runningProcesses.get(entry.getKey());
+            if (startTime == null) {
+                trackedProcess.running = false;
+            } else if (!trackedProcess.sampled || trackedProcess.startTime == 0) {
+                trackedProcess.running = true;
+                trackedProcess.startTime = startTime;
+            } else {
+                // a different start time means the process died and its pid went to another one
+                trackedProcess.running = (startTime == 0 || startTime == trackedProcess.startTime);
+            }
+            trackedProcess.sampled = true;
+        }
+    }
+
+    /**
+     * Samples the given pids in one pass.
+     *
+     * @param pids the pids to sample
+     * @return the start time of the given pids whose process is running, in a platform specific unit, or 0 if it is
+     *         not known; pids whose process is not running are missing
+     */
+    protected Map<Long, Long> sample(Collection<Long> pids) {
+        if (PROC_DIR != null) {
+            return sampleProcDir(PROC_DIR, pids);
+        }
+        return sampleProcList(pids);
+    }
+
+    static Map<Long, Long> sampleProcDir(File procDir, Collection<Long> pids) {
+        Map<Long, Long> runningProcesses = new HashMap<Long, Long>();
+        for (Long pid : pids) {
+            String stat;
+            try {
+                stat = readFirstLine(new File(new File(procDir, String.valueOf(pid)), "stat"));
+            } catch (FileNotFoundException e) {
+                continue;
+            } catch (IOException e) {
+                // the process exited while we were reading
+                if (LOG.isTraceEnabled()) {
+                    LOG.trace("Failed to read stat of process with pid [" + pid + "]: " + e);
+                }
+                continue;
+            }
+            // pid (comm) state ppid ... the command name can contain anything, so look for the last parenthesis
+            int commEnd = (stat != null) ? stat.lastIndexOf(')') : -1;
+            if (commEnd < 0 || commEnd + 2 >= stat.length()) {
+                continue;
+            }
+            String[] fields = stat.substring(commEnd + 2).split(" ");
+            if (!isRunningState(fields[0].charAt(0))) {
+                continue;
+            }
+            // starttime is the 22nd field, i.e. the 20th after the command name
+            long startTime = 0;
+            if (fields.length > 19) {
+                try {
+                    startTime = Long.parseLong(fields[19]);
+                } catch (NumberFormatException ignore) {
+                }
+            }
+            runningProcesses.put(pid, startTime);
+        }
+        return runningProcesses;
+    }
+
+    private static Map<Long, Long> sampleProcList(Collection<Long> pids) {
+        Map<Long, Long> runningProcesses = new HashMap<Long, Long>();
+        SigarProxy sigar = SigarAccess.getSigar();
+        Set<Long> existingPids = new HashSet<Long>();
+        try {
+            for (long pid : sigar.getProcList()) {
+                existingPids.add(pid);
+            }
+        } catch (Exception e) {
+            throw new SystemInfoException("Failed to obtain process list", e);
+        }
+        for (Long pid : pids) {
+            if (!existingPids.contains(pid)) {
+                continue;
+            }
+            try {
+                if (isRunningState(sigar.getProcState(pid).getState())) {
+                    runningProcesses.put(pid, 0L);
+                }
+            } catch (SigarPermissionDeniedException e) {
+                // the process belongs to another user, being in the list is all we can know
+                runningProcesses.put(pid, 0L);
+            } catch (Exception e) {
+                // the process exited since the list was taken
+                if (LOG.isTraceEnabled()) {
+                    LOG.trace("Failed to get state of process with pid [" + pid + "]: " + e);
+                }
+            }
+        }
+        return runningProcesses;
+    }
+
+    private static boolean isRunningState(char state) {
+        return state == ProcState.RUN || state == ProcState.SLEEP || state == ProcState.IDLE;
+    }
+
+    private static String readFirstLine(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            return reader.readLine();
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private static class TrackedProcess {
+        private int subscribers;
+        private boolean sampled;
+        private boolean running;
+        private long startTime;
+    }
+}
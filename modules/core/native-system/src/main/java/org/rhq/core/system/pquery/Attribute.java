@@ -36,11 +36,20 @@ class Attribute {
     }
 
     private final String attributeValue;
+    private final Integer attributeValueAsInteger;
 
     Attribute(String attributeValue, Category category) {
         validate(attributeValue, category);
 
         this.attributeValue = attributeValue;
+
+        Integer integerValue;
+        try {
+            integerValue = Integer.valueOf(attributeValue);
+        } catch (Exception ignore) {
+            integerValue = null;
+        }
+        this.attributeValueAsInteger = integerValue;
     }
 
     String getAttributeValue() {
@@ -55,11 +64,7 @@ class Attribute {
      *         number
      */
     Integer getAttributeValueAsInteger() {
-        try {
-            return Integer.valueOf(this.attributeValue);
-        } catch (Exception ignore) {
-            return null;
-        }
+        return this.attributeValueAsInteger;
     }
 
     public String toString() {
@@ -0,0 +1,71 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.system.pquery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A PIQL query that has been parsed and whose regular expressions have been compiled, so that it can be run many times
+ * (see {@link ProcessInfoQuery#query(CompiledQuery)} and {@link ProcessInfoQuery#query(java.util.Collection)}) without
+ * being parsed again. Instances are immutable and can be shared between threads.
+ *
+ * @see ProcessInfoQuery#compile(String)
+ */
+public class CompiledQuery {
+    private final String query;
+    private final List<Criteria> criteriaList;
+
+    CompiledQuery(String query) {
+        List<Criteria> criteria = new ArrayList<Criteria>();
+
+        if (query != null) {
+            String[] tokens = query.split(",");
+
+            for (String criteriaString : tokens) {
+                Criteria c = new Criteria(criteriaString);
+                criteria.add(c);
+            }
+        }
+
+        this.query = query;
+        this.criteriaList = Collections.unmodifiableList(criteria);
+    }
+
+    /**
+     * @return the PIQL this query was compiled from
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    List<Criteria> getCriteriaList() {
+        return criteriaList;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(query);
+    }
+}
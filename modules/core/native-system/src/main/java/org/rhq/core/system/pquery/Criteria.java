@@ -22,6 +22,11 @@
   */
 package org.rhq.core.system.pquery;
 
+import java.util.regex.Pattern;
+
+import org.rhq.core.system.pquery.Attribute.ProcessCategoryAttributes;
+import org.rhq.core.system.pquery.Conditional.Category;
+
 /**
  * Represents a single criteria in a process info query string. A <i>criteria</i> consists of a left and right hand side
  * of an equals sign, with the left side consisting of the <i>conditional</i> and the right hand side being the <i>
@@ -32,6 +37,8 @@ package org.rhq.core.system.pquery;
 class Criteria {
     private final Conditional conditional;
     private final String value;
+    private final Operation operation;
+    private final Pattern pattern;
 
     Criteria(String criteria) {
         String[] tokens = criteria.split("=", 2);
@@ -42,6 +49,15 @@ class Criteria {
 
         conditional = new Conditional(tokens[0]);
         value = tokens[1];
+        operation = new Operation(conditional.getOperator());
+
+        // the value is a regular expression, except for pidfile criteria whose regular expression is read from the file
+        if (conditional.getCategory().equals(Category.process)
+            && conditional.getAttribute().getAttributeValue().equals(ProcessCategoryAttributes.pidfile.toString())) {
+            pattern = null;
+        } else {
+            pattern = Pattern.compile(value);
+        }
 
         return;
     }
@@ -54,6 +70,17 @@ class Criteria {
         return value;
     }
 
+    Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the compiled {@link #getValue() value}, or <code>null</code> for a pidfile criteria
+     */
+    Pattern getPattern() {
+        return pattern;
+    }
+
     public String toString() {
         return conditional + "=" + value;
     }
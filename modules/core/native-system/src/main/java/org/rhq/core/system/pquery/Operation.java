@@ -22,6 +22,8 @@
   */
 package org.rhq.core.system.pquery;
 
+import java.util.regex.Pattern;
+
 import org.rhq.core.system.pquery.Conditional.Operator;
 
 class Operation {
@@ -49,4 +51,22 @@ class Operation {
             throw new IllegalArgumentException("Invalid operator: " + operator);
         }
     }
+
+    /**
+     * Same as {@link #doOperation(String, String)}, with the regular expression already compiled.
+     */
+    boolean doOperation(String value, Pattern pattern) {
+        if (value == null) {
+            return false;
+        }
+
+        if (operator.equals(Operator.match)) {
+            return pattern.matcher(value).matches();
+        } else if (operator.equals(Operator.nomatch)) {
+            return !pattern.matcher(value).matches();
+        } else {
+            // should never happen unless we add more operators but forgot to create a new else clause for it
+            throw new IllegalArgumentException("Invalid operator: " + operator);
+        }
+    }
 }
\ No newline at end of file
@@ -28,11 +28,14 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -223,6 +226,20 @@ public class ProcessInfoQuery {
         return new ArrayList<ProcessInfo>(allProcesses.values());
     }
 
+    /**
+     * Parses the given PIQL query and compiles its regular expressions. The compiled query can be run any number of
+     * times, against any set of processes, without being parsed again.
+     *
+     * @param  query the query string containing the criteria to match
+     *
+     * @return the compiled query
+     *
+     * @throws IllegalArgumentException if the query was invalid
+     */
+    public static CompiledQuery compile(String query) {
+        return new CompiledQuery(query);
+    }
+
     /**
      * Performs a query on the set of known processes where <code>query</code> defines the criteria.
      *
@@ -233,202 +250,224 @@ public class ProcessInfoQuery {
      * @throws IllegalArgumentException if the query was invalid
      */
     public List<ProcessInfo> query(String query) {
-        List<Criteria> criteriaList = getCriteriaList(query);
+        return query(compile(query));
+    }
 
-        // if we got an empty query - it means we match nothing so return an empty list immediately
-        if (criteriaList.size() == 0) {
-            return new ArrayList<ProcessInfo>();
+    /**
+     * Performs a query on the set of known processes where <code>query</code> defines the criteria.
+     *
+     * @param  query the compiled query
+     *
+     * @return the matches processes' command lines
+     */
+    public List<ProcessInfo> query(CompiledQuery query) {
+        return query(Collections.singletonList(query)).get(query);
+    }
+
+    /**
+     * Performs several queries on the set of known processes at once. The processes are only iterated once; each of
+     * them is matched against all the queries, and the criteria of a query are only evaluated until one of them does
+     * not match. Pid files are read at most once.
+     *
+     * @param  queries the compiled queries
+     *
+     * @return the matched processes of each query (possibly empty lists), in the order of the queries
+     */
+    public Map<CompiledQuery, List<ProcessInfo>> query(Collection<CompiledQuery> queries) {
+        Map<CompiledQuery, List<ProcessInfo>> results = new LinkedHashMap<CompiledQuery, List<ProcessInfo>>();
+        for (CompiledQuery query : queries) {
+            results.put(query, new ArrayList<ProcessInfo>());
+        }
+
+        // the regular expressions read from pid files, keyed on the pid file names; null if invalid
+        Map<String, Pattern> pidfilePatterns = new HashMap<String, Pattern>();
+
+        for (ProcessInfo process : this.allProcesses.values()) {
+            for (Map.Entry<CompiledQuery, List<ProcessInfo>> result : results.entrySet()) {
+                if (matches(result.getKey(), process, pidfilePatterns)) {
+                    result.getValue().add(process);
+                }
+            }
         }
 
-        // keyed on pid so we automatically avoid dups (in case more than one criteria matches)
-        Map<Long, ProcessInfo> queryResults = new HashMap<Long, ProcessInfo>(this.allProcesses);
-        Map<Long, ProcessInfo> criteriaResults;
+        return results;
+    }
+
+    private boolean matches(CompiledQuery query, ProcessInfo process, Map<String, Pattern> pidfilePatterns) {
+        List<Criteria> criteriaList = query.getCriteriaList();
 
+        // if we got an empty query - it means we match nothing
+        if (criteriaList.isEmpty()) {
+            return false;
+        }
+
+        // multiple criteria results are ANDed together
         for (Criteria criteria : criteriaList) {
+            boolean matches;
             if (criteria.getConditional().getCategory().equals(Conditional.Category.process)) {
-                criteriaResults = doProcessCriteriaQuery(criteria);
+                matches = matchesProcessCriteria(criteria, process, pidfilePatterns);
             } else if (criteria.getConditional().getCategory().equals(Conditional.Category.arg)) {
-                criteriaResults = doArgCriteriaQuery(criteria);
+                matches = matchesArgCriteria(criteria, process);
             } else {
                 throw new IllegalArgumentException("Unknown category: " + criteria); // should never happen
             }
 
-            // multiple criteria results are ANDed together
-            // only retain those previously matched processes that were also matched in the latest criteria
-            Set<Long> pids = new HashSet<Long>(queryResults.keySet()); // new set to avoid concurrent mod exceptions
-
-            for (Long pid : pids) {
-                if (!criteriaResults.containsKey(pid)) { // a previously matched process was not matched in the latest criteria, so removed it
-                    queryResults.remove(pid);
-                }
-            }
-
-            if (queryResults.size() == 0) {
-                // we've eliminated every possible process - don't bother running any more criteria
-                break;
+            if (!matches) {
+                return false;
             }
         }
 
-        List<ProcessInfo> results = new ArrayList<ProcessInfo>(queryResults.size());
-        results.addAll(queryResults.values());
-
-        return results;
+        return true;
     }
 
     /**
-     * Runs the given criteria with the arg conditional and returns the processes that match.
+     * Matches the given process against the given criteria with the arg conditional.
      *
      * @param  criteria the criteria with the arg conditional
+     * @param  process the process to match
      *
-     * @return the matched processes keyed on the pids
-     *
-     * @throws IllegalArgumentException
+     * @return true if the process matches
      */
-    private Map<Long, ProcessInfo> doArgCriteriaQuery(Criteria criteria) {
-        Map<Long, ProcessInfo> matches = new HashMap<Long, ProcessInfo>();
-
+    private boolean matchesArgCriteria(Criteria criteria, ProcessInfo process) {
         Attribute attribute = criteria.getConditional().getAttribute();
-        Operation op = new Operation(criteria.getConditional().getOperator());
+        Operation op = criteria.getOperation();
         Qualifier qualifier = criteria.getConditional().getQualifier();
+        Pattern pattern = criteria.getPattern();
 
-        String operand1 = null;
-        String operand2 = criteria.getValue();
-
-        for (ProcessInfo process : getProcesses()) {
-            ProcessInfo processToMatch; // will be the same as process unless the parent qualifier was provided
-
-            if (qualifier.equals(Qualifier.parent)) {
-                processToMatch = getParentProcess(process);
-            } else {
-                processToMatch = process;
-            }
+        ProcessInfo processToMatch; // will be the same as process unless the parent qualifier was provided
 
-            String[] cmdline = (processToMatch != null) ? processToMatch.getCommandLine() : null;
+        if (qualifier.equals(Qualifier.parent)) {
+            processToMatch = getParentProcess(process);
+        } else {
+            processToMatch = process;
+        }
 
-            if ((cmdline == null) || (cmdline.length == 0)) {
-                continue; // no sense continuing with this process - there are no command line arguments
-            }
+        String[] cmdline = (processToMatch != null) ? processToMatch.getCommandLine() : null;
 
-            if (attribute.getAttributeValue().equals("*")) {
-                // * means see if any arg matches
-                for (String arg : cmdline) {
-                    operand1 = arg;
-                    if (op.doOperation(operand1, operand2)) {
-                        matches.put(process.getPid(), process);
-                        break; // we got a match, don't bother looking at more args
-                    }
-                }
-            } else if (attribute.getAttributeValueAsInteger() != null) {
-                // if we get here, it means the argument specified was a specific argument index number
-                int attributeIndex = attribute.getAttributeValueAsInteger().intValue();
+        if ((cmdline == null) || (cmdline.length == 0)) {
+            return false; // no sense continuing with this process - there are no command line arguments
+        }
 
-                // an arg of -1 means the query wants to obtain the last argument in the command line
-                if (attributeIndex < 0) {
-                    attributeIndex = cmdline.length - 1;
+        if (attribute.getAttributeValue().equals("*")) {
+            // * means see if any arg matches
+            for (String arg : cmdline) {
+                if (op.doOperation(arg, pattern)) {
+                    return true; // we got a match, don't bother looking at more args
                 }
+            }
+        } else if (attribute.getAttributeValueAsInteger() != null) {
+            // if we get here, it means the argument specified was a specific argument index number
+            int attributeIndex = attribute.getAttributeValueAsInteger().intValue();
 
-                if ((cmdline.length - 1) < attributeIndex) {
-                    continue; // process doesn't have enough args - there is no command line argument with that index
-                }
+            // an arg of -1 means the query wants to obtain the last argument in the command line
+            if (attributeIndex < 0) {
+                attributeIndex = cmdline.length - 1;
+            }
 
-                operand1 = cmdline[attributeIndex];
+            if ((cmdline.length - 1) < attributeIndex) {
+                return false; // process doesn't have enough args - there is no command line argument with that index
+            }
 
-                if (op.doOperation(operand1, operand2)) {
-                    matches.put(process.getPid(), process);
-                }
-            } else {
-                // if we get here, it means the attribute specified was the name of an argument
-                String attributeName = attribute.getAttributeValue();
-
-                for (int i = 0; i < cmdline.length; i++) {
-                    String arg = cmdline[i];
-
-                    // if the arg name doesn't even start with our attribute, then we continue on to the next
-                    if (arg.startsWith(attributeName)) {
-                        if (arg.equals(attributeName)) {
-                            // the full argument name is the attribute name, the command line was something like:
-                            // "exec.exe -arg value" or "exec.exe -arg" so the value is the next argument
-                            operand1 = ((i + 1) < cmdline.length) ? cmdline[i + 1] : "";
-                        } else {
-                            // the command line was something like: "exec.exe -arg=value" so the value is after the equals side within the arg
-                            int equals = arg.indexOf('=');
-                            if (equals == -1) {
-                                continue; // the argument looked like what we were trying to find, but it really wasn't
-                            }
-
-                            operand1 = (arg.length() > (equals + 1)) ? arg.substring(equals + 1) : "";
+            return op.doOperation(cmdline[attributeIndex], pattern);
+        } else {
+            // if we get here, it means the attribute specified was the name of an argument
+            String attributeName = attribute.getAttributeValue();
+
+            for (int i = 0; i < cmdline.length; i++) {
+                String arg = cmdline[i];
+
+                // if the arg name doesn't even start with our attribute, then we continue on to the next
+                if (arg.startsWith(attributeName)) {
+                    String operand1;
+                    if (arg.equals(attributeName)) {
+                        // the full argument name is the attribute name, the command line was something like:
+                        // "exec.exe -arg value" or "exec.exe -arg" so the value is the next argument
+                        operand1 = ((i + 1) < cmdline.length) ? cmdline[i + 1] : "";
+                    } else {
+                        // the command line was something like: "exec.exe -arg=value" so the value is after the
+                        // equals side within the arg
+                        int equals = arg.indexOf('=');
+                        if (equals == -1) {
+                            continue; // the argument looked like what we were trying to find, but it really wasn't
                         }
 
-                        if (op.doOperation(operand1, operand2)) {
-                            matches.put(process.getPid(), process);
-                            break; // no need to continue, we've got the match we are looking for
-                        }
+                        operand1 = (arg.length() > (equals + 1)) ? arg.substring(equals + 1) : "";
+                    }
+
+                    if (op.doOperation(operand1, pattern)) {
+                        return true; // no need to continue, we've got the match we are looking for
                     }
                 }
             }
         }
 
-        return matches;
+        return false;
     }
 
     /**
-     * Runs the given criteria with the process conditional and returns the processes that match.
+     * Matches the given process against the given criteria with the process conditional.
      *
      * @param  criteria the criteria with the process conditional
+     * @param  process the process to match
+     * @param  pidfilePatterns the contents of the pid files read so far, keyed on the pid file names; <code>null</code>
+     *                         for those that are no valid regular expression
      *
-     * @return the matched processes keyed on the pids
+     * @return true if the process matches
      *
      * @throws IllegalArgumentException
      */
-    private Map<Long, ProcessInfo> doProcessCriteriaQuery(Criteria criteria) {
-        Map<Long, ProcessInfo> matches = new HashMap<Long, ProcessInfo>();
-
+    private boolean matchesProcessCriteria(Criteria criteria, ProcessInfo process,
+        Map<String, Pattern> pidfilePatterns) {
         Attribute attribute = criteria.getConditional().getAttribute();
-        Operation op = new Operation(criteria.getConditional().getOperator());
+        Operation op = criteria.getOperation();
         Qualifier qualifier = criteria.getConditional().getQualifier();
 
-        String operand1;
-        String operand2;
-
-        String pidfileContentsCache = null; // so we avoid reading the file over and over again
-
-        for (ProcessInfo process : getProcesses()) {
-            ProcessInfo processToMatch; // will be the same as process unless the parent qualifier was provided
+        ProcessInfo processToMatch; // will be the same as process unless the parent qualifier was provided
 
-            if (qualifier.equals(Qualifier.parent)) {
-                processToMatch = getParentProcess(process);
-            } else {
-                processToMatch = process;
-            }
+        if (qualifier.equals(Qualifier.parent)) {
+            processToMatch = getParentProcess(process);
+        } else {
+            processToMatch = process;
+        }
 
-            if (attribute.getAttributeValue().equals(Attribute.ProcessCategoryAttributes.name.toString())) {
-                operand1 = (processToMatch != null) ? processToMatch.getName() : "";
-                operand2 = criteria.getValue();
-            } else if (attribute.getAttributeValue().equals(Attribute.ProcessCategoryAttributes.basename.toString())) {
-                operand1 = (processToMatch != null) ? processToMatch.getBaseName() : "";
-                operand2 = criteria.getValue();
-            } else if (attribute.getAttributeValue().equals(Attribute.ProcessCategoryAttributes.pid.toString())) {
-                operand1 = (processToMatch != null) ? Long.toString(processToMatch.getPid()) : "";
-                operand2 = criteria.getValue();
-            } else if (attribute.getAttributeValue().equals(Attribute.ProcessCategoryAttributes.pidfile.toString())) {
-                if (pidfileContentsCache == null) {
-                    pidfileContentsCache = getPidfileContents(criteria.getValue());
+        String operand1;
+        Pattern operand2;
+
+        if (attribute.getAttributeValue().equals(Attribute.ProcessCategoryAttributes.name.toString())) {
+            operand1 = (processToMatch != null) ? processToMatch.getName() : "";
+            operand2 = criteria.getPattern();
+        } else if (attribute.getAttributeValue().equals(Attribute.ProcessCategoryAttributes.basename.toString())) {
+            operand1 = (processToMatch != null) ? processToMatch.getBaseName() : "";
+            operand2 = criteria.getPattern();
+        } else if (attribute.getAttributeValue().equals(Attribute.ProcessCategoryAttributes.pid.toString())) {
+            operand1 = (processToMatch != null) ? Long.toString(processToMatch.getPid()) : "";
+            operand2 = criteria.getPattern();
+        } else if (attribute.getAttributeValue().equals(Attribute.ProcessCategoryAttributes.pidfile.toString())) {
+            // so we avoid reading the file over and over again
+            String pidfile = criteria.getValue();
+            if (!pidfilePatterns.containsKey(pidfile)) {
+                String contents = getPidfileContents(pidfile);
+                try {
+                    pidfilePatterns.put(pidfile, Pattern.compile(contents));
+                } catch (PatternSyntaxException e) {
+                    // only this criteria fails, the other queries of the pass still run
+                    log.warn("pid file " + pidfile + " does not contain a valid pid: " + contents);
+                    pidfilePatterns.put(pidfile, null);
                 }
-
-                operand1 = (processToMatch != null) ? String.valueOf(processToMatch.getPid()) : null;
-                operand2 = pidfileContentsCache;
-            } else {
-                throw new IllegalArgumentException(
-                    "Criteria with 'process' category must have an attribute of either 'name' or 'basename': "
-                        + criteria);
             }
 
-            if (op.doOperation(operand1, operand2)) {
-                matches.put(process.getPid(), process);
+            operand2 = pidfilePatterns.get(pidfile);
+            if (operand2 == null) {
+                return false;
             }
+
+            operand1 = (processToMatch != null) ? String.valueOf(processToMatch.getPid()) : null;
+        } else {
+            throw new IllegalArgumentException(
+                "Criteria with 'process' category must have an attribute of either 'name' or 'basename': " + criteria);
         }
 
-        return matches;
+        return op.doOperation(operand1, operand2);
     }
 
     /**
@@ -449,21 +488,6 @@ public class ProcessInfoQuery {
         return parent;
     }
 
-    private List<Criteria> getCriteriaList(String query) {
-        List<Criteria> criteria = new ArrayList<Criteria>();
-
-        if (query != null) {
-            String[] tokens = query.split(",");
-
-            for (String criteriaString : tokens) {
-                Criteria c = new Criteria(criteriaString);
-                criteria.add(c);
-            }
-        }
-
-        return criteria;
-    }
-
     private String getPidfileContents(String pidfileName) {
         String contents;
 
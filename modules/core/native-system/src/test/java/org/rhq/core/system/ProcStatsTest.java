@@ -0,0 +1,187 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.system;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.testng.SkipException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class ProcStatsTest {
+
+    private File procDir;
+
+    @BeforeMethod
+    public void createProcDir() throws Exception {
+        procDir = File.createTempFile("proc", "");
+        procDir.delete();
+        procDir.mkdir();
+        write("stat", "cpu  400 10 200 1000 50 5 5 0 0 0\n" //
+            + "cpu0 200 5 100 500 25 3 2 0 0 0\n" //
+            + "cpu1 200 5 100 500 25 2 3 0 0 0\n" //
+            + "intr 12345 0 0\n" //
+            + "ctxt 987654\n" //
+            + "btime 1400000000\n" //
+            + "processes 4321\n" //
+            + "procs_running 3\n" //
+            + "procs_blocked 1\n");
+        write("meminfo", "MemTotal:        1000 kB\n" //
+            + "MemFree:          200 kB\n" //
+            + "Buffers:           50 kB\n" //
+            + "Cached:           150 kB\n" //
+            + "SwapCached:         0 kB\n" //
+            + "SwapTotal:        500 kB\n" //
+            + "SwapFree:         400 kB\n");
+        new File(procDir, "net").mkdir();
+        write("net/dev", "Inter-|   Receive                                                |  Transmit\n"
+            + " face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed\n"
+            + "    lo:  1000      10    0    0    0     0          0         0     1000      10    0    0    0     0       0          0\n"
+            + "  eth0:2000 20 1 2 3 4 0 0 3000 30 5 6 7 8 9 0\n");
+        write("diskstats", "   8       0 sda 100 5 800 40 200 10 1600 90 0 120 130\n"
+            + "   8       1 sda1 60 2 480 20 150 8 1200 70 2 100 90\n");
+    }
+
+    @AfterMethod
+    public void deleteProcDir() {
+        new File(new File(procDir, "net"), "dev").delete();
+        for (File file : procDir.listFiles()) {
+            file.delete();
+        }
+        procDir.delete();
+    }
+
+    public void testRead() throws Exception {
+        ProcStats stats = ProcStats.read(procDir);
+
+        assertEquals(stats.getNumberOfCpus(), 2);
+        assertEquals(stats.getCpuTotal()[ProcStats.CPU_USER], 4000L, "Ticks should be converted to milliseconds");
+        assertEquals(stats.getCpu(1)[ProcStats.CPU_SOFT_IRQ], 30L);
+        assertNull(stats.getCpu(2));
+        assertEquals(stats.getContextSwitches(), 987654L);
+        assertEquals(stats.getProcessesCreated(), 4321L);
+        assertEquals(stats.getRunningProcesses(), 3L);
+        assertEquals(stats.getBlockedProcesses(), 1L);
+
+        assertTrue(stats.hasMemoryInfo());
+        assertEquals(stats.getMemTotal(), 1000 * 1024L);
+        assertEquals(stats.getMemUsed(), 800 * 1024L);
+        assertEquals(stats.getMemActualFree(), 400 * 1024L);
+        assertEquals(stats.getMemActualUsed(), 600 * 1024L);
+        assertEquals(stats.getSwapUsed(), 100 * 1024L);
+
+        NetworkAdapterStats eth0 = stats.getNetworkAdapterStats("eth0");
+        assertNotNull(eth0);
+        assertEquals(eth0.getRxBytes(), 2000L);
+        assertEquals(eth0.getRxOverruns(), 3L);
+        assertEquals(eth0.getRxFrame(), 4L);
+        assertEquals(eth0.getTxBytes(), 3000L);
+        assertEquals(eth0.getTxCollisions(), 8L);
+        assertEquals(eth0.getTxCarrier(), 9L);
+        assertEquals(stats.getNetCounters("lo")[ProcStats.NET_RX_PACKETS], 10L);
+        assertNull(stats.getNetworkAdapterStats("eth1"));
+
+        long[] sda1 = stats.getDiskCounters("sda1");
+        assertNotNull(sda1);
+        assertEquals(sda1[ProcStats.DISK_READS], 60L);
+        assertEquals(sda1[ProcStats.DISK_READ_BYTES], 480 * 512L);
+        assertEquals(sda1[ProcStats.DISK_WRITES], 150L);
+        assertEquals(sda1[ProcStats.DISK_WRITE_BYTES], 1200 * 512L);
+        assertNull(stats.getDiskCounters("/dev/sdb1"));
+    }
+
+    public void testOfflineCpu() throws Exception {
+        write("stat", "cpu  400 10 200 1000 50 5 5 0 0 0\n" //
+            + "cpu0 200 5 100 500 25 3 2 0 0 0\n" //
+            + "cpu2 200 5 100 500 25 2 3 0 0 0\n");
+        ProcStats stats = ProcStats.read(procDir);
+        assertEquals(stats.getNumberOfCpus(), 2);
+        assertNull(stats.getCpu(1), "CPU 1 is offline");
+        assertEquals(stats.getCpu(2)[ProcStats.CPU_SOFT_IRQ], 30L);
+    }
+
+    public void testMissingFiles() throws Exception {
+        new File(procDir, "meminfo").delete();
+        new File(procDir, "diskstats").delete();
+        ProcStats stats = ProcStats.read(procDir);
+        assertEquals(stats.getNumberOfCpus(), 2);
+        assertTrue(!stats.hasMemoryInfo());
+        assertNull(stats.getDiskCounters("sda1"));
+        assertNotNull(stats.getNetCounters("eth0"));
+    }
+
+    public void testCpuPercentage() {
+        long[] previous = { 1000, 0, 1000, 8000, 0, 0, 0, 0 };
+        long[] current = { 1300, 0, 1100, 8600, 0, 0, 0, 0 };
+        assertEquals(ProcStats.getCpuPercentage(previous, current, ProcStats.getCpuColumn("user")), 0.3, 0.0001);
+        assertEquals(ProcStats.getCpuPercentage(previous, current, ProcStats.getCpuColumn("sys")), 0.1, 0.0001);
+        assertEquals(ProcStats.getCpuPercentage(previous, current, ProcStats.CPU_IDLE), 0.6, 0.0001);
+        assertTrue(Double.isNaN(ProcStats.getCpuPercentage(current, current, ProcStats.CPU_IDLE)));
+        assertEquals(ProcStats.getCpuColumn("combined"), -1);
+    }
+
+    public void testSampler() throws Exception {
+        ProcStatsSampler sampler = new ProcStatsSampler(procDir, 60 * 1000L);
+        ProcStats stats = sampler.getSnapshot();
+        assertNotNull(stats);
+        assertSame(sampler.getSnapshot(), stats, "The snapshot should not be read again before the end of the interval");
+
+        sampler = new ProcStatsSampler(procDir, 1);
+        stats = sampler.getSnapshot();
+        Thread.sleep(10);
+        assertTrue(sampler.getSnapshot() != stats);
+
+        assertNull(new ProcStatsSampler(null, 1).getSnapshot());
+        assertNull(new ProcStatsSampler(new File(procDir, "missing"), 1).getSnapshot());
+    }
+
+    public void testCurrentSystem() throws Exception {
+        File proc = new File("/proc");
+        if (!new File(proc, "stat").canRead()) {
+            throw new SkipException("No /proc file system");
+        }
+        ProcStats stats = ProcStats.read(proc);
+        assertTrue(stats.getNumberOfCpus() > 0);
+        assertTrue(stats.getCpuTotal()[ProcStats.CPU_IDLE] > 0);
+        assertTrue(stats.getMemTotal() > 0);
+        assertNotNull(stats.getNetCounters("lo"));
+    }
+
+    private void write(String path, String content) throws Exception {
+        FileWriter writer = new FileWriter(new File(procDir, path));
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.system;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+@Test
+public class ProcessTableSamplerTest {
+
+    public void testOnePassPerInterval() {
+        FakeSampler sampler = new FakeSampler(60 * 1000L);
+        sampler.running.put(1L, 100L);
+        sampler.running.put(2L, 200L);
+        sampler.subscribe(1);
+        sampler.subscribe(2);
+
+        assertTrue(sampler.isRunning(1));
+        assertTrue(sampler.isRunning(2));
+        assertTrue(sampler.isRunning(1));
+        assertEquals(sampler.passes, 1, "All the lookups of an interval should be answered from one pass");
+        assertEquals(sampler.lastSampledPids.size(), 2);
+
+        sampler.running.remove(1L);
+        assertTrue(sampler.isRunning(1), "The table should not be sampled again before the end of the interval");
+
+        sampler.subscribe(3);
+        assertFalse(sampler.isRunning(1), "A new subscription should be sampled right away");
+        assertFalse(sampler.isRunning(3));
+        assertEquals(sampler.passes, 2);
+    }
+
+    public void testExpiredInterval() throws Exception {
+        FakeSampler sampler = new FakeSampler(1);
+        sampler.running.put(1L, 100L);
+        sampler.subscribe(1);
+        assertTrue(sampler.isRunning(1));
+
+        sampler.running.remove(1L);
+        Thread.sleep(10);
+        assertFalse(sampler.isRunning(1));
+        assertEquals(sampler.passes, 2);
+
+        sampler.running.put(1L, 100L);
+        Thread.sleep(10);
+        assertFalse(sampler.isRunning(1), "A process seen dead should stay dead");
+    }
+
+    public void testReusedPid() throws Exception {
+        FakeSampler sampler = new FakeSampler(1);
+        sampler.running.put(1L, 100L);
+        sampler.subscribe(1);
+        assertTrue(sampler.isRunning(1));
+
+        sampler.running.put(1L, 300L);
+        Thread.sleep(10);
+        assertFalse(sampler.isRunning(1), "A pid reused by another process should be reported dead");
+
+        sampler.unsubscribe(1);
+        sampler.subscribe(1);
+        assertTrue(sampler.isRunning(1), "A new subscription should watch the new process");
+    }
+
+    public void testSubscriptions() {
+        FakeSampler sampler = new FakeSampler(60 * 1000L);
+        sampler.subscribe(1);
+        sampler.subscribe(1);
+        sampler.unsubscribe(1);
+        sampler.isRunning(1);
+        assertEquals(sampler.lastSampledPids, Arrays.asList(1L));
+
+        sampler.unsubscribe(1);
+        sampler.isRunning(1);
+        assertEquals(sampler.passes, 2, "An unknown pid should be sampled on each lookup");
+    }
+
+    public void testSampleProcDir() throws Exception {
+        File procDir = File.createTempFile("proc", "");
+        procDir.delete();
+        procDir.mkdir();
+        try {
+            writeStat(procDir, 10, "10 (java) S 1 10 10 0 -1 4202496 0 0 0 0 0 0 0 0 20 0 1 0 4242 0 0");
+            writeStat(procDir, 11, "11 (my (weird) name) R 1 11 11 0 -1 4202496 0 0 0 0 0 0 0 0 20 0 1 0 4343 0 0");
+            writeStat(procDir, 12, "12 (zombie) Z 1 12 12 0 -1 4202496 0 0 0 0 0 0 0 0 20 0 1 0 4444 0 0");
+
+            Map<Long, Long> running = ProcessTableSampler.sampleProcDir(procDir, Arrays.asList(10L, 11L, 12L, 13L));
+            Map<Long, Long> expected = new HashMap<Long, Long>();
+            expected.put(10L, 4242L);
+            expected.put(11L, 4343L);
+            assertEquals(running, expected);
+        } finally {
+            for (File file : procDir.listFiles()) {
+                new File(file, "stat").delete();
+                file.delete();
+            }
+            procDir.delete();
+        }
+    }
+
+    public void testCurrentProcess() {
+        if (!System.getProperty("os.name", "").startsWith("Linux")) {
+            throw new SkipException("No Linux /proc file system");
+        }
+        File procDir = new File("/proc");
+        String jvmName = ManagementFactory.getRuntimeMXBean().getName();
+        long pid = Long.parseLong(jvmName.substring(0, jvmName.indexOf('@')));
+
+        Map<Long, Long> running = ProcessTableSampler.sampleProcDir(procDir, Arrays.asList(pid, -1L));
+        assertEquals(running.keySet(), Collections.singleton(pid));
+        assertTrue(running.get(pid) > 0);
+    }
+
+    private static void writeStat(File procDir, long pid, String stat) throws Exception {
+        File dir = new File(procDir, String.valueOf(pid));
+        dir.mkdir();
+        FileWriter writer = new FileWriter(new File(dir, "stat"));
+        try {
+            writer.write(stat + "\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static class FakeSampler extends ProcessTableSampler {
+        final Map<Long, Long> running = new HashMap<Long, Long>();
+        Collection<Long> lastSampledPids;
+        int passes;
+
+        FakeSampler(long sampleInterval) {
+            super(sampleInterval);
+        }
+
+        @Override
+        protected Map<Long, Long> sample(Collection<Long> pids) {
+            passes++;
+            lastSampledPids = new ArrayList<Long>(pids);
+            Map<Long, Long> result = new HashMap<Long, Long>();
+            for (Long pid : pids) {
+                if (running.containsKey(pid)) {
+                    result.put(pid, running.get(pid));
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -26,7 +26,9 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.testng.annotations.BeforeMethod;
@@ -511,6 +513,58 @@ public class ProcessInfoQueryTest {
         assertPidExists(5, results, "pid 5 is an exec process with a parent that matches");
     }
 
+    public void testCompiledQueries() {
+        String[] piql = { "process|basename|match=exec,arg|port|match|parent=1098", "arg|*|match=.*daemon.*",
+            "process|name|match=^C:.*,process|basename|nomatch=java.exe", "arg|-1|match=127.0.0.1",
+            "process|basename|nomatch|parent=exec", "process|pid|match=42" };
+
+        List<CompiledQuery> compiledQueries = new ArrayList<CompiledQuery>();
+        for (String q : piql) {
+            compiledQueries.add(ProcessInfoQuery.compile(q));
+        }
+        Map<CompiledQuery, List<ProcessInfo>> allResults = query.query(compiledQueries);
+
+        // the results must be the same as those of the implementation that runs the queries one by one
+        LegacyProcessInfoQuery legacyQuery = new LegacyProcessInfoQuery(query.getProcesses());
+        assert allResults.size() == piql.length : allResults;
+        for (CompiledQuery compiledQuery : compiledQueries) {
+            assert new HashSet<ProcessInfo>(allResults.get(compiledQuery)).equals(new HashSet<ProcessInfo>(legacyQuery
+                .query(compiledQuery.getQuery()))) : compiledQuery;
+        }
+        assert allResults.get(compiledQueries.get(5)).isEmpty();
+    }
+
+    public void testInvalidPidfile() throws Exception {
+        File pidfile = File.createTempFile("test", ".pid");
+        try {
+            FileWriter fw = new FileWriter(pidfile);
+            fw.write("(3");
+            fw.close();
+
+            List<CompiledQuery> compiledQueries = new ArrayList<CompiledQuery>();
+            compiledQueries.add(ProcessInfoQuery.compile("process|pidfile|match=" + pidfile.getCanonicalPath()));
+            compiledQueries.add(ProcessInfoQuery.compile("process|pidfile|nomatch=" + pidfile.getCanonicalPath()));
+            compiledQueries.add(ProcessInfoQuery.compile("process|pid|match=3"));
+            Map<CompiledQuery, List<ProcessInfo>> allResults = query.query(compiledQueries);
+
+            assert allResults.get(compiledQueries.get(0)).isEmpty() : allResults;
+            assert allResults.get(compiledQueries.get(1)).isEmpty() : allResults;
+            results = allResults.get(compiledQueries.get(2));
+            assert results.size() == 1 : "the other queries should still run: " + results;
+            assertPidExists(3, results, "pid 3 should have matched");
+        } finally {
+            pidfile.delete();
+        }
+    }
+
+    public void testInvalidRegularExpression() {
+        try {
+            ProcessInfoQuery.compile("process|basename|match=(java");
+            assert false : "the regular expression should have been compiled";
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
     public void testSimpleProcessInfo() {
         // sanity checking - making sure our test ProcessInfos are what we think they are
 
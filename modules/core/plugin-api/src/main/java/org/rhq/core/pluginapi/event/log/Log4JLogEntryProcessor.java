@@ -50,8 +50,11 @@ import org.rhq.core.domain.event.EventSeverity;
  */
 public class Log4JLogEntryProcessor extends MultiLineLogEntryProcessor {
 
+    private static final String DEFAULT_REGEX = "(.*?) [\\[\\(]??\\s*(TRACE|DEBUG|INFO|WARN|ERROR|FATAL)"
+        + "\\s*[\\]\\)]?? (.*)";
     private static final String REGEX;
     private static final Pattern PATTERN;
+    private static final boolean DEFAULT_PATTERN;
 
     //note that the DateFormat instances are INTENTIONALLY instance fields.
     //DateFormats are not thread safe and because we can have multiple log processors
@@ -70,8 +73,9 @@ public class Log4JLogEntryProcessor extends MultiLineLogEntryProcessor {
         // just in case there is something unanticipated that our default pattern doesn't like, allow
         // a backdoor prop to set the REGEX pattern.
         String regex = System.getProperty("rhq.agent.event.log4j.regex");
-        REGEX = (null != regex) ? regex : "(.*?) [\\[\\(]??\\s*(TRACE|DEBUG|INFO|WARN|ERROR|FATAL)\\s*[\\]\\)]?? (.*)";
+        REGEX = (null != regex) ? regex : DEFAULT_REGEX;
         PATTERN = Pattern.compile(REGEX);
+        DEFAULT_PATTERN = REGEX.equals(DEFAULT_REGEX);
 
         PRIORITY_TO_SEVERITY_MAP.put(Priority.TRACE, EventSeverity.DEBUG);
         PRIORITY_TO_SEVERITY_MAP.put(Priority.DEBUG, EventSeverity.DEBUG);
@@ -89,6 +93,36 @@ public class Log4JLogEntryProcessor extends MultiLineLogEntryProcessor {
         return PATTERN;
     }
 
+    /**
+     * With the default pattern, a primary line must contain one of the priority names, so lines without any of
+     * them (e.g. stack trace lines) are not run through the regular expression. If a custom pattern has been set,
+     * all lines are matched against it.
+     */
+    @Override
+    protected boolean isPossiblePrimaryLine(String line) {
+        if (!DEFAULT_PATTERN) {
+            return true;
+        }
+        for (Priority priority : Priority.values()) {
+            if (line.indexOf(priority.name()) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected EventSeverity getSeverity(Matcher matcher) {
+        if (!DEFAULT_PATTERN) {
+            return null;
+        }
+        try {
+            return PRIORITY_TO_SEVERITY_MAP.get(Priority.valueOf(matcher.group(2)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     protected LogEntry processPrimaryLine(Matcher matcher) throws ParseException {
         String dateString = matcher.group(1);
         Date timestamp = parseDateString(dateString);
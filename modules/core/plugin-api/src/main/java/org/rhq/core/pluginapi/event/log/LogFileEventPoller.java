@@ -20,17 +20,14 @@
 package org.rhq.core.pluginapi.event.log;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.Reader;
+import java.io.InputStreamReader;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.hyperic.sigar.FileInfo;
-import org.hyperic.sigar.SigarException;
-import org.hyperic.sigar.SigarProxy;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -39,7 +36,8 @@ import org.rhq.core.pluginapi.event.EventContext;
 import org.rhq.core.pluginapi.event.EventPoller;
 
 /**
- * An Event poller that polls a log file for new entries. 
+ * An Event poller that polls a log file for new entries. The log file is tailed via a {@link LogFileTailer}, so
+ * polling does not require native support.
  *
  * @author Ian Springer
  */
@@ -48,7 +46,7 @@ public class LogFileEventPoller implements EventPoller {
 
     private String eventType;
     private File logFile;
-    private FileInfo logFileInfo;
+    private LogFileTailer tailer;
     private LogEntryProcessor entryProcessor;
     private EventContext eventContext;
     private boolean initialized;
@@ -71,6 +69,23 @@ public class LogFileEventPoller implements EventPoller {
         return this.logFile.getPath();
     }
 
+    /**
+     * @return the number of bytes appended to the log file that had not been processed as of the last poll
+     * @since 4.14
+     */
+    public long getLagBytes() {
+        return (this.tailer != null) ? this.tailer.getLagBytes() : 0;
+    }
+
+    /**
+     * @return <code>true</code> if the last poll left new content unprocessed that could be processed right away,
+     *         i.e. this poller is falling behind the log file and should be polled again soon
+     * @since 4.14
+     */
+    public boolean hasBacklog() {
+        return (this.tailer != null) && this.tailer.hasBacklog();
+    }
+
     @Nullable
     public Set<Event> poll() {
         if (!this.logFile.exists()) {
@@ -86,21 +101,7 @@ public class LogFileEventPoller implements EventPoller {
         if (!this.initialized) {
             init();
         }
-        if (this.logFileInfo == null) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Cannot poll log file [" + this.logFile
-                    + "] because native integration is either disabled or unavailable.");
-            }
-            return null;
-        }
-        try {
-            if (!this.logFileInfo.changed()) {
-                return null;
-            }
-        } catch (SigarException e) {
-            throw new RuntimeException(e);
-        }
-        return processNewLines(this.logFileInfo);
+        return processNewLines();
     }
 
     /**
@@ -110,76 +111,23 @@ public class LogFileEventPoller implements EventPoller {
      * invocation of that method, at which point the PC will be initialized.
      */
     protected void init() {
-        SigarProxy sigar = this.eventContext.getSigar();
-        if (sigar != null) {
-            try {
-                this.logFileInfo = new LogFileInfo(sigar.getFileInfo(logFile.getPath()));
-            } catch (SigarException e) {
-                throw new RuntimeException("Failed to obtain file info for log file [" + this.logFile + "].", e);
-            }
-        } else {
-            LOG.warn("SIGAR is unavailable - cannot poll log file [" + this.logFile + "] for events.");
-        }
-
+        this.tailer = new LogFileTailer(this.logFile, this.eventContext.getSigar());
         this.initialized = true;
     }
 
-    private Set<Event> processNewLines(FileInfo fileInfo) {
+    private Set<Event> processNewLines() {
         Set<Event> events = null;
-        Reader reader = null;
         try {
-            reader = new FileReader(this.logFile);
-
-            long offset = getOffset(fileInfo);
-
-            if (offset > 0) {
-                reader.skip(offset);
+            byte[] newLines = this.tailer.readNewLines();
+            if (newLines == null) {
+                return null;
             }
-            BufferedReader bufferedReader = new BufferedReader(reader);
+            BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(
+                newLines)));
             events = this.entryProcessor.processLines(bufferedReader);
         } catch (IOException e) {
             LOG.error("Failed to read log file being tailed: " + this.logFile, e);
-        } finally {
-            if (reader != null) {
-                //noinspection EmptyCatchBlock
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                }
-            }
         }
         return events;
     }
-
-    private long getOffset(FileInfo fileInfo) {
-        FileInfo previousFileInfo = fileInfo.getPreviousInfo();
-
-        if (previousFileInfo == null) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug(this.logFile + ": first stat");
-            }
-            return fileInfo.getSize();
-        }
-
-        if (fileInfo.getInode() != previousFileInfo.getInode()) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug(this.logFile + ": file inode changed");
-            }
-            return -1;
-        }
-
-        if (fileInfo.getSize() < previousFileInfo.getSize()) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug(this.logFile + ": file truncated");
-            }
-            return -1;
-        }
-
-        if (LOG.isDebugEnabled()) {
-            long diff = fileInfo.getSize() - previousFileInfo.getSize();
-            LOG.debug(this.logFile + ": " + diff + " new bytes");
-        }
-
-        return previousFileInfo.getSize();
-    }
 }
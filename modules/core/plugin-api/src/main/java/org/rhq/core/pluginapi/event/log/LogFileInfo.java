@@ -32,7 +32,10 @@ import org.hyperic.sigar.Sigar;
 
 /**
  * @author Ian Springer
+ * @deprecated as of RHQ 4.14, {@link LogFileEventPoller} tails the log files with a {@link LogFileTailer} and
+ * no longer uses this class
  */
+@Deprecated
 public class LogFileInfo extends FileInfo {
     private FileInfo fileInfo;
 
@@ -0,0 +1,289 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.pluginapi.event.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hyperic.sigar.FileInfo;
+import org.hyperic.sigar.SigarException;
+import org.hyperic.sigar.SigarProxy;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Tails a log file, returning the complete lines that have been appended to it since the last read.
+ *
+ * The read position is tracked by this object and new content is read through a {@link FileChannel}, so no native
+ * support is needed. Truncation is detected when the file becomes smaller than it was at the last read. Rotation is
+ * detected when the device and inode of the file change, as far as they can be told through SIGAR, or when the first
+ * bytes of the file no longer match those seen at the last read. In either case the file is re-read from the
+ * beginning.
+ *
+ * Lines are split at the byte level - a trailing line that has not yet been terminated by a newline is not returned;
+ * it will be returned by a later read once it is complete. At most {@link #getMaxBytesPerRead()} bytes are returned
+ * per read so a single busy log file cannot monopolize the thread tailing it; whatever is left over is reported by
+ * {@link #getLagBytes()} and {@link #hasBacklog()} and will be returned by subsequent reads.
+ *
+ * @since 4.14
+ */
+public class LogFileTailer {
+    private static final Log LOG = LogFactory.getLog(LogFileTailer.class);
+
+    /**
+     * System property that defines the maximum number of bytes returned by a single read.
+     */
+    public static final String MAX_BYTES_PER_READ_SYSPROP = "rhq.agent.event.log-tail.max-bytes-per-read";
+
+    private static final int DEFAULT_MAX_BYTES_PER_READ = 4 * 1024 * 1024;
+    private static final int FINGERPRINT_SIZE = 128;
+
+    private final File logFile;
+    private final int maxBytesPerRead;
+    private final SigarProxy sigar;
+
+    private boolean initialized;
+    private long position;
+    private long size;
+    private String fileKey;
+    private byte[] fingerprint;
+    private long lagBytes;
+    private boolean backlog;
+
+    public LogFileTailer(File logFile) {
+        this(logFile, null);
+    }
+
+    /**
+     * @param logFile the log file to tail
+     * @param sigar used to tell a rotated file by its inode, may be null
+     */
+    public LogFileTailer(File logFile, @Nullable SigarProxy sigar) {
+        this(logFile, Integer.getInteger(MAX_BYTES_PER_READ_SYSPROP, DEFAULT_MAX_BYTES_PER_READ).intValue(), sigar);
+    }
+
+    public LogFileTailer(File logFile, int maxBytesPerRead) {
+        this(logFile, maxBytesPerRead, null);
+    }
+
+    public LogFileTailer(File logFile, int maxBytesPerRead, @Nullable SigarProxy sigar) {
+        if (maxBytesPerRead <= 0) {
+            throw new IllegalArgumentException("maxBytesPerRead must be positive: " + maxBytesPerRead);
+        }
+        this.logFile = logFile;
+        this.maxBytesPerRead = maxBytesPerRead;
+        this.sigar = sigar;
+    }
+
+    public File getLogFile() {
+        return this.logFile;
+    }
+
+    public int getMaxBytesPerRead() {
+        return this.maxBytesPerRead;
+    }
+
+    /**
+     * @return the position in the log file up to which content has been returned
+     */
+    public long getPosition() {
+        return this.position;
+    }
+
+    /**
+     * @return the number of bytes that had been appended to the log file but were not yet returned, as of the
+     *         last read
+     */
+    public long getLagBytes() {
+        return this.lagBytes;
+    }
+
+    /**
+     * @return <code>true</code> if the last read stopped because it hit the {@link #getMaxBytesPerRead() max read
+     *         size} even though more content was available, i.e. reading again right away would return more lines
+     */
+    public boolean hasBacklog() {
+        return this.backlog;
+    }
+
+    /**
+     * Reads the complete lines that have been appended to the log file since the last read. The first read only
+     * establishes the current end of the file as the read position; content that existed before tailing started
+     * is never returned (unless the file is later truncated or rotated).
+     *
+     * @return the raw bytes of the new complete lines (including their line terminators), or <code>null</code> if
+     *         there are none
+     *
+     * @throws IOException if the log file could not be read
+     */
+    @Nullable
+    public byte[] readNewLines() throws IOException {
+        this.backlog = false;
+        RandomAccessFile file = new RandomAccessFile(this.logFile, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long size = channel.size();
+            String currentFileKey = getFileKey();
+            byte[] currentFingerprint = readFingerprint(channel, size);
+
+            if (!this.initialized) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(this.logFile + ": first stat");
+                }
+                this.position = size;
+                this.size = size;
+                this.fileKey = currentFileKey;
+                this.fingerprint = currentFingerprint;
+                this.lagBytes = 0;
+                this.initialized = true;
+                return null;
+            }
+
+            if (this.fileKey != null && currentFileKey != null && !this.fileKey.equals(currentFileKey)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(this.logFile + ": file rotated, inode changed");
+                }
+                this.position = 0;
+            } else if (size < this.size) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(this.logFile + ": file truncated");
+                }
+                this.position = 0;
+            } else if (!startsWith(currentFingerprint, this.fingerprint)) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(this.logFile + ": file rotated");
+                }
+                this.position = 0;
+            }
+            this.size = size;
+            this.fileKey = currentFileKey;
+            this.fingerprint = currentFingerprint;
+
+            if (size == this.position) {
+                this.lagBytes = 0;
+                return null;
+            }
+
+            int length = (int) Math.min(size - this.position, this.maxBytesPerRead);
+            byte[] bytes = new byte[length];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, this.position + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            length = buffer.position();
+
+            int end = lastLineEnd(bytes, length);
+            if (end < 0) {
+                if (length < this.maxBytesPerRead) {
+                    // only a partial line has been written so far - wait for the rest of it
+                    this.lagBytes = size - this.position;
+                    return null;
+                }
+                // a single line longer than the max read size - don't stall on it forever
+                end = length;
+            }
+
+            this.position += end;
+            this.lagBytes = size - this.position;
+            this.backlog = (length == this.maxBytesPerRead) && (this.lagBytes > 0);
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(this.logFile + ": " + end + " new bytes, " + this.lagBytes + " bytes behind");
+            }
+
+            return (end == bytes.length) ? bytes : Arrays.copyOf(bytes, end);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return the device and inode of the log file, or null if they can not be told
+     */
+    @Nullable
+    protected String getFileKey() {
+        if (this.sigar == null) {
+            return null;
+        }
+        try {
+            FileInfo fileInfo = this.sigar.getFileInfo(this.logFile.getPath());
+            return fileInfo.getDevice() + ":" + fileInfo.getInode();
+        } catch (SigarException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(this.logFile + ": could not stat the file: " + e);
+            }
+            return null;
+        } catch (RuntimeException e) {
+            // e.g. if the native library is not available
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(this.logFile + ": could not stat the file: " + e);
+            }
+            return null;
+        }
+    }
+
+    private static byte[] readFingerprint(FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, FINGERPRINT_SIZE));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                break;
+            }
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Returns true if the current fingerprint is consistent with the previous one, i.e. the file still begins with
+     * the same bytes it began with before (the file may have grown since, so the previous one may be shorter).
+     */
+    private static boolean startsWith(byte[] current, byte[] previous) {
+        if (current.length < previous.length) {
+            return false;
+        }
+        for (int i = 0; i < previous.length; i++) {
+            if (current[i] != previous[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of bytes up to and including the last newline, or -1 if there is no newline
+     */
+    private static int lastLineEnd(byte[] bytes, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+}
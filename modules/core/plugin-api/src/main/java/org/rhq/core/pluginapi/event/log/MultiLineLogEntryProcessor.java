@@ -88,11 +88,17 @@ public abstract class MultiLineLogEntryProcessor implements LogEntryProcessor {
     }
 
     protected LogEntry processLine(String line, Set<Event> events, LogEntry currentEntry) {
-        Matcher matcher = getPattern().matcher(line);
-        if (matcher.matches()) {
+        Matcher matcher = isPossiblePrimaryLine(line) ? getPattern().matcher(line) : null;
+        if (matcher != null && matcher.matches()) {
             // A matching line means this is the beginning of a new entry, which tells us the current entry
             // (if there is one) has no more additional lines; we can therefore add an Event for that entry.
             addEventForCurrentEntry(events, currentEntry);
+            // If the new entry is going to be filtered out anyway, don't bother parsing it or collecting its
+            // additional lines.
+            EventSeverity severity = getSeverity(matcher);
+            if (severity != null && !severity.isAtLeastAsSevereAs(this.minimumSeverity)) {
+                return null;
+            }
             // And then start building up a new entry...
             try {
                 currentEntry = processPrimaryLine(matcher);
@@ -113,6 +119,34 @@ public abstract class MultiLineLogEntryProcessor implements LogEntryProcessor {
 
     protected abstract Pattern getPattern();
 
+    /**
+     * A cheap check performed before a line is matched against the {@link #getPattern() pattern}. If this returns
+     * <code>false</code>, the line cannot be the primary line of an entry and is treated as an additional line of
+     * the current entry without running the regular expression. The default implementation returns
+     * <code>true</code>, so every line is matched against the pattern.
+     *
+     * @param line the line being processed
+     *
+     * @return <code>false</code> if the line is known not to be a primary line
+     */
+    protected boolean isPossiblePrimaryLine(String line) {
+        return true;
+    }
+
+    /**
+     * Returns the severity of the entry whose primary line was matched by the given matcher, if it can be
+     * determined cheaply. Entries less severe than the minimum severity are then skipped without being parsed. The
+     * default implementation returns <code>null</code>, meaning every primary line is parsed.
+     *
+     * @param matcher the matcher that matched the primary line
+     *
+     * @return the severity of the entry, or <code>null</code> if not known
+     */
+    @Nullable
+    protected EventSeverity getSeverity(Matcher matcher) {
+        return null;
+    }
+
     private void addEventForCurrentEntry(Set<Event> events, LogEntry currentEntry) {
         if (currentEntry != null) {
             if (currentEntry.getSeverity().isAtLeastAsSevereAs(this.minimumSeverity)
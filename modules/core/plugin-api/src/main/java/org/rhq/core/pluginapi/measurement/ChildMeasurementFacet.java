@@ -0,0 +1,69 @@
+/*
+  * RHQ Management Platform
+  * Copyright (C) 2005-2014 Red Hat, Inc.
+  * All rights reserved.
+  *
+  * This program is free software; you can redistribute it and/or modify
+  * it under the terms of the GNU General Public License, version 2, as
+  * published by the Free Software Foundation, and/or the GNU Lesser
+  * General Public License, version 2.1, also as published by the Free
+  * Software Foundation.
+  *
+  * This program is distributed in the hope that it will be useful,
+  * but WITHOUT ANY WARRANTY; without even the implied warranty of
+  * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+  * GNU General Public License and the GNU Lesser General Public License
+  * for more details.
+  *
+  * You should have received a copy of the GNU General Public License
+  * and the GNU Lesser General Public License along with this program;
+  * if not, write to the Free Software Foundation, Inc.,
+  * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+  */
+package org.rhq.core.pluginapi.measurement;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.pluginapi.inventory.ResourceComponent;
+
+/**
+ * An optional facet of a parent component, which collects the measurement data of several of its child resources at
+ * once, e.g. with a single remote call for the metrics of all the MBeans, subsystems or tables its children represent.
+ * <p>
+ * When a child resource is due for collection and its parent component implements this facet, the plugin container
+ * gathers the requests of all the children of that parent which are due at that time, and passes them to
+ * {@link #getChildValues(Map)} rather than calling the {@link MeasurementFacet} of each child.
+ * </p>
+ * <p>
+ * The parent does not have to handle all the children it is given: the children missing from the returned map are
+ * collected through their own {@link MeasurementFacet} as usual. A parent can thus only batch the child types it knows
+ * about.
+ * </p>
+ *
+ * @see MeasurementFacet
+ */
+public interface ChildMeasurementFacet {
+    /**
+     * Collects the measurement data of several children of this component.
+     * <p>
+     * The child components are given as keys so that the parent can tell which resources the requests are for (e.g. by
+     * checking their type and reading the object name they monitor). They are the actual child components, which are
+     * not locked while this method runs; the parent should only read the state the children use to identify what they
+     * monitor, and must not call their facet methods.
+     * </p>
+     *
+     * @param requests the due requests of the children, keyed by child component
+     *
+     * @return the collected data, keyed by child component; children whose key is missing are collected through their
+     *         {@link MeasurementFacet}. Data for metrics which are not available should be left out, as described in
+     *         {@link MeasurementFacet#getValues(MeasurementReport, Set)}
+     *
+     * @throws Exception if the component failed to obtain the values; all the children are then collected through their
+     *                   {@link MeasurementFacet}
+     */
+    Map<ResourceComponent<?>, MeasurementReport> getChildValues(
+        Map<ResourceComponent<?>, Set<MeasurementScheduleRequest>> requests) throws Exception;
+}
@@ -1,6 +1,6 @@
 /*
  * RHQ Management Platform
- * Copyright (C) 2005-2008 Red Hat, Inc.
+ * Copyright (C) 2005-2014 Red Hat, Inc.
  * All rights reserved.
  *
  * This program is free software; you can redistribute it and/or modify
@@ -22,14 +22,19 @@
  */
 package org.rhq.core.pluginapi.util;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -40,6 +45,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import org.rhq.core.domain.measurement.calltime.CallTimeData;
+import org.rhq.core.domain.measurement.calltime.CallTimeDataValue;
 
 /**
  * This is a very simple log parser that uses a StringTokenizer instead of a regular expression to parse a HTTP
@@ -50,11 +56,31 @@ import org.rhq.core.domain.measurement.calltime.CallTimeData;
  *
  * <p/>This is the output format used by the Apache RT module, as well as the servlet RT filter.
  *
+ * <p/>{@link #parseLog(CallTimeData)} streams the log file through a {@link FileChannel} and splits the lines into
+ * fields at the byte level. The destination that a URL maps to (after the excludes and transforms have been applied)
+ * is kept in a bounded LRU cache, so the regular expressions only run for URLs that have not been seen recently, and
+ * the call times are summed up per destination before being added to the {@link CallTimeData}. Subclasses for other
+ * log formats can override {@link #parseLine(String)}, in which case each line is decoded and passed to it instead.
+ *
  * @author Ian Springer
  */
 public class ResponseTimeLogParser {
     public static final int DEFAULT_TIME_MULTIPLIER = 1;
 
+    /**
+     * System property that defines the maximum number of URLs whose destination is cached by each parser.
+     */
+    public static final String URL_CACHE_SIZE_SYSPROP = "rhq.agent.response-time.url-cache-size";
+
+    private static final int DEFAULT_URL_CACHE_SIZE = 10000;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    // the cached destination of excluded URLs; compared by identity
+    private static final String EXCLUDED = new String();
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final Charset DEFAULT_CHARSET = Charset.defaultCharset();
+
     protected final Log log = LogFactory.getLog(this.getClass());
 
     /**
@@ -66,6 +92,12 @@ public class ResponseTimeLogParser {
     protected List<Pattern> excludes;
     protected List<RegexSubstitution> transforms;
 
+    private final Map<UrlKey, String> urlCache;
+    private final UrlKey urlProbe = new UrlKey();
+
+    // true if a subclass parses the lines itself, see parseLine(String)
+    private final boolean parseLineOverridden;
+
     public ResponseTimeLogParser(File logFile) {
         this(logFile, DEFAULT_TIME_MULTIPLIER);
     }
@@ -73,6 +105,28 @@ public class ResponseTimeLogParser {
     public ResponseTimeLogParser(File logFile, double timeMultiplier) {
         this.logFile = logFile;
         this.timeMultiplier = timeMultiplier;
+        final int urlCacheSize = Integer.getInteger(URL_CACHE_SIZE_SYSPROP, DEFAULT_URL_CACHE_SIZE).intValue();
+        this.urlCache = new LinkedHashMap<UrlKey, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UrlKey, String> eldest) {
+                return size() > urlCacheSize;
+            }
+        };
+        this.parseLineOverridden = isParseLineOverridden(getClass());
+    }
+
+    private static boolean isParseLineOverridden(Class<?> parserClass) {
+        for (Class<?> c = parserClass; c != ResponseTimeLogParser.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("parseLine", String.class);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // look further up
+            }
+        }
+        return false;
     }
 
     /**
@@ -86,66 +140,69 @@ public class ResponseTimeLogParser {
      */
     public synchronized void parseLog(CallTimeData callTimeData) throws IOException {
         log.debug("Parsing response-time log file " + this.logFile + "...");
-        BufferedReader in = null;
-
+        RandomAccessFile file;
         try {
-            in = new BufferedReader(new FileReader(this.logFile));
-
-            in.skip(this.startingOffset);
-
-            String currentLine;
-            while ((currentLine = in.readLine()) != null) {
-                LogEntry logEntry;
-                try {
-                    logEntry = parseLine(currentLine);
-                } catch (Exception e) {
-                    log.debug("Problem parsing line [" + currentLine + "] - cause: " + e);
-                    continue;
-                }
+            file = new RandomAccessFile(this.logFile, "r");
+        } catch (FileNotFoundException e) {
+            log.warn("Response-time log file '" + this.logFile + "' does not exist.");
+            return;
+        }
 
-                String url = logEntry.getUrl();
-
-                // The URL should always begin with a slash. If it doesn't, log an error and skip the entry,
-                // so we don't end up with bogus data in the DB.
-                if (url.charAt(0) != '/') {
-                    String truncatedUrl = url.substring(0, Math.min(url.length(), 120));
-                    if (url.length() > 120)
-                        truncatedUrl += "...";
-                    log.error("URL ('" + truncatedUrl
-                        + "') parsed from response-time log file does not begin with '/'. " + "Line being parsed is ["
-                        + currentLine + "].");
-                    continue;
+        Map<String, CallTimeAccumulator> accumulators = new HashMap<String, CallTimeAccumulator>();
+        try {
+            FileChannel channel = file.getChannel();
+            channel.position(this.startingOffset);
+
+            byte[] bytes = new byte[READ_BUFFER_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int scanned = 0;
+            while (true) {
+                boolean eof = channel.read(buffer) < 0;
+                int limit = buffer.position();
+                int lineStart = 0;
+                for (int i = scanned; i < limit; i++) {
+                    byte b = bytes[i];
+                    if (b == '\n' || b == '\r') {
+                        if (i > lineStart) {
+                            parseLine(bytes, lineStart, i, accumulators);
+                        }
+                        lineStart = i + 1;
+                    }
                 }
 
-                if (isExcluded(url)) {
-                    continue;
+                if (eof) {
+                    if (limit > lineStart) {
+                        parseLine(bytes, lineStart, limit, accumulators);
+                    }
+                    break;
                 }
 
-                // Only collect stats for successful (2xx or 3xx) requests...
-                if ((logEntry.getStatusCode() != null)
-                    && ((logEntry.getStatusCode() < 200) || (logEntry.getStatusCode() >= 400))) {
-                    continue;
+                // carry the incomplete last line over to the next read, growing the buffer if the line fills it
+                scanned = limit - lineStart;
+                if (lineStart == 0 && limit == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                    buffer = ByteBuffer.wrap(bytes);
+                } else {
+                    System.arraycopy(bytes, lineStart, bytes, 0, scanned);
                 }
+                buffer.clear();
+                buffer.position(scanned);
+            }
+        } finally {
+            try {
+                file.close();
+            } catch (Exception e) {
+                log.error("Unable to close response-time log file.", e);
+            }
 
-                String transformedUrl = applyTransforms(url);
+            for (Map.Entry<String, CallTimeAccumulator> entry : accumulators.entrySet()) {
                 try {
-                    callTimeData.addCallData(transformedUrl, new Date(logEntry.getStartTime()), logEntry.getDuration());
+                    entry.getValue().addTo(callTimeData, entry.getKey());
                 } catch (IllegalArgumentException iae) {
                     // if any issue with the data, log them and continue processing the rest of the report
                     log.error(iae);
                 }
             }
-        } catch (FileNotFoundException e) {
-            log.warn("Response-time log file '" + this.logFile + "' does not exist.");
-            return;
-        } finally {
-            if (null != in) {
-                try {
-                    in.close();
-                } catch (Exception e) {
-                    log.error("Unable to close response-time log file.", e);
-                }
-            }
         }
 
         /*
@@ -156,6 +213,210 @@ public class ResponseTimeLogParser {
         this.startingOffset = this.logFile.length();
     }
 
+    /**
+     * Parses the line in the given byte range and adds its call time to the accumulator of its destination. This is
+     * equivalent to {@link #parseLine(String)} followed by the checks of the URL and status code, the excludes and the
+     * transforms, but only creates objects for URLs that are not in the URL cache.
+     */
+    private void parseLine(byte[] bytes, int start, int end, Map<String, CallTimeAccumulator> accumulators) {
+        if (this.parseLineOverridden) {
+            parseLine(new String(bytes, start, end - start, DEFAULT_CHARSET), accumulators);
+            return;
+        }
+
+        int urlStart;
+        int urlEnd;
+        long startTime;
+        long duration;
+        long statusCode = 200;
+        try {
+            urlStart = skipWhitespace(bytes, start, end);
+            urlEnd = skipToken(bytes, urlStart, end);
+            int tokenStart = skipWhitespace(bytes, urlEnd, end);
+            int tokenEnd = skipToken(bytes, tokenStart, end);
+            startTime = parseLong(bytes, tokenStart, tokenEnd);
+            tokenStart = skipWhitespace(bytes, tokenEnd, end);
+            tokenEnd = skipToken(bytes, tokenStart, end);
+            duration = (long) (parseDouble(bytes, tokenStart, tokenEnd) * this.timeMultiplier);
+            tokenStart = skipWhitespace(bytes, tokenEnd, end);
+            if (tokenStart < end) {
+                tokenEnd = skipToken(bytes, tokenStart, end);
+                statusCode = parseLong(bytes, tokenStart, tokenEnd);
+                if (statusCode != (int) statusCode) {
+                    throw new NumberFormatException("Status code out of range");
+                }
+            }
+        } catch (RuntimeException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Problem parsing line [" + new String(bytes, start, end - start, DEFAULT_CHARSET)
+                    + "] - cause: " + e);
+            }
+            return;
+        }
+
+        // The URL should always begin with a slash. If it doesn't, log an error and skip the entry,
+        // so we don't end up with bogus data in the DB.
+        if (bytes[urlStart] != '/') {
+            String url = new String(bytes, urlStart, urlEnd - urlStart, DEFAULT_CHARSET);
+            String truncatedUrl = url.substring(0, Math.min(url.length(), 120));
+            if (url.length() > 120)
+                truncatedUrl += "...";
+            log.error("URL ('" + truncatedUrl + "') parsed from response-time log file does not begin with '/'. "
+                + "Line being parsed is [" + new String(bytes, start, end - start, DEFAULT_CHARSET) + "].");
+            return;
+        }
+
+        // Only collect stats for successful (2xx or 3xx) requests...
+        if ((statusCode < 200) || (statusCode >= 400)) {
+            return;
+        }
+
+        this.urlProbe.set(bytes, urlStart, urlEnd - urlStart);
+        String destination = this.urlCache.get(this.urlProbe);
+        if (destination == null) {
+            String url = new String(bytes, urlStart, urlEnd - urlStart, DEFAULT_CHARSET);
+            destination = isExcluded(url) ? EXCLUDED : applyTransforms(url);
+            this.urlCache.put(this.urlProbe.copy(), destination);
+        }
+        if (destination == EXCLUDED) {
+            return;
+        }
+
+        if (duration < 0) {
+            log.error(new IllegalArgumentException("Call time is a duration and so must be >= 0 (line ["
+                + new String(bytes, start, end - start, DEFAULT_CHARSET) + "])."));
+            return;
+        }
+
+        CallTimeAccumulator accumulator = accumulators.get(destination);
+        if (accumulator == null) {
+            accumulator = new CallTimeAccumulator(startTime, startTime + duration);
+            accumulators.put(destination, accumulator);
+        }
+        accumulator.add(duration);
+    }
+
+    /**
+     * Like {@link #parseLine(byte[], int, int, Map)}, but parses the line with {@link #parseLine(String)}, for
+     * subclasses that override it.
+     */
+    private void parseLine(String line, Map<String, CallTimeAccumulator> accumulators) {
+        LogEntry logEntry;
+        try {
+            logEntry = parseLine(line);
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Problem parsing line [" + line + "] - cause: " + e);
+            }
+            return;
+        }
+
+        String url = logEntry.getUrl();
+        if (url.length() == 0 || url.charAt(0) != '/') {
+            String truncatedUrl = url.substring(0, Math.min(url.length(), 120));
+            if (url.length() > 120)
+                truncatedUrl += "...";
+            log.error("URL ('" + truncatedUrl + "') parsed from response-time log file does not begin with '/'. "
+                + "Line being parsed is [" + line + "].");
+            return;
+        }
+
+        Integer statusCode = logEntry.getStatusCode();
+        if ((statusCode != null) && ((statusCode < 200) || (statusCode >= 400))) {
+            return;
+        }
+
+        if (isExcluded(url)) {
+            return;
+        }
+        String destination = applyTransforms(url);
+
+        long duration = logEntry.getDuration();
+        if (duration < 0) {
+            log.error(new IllegalArgumentException("Call time is a duration and so must be >= 0 (line [" + line
+                + "])."));
+            return;
+        }
+
+        CallTimeAccumulator accumulator = accumulators.get(destination);
+        if (accumulator == null) {
+            accumulator = new CallTimeAccumulator(logEntry.getStartTime(), logEntry.getStartTime() + duration);
+            accumulators.put(destination, accumulator);
+        }
+        accumulator.add(duration);
+    }
+
+    private static int skipWhitespace(byte[] bytes, int pos, int end) {
+        while (pos < end && isWhitespace(bytes[pos])) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipToken(byte[] bytes, int pos, int end) {
+        while (pos < end && !isWhitespace(bytes[pos])) {
+            pos++;
+        }
+        return pos;
+    }
+
+    // the default delimiters of StringTokenizer
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    /**
+     * Parses the token like {@link Long#parseLong(String)} does.
+     */
+    private static long parseLong(byte[] bytes, int start, int end) {
+        if (start == end) {
+            throw new NumberFormatException("Missing token");
+        }
+        int pos = start;
+        boolean negative = false;
+        if (bytes[pos] == '-' || bytes[pos] == '+') {
+            negative = (bytes[pos] == '-');
+            if (++pos == end) {
+                throw new NumberFormatException(new String(bytes, start, end - start, ASCII));
+            }
+        }
+        // accumulate negatively, like Long.parseLong, so that Long.MIN_VALUE can be parsed
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0;
+        for (; pos < end; pos++) {
+            int digit = bytes[pos] - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10 || (result * 10) < limit + digit) {
+                throw new NumberFormatException(new String(bytes, start, end - start, ASCII));
+            }
+            result = result * 10 - digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Parses the token like {@link Double#parseDouble(String)} does. Integral values, which is what the RT filters
+     * write, are parsed without creating a string.
+     */
+    private static double parseDouble(byte[] bytes, int start, int end) {
+        int digits = 0;
+        for (int pos = start; pos < end; pos++) {
+            if (bytes[pos] >= '0' && bytes[pos] <= '9') {
+                digits++;
+            } else if (pos != start || (bytes[pos] != '-' && bytes[pos] != '+')) {
+                digits = -1;
+                break;
+            }
+        }
+        // up to 15 digits are exactly representable as a double
+        if (digits > 0 && digits <= 15) {
+            return parseLong(bytes, start, end);
+        }
+        if (start == end) {
+            throw new NumberFormatException("Missing token");
+        }
+        return Double.parseDouble(new String(bytes, start, end - start, ASCII));
+    }
+
     protected boolean isExcluded(String url) {
         boolean excluded = false;
         if (this.excludes != null) {
@@ -189,7 +450,9 @@ public class ResponseTimeLogParser {
     }
 
     /**
-     * Parses a line from a response time log and returns a LogEntry.
+     * Parses a line from a response time log and returns a LogEntry. {@link #parseLog(CallTimeData)} only calls this
+     * for subclasses that override it, since it parses the default format without creating any objects per line;
+     * overriding it to parse another format is slower.
      *
      * @param line the line to be parsed
      *
@@ -269,16 +532,18 @@ public class ResponseTimeLogParser {
         return excludes;
     }
 
-    public void setExcludes(List<Pattern> excludes) {
+    public synchronized void setExcludes(List<Pattern> excludes) {
         this.excludes = excludes;
+        this.urlCache.clear();
     }
 
     public List<RegexSubstitution> getTransforms() {
         return transforms;
     }
 
-    public void setTransforms(List<RegexSubstitution> transforms) {
+    public synchronized void setTransforms(List<RegexSubstitution> transforms) {
         this.transforms = transforms;
+        this.urlCache.clear();
     }
 
     public class LogEntry {
@@ -320,4 +585,108 @@ public class ResponseTimeLogParser {
             return ipAddress;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * The call time statistics of one destination, accumulated over the lines of one parse.
+     */
+    private static class CallTimeAccumulator {
+        // like CallTimeDataValue, the time span is the one of the first call
+        private final long beginTime;
+        private final long endTime;
+        private double minimum = Double.NaN;
+        private double maximum;
+        private double total;
+        private long count;
+
+        CallTimeAccumulator(long beginTime, long endTime) {
+            this.beginTime = beginTime;
+            this.endTime = endTime;
+        }
+
+        void add(double callTime) {
+            this.count++;
+            this.total += callTime;
+            if ((callTime < this.minimum) || Double.isNaN(this.minimum)) {
+                this.minimum = callTime;
+            }
+            if (callTime > this.maximum) {
+                this.maximum = callTime;
+            }
+        }
+
+        void addTo(CallTimeData callTimeData, String destination) {
+            CallTimeDataValue value = callTimeData.getValues().get(destination);
+            if (value == null) {
+                callTimeData.addAggregatedCallData(destination, new Date(this.beginTime), new Date(this.endTime),
+                    this.minimum, this.maximum, this.total, this.count);
+            } else {
+                // merge into the data that was already there, just like adding the calls one by one would
+                if ((this.minimum < value.getMinimum()) || Double.isNaN(value.getMinimum())) {
+                    value.setMinimum(this.minimum);
+                }
+                if (this.maximum > value.getMaximum()) {
+                    value.setMaximum(this.maximum);
+                }
+                value.setTotal(value.getTotal() + this.total);
+                value.setCount(value.getCount() + this.count);
+            }
+        }
+    }
+
+    /**
+     * A URL as it appears in the log file, i.e. as a range of bytes. A single instance is reused to look URLs up in
+     * the URL cache straight from the read buffer; only the keys that are actually stored in it own a copy of the
+     * bytes.
+     */
+    private static class UrlKey {
+        private byte[] bytes;
+        private int offset;
+        private int length;
+        private int hash;
+
+        void set(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+            int h = 1;
+            for (int i = offset; i < offset + length; i++) {
+                h = 31 * h + bytes[i];
+            }
+            this.hash = h;
+        }
+
+        UrlKey copy() {
+            UrlKey copy = new UrlKey();
+            copy.bytes = Arrays.copyOfRange(this.bytes, this.offset, this.offset + this.length);
+            copy.offset = 0;
+            copy.length = this.length;
+            copy.hash = this.hash;
+            return copy;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof UrlKey)) {
+                return false;
+            }
+            UrlKey that = (UrlKey) obj;
+            if (this.length != that.length || this.hash != that.hash) {
+                return false;
+            }
+            for (int i = 0; i < this.length; i++) {
+                if (this.bytes[this.offset + i] != that.bytes[that.offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -156,4 +156,15 @@ public class Log4JLogEntryProcessorTest {
         assert event1.getDetail().equals("[com.example.FooBar] test message");
     }
 
+    public void testMinimumSeveritySkipsLessSevereEntries() throws Exception {
+        Log4JLogEntryProcessor processor = new Log4JLogEntryProcessor("logEntry", new File("C:/test.log"));
+        processor.setMinimumSeverity(EventSeverity.INFO);
+        BufferedReader bufferedReader = new BufferedReader(new StringReader(TEST_LOG.toString()));
+        Set<Event> events = processor.processLines(bufferedReader);
+        assert events != null && events.size() == 1 : events;
+        Event event = events.iterator().next();
+        assert event.getSeverity().equals(EventSeverity.INFO);
+        assert event.getDetail().startsWith("[com.example.FooBar] a multi-line entry\n");
+        assert event.getDetail().endsWith("\twocka wocka");
+    }
 }
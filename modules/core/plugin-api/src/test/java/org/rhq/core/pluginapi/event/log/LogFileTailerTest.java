@@ -0,0 +1,168 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2008 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.pluginapi.event.log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+@Test
+public class LogFileTailerTest {
+    private File logFile;
+
+    @BeforeMethod
+    public void createLogFile() throws IOException {
+        logFile = File.createTempFile("LogFileTailerTest", ".log");
+    }
+
+    @AfterMethod
+    public void deleteLogFile() {
+        logFile.delete();
+    }
+
+    public void testFirstReadSkipsExistingContent() throws Exception {
+        append("existing line\n", false);
+        LogFileTailer tailer = new LogFileTailer(logFile);
+        assert tailer.readNewLines() == null;
+        assert tailer.getPosition() == logFile.length();
+
+        append("new line\n", true);
+        assert "new line\n".equals(new String(tailer.readNewLines()));
+        assert tailer.readNewLines() == null;
+        assert tailer.getLagBytes() == 0;
+    }
+
+    public void testPartialLinesAreHeldBack() throws Exception {
+        LogFileTailer tailer = new LogFileTailer(logFile);
+        assert tailer.readNewLines() == null;
+
+        append("line 1\nline", true);
+        assert "line 1\n".equals(new String(tailer.readNewLines()));
+        assert tailer.getLagBytes() == 4 : tailer.getLagBytes();
+
+        assert tailer.readNewLines() == null;
+
+        append(" 2\n", true);
+        assert "line 2\n".equals(new String(tailer.readNewLines()));
+        assert tailer.getLagBytes() == 0;
+    }
+
+    public void testTruncation() throws Exception {
+        append("2014-01-01 00:00:00,000 INFO first line of the original file\n", false);
+        LogFileTailer tailer = new LogFileTailer(logFile);
+        assert tailer.readNewLines() == null;
+
+        append("short\n", false);
+        assert "short\n".equals(new String(tailer.readNewLines()));
+    }
+
+    public void testRotation() throws Exception {
+        append("2014-01-01 00:00:00,000 INFO first line\n", false);
+        LogFileTailer tailer = new LogFileTailer(logFile);
+        assert tailer.readNewLines() == null;
+
+        // the rotated file is already bigger than the old one by the time it is read
+        String rotated = "2014-01-02 00:00:00,000 INFO first line of the new file\n";
+        append(rotated, false);
+        assert rotated.equals(new String(tailer.readNewLines()));
+    }
+
+    public void testRotationWithSameHeader() throws Exception {
+        String header = "# log file header\n";
+        append(header, false);
+        FileKeyTailer tailer = new FileKeyTailer(logFile, "1:100");
+        assert tailer.readNewLines() == null;
+
+        // the new file starts with the same bytes and has already grown past the read position
+        tailer.fileKey = "1:101";
+        append(header + "first line of the new file\n", false);
+        assert (header + "first line of the new file\n").equals(new String(tailer.readNewLines()));
+    }
+
+    public void testShrinkBeyondReadPosition() throws Exception {
+        StringBuilder header = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            header.append("2014-01-01 00:00:00,000 INFO header line ").append(i).append('\n');
+        }
+        append(header.toString(), false);
+        LogFileTailer tailer = new LogFileTailer(logFile);
+        assert tailer.readNewLines() == null;
+        append("partial line", true);
+        assert tailer.readNewLines() == null;
+
+        // truncated and rewritten with the same first lines, shorter than before but longer than the read position
+        append(header + "x\n", false);
+        assert (header + "x\n").equals(new String(tailer.readNewLines()));
+    }
+
+    public void testBacklog() throws Exception {
+        LogFileTailer tailer = new LogFileTailer(logFile, 16);
+        assert tailer.readNewLines() == null;
+
+        append("0123456789\n0123456789\n0123456789\n", true);
+        assert "0123456789\n".equals(new String(tailer.readNewLines()));
+        assert tailer.hasBacklog();
+        assert tailer.getLagBytes() == 22 : tailer.getLagBytes();
+        assert "0123456789\n".equals(new String(tailer.readNewLines()));
+        assert tailer.hasBacklog();
+        assert "0123456789\n".equals(new String(tailer.readNewLines()));
+        assert !tailer.hasBacklog();
+        assert tailer.getLagBytes() == 0;
+    }
+
+    public void testLineLongerThanMaxRead() throws Exception {
+        LogFileTailer tailer = new LogFileTailer(logFile, 8);
+        assert tailer.readNewLines() == null;
+
+        append("0123456789\n", true);
+        assert "01234567".equals(new String(tailer.readNewLines()));
+        assert "89\n".equals(new String(tailer.readNewLines()));
+    }
+
+    private static class FileKeyTailer extends LogFileTailer {
+        private String fileKey;
+
+        private FileKeyTailer(File logFile, String fileKey) {
+            super(logFile);
+            this.fileKey = fileKey;
+        }
+
+        @Override
+        protected String getFileKey() {
+            return this.fileKey;
+        }
+    }
+
+    private void append(String content, boolean append) throws IOException {
+        FileOutputStream out = new FileOutputStream(logFile, append);
+        try {
+            out.write(content.getBytes());
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.core.pluginapi.util;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.measurement.calltime.CallTimeData;
+import org.rhq.core.domain.measurement.calltime.CallTimeDataValue;
+import org.rhq.core.util.stream.StreamUtil;
+
+@Test
+public class ResponseTimeLogParserTest {
+
+    private File logFile;
+
+    @BeforeMethod
+    public void createLogFile() throws IOException {
+        logFile = File.createTempFile("rt-log", ".log");
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void deleteLogFile() {
+        logFile.delete();
+    }
+
+    public void testParseLog() throws Exception {
+        writeLog("/foo 1000 10 200 127.0.0.1", //
+            "/foo 2000 30 302", //
+            "/foo 3000 20", //
+            "/bar/1 4000 5 200", //
+            "/bar/2 5000 7 200", //
+            "/error 6000 100 500", //
+            "/excluded 7000 10 200", //
+            "garbage", //
+            "", //
+            "noslash 8000 10 200", //
+            "/foo notanumber 10 200", //
+            "/foo 9000 2.5 200");
+
+        ResponseTimeLogParser parser = new ResponseTimeLogParser(logFile);
+        parser.setExcludes(Arrays.asList(Pattern.compile("^/excluded")));
+        parser.setTransforms(Arrays.asList(new RegexSubstitution(Pattern.compile("^/bar/\\d+"), "/bar/*")));
+        CallTimeData callTimeData = newCallTimeData();
+        parser.parseLog(callTimeData);
+
+        Map<String, CallTimeDataValue> values = callTimeData.getValues();
+        assertEquals(values.keySet().size(), 2, values.toString());
+        assertValue(values.get("/foo"), 1000, 1010, 2, 30, 62, 4);
+        assertValue(values.get("/bar/*"), 4000, 4005, 5, 7, 12, 2);
+
+        assertEquals(logFile.length(), 0, "The log file should have been truncated");
+    }
+
+    public void testLongLinesAndTimeMultiplier() throws Exception {
+        StringBuilder longUrl = new StringBuilder("/");
+        for (int i = 0; i < 200000; i++) {
+            longUrl.append('x');
+        }
+        writeLog("/micros 1000 1500", longUrl + " 2000 1000", "/micros 3000 2500");
+
+        ResponseTimeLogParser parser = new ResponseTimeLogParser(logFile, 0.001);
+        parser.setTransforms(Arrays.asList(new RegexSubstitution(Pattern.compile("^/x+"), "/long")));
+        CallTimeData callTimeData = newCallTimeData();
+        parser.parseLog(callTimeData);
+
+        Map<String, CallTimeDataValue> values = callTimeData.getValues();
+        assertValue(values.get("/micros"), 1000, 1001, 1, 2, 3, 2);
+        assertValue(values.get("/long"), 2000, 2001, 1, 1, 1, 1);
+    }
+
+    public void testMatchesLineByLineParsing() throws Exception {
+        writeRandomLog(logFile, 20000, new Random(42));
+        File copy = File.createTempFile("rt-log", ".log");
+        try {
+            StreamUtil.copy(new FileInputStream(logFile), new FileOutputStream(copy));
+
+            CallTimeData expected = newCallTimeData();
+            newLineByLineParser(copy).parseLogLineByLine(expected);
+            CallTimeData actual = newCallTimeData();
+            newParser(logFile).parseLog(actual);
+
+            assertEquals(actual.getValues().keySet(), expected.getValues().keySet());
+            for (Map.Entry<String, CallTimeDataValue> entry : expected.getValues().entrySet()) {
+                CallTimeDataValue value = entry.getValue();
+                assertValue(actual.getValues().get(entry.getKey()), value.getBeginTime(), value.getEndTime(),
+                    value.getMinimum(), value.getMaximum(), value.getTotal(), value.getCount());
+            }
+        } finally {
+            copy.delete();
+        }
+    }
+
+    public void testMergesWithExistingData() throws Exception {
+        writeLog("/foo 5000 10 200", "/foo 6000 1 200");
+
+        CallTimeData callTimeData = newCallTimeData();
+        callTimeData.addCallData("/foo", new Date(1000), 5);
+        new ResponseTimeLogParser(logFile).parseLog(callTimeData);
+
+        assertValue(callTimeData.getValues().get("/foo"), 1000, 1005, 1, 10, 16, 3);
+    }
+
+    public void testParseLineOverride() throws Exception {
+        // the url last, as a subclass for another log format would parse it
+        writeLog("1000 10 /foo", "2000 30 /foo", "3000 5 /bar/1", "garbage", "4000 10 /excluded", "5000 1 noslash");
+
+        ResponseTimeLogParser parser = new ResponseTimeLogParser(logFile) {
+            @Override
+            protected LogEntry parseLine(String line) throws Exception {
+                String[] tokens = line.split(" ");
+                return new LogEntry(tokens[2], Long.parseLong(tokens[0]), Long.parseLong(tokens[1]), null, null);
+            }
+        };
+        parser.setExcludes(Arrays.asList(Pattern.compile("^/excluded")));
+        parser.setTransforms(Arrays.asList(new RegexSubstitution(Pattern.compile("^/bar/\\d+"), "/bar/*")));
+        CallTimeData callTimeData = newCallTimeData();
+        parser.parseLog(callTimeData);
+
+        Map<String, CallTimeDataValue> values = callTimeData.getValues();
+        assertEquals(values.keySet().size(), 2, values.toString());
+        assertValue(values.get("/foo"), 1000, 1010, 10, 30, 40, 2);
+        assertValue(values.get("/bar/*"), 3000, 3005, 5, 5, 5, 1);
+    }
+
+    private void writeLog(String... lines) throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(logFile));
+        try {
+            for (String line : lines) {
+                writer.println(line);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void writeRandomLog(File file, int lines, Random random) throws IOException {
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            for (int i = 0; i < lines; i++) {
+                String url = "/app/" + (random.nextBoolean() ? "static" : "order/" + random.nextInt(500));
+                if (random.nextInt(10) == 0) {
+                    url = "/app/health";
+                }
+                int[] statusCodes = { 200, 200, 200, 302, 404, 500 };
+                writer.print(url + " " + (1400000000000L + i * 10L) + " " + random.nextInt(5000));
+                if (random.nextBoolean()) {
+                    writer.print(" " + statusCodes[random.nextInt(statusCodes.length)] + " 10.0.0."
+                        + random.nextInt(255));
+                }
+                writer.print(random.nextBoolean() ? "\n" : "\r\n");
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static ResponseTimeLogParser newParser(File file) {
+        ResponseTimeLogParser parser = new ResponseTimeLogParser(file);
+        configure(parser);
+        return parser;
+    }
+
+    private static LineByLineParser newLineByLineParser(File file) {
+        LineByLineParser parser = new LineByLineParser(file);
+        configure(parser);
+        return parser;
+    }
+
+    private static void configure(ResponseTimeLogParser parser) {
+        parser.setExcludes(Arrays.asList(Pattern.compile("/health$")));
+        parser.setTransforms(Arrays.asList(new RegexSubstitution(Pattern.compile("^/app/order/\\d+"),
+            "/app/order/*")));
+    }
+
+    private static CallTimeData newCallTimeData() {
+        return new CallTimeData(new MeasurementScheduleRequest(1, "ResponseTime", 60000, true, DataType.CALLTIME));
+    }
+
+    private static void assertValue(CallTimeDataValue value, long beginTime, long endTime, double minimum,
+        double maximum, double total, long count) {
+        assertTrue(value != null, "Missing call time data value");
+        assertEquals(value.getBeginTime(), beginTime);
+        assertEquals(value.getEndTime(), endTime);
+        assertEquals(value.getMinimum(), minimum);
+        assertEquals(value.getMaximum(), maximum);
+        assertEquals(value.getTotal(), total);
+        assertEquals(value.getCount(), count);
+    }
+
+    /**
+     * Parses the log one line at a time, adding each call to the call time data, which is what
+     * {@link ResponseTimeLogParser#parseLog(CallTimeData)} used to do.
+     */
+    private static class LineByLineParser extends ResponseTimeLogParser {
+        LineByLineParser(File logFile) {
+            super(logFile);
+        }
+
+        void parseLogLineByLine(CallTimeData callTimeData) throws IOException {
+            BufferedReader in = new BufferedReader(new FileReader(this.logFile));
+            try {
+                String currentLine;
+                while ((currentLine = in.readLine()) != null) {
+                    LogEntry logEntry;
+                    try {
+                        logEntry = parseLine(currentLine);
+                    } catch (Exception e) {
+                        continue;
+                    }
+                    String url = logEntry.getUrl();
+                    if (url.charAt(0) != '/' || isExcluded(url)) {
+                        continue;
+                    }
+                    if ((logEntry.getStatusCode() != null)
+                        && ((logEntry.getStatusCode() < 200) || (logEntry.getStatusCode() >= 400))) {
+                        continue;
+                    }
+                    try {
+                        callTimeData.addCallData(applyTransforms(url), new Date(logEntry.getStartTime()),
+                            logEntry.getDuration());
+                    } catch (IllegalArgumentException iae) {
+                        // skip, like the parser does
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        }
+    }
+}
@@ -89,6 +89,10 @@ public class PluginContainerConfiguration {
     public static final long AVAILABILITY_SCAN_PERIOD_DEFAULT = 30L;
     public static final String AVAILABILITY_SCAN_THREADPOOL_SIZE_PROP = "availability-scan-threadpool-size";
     public static final int AVAILABILITY_SCAN_THREADPOOL_SIZE_DEFAULT = 100;
+    private static final String AVAILABILITY_MAX_BACKOFF_FACTOR_PROP = PROP_PREFIX + "availability-max-backoff-factor";
+    // how many times their avail check interval stable resources can end up being checked at; 1 disables back off,
+    // which is the default so that avail checks keep their configured interval unless back off is asked for
+    public static final int AVAILABILITY_MAX_BACKOFF_FACTOR_DEFAULT = 1;
 
     // Measurement ----------
 
@@ -502,6 +506,26 @@ public class PluginContainerConfiguration {
         configuration.put(AVAILABILITY_SCAN_THREADPOOL_SIZE_PROP, Integer.valueOf(size));
     }
 
+    /**
+     * Returns the maximum factor the availability check interval of a resource is multiplied by once its availability
+     * has been stable for a while. 1 means resources are always checked at their configured interval.
+     *
+     * @return the maximum back off factor of availability checks
+     */
+    public int getAvailabilityMaxBackoffFactor() {
+        Integer factor = (Integer) configuration.get(AVAILABILITY_MAX_BACKOFF_FACTOR_PROP);
+        return (factor == null) ? AVAILABILITY_MAX_BACKOFF_FACTOR_DEFAULT : factor.intValue();
+    }
+
+    /**
+     * Sets the maximum factor the availability check interval of a stable resource is multiplied by.
+     *
+     * @param factor the maximum back off factor of availability checks, 1 to disable back off
+     */
+    public void setAvailabilityMaxBackoffFactor(int factor) {
+        configuration.put(AVAILABILITY_MAX_BACKOFF_FACTOR_PROP, Integer.valueOf(factor));
+    }
+
     /**
      * Returns the length of time, in seconds, before measurements begin getting collected.
      *
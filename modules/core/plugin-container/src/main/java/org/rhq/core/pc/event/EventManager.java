@@ -19,13 +19,20 @@
 
 package org.rhq.core.pc.event;
 
-import java.util.HashMap;
+import java.lang.management.ManagementFactory;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hyperic.sigar.SigarProxy;
@@ -49,9 +56,11 @@ import org.rhq.core.system.SigarAccess;
  *
  * @author Ian Springer
  */
-public class EventManager implements ContainerService {
+public class EventManager implements ContainerService, EventManagerMBean {
     private static final Log log = LogFactory.getLog(EventManager.class);
 
+    public static final String OBJECT_NAME = "rhq.pc:type=EventManager";
+
     private static final String SENDER_THREAD_POOL_NAME = "EventManager.sender";
     private static final int SENDER_THREAD_POOL_CORE_SIZE = 2;
 
@@ -65,8 +74,15 @@ public class EventManager implements ContainerService {
     private final ReentrantReadWriteLock reportLock = new ReentrantReadWriteLock(true);
     private final ScheduledThreadPoolExecutor pollerThreadPool;
     private final Map<PollerKey, Runnable> pollerThreads;
+    private final Map<PollerKey, EventPollerRunner> pollerRunners;
     private SigarProxy sigar;
 
+    // -- monitoring information
+    private final AtomicLong eventPolls = new AtomicLong(0);
+    private final AtomicLong catchUpEventPolls = new AtomicLong(0);
+    private final AtomicLong eventsPolled = new AtomicLong(0);
+    private final AtomicLong totalTimePolling = new AtomicLong(0);
+
     public EventManager(PluginContainerConfiguration configuration) {
         pcConfig = configuration;
         activeReport = new EventReport(pcConfig.getEventReportMaxPerSource(), pcConfig.getEventReportMaxTotal());
@@ -76,11 +92,22 @@ public class EventManager implements ContainerService {
         // registerEventPoller().
         pollerThreadPool = new ScheduledThreadPoolExecutor(POLLER_THREAD_POOL_CORE_SIZE, new LoggingThreadFactory(
             POLLER_THREAD_POOL_NAME, true));
-        pollerThreads = new HashMap<PollerKey, Runnable>();
+        pollerThreads = new ConcurrentHashMap<PollerKey, Runnable>();
+        pollerRunners = new ConcurrentHashMap<PollerKey, EventPollerRunner>();
     }
 
     public void initialize() {
         log.info("Initializing Event Manager...");
+
+        if (pcConfig.isStartManagementBean()) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.registerMBean(this, new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                log.error("Unable to register EventManagerMBean", e);
+            }
+        }
+
         // Schedule sender thread(s) to send Event reports to the Server periodically.
         EventSenderRunner senderRunner = new EventSenderRunner(this);
         senderThreadPool.scheduleAtFixedRate(senderRunner, pcConfig.getEventSenderInitialDelay(),
@@ -94,6 +121,15 @@ public class EventManager implements ContainerService {
         PluginContainer.shutdownExecutorService(this.senderThreadPool, true);
         log.debug("Shutting down event poller thread pool...");
         PluginContainer.shutdownExecutorService(this.pollerThreadPool, true);
+
+        if (pcConfig.isStartManagementBean()) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                log.warn("Unable to unregister EventManagerMBean", e);
+            }
+        }
     }
 
     void publishEvents(@NotNull Set<Event> events, @NotNull Resource resource) {
@@ -162,6 +198,28 @@ public class EventManager implements ContainerService {
             POLLER_INITIAL_DELAY_SECS, pollingInterval, TimeUnit.SECONDS);
         PollerKey pollerKey = new PollerKey(resource.getId(), poller.getEventType(), sourceLocation);
         this.pollerThreads.put(pollerKey, pollerFuture);
+        this.pollerRunners.put(pollerKey, pollerRunner);
+    }
+
+    /**
+     * Called by a poller that could not process all of its source's new content in one poll. Rather than keep its
+     * pool thread busy until the source is drained, the poller is queued to run again immediately, behind any other
+     * pollers that are already due, so that busy sources are multiplexed fairly across the poller thread pool.
+     *
+     * @param pollerRunner the poller runner to run again
+     */
+    void scheduleCatchUpPoll(EventPollerRunner pollerRunner) {
+        if (this.pollerThreadPool.isShutdown()) {
+            return;
+        }
+        this.catchUpEventPolls.incrementAndGet();
+        this.pollerThreadPool.schedule(pollerRunner, 0, TimeUnit.SECONDS);
+    }
+
+    void pollCompleted(int eventCount, long elapsedMillis) {
+        this.eventPolls.incrementAndGet();
+        this.eventsPolled.addAndGet(eventCount);
+        this.totalTimePolling.addAndGet(elapsedMillis);
     }
 
     void unregisterEventPoller(Resource resource, String eventType, String sourceLocation) {
@@ -178,6 +236,70 @@ public class EventManager implements ContainerService {
             }
             this.pollerThreads.remove(pollerKey);
         }
+        EventPollerRunner pollerRunner = this.pollerRunners.remove(pollerKey);
+        if (pollerRunner != null) {
+            pollerRunner.cancel();
+        }
+    }
+
+    // -- MBean monitoring methods
+
+    @Override
+    public long getRegisteredEventPollers() {
+        return this.pollerRunners.size();
+    }
+
+    @Override
+    public long getEventPolls() {
+        return this.eventPolls.get();
+    }
+
+    @Override
+    public long getCatchUpEventPolls() {
+        return this.catchUpEventPolls.get();
+    }
+
+    @Override
+    public long getEventsPolled() {
+        return this.eventsPolled.get();
+    }
+
+    @Override
+    public long getTotalTimePollingEvents() {
+        return this.totalTimePolling.get();
+    }
+
+    @Override
+    public long getLaggingEventSources() {
+        long lagging = 0;
+        for (EventPollerRunner pollerRunner : this.pollerRunners.values()) {
+            if (pollerRunner.getLagBytes() > 0) {
+                lagging++;
+            }
+        }
+        return lagging;
+    }
+
+    @Override
+    public long getMaxEventSourceLagBytes() {
+        long max = 0;
+        for (EventPollerRunner pollerRunner : this.pollerRunners.values()) {
+            max = Math.max(max, pollerRunner.getLagBytes());
+        }
+        return max;
+    }
+
+    @Override
+    public Map<String, Long> getEventSourceLagBytes() {
+        Map<String, Long> lagBytes = new TreeMap<String, Long>();
+        for (Map.Entry<PollerKey, EventPollerRunner> pollerRunner : this.pollerRunners.entrySet()) {
+            if (pollerRunner.getValue().isLogFilePoller()) {
+                PollerKey key = pollerRunner.getKey();
+                lagBytes.put(key.resourceId + ":" + key.eventType + ":" + key.sourceLocation, pollerRunner.getValue()
+                    .getLagBytes());
+            }
+        }
+        return lagBytes;
     }
 
     private EventSource createEventSource(Event event, Resource resource) {
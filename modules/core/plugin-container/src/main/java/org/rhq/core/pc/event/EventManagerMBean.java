@@ -0,0 +1,52 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.core.pc.event;
+
+import java.util.Map;
+
+/**
+ * Monitoring information about the Plugin Container's Event subsystem.
+ */
+public interface EventManagerMBean {
+    long getRegisteredEventPollers();
+
+    long getEventPolls();
+
+    long getCatchUpEventPolls();
+
+    long getEventsPolled();
+
+    long getTotalTimePollingEvents();
+
+    /**
+     * @return the number of log file event sources that had unprocessed content as of their last poll
+     */
+    long getLaggingEventSources();
+
+    /**
+     * @return the largest amount of unprocessed content (in bytes) of any log file event source as of its last poll
+     */
+    long getMaxEventSourceLagBytes();
+
+    /**
+     * @return the amount of unprocessed content (in bytes) of each log file event source as of its last poll, keyed
+     *         by resource id, event type and source location, separated by colons
+     */
+    Map<String, Long> getEventSourceLagBytes();
+}
@@ -23,6 +23,7 @@
 package org.rhq.core.pc.event;
 
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -30,6 +31,7 @@ import org.apache.commons.logging.LogFactory;
 import org.rhq.core.domain.event.Event;
 import org.rhq.core.domain.resource.Resource;
 import org.rhq.core.pluginapi.event.EventPoller;
+import org.rhq.core.pluginapi.event.log.LogFileEventPoller;
 
 /**
  * A thread for running an {@link EventPoller} to check for new {@link Event}s of a certain type from a particular
@@ -44,6 +46,9 @@ public class EventPollerRunner implements Runnable {
     private EventPoller eventPoller;
     private Resource resource;
     private EventManager eventManager;
+    private final AtomicBoolean polling = new AtomicBoolean(false);
+    private volatile boolean cancelled;
+    private volatile long lagBytes;
 
     public EventPollerRunner(EventPoller eventPoller, Resource resource, EventManager eventManager) {
         this.eventPoller = eventPoller;
@@ -52,7 +57,13 @@ public class EventPollerRunner implements Runnable {
     }
 
     public void run() {
+        // a catch-up poll and a scheduled poll of the same source must never run concurrently
+        if (this.cancelled || !this.polling.compareAndSet(false, true)) {
+            return;
+        }
+        boolean backlog = false;
         try {
+            long start = System.currentTimeMillis();
             Set<Event> events = this.eventPoller.poll();
             if (LOG.isTraceEnabled()) {
                 LOG.trace("Gathered " + (events == null ? "no" : events.size()) + " events on resource " + resource + " using the poller " + eventPoller);
@@ -60,11 +71,49 @@ public class EventPollerRunner implements Runnable {
             if (events != null) {
                 this.eventManager.publishEvents(events, this.resource);
             }
+            if (this.eventPoller instanceof LogFileEventPoller) {
+                LogFileEventPoller logFilePoller = (LogFileEventPoller) this.eventPoller;
+                this.lagBytes = logFilePoller.getLagBytes();
+                backlog = logFilePoller.hasBacklog();
+                if (backlog && LOG.isDebugEnabled()) {
+                    LOG.debug("Event source [" + logFilePoller.getSourceLocation() + "] for resource " + resource
+                        + " is " + this.lagBytes + " bytes behind - scheduling a catch-up poll");
+                }
+            }
+            this.eventManager.pollCompleted((events == null) ? 0 : events.size(), System.currentTimeMillis() - start);
         } catch (RuntimeException e) {
             LOG.error("Event poller for resource " + resource + 
                 " failed with a unhandled exception. No future events will be reported for the resource until the plugin container is restarted. "
                 + "This is an error and should not have happened. Please report this as a bug.", e);
             throw e;
+        } finally {
+            this.polling.set(false);
+        }
+        if (backlog && !this.cancelled) {
+            this.eventManager.scheduleCatchUpPoll(this);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the amount of unprocessed content (in bytes) the source had as of the last poll; always 0 for
+     *         pollers that are not log file pollers
+     */
+    long getLagBytes() {
+        return this.lagBytes;
+    }
+
+    /**
+     * @return true if the poller tails a log file, i.e. if it may lag behind its source
+     */
+    boolean isLogFilePoller() {
+        return this.eventPoller instanceof LogFileEventPoller;
+    }
+
+    /**
+     * Tells this runner its poller has been unregistered, so it will no longer poll (this includes any pending
+     * catch-up poll).
+     */
+    void cancel() {
+        this.cancelled = true;
+    }
+}
@@ -25,9 +25,14 @@ import java.lang.reflect.Method;
 import java.lang.reflect.TypeVariable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -51,6 +56,7 @@ import org.rhq.core.pluginapi.inventory.ResourceDiscoveryComponent;
 import org.rhq.core.system.ProcessInfo;
 import org.rhq.core.system.SystemInfo;
 import org.rhq.core.system.SystemInfoFactory;
+import org.rhq.core.system.pquery.CompiledQuery;
 import org.rhq.core.system.pquery.ProcessInfoQuery;
 import org.rhq.core.util.exception.ExceptionPackage;
 import org.rhq.core.util.exception.Severity;
@@ -74,6 +80,12 @@ public class AutoDiscoveryExecutor implements Runnable, Callable<InventoryReport
 
     private final InventoryManager inventoryManager;
 
+    /**
+     * The compiled process scan queries, keyed on the PIQL strings. Those come from the plugin descriptors, so they
+     * only need to be compiled once.
+     */
+    private final ConcurrentMap<String, CompiledQuery> compiledQueries = new ConcurrentHashMap<String, CompiledQuery>();
+
     public AutoDiscoveryExecutor(AutoDiscoveryRequest autoDiscoveryRequest, InventoryManager inventoryManager) {
         this.autoDiscoveryRequest = autoDiscoveryRequest;
         this.inventoryManager = inventoryManager;
@@ -161,11 +173,21 @@ public class AutoDiscoveryExecutor implements Runnable, Callable<InventoryReport
         ResourceContainer platformContainer = inventoryManager.getResourceContainer(inventoryManager.getPlatform());
         Resource platformResource = platformContainer.getResource();
 
+        List<ResourceType> topLevelServerTypes = new ArrayList<ResourceType>(serverTypes.size());
         for (ResourceType serverType : serverTypes) {
             if (!serverType.getParentResourceTypes().isEmpty()) {
                 continue; // TODO GH: Need to stop discovering embedded tomcats here and other non-top level servers
             }
+            topLevelServerTypes.add(serverType);
+        }
 
+        // Perform auto-discovery PIQL queries now to see if we can auto-detect servers that are currently running.
+        // The queries of all the server types are run at once, so that the process table is only scanned once.
+        Map<ResourceType, RuntimeException> scanErrors = new HashMap<ResourceType, RuntimeException>();
+        Map<ResourceType, List<ProcessScanResult>> scanResultsByType = performProcessScans(processInfos,
+            topLevelServerTypes, scanErrors);
+
+        for (ResourceType serverType : topLevelServerTypes) {
             try {
                 ResourceDiscoveryComponent component = factory.getDiscoveryComponent(serverType, platformContainer);
                 // TODO GH: Manage plugin component call
@@ -179,8 +201,14 @@ public class AutoDiscoveryExecutor implements Runnable, Callable<InventoryReport
                     report.addAddedRoot(platformResource);
                 }
 
-                // Perform auto-discovery PIQL queries now to see if we can auto-detect servers that are currently running.
-                List<ProcessScanResult> scanResults = performProcessScans(processInfos, serverType);
+                RuntimeException scanError = scanErrors.get(serverType);
+                if (scanError != null) {
+                    throw scanError;
+                }
+                List<ProcessScanResult> scanResults = scanResultsByType.get(serverType);
+                if (scanResults == null) {
+                    scanResults = Collections.emptyList();
+                }
 
                 Set<Resource> discoveredServers = this.inventoryManager.executeComponentDiscovery(serverType,
                     component, platformContainer, scanResults);
@@ -216,28 +244,77 @@ public class AutoDiscoveryExecutor implements Runnable, Callable<InventoryReport
         return;
     }
 
-    private List<ProcessScanResult> performProcessScans(List<ProcessInfo> processInfos, ResourceType serverType) {
+    /**
+     * Runs the process scans of the given server types with a single pass over the process table.
+     *
+     * @param processInfos the process table
+     * @param serverTypes the server types whose process scans are to be run
+     * @param scanErrors where the errors of the server types with an invalid process scan are put
+     * @return the process scan results by server type; types whose scans did not match any process may be missing
+     */
+    private Map<ResourceType, List<ProcessScanResult>> performProcessScans(List<ProcessInfo> processInfos,
+        List<ResourceType> serverTypes, Map<ResourceType, RuntimeException> scanErrors) {
+        Map<ResourceType, List<ProcessScanResult>> scanResultsByType = new HashMap<ResourceType,
+            List<ProcessScanResult>>();
         if (processInfos == null || processInfos.isEmpty())
-            return Collections.emptyList();
-        List<ProcessScanResult> scanResults = new ArrayList<ProcessScanResult>();
-        Set<ProcessScan> processScans = serverType.getProcessScans();
-        if (processScans != null && !processScans.isEmpty()) {
-            log.debug("Executing process scans for server type " + serverType + "...");
-            ProcessInfoQuery piq = new ProcessInfoQuery(processInfos);
-            for (ProcessScan processScan : processScans) {
-                List<ProcessInfo> queryResults = piq.query(processScan.getQuery());
-                if ((queryResults != null) && (queryResults.size() > 0)) {
-                    for (ProcessInfo autoDiscoveredProcess : queryResults) {
-                        scanResults.add(new ProcessScanResult(processScan, autoDiscoveredProcess));
-                        if (log.isDebugEnabled()) {
-                            log.debug("Process scan auto-detected potential new server Resource: scan=[" + processScan
-                                + "], discovered-process=[" + autoDiscoveredProcess + "]");
-                        }
+            return scanResultsByType;
+
+        // different scans may have the same query, which is then only run once
+        Map<ResourceType, Map<ProcessScan, CompiledQuery>> queriesByType = new HashMap<ResourceType,
+            Map<ProcessScan, CompiledQuery>>();
+        Set<CompiledQuery> queries = new LinkedHashSet<CompiledQuery>();
+        for (ResourceType serverType : serverTypes) {
+            Set<ProcessScan> processScans = serverType.getProcessScans();
+            if (processScans == null || processScans.isEmpty()) {
+                continue;
+            }
+            try {
+                Map<ProcessScan, CompiledQuery> typeQueries = new HashMap<ProcessScan, CompiledQuery>();
+                for (ProcessScan processScan : processScans) {
+                    typeQueries.put(processScan, compile(processScan.getQuery()));
+                }
+                queriesByType.put(serverType, typeQueries);
+                queries.addAll(typeQueries.values());
+            } catch (RuntimeException e) {
+                scanErrors.put(serverType, e);
+            }
+        }
+        if (queries.isEmpty()) {
+            return scanResultsByType;
+        }
+
+        log.debug("Executing process scans for " + queriesByType.size() + " server types...");
+        long startTime = System.currentTimeMillis();
+        Map<CompiledQuery, List<ProcessInfo>> queryResults = new ProcessInfoQuery(processInfos).query(queries);
+        if (log.isDebugEnabled()) {
+            log.debug("Execution of " + queries.size() + " process scan queries took "
+                + (System.currentTimeMillis() - startTime) + " ms.");
+        }
+
+        for (Map.Entry<ResourceType, Map<ProcessScan, CompiledQuery>> typeQueries : queriesByType.entrySet()) {
+            List<ProcessScanResult> scanResults = new ArrayList<ProcessScanResult>();
+            for (Map.Entry<ProcessScan, CompiledQuery> scanQuery : typeQueries.getValue().entrySet()) {
+                ProcessScan processScan = scanQuery.getKey();
+                for (ProcessInfo autoDiscoveredProcess : queryResults.get(scanQuery.getValue())) {
+                    scanResults.add(new ProcessScanResult(processScan, autoDiscoveredProcess));
+                    if (log.isDebugEnabled()) {
+                        log.debug("Process scan auto-detected potential new server Resource: scan=[" + processScan
+                            + "], discovered-process=[" + autoDiscoveredProcess + "]");
                     }
                 }
             }
+            scanResultsByType.put(typeQueries.getKey(), scanResults);
+        }
+        return scanResultsByType;
+    }
+
+    private CompiledQuery compile(String query) {
+        CompiledQuery compiledQuery = compiledQueries.get(query);
+        if (compiledQuery == null) {
+            compiledQuery = ProcessInfoQuery.compile(query);
+            compiledQueries.put(query, compiledQuery);
         }
-        return scanResults;
+        return compiledQuery;
     }
 
     private boolean verifyComponentCompatibility(ResourceDiscoveryComponent component,
@@ -66,6 +66,16 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
     private final AtomicBoolean sendChangesOnlyReport;
     private static final Random RANDOM = new Random();
 
+    /**
+     * The number of consecutive scheduled checks which must find the same availability before the check interval of a
+     * resource is doubled (up to the max back off factor), e.g. with the default 10 minute service interval a service
+     * is checked every 20 minutes after 100 stable minutes.
+     */
+    static final int BACKOFF_STABLE_CHECKS = 10;
+
+    // 1 means no back off, which is what the one-off executors use
+    private int maxBackoffFactor = 1;
+
     // NOTE: this is probably useless. The concurrency of the availability checks is mainly guarded by the size of the
     // availabilityThreadPoolExecutor in InventoryManager. While this lock object would prevent multiple avail checks
     // from running concurrently even if the size of the above executor was more than 1 (which it isn't), the problem
@@ -83,6 +93,29 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
         this.sendChangesOnlyReport = new AtomicBoolean(false);
     }
 
+    /**
+     * Lets the availability checks of resources whose availability has been stable for a while back off, to at most
+     * the given factor of their configured interval. They go back to their configured interval as soon as their
+     * availability, or their parent's, changes or an availability check is requested for them.
+     *
+     * @param maxBackoffFactor the maximum factor, 1 to always check resources at their configured interval
+     */
+    public void setMaxBackoffFactor(int maxBackoffFactor) {
+        this.maxBackoffFactor = Math.max(1, maxBackoffFactor);
+    }
+
+    /**
+     * @param stableChecks the number of consecutive scheduled checks which found the same availability
+     * @return the factor to multiply the check interval by
+     */
+    int getBackoffFactor(int stableChecks) {
+        int factor = 1;
+        for (int i = stableChecks / BACKOFF_STABLE_CHECKS; i > 0 && factor < maxBackoffFactor; i--) {
+            factor *= 2;
+        }
+        return Math.min(factor, maxBackoffFactor);
+    }
+
     public void run() {
         try {
             synchronized (lock) {
@@ -239,6 +272,7 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
 
         // See if this resource is scheduled for an avail check
         boolean checkAvail = false;
+        boolean scheduledCheck = false;
         boolean deferToParent = false;
         long availabilityScheduleTime = resourceContainer.getAvailabilityScheduleTime();
         MeasurementScheduleRequest availScheduleRequest = resourceContainer.getAvailabilitySchedule();
@@ -246,6 +280,9 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
         // if no avail check is scheduled or we're forcing the check, schedule the next check. Note that a forcedCheck
         // is "off-schedule" so we need to push out the next check.
         if ((0 == availabilityScheduleTime) || isForced) {
+            // an off-schedule check starts over at the configured interval
+            resourceContainer.resetAvailabilityStableChecks();
+
             // if there is no availability schedule (platform) then just perform the avail check
             // (note, platforms always return UP anyway).
             if (null == availScheduleRequest) {
@@ -288,6 +325,7 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
                 long interval = availScheduleRequest.getInterval(); // intervals are short enough for safe cast
                 resourceContainer.setAvailabilityScheduleTime(scan.startTime + interval);
                 ++scan.numPushedByInterval;
+                scheduledCheck = true;
             } else {
                 if (traceEnabled) {
                     LOG.trace("Scheduled time has not been reached for " + resource);
@@ -367,6 +405,20 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
         // Update the resource container only if the avail has changed.
         boolean availChanged = (UNKNOWN != current && current != previousType);
 
+        // back off the checks of resources whose avail has been stable for a while, i.e. push the next check out to a
+        // multiple of the interval; any change brings them back to the configured interval
+        if (availChanged) {
+            resourceContainer.resetAvailabilityStableChecks();
+        } else if (scheduledCheck && !deferToParent && maxBackoffFactor > 1) {
+            int factor = getBackoffFactor(resourceContainer.incrementAvailabilityStableChecks());
+            if (factor > 1) {
+                long interval = availScheduleRequest.getInterval();
+                resourceContainer.setAvailabilityScheduleTime(scan.startTime + (interval * factor));
+                // the checks the configured interval would have made before the next one
+                scan.numSavedByBackoff += factor - 1;
+            }
+        }
+
         if (availChanged || scan.isFull) {
             Availability availability;
 
@@ -492,6 +544,7 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
         int numPushedByInterval = 0;
         int numAvailabilityChanges = 0;
         int numDeferToParent = 0;
+        int numSavedByBackoff = 0;
 
         public Scan(long startTime, boolean isFull) {
             this.startTime = startTime;
@@ -551,13 +604,21 @@ public class AvailabilityExecutor implements Runnable, Callable<AvailabilityRepo
             return numDeferToParent;
         }
 
+        /**
+         * @return the number of availability checks saved by backing off the checks of stable resources in this
+         *         scan, i.e. the checks their configured interval would have made before their next check
+         */
+        public int getNumSavedByBackoff() {
+            return numSavedByBackoff;
+        }
+
         @Override
         public String toString() {
             return "Scan [startTime=" + startTime + ", endTime=" + endTime + ", runtime=" + runtime + ", isFull="
                 + isFull + ", isForced=" + isForced + ", numResources=" + numResources + ", numGetAvailabilityCalls="
                 + numGetAvailabilityCalls + ", numScheduledRandomly=" + numScheduledRandomly + ", numPushedByInterval="
                 + numPushedByInterval + ", numAvailabilityChanges=" + numAvailabilityChanges + ", numDeferToParent="
-                + numDeferToParent + "]";
+                + numDeferToParent + ", numSavedByBackoff=" + numSavedByBackoff + "]";
         }
     }
 }
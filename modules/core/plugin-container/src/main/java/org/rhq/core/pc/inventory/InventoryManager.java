@@ -264,6 +264,7 @@ public class InventoryManager extends AgentService implements ContainerService,
         measurementManager = new MeasurementManager(configuration, getStreamRemoter(), this);
         contentManager = new ContentManager(configuration, getStreamRemoter(), this);
         availabilityExecutor = new AvailabilityExecutor(this);
+        availabilityExecutor.setMaxBackoffFactor(configuration.getAvailabilityMaxBackoffFactor());
         serviceScanExecutor = new RuntimeDiscoveryExecutor(this, configuration);
         serverScanExecutor = new AutoDiscoveryExecutor(null, this);
         discoveryComponentProxyFactory = new DiscoveryComponentProxyFactory(pluginFactory);
@@ -903,6 +904,7 @@ public class InventoryManager extends AgentService implements ContainerService,
             // the next availability scan.  (note, do not set to 0, that has special semantics that will actually
             // push the avail check out one cycle.
             resourceContainer.setAvailabilityScheduleTime(1L);
+            resourceContainer.resetAvailabilityStableChecks();
         }
 
         if (recursive && null != resource.getChildResources()) {
@@ -125,6 +125,8 @@ public class ResourceContainer implements Serializable {
     private transient long currentAvailStart;
     // the time at which this resource is up for an avail check. 0 indicates unscheduled.
     private transient long availabilityScheduleTime;
+    // the number of consecutive scheduled avail checks which found the same avail, see AvailabilityExecutor
+    private transient int availabilityStableChecks;
     private transient AvailabilityProxy availabilityProxy;
 
     /**
@@ -310,6 +312,7 @@ public class ResourceContainer implements Serializable {
             // when the schedule is (re)set just 0 out the schedule time and it will get rescheduled on the
             // next avail execution.
             this.availabilityScheduleTime = 0;
+            this.availabilityStableChecks = 0;
         }
     }
 
@@ -324,6 +327,22 @@ public class ResourceContainer implements Serializable {
         this.availabilityScheduleTime = availabilityScheduleTime;
     }
 
+    /**
+     * Counts one more scheduled avail check which found the same avail as the previous one.
+     *
+     * @return the number of consecutive scheduled avail checks which found the same avail
+     */
+    public synchronized int incrementAvailabilityStableChecks() {
+        return ++this.availabilityStableChecks;
+    }
+
+    /**
+     * Makes the avail checks of this resource go back to their configured interval, e.g. after an avail change.
+     */
+    public synchronized void resetAvailabilityStableChecks() {
+        this.availabilityStableChecks = 0;
+    }
+
     /**
      * Submits a task to perform an availability check asynchronously.
      * NOTE: this is package scoped so the avail proxy can call it and submit itself as a task to the containers thread pool.
@@ -22,26 +22,37 @@ package org.rhq.core.pc.measurement;
 import java.util.ArrayDeque;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import org.rhq.core.clientapi.agent.PluginContainerException;
 import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementDataTrait;
 import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.measurement.calltime.CallTimeData;
 import org.rhq.core.domain.resource.Resource;
 import org.rhq.core.pc.inventory.InventoryManager;
 import org.rhq.core.pc.inventory.ResourceContainer;
-import org.rhq.core.pc.util.ComponentUtil;
 import org.rhq.core.pc.util.FacetLockType;
+import org.rhq.core.pluginapi.inventory.ResourceComponent;
+import org.rhq.core.pluginapi.measurement.ChildMeasurementFacet;
 import org.rhq.core.pluginapi.measurement.MeasurementFacet;
 import org.rhq.core.util.exception.ThrowableUtil;
 
 /**
 * Executes the collection of measurements. Every call results in one new batch of measurements collected. Each batch is
-* limited to a single resource and the measurements that are due to be collected at that time.
+* limited to a single resource and the measurements that are due to be collected at that time, unless the parent of the
+* resource implements {@link ChildMeasurementFacet}, in which case the batch includes the due measurements of all the
+* children of that parent.
 *
 * @author Greg Hinkle
 */
@@ -99,10 +110,14 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
                         log.debug("Measurements not collected for inactive resource component: "
                             + container.getResource());
                     }
+                } else if (isChildMeasurementParent(container)) {
+                    if (log.isDebugEnabled()) {
+                        scheduleHistory.addRequests(requests);
+                    }
+
+                    getValuesWithSiblings(report, requests, container);
                 } else {
-                    MeasurementFacet measurementComponent = ComponentUtil
-                        .getComponent(resourceId, MeasurementFacet.class, FacetLockType.READ,
-                            MeasurementManager.FACET_METHOD_TIMEOUT, true, true, true);
+                    MeasurementFacet measurementComponent = getComponent(container, MeasurementFacet.class);
 
                     if (log.isDebugEnabled()) {
                         scheduleHistory.addRequests(requests);
@@ -124,6 +139,155 @@ public class MeasurementCollectorRunner implements Callable<MeasurementReport>,
         return report;
     }
 
+    /**
+     * @return true if the parent component of the resource collects the metrics of its children, see
+     *         {@link ChildMeasurementFacet}
+     */
+    private boolean isChildMeasurementParent(ResourceContainer container) {
+        Resource parent = container.getResource().getParentResource();
+        if (parent == null) {
+            return false;
+        }
+        ResourceContainer parentContainer = this.measurementManager.getInventoryManager().getResourceContainer(parent);
+        return parentContainer != null
+            && parentContainer.getResourceComponentState() == ResourceContainer.ResourceComponentState.STARTED
+            && parentContainer.getResourceComponent() instanceof ChildMeasurementFacet;
+    }
+
+    /**
+     * Collects the due requests of the resource along with the due requests of its siblings, with a single call to the
+     * {@link ChildMeasurementFacet} of their parent. The siblings the parent does not collect are collected through
+     * their own {@link MeasurementFacet}. The requests of the siblings are rescheduled here, those of the resource are
+     * left to the caller.
+     */
+    private void getValuesWithSiblings(MeasurementReport report, Set<ScheduledMeasurementInfo> requests,
+        ResourceContainer container) {
+        InventoryManager im = this.measurementManager.getInventoryManager();
+        Resource resource = container.getResource();
+        Resource parent = resource.getParentResource();
+
+        Set<Integer> siblingIds = new HashSet<Integer>();
+        for (Resource sibling : im.getContainerChildren(parent)) {
+            if (sibling.getId() != resource.getId()) {
+                siblingIds.add(sibling.getId());
+            }
+        }
+        Map<Integer, Set<ScheduledMeasurementInfo>> dueSets = this.measurementManager.getDueScheduledSets(siblingIds);
+        rescheduleLateCollections(dueSets);
+        dueSets.put(resource.getId(), requests);
+
+        try {
+            Map<ResourceComponent<?>, Set<MeasurementScheduleRequest>> childRequests;
+            childRequests = new HashMap<ResourceComponent<?>, Set<MeasurementScheduleRequest>>();
+            Map<ResourceComponent<?>, ResourceContainer> childContainers;
+            childContainers = new HashMap<ResourceComponent<?>, ResourceContainer>();
+            for (Map.Entry<Integer, Set<ScheduledMeasurementInfo>> entry : dueSets.entrySet()) {
+                ResourceContainer childContainer = im.getResourceContainer(entry.getKey());
+                // same rule as for a single resource, don't collect metrics for resources that are down
+                if (childContainer == null
+                    || childContainer.getResourceComponentState() != ResourceContainer.ResourceComponentState.STARTED
+                    || childContainer.getAvailability() == null
+                    || childContainer.getAvailability().getAvailabilityType() == AvailabilityType.DOWN) {
+                    continue;
+                }
+                ResourceComponent<?> childComponent = childContainer.getResourceComponent();
+                childRequests.put(childComponent,
+                    Collections.<MeasurementScheduleRequest> unmodifiableSet(entry.getValue()));
+                childContainers.put(childComponent, childContainer);
+            }
+
+            Map<ResourceComponent<?>, MeasurementReport> childReports = null;
+            if (!childRequests.isEmpty()) {
+                long start = System.currentTimeMillis();
+                try {
+                    ChildMeasurementFacet parentComponent = getComponent(im.getResourceContainer(parent),
+                        ChildMeasurementFacet.class);
+                    childReports = parentComponent.getChildValues(childRequests);
+                } catch (Throwable t) {
+                    log.warn("Failure to collect measurement data of the children of " + parent
+                        + ", collecting them one by one - cause: " + ThrowableUtil.getAllMessages(t));
+                }
+                long duration = (System.currentTimeMillis() - start);
+                if (duration > 2000L || log.isTraceEnabled()) {
+                    log.info("[PERF] Collection of measurements for [" + childRequests.size() + "] children of ["
+                        + parent + "] took [" + duration + "]ms");
+                }
+            }
+
+            for (Map.Entry<ResourceComponent<?>, Set<MeasurementScheduleRequest>> entry : childRequests.entrySet()) {
+                MeasurementReport childReport = (childReports != null) ? childReports.get(entry.getKey()) : null;
+                if (childReport != null) {
+                    addData(report, childReport);
+                    continue;
+                }
+                ResourceContainer childContainer = childContainers.get(entry.getKey());
+                Resource child = childContainer.getResource();
+                try {
+                    MeasurementFacet measurementComponent = getComponent(childContainer, MeasurementFacet.class);
+                    getValues(measurementComponent, report, entry.getValue(), child);
+                } catch (Throwable t) {
+                    this.measurementManager.incrementFailedCollections(entry.getValue().size());
+                    log.warn("Failure to collect measurement data for " + child + " - cause: "
+                        + ThrowableUtil.getAllMessages(t));
+                }
+            }
+        } finally {
+            dueSets.remove(resource.getId());
+            for (Set<ScheduledMeasurementInfo> dueSet : dueSets.values()) {
+                this.measurementManager.reschedule(dueSet);
+            }
+        }
+    }
+
+    /**
+     * Takes the requests that are late by more than 30s out of the given due sets and reschedules them for the future,
+     * as done for the set of the resource in {@link #call()}. Sets left empty are removed.
+     */
+    private void rescheduleLateCollections(Map<Integer, Set<ScheduledMeasurementInfo>> dueSets) {
+        long lateTime = System.currentTimeMillis() - 30000L;
+        Set<ScheduledMeasurementInfo> lateRequests = new HashSet<ScheduledMeasurementInfo>();
+        for (Iterator<Set<ScheduledMeasurementInfo>> i = dueSets.values().iterator(); i.hasNext();) {
+            Set<ScheduledMeasurementInfo> dueSet = i.next();
+            for (Iterator<ScheduledMeasurementInfo> j = dueSet.iterator(); j.hasNext();) {
+                ScheduledMeasurementInfo request = j.next();
+                if (lateTime > request.getNextCollection()) {
+                    lateRequests.add(request);
+                    j.remove();
+                }
+            }
+            if (dueSet.isEmpty()) {
+                i.remove();
+            }
+        }
+
+        if (!lateRequests.isEmpty()) {
+            this.measurementManager.incrementLateCollections(lateRequests.size());
+            if (log.isDebugEnabled()) {
+                log.debug("Measurement collection is falling behind... Rescheduling [" + lateRequests.size()
+                    + "] late requests of siblings");
+            }
+            this.measurementManager.rescheduleLateCollections(lateRequests);
+        }
+    }
+
+    private static void addData(MeasurementReport report, MeasurementReport childReport) {
+        for (MeasurementDataNumeric data : childReport.getNumericData()) {
+            report.addData(data);
+        }
+        for (MeasurementDataTrait data : childReport.getTraitData()) {
+            report.addData(data);
+        }
+        for (CallTimeData data : childReport.getCallTimeData()) {
+            report.addData(data);
+        }
+    }
+
+    private static <T> T getComponent(ResourceContainer container, Class<T> facetInterface)
+        throws PluginContainerException {
+        return container.createResourceComponentProxy(facetInterface, FacetLockType.READ,
+            MeasurementManager.FACET_METHOD_TIMEOUT, true, true, true);
+    }
+
     private void getValues(MeasurementFacet measurementComponent, MeasurementReport report,
         Set<? extends MeasurementScheduleRequest> requests, Resource resource) {
         try {
@@ -20,11 +20,13 @@
 package org.rhq.core.pc.measurement;
 
 import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Random;
@@ -540,6 +542,44 @@ public class MeasurementManager extends AgentService implements MeasurementAgent
         return nextScheduledSet;
     }
 
+    /**
+     * Takes the requests of the given resources which are due for collection out of the schedule, so that they can be
+     * collected along with the requests of a sibling resource (see
+     * {@link org.rhq.core.pluginapi.measurement.ChildMeasurementFacet}). Like the set returned by
+     * {@link #getNextScheduledSet()}, they must be {@link #reschedule(Set) rescheduled} once collected.
+     *
+     * @param resourceIds the ids of the resources
+     * @return the due requests, by resource id; resources with no due request are missing
+     */
+    synchronized Map<Integer, Set<ScheduledMeasurementInfo>> getDueScheduledSets(Set<Integer> resourceIds) {
+        Map<Integer, Set<ScheduledMeasurementInfo>> dueSets = new HashMap<Integer, Set<ScheduledMeasurementInfo>>();
+        if (resourceIds.isEmpty()) {
+            return dueSets;
+        }
+
+        // the due requests are at the head of the queue, set aside those of other resources while going through them
+        long now = System.currentTimeMillis();
+        List<ScheduledMeasurementInfo> others = new ArrayList<ScheduledMeasurementInfo>();
+        ScheduledMeasurementInfo next = this.scheduledRequests.peek();
+        while ((next != null) && (next.getNextCollection() <= now)) {
+            this.scheduledRequests.poll();
+            if (resourceIds.contains(next.getResourceId())) {
+                Set<ScheduledMeasurementInfo> dueSet = dueSets.get(next.getResourceId());
+                if (dueSet == null) {
+                    dueSet = new HashSet<ScheduledMeasurementInfo>();
+                    dueSets.put(next.getResourceId(), dueSet);
+                }
+                dueSet.add(next);
+            } else {
+                others.add(next);
+            }
+            next = this.scheduledRequests.peek();
+        }
+        this.scheduledRequests.addAll(others);
+
+        return dueSets;
+    }
+
     /**
      * Reschedules the given measurement schedules so the next collection occurs in the future.
      * The next collection will be pushed out by the number of seconds of the schedule's collection
@@ -0,0 +1,145 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.inventory;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+import static org.rhq.core.domain.measurement.AvailabilityType.DOWN;
+import static org.rhq.core.domain.measurement.AvailabilityType.UP;
+import static org.testng.Assert.assertEquals;
+
+import java.util.Collections;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.discovery.AvailabilityReport;
+import org.rhq.core.domain.measurement.Availability;
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.resource.InventoryStatus;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.pc.inventory.AvailabilityExecutor.Scan;
+import org.rhq.core.pc.inventory.ResourceContainer.ResourceComponentState;
+import org.rhq.core.pc.inventory.ResourceContainer.SynchronizationState;
+import org.rhq.core.pluginapi.availability.AvailabilityFacet;
+
+/**
+ * Unit test for the back off of the availability checks of stable resources in {@link AvailabilityExecutor}.
+ */
+@Test
+public class AvailabilityBackoffTest {
+
+    public void testBackoffFactor() {
+        AvailabilityExecutor executor = new AvailabilityExecutor(null);
+        assertEquals(executor.getBackoffFactor(100), 1, "Back off should be disabled by default");
+
+        executor.setMaxBackoffFactor(4);
+        int stable = AvailabilityExecutor.BACKOFF_STABLE_CHECKS;
+        assertEquals(executor.getBackoffFactor(0), 1);
+        assertEquals(executor.getBackoffFactor(stable - 1), 1);
+        assertEquals(executor.getBackoffFactor(stable), 2);
+        assertEquals(executor.getBackoffFactor(2 * stable), 4);
+        assertEquals(executor.getBackoffFactor(100 * stable), 4, "The factor should not exceed the max");
+
+        executor.setMaxBackoffFactor(3);
+        assertEquals(executor.getBackoffFactor(2 * stable), 3);
+
+        executor.setMaxBackoffFactor(0);
+        assertEquals(executor.getBackoffFactor(2 * stable), 1);
+    }
+
+    public void testStableChecks() {
+        ResourceContainer container = new ResourceContainer(new Resource(), null);
+        assertEquals(container.incrementAvailabilityStableChecks(), 1);
+        assertEquals(container.incrementAvailabilityStableChecks(), 2);
+
+        container.resetAvailabilityStableChecks();
+        assertEquals(container.incrementAvailabilityStableChecks(), 1);
+
+        container.setAvailabilitySchedule(null);
+        assertEquals(container.incrementAvailabilityStableChecks(), 1, "A new schedule should reset the back off");
+    }
+
+    public void testAvailabilityChangeResetsInterval() throws Exception {
+        final long interval = 60000L;
+        final Resource resource = new Resource();
+        resource.setId(1);
+        resource.setInventoryStatus(InventoryStatus.COMMITTED);
+
+        AvailabilityFacet availabilityProxy = mock(AvailabilityFacet.class);
+        when(availabilityProxy.getAvailability()).thenReturn(UP);
+        ResourceContainer container = spy(new ResourceContainer(resource, null));
+        doReturn(availabilityProxy).when(container).getAvailabilityProxy();
+        container.setSynchronizationState(SynchronizationState.SYNCHRONIZED);
+        container.setResourceComponentState(ResourceComponentState.STARTED);
+        container.setAvailabilitySchedule(new MeasurementScheduleRequest(1, "rhq.availability", interval, true,
+            DataType.AVAILABILITY));
+
+        // the inventory manager remembers the last availability, which is UP to begin with
+        final Availability[] lastAvailability = { new Availability(resource, UP) };
+        InventoryManager inventoryManager = mock(InventoryManager.class);
+        when(inventoryManager.getResourceContainer(1)).thenReturn(container);
+        when(inventoryManager.getAvailabilityIfKnown(resource)).thenAnswer(new Answer<Availability>() {
+            public Availability answer(InvocationOnMock invocation) {
+                return lastAvailability[0];
+            }
+        });
+        when(inventoryManager.updateAvailability(any(Resource.class), any(AvailabilityType.class))).thenAnswer(
+            new Answer<Availability>() {
+                public Availability answer(InvocationOnMock invocation) {
+                    lastAvailability[0] = new Availability(resource, (AvailabilityType) invocation.getArguments()[1]);
+                    return lastAvailability[0];
+                }
+            });
+        when(inventoryManager.getContainerChildren(resource, container)).thenReturn(Collections.<Resource> emptySet());
+
+        AvailabilityExecutor executor = new AvailabilityExecutor(inventoryManager);
+        executor.setMaxBackoffFactor(4);
+
+        // the stable checks are scheduled at the configured interval until they back off
+        long time = 1000000L;
+        container.setAvailabilityScheduleTime(time);
+        for (int i = 1; i < AvailabilityExecutor.BACKOFF_STABLE_CHECKS; i++) {
+            check(executor, resource, time);
+            assertEquals(container.getAvailabilityScheduleTime(), time + interval);
+            time += interval;
+        }
+        check(executor, resource, time);
+        assertEquals(container.getAvailabilityScheduleTime(), time + 2 * interval, "The check should back off");
+        time += 2 * interval;
+
+        // a change brings the checks back to the configured interval
+        when(availabilityProxy.getAvailability()).thenReturn(DOWN);
+        check(executor, resource, time);
+        assertEquals(lastAvailability[0].getAvailabilityType(), DOWN);
+        assertEquals(container.getAvailabilityScheduleTime(), time + interval,
+            "An availability change should reset the interval");
+    }
+
+    private void check(AvailabilityExecutor executor, Resource resource, long time) throws Exception {
+        executor.checkInventory(resource, new AvailabilityReport("agent"), UP, false, new Scan(time, false), false);
+    }
+}
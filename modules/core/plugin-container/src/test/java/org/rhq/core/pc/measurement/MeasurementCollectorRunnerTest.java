@@ -0,0 +1,312 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.core.pc.measurement;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.AvailabilityType;
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementDataNumeric;
+import org.rhq.core.domain.measurement.MeasurementReport;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.pc.PluginContainerConfiguration;
+import org.rhq.core.pc.inventory.InventoryManager;
+import org.rhq.core.pc.inventory.ResourceContainer;
+import org.rhq.core.pc.inventory.ResourceContainer.ResourceComponentState;
+import org.rhq.core.pc.util.FacetLockType;
+import org.rhq.core.pluginapi.inventory.ResourceComponent;
+import org.rhq.core.pluginapi.inventory.ResourceContext;
+import org.rhq.core.pluginapi.measurement.ChildMeasurementFacet;
+import org.rhq.core.pluginapi.measurement.MeasurementFacet;
+
+/**
+ * Unit test for the collection of the metrics of sibling resources by their parent's {@link ChildMeasurementFacet}.
+ */
+@Test
+public class MeasurementCollectorRunnerTest {
+
+    private static final long INTERVAL = 60000L;
+
+    // the values collected by the parent and by the children themselves
+    private static final Double PARENT_VALUE = 1.0;
+    private static final Double CHILD_VALUE = 2.0;
+
+    private PluginContainerConfiguration configuration;
+    private InventoryManager inventoryManager;
+    private MeasurementManager measurementManager;
+
+    private Resource parent;
+    private TestParentComponent parentComponent;
+    private Set<Resource> children;
+    private Map<Integer, TestChildComponent> childComponents;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        configuration = new PluginContainerConfiguration();
+        configuration.setInsideAgent(false);
+        configuration.setMeasurementCollectionInitialDelay(0);
+        inventoryManager = mock(InventoryManager.class);
+        measurementManager = new MeasurementManager(configuration, null, inventoryManager);
+
+        parent = newResource(1, null);
+        parentComponent = new TestParentComponent();
+        ResourceContainer parentContainer = newContainer(parent, parentComponent);
+        when(inventoryManager.getResourceContainer(parent)).thenReturn(parentContainer);
+
+        children = new HashSet<Resource>();
+        childComponents = new HashMap<Integer, TestChildComponent>();
+        for (int id = 2; id <= 4; id++) {
+            Resource child = newResource(id, parent);
+            TestChildComponent childComponent = new TestChildComponent();
+            newContainer(child, childComponent);
+            children.add(child);
+            childComponents.put(id, childComponent);
+        }
+        when(inventoryManager.getContainerChildren(parent)).thenReturn(children);
+    }
+
+    public void testGetDueScheduledSets() {
+        schedule(2, 3, 5);
+        configuration.setMeasurementCollectionInitialDelay(3600);
+        schedule(6);
+
+        Map<Integer, Set<ScheduledMeasurementInfo>> dueSets = measurementManager.getDueScheduledSets(ids(2, 3, 6));
+        assertEquals(dueSets.keySet(), ids(2, 3), "Only the due requests of the given resources should be taken");
+        assertEquals(dueSets.get(2).iterator().next().getScheduleId(), 20);
+
+        Set<ScheduledMeasurementInfo> next = measurementManager.getNextScheduledSet();
+        assertEquals(next.iterator().next().getResourceId(), 5, "The requests of other resources should be kept");
+        assertNull(measurementManager.getNextScheduledSet(), "The requests that are not due should be kept");
+
+        assertTrue(measurementManager.getDueScheduledSets(Collections.<Integer> emptySet()).isEmpty());
+    }
+
+    public void testChildValues() {
+        schedule(2, 3, 4);
+        parentComponent.collected = ids(2, 3);
+
+        MeasurementReport report = new MeasurementCollectorRunner(measurementManager).call();
+
+        assertEquals(parentComponent.calls.size(), 1, "The parent should have been called once for all the children");
+        assertEquals(parentComponent.calls.get(0), ids(2, 3, 4));
+        assertEquals(getValues(report), values(PARENT_VALUE, PARENT_VALUE, CHILD_VALUE),
+            "The child left out by the parent should have been collected by itself");
+        assertEquals(childComponents.get(4).calls, 1);
+        assertRescheduled(2, 3, 4);
+    }
+
+    public void testChildValuesFailure() {
+        schedule(2, 3, 4);
+        parentComponent.failure = new Exception("Connection lost");
+
+        MeasurementReport report = new MeasurementCollectorRunner(measurementManager).call();
+
+        assertEquals(parentComponent.calls.size(), 1);
+        assertEquals(getValues(report), values(CHILD_VALUE, CHILD_VALUE, CHILD_VALUE),
+            "All the children should have been collected one by one");
+        assertRescheduled(2, 3, 4);
+    }
+
+    public void testChildDown() throws Exception {
+        // the child that is up comes first
+        configuration.setMeasurementCollectionInitialDelay(-1);
+        schedule(2);
+        configuration.setMeasurementCollectionInitialDelay(0);
+        schedule(3, 4);
+        parentComponent.collected = ids(2, 3, 4);
+        inventoryManager.getResourceContainer(3).updateAvailability(AvailabilityType.DOWN);
+
+        MeasurementReport report = new MeasurementCollectorRunner(measurementManager).call();
+
+        assertEquals(parentComponent.calls.get(0).size(), 2, "A child that is down should not be collected");
+        assertEquals(getValues(report).keySet(), ids(20, 40));
+        assertRescheduled(2, 3, 4);
+    }
+
+    public void testLateSiblingsRescheduled() {
+        schedule(2);
+        parentComponent.collected = ids(2, 3, 4);
+
+        // the siblings fall behind while the first request is taken, they are late by a minute when they are taken
+        when(inventoryManager.getContainerChildren(parent)).thenAnswer(new Answer<Set<Resource>>() {
+            public Set<Resource> answer(InvocationOnMock invocation) {
+                configuration.setMeasurementCollectionInitialDelay(-60);
+                schedule(3, 4);
+                return children;
+            }
+        });
+
+        long start = System.currentTimeMillis();
+        MeasurementReport report = new MeasurementCollectorRunner(measurementManager).call();
+
+        assertEquals(parentComponent.calls.get(0), ids(2), "The late siblings should not have been collected");
+        assertEquals(getValues(report).keySet(), ids(20));
+        assertEquals(measurementManager.getLateCollections(), 2);
+
+        assertEquals(measurementManager.getCurrentlyScheduleMeasurements(), 3);
+        assertTrue(measurementManager.getNextExpectedCollectionTime() >= start + 30000L,
+            "The late requests should have been pushed out");
+    }
+
+    private void schedule(int... resourceIds) {
+        for (int resourceId : resourceIds) {
+            Set<MeasurementScheduleRequest> requests = new HashSet<MeasurementScheduleRequest>();
+            requests.add(new MeasurementScheduleRequest(resourceId * 10, "metric" + resourceId, INTERVAL, true,
+                DataType.MEASUREMENT));
+            measurementManager.scheduleCollection(resourceId, requests);
+        }
+    }
+
+    private void assertRescheduled(int... resourceIds) {
+        assertNull(measurementManager.getNextScheduledSet(), "No request should be due anymore");
+        assertEquals(measurementManager.getCurrentlyScheduleMeasurements(), resourceIds.length);
+        for (int resourceId : resourceIds) {
+            assertNotNull(measurementManager.getMeasurementScheduleInfoForResource(resourceId),
+                "The requests of " + resourceId + " should have been rescheduled");
+        }
+    }
+
+    private Resource newResource(int id, Resource parentResource) {
+        Resource resource = new Resource();
+        resource.setId(id);
+        resource.setUuid("uuid-" + id);
+        resource.setParentResource(parentResource);
+        return resource;
+    }
+
+    private ResourceContainer newContainer(Resource resource, ResourceComponent<?> component) throws Exception {
+        ResourceContainer container = spy(new ResourceContainer(resource, null));
+        container.setResourceComponent(component);
+        container.setResourceComponentState(ResourceComponentState.STARTED);
+        container.updateAvailability(AvailabilityType.UP);
+        doReturn(component).when(container).createResourceComponentProxy(any(Class.class),
+            any(FacetLockType.class), anyLong(), anyBoolean(), anyBoolean(), anyBoolean());
+        when(inventoryManager.getResourceContainer(resource.getId())).thenReturn(container);
+        return container;
+    }
+
+    private Map<Integer, Double> getValues(MeasurementReport report) {
+        Map<Integer, Double> values = new HashMap<Integer, Double>();
+        for (MeasurementDataNumeric data : report.getNumericData()) {
+            values.put(data.getScheduleId(), data.getValue());
+        }
+        return values;
+    }
+
+    private Map<Integer, Double> values(Double value2, Double value3, Double value4) {
+        Map<Integer, Double> values = new HashMap<Integer, Double>();
+        values.put(20, value2);
+        values.put(30, value3);
+        values.put(40, value4);
+        return values;
+    }
+
+    private static Set<Integer> ids(int... ids) {
+        Set<Integer> set = new HashSet<Integer>();
+        for (int id : ids) {
+            set.add(id);
+        }
+        return set;
+    }
+
+    private static class TestComponent implements ResourceComponent<ResourceComponent<?>> {
+        public void start(ResourceContext<ResourceComponent<?>> context) {
+        }
+
+        public void stop() {
+        }
+
+        public AvailabilityType getAvailability() {
+            return AvailabilityType.UP;
+        }
+    }
+
+    private class TestChildComponent extends TestComponent implements MeasurementFacet {
+        private int calls;
+
+        public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> requests) {
+            calls++;
+            for (MeasurementScheduleRequest request : requests) {
+                report.addData(new MeasurementDataNumeric(request, CHILD_VALUE));
+            }
+        }
+    }
+
+    private class TestParentComponent extends TestComponent implements ChildMeasurementFacet {
+        private Set<Integer> collected = Collections.emptySet();
+        private Exception failure;
+        private List<Set<Integer>> calls = new ArrayList<Set<Integer>>();
+
+        public Map<ResourceComponent<?>, MeasurementReport> getChildValues(
+            Map<ResourceComponent<?>, Set<MeasurementScheduleRequest>> requests) throws Exception {
+            Set<Integer> childIds = new HashSet<Integer>();
+            Map<ResourceComponent<?>, MeasurementReport> reports = new HashMap<ResourceComponent<?>, MeasurementReport>();
+            for (Map.Entry<ResourceComponent<?>, Set<MeasurementScheduleRequest>> entry : requests.entrySet()) {
+                int childId = getChildId(entry.getKey());
+                childIds.add(childId);
+                if (collected.contains(childId)) {
+                    MeasurementReport report = new MeasurementReport();
+                    for (MeasurementScheduleRequest request : entry.getValue()) {
+                        report.addData(new MeasurementDataNumeric(request, PARENT_VALUE));
+                    }
+                    reports.put(entry.getKey(), report);
+                }
+            }
+            calls.add(childIds);
+            if (failure != null) {
+                throw failure;
+            }
+            return reports;
+        }
+
+        private int getChildId(ResourceComponent<?> component) {
+            for (Map.Entry<Integer, TestChildComponent> entry : childComponents.entrySet()) {
+                if (entry.getValue() == component) {
+                    return entry.getKey();
+                }
+            }
+            throw new IllegalArgumentException("Unknown child component " + component);
+        }
+    }
+}
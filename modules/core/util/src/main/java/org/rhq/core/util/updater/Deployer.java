@@ -49,6 +49,7 @@ import org.rhq.core.util.MessageDigestGenerator;
 import org.rhq.core.util.ZipUtil;
 import org.rhq.core.util.ZipUtil.ZipEntryVisitor;
 import org.rhq.core.util.file.FileUtil;
+import org.rhq.core.util.progresswatch.ProgressWatcher;
 import org.rhq.core.util.stream.StreamCopyDigest;
 import org.rhq.core.util.stream.StreamUtil;
 
@@ -96,10 +97,18 @@ import org.rhq.core.util.stream.StreamUtil;
  * @author John Mazzitelli
  */
 public class Deployer {
+    /**
+     * System property that defines how many zip entries are extracted/hashed concurrently.
+     * If not set, this defaults to the number of available processors (up to a maximum of 4).
+     */
+    public static final String ZIP_THREADS_SYSPROP = "rhq.deployer.zip-threads";
+
     private final Log log = LogFactory.getLog(Deployer.class);
 
     private final DeploymentData deploymentData;
     private final DeploymentsMetadata deploymentsMetadata;
+    private final int zipThreads;
+    private ProgressWatcher progressWatcher;
 
     /**
      * Constructors that prepares this object to deploy content to a destination on the local file system.
@@ -113,9 +122,21 @@ public class Deployer {
 
         this.deploymentData = deploymentData;
         this.deploymentsMetadata = new DeploymentsMetadata(deploymentData.getDestinationDir());
+        this.zipThreads = Integer.getInteger(ZIP_THREADS_SYSPROP,
+            Math.min(4, Runtime.getRuntime().availableProcessors())).intValue();
         return;
     }
 
+    /**
+     * If set, the given watcher will be told about the work performed while extracting and hashing
+     * the zip file entries of the deployment. The watcher must already have been started.
+     *
+     * @param progressWatcher the watcher to report progress to (may be <code>null</code>)
+     */
+    public void setProgressWatcher(ProgressWatcher progressWatcher) {
+        this.progressWatcher = progressWatcher;
+    }
+
     /**
      * @return information about the particular deployment that this deployer will install.
      */
@@ -788,7 +809,7 @@ public class Deployer {
         int sourceDirLength = sourceDirAbsPath.length();
 
         // extract all zip files
-        ExtractorZipFileVisitor visitor;
+        ParallelZipFileExtractor extractor;
         for (Map.Entry<File, File> zipFileEntry : this.deploymentData.getZipFilesMap().entrySet()) {
             File zipFile = zipFileEntry.getKey();
 
@@ -822,16 +843,18 @@ public class Deployer {
             if (exploded.booleanValue()) {
                 // EXPLODED
 
-                visitor = new ExtractorZipFileVisitor(destinationDir, realizeRegex,
-                    this.deploymentData.getTemplateEngine(), currentFilesToLeaveAlone.keySet(), diff, dryRun);
-                ZipUtil.walkZipFile(zipFile, visitor);
+                extractor = new ParallelZipFileExtractor(zipFile, destinationDir, realizeRegex,
+                    this.deploymentData.getTemplateEngine(), currentFilesToLeaveAlone.keySet(), diff, dryRun,
+                    this.zipThreads);
+                extractor.setProgressWatcher(this.progressWatcher);
+                FileHashcodeMap extractedMap = extractor.extract();
                 // exploded into individual files
                 if (null == zipDestinationDir) {
-                    newFileHashCodeMap.putAll(visitor.getFileHashcodeMap());
+                    newFileHashCodeMap.putAll(extractedMap);
                 } else {
-                    FileHashcodeMap visitorMap = visitor.getFileHashcodeMap();
-                    for (String file : visitorMap.keySet()) {
-                        newFileHashCodeMap.put(new File(destinationDir, file).getAbsolutePath(), visitorMap.get(file));
+                    for (Map.Entry<String, String> extracted : extractedMap.entrySet()) {
+                        newFileHashCodeMap.put(new File(destinationDir, extracted.getKey()).getAbsolutePath(),
+                            extracted.getValue());
                     }
                 }
 
@@ -857,13 +880,14 @@ public class Deployer {
                 if (this.deploymentData.getTemplateEngine() != null && realizeRegex != null) {
                     // we need to explode it to perform the realization of templatized variables
                     // TODO: can we do this in another tmp location and build the zip in the dest dir?
-                    visitor = new ExtractorZipFileVisitor(this.deploymentData.getDestinationDir(), realizeRegex,
-                        this.deploymentData.getTemplateEngine(), currentFilesToLeaveAlone.keySet(), diff, dryRun);
-                    ZipUtil.walkZipFile(zipFile, visitor);
+                    extractor = new ParallelZipFileExtractor(zipFile, this.deploymentData.getDestinationDir(),
+                        realizeRegex, this.deploymentData.getTemplateEngine(), currentFilesToLeaveAlone.keySet(),
+                        diff, dryRun, this.zipThreads);
+                    extractor.setProgressWatcher(this.progressWatcher);
+                    FileHashcodeMap extractedMap = extractor.extract();
                     // we have to compress the file again - our new compressed file will have the new realized files in them
                     if (!dryRun) {
-                        createZipFile(compressedFile, this.deploymentData.getDestinationDir(),
-                            visitor.getFileHashcodeMap());
+                        createZipFile(compressedFile, this.deploymentData.getDestinationDir(), extractedMap);
                     }
                 }
 
@@ -1060,16 +1084,17 @@ public class Deployer {
         FileHashcodeMap fileHashcodeMap = new FileHashcodeMap();
 
         // perform in-memory extraction and calculate hashcodes for all zip files
-        InMemoryZipFileVisitor visitor;
+        ParallelZipFileExtractor extractor;
         for (File zipFile : this.deploymentData.getZipFilesMap().keySet()) {
             debug("Extracting zip [", zipFile, "] in-memory to determine hashcodes for all entries");
             Pattern realizeRegex = null;
             if (this.deploymentData.getZipEntriesToRealizeRegex() != null) {
                 realizeRegex = this.deploymentData.getZipEntriesToRealizeRegex().get(zipFile);
             }
-            visitor = new InMemoryZipFileVisitor(realizeRegex, this.deploymentData.getTemplateEngine());
-            ZipUtil.walkZipFile(zipFile, visitor);
-            fileHashcodeMap.putAll(visitor.getFileHashcodeMap());
+            extractor = new ParallelZipFileExtractor(zipFile, realizeRegex, this.deploymentData.getTemplateEngine(),
+                this.zipThreads);
+            extractor.setProgressWatcher(this.progressWatcher);
+            fileHashcodeMap.putAll(extractor.extract());
         }
 
         MessageDigestGenerator generator = new MessageDigestGenerator();
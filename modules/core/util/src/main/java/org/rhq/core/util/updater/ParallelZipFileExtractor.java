@@ -0,0 +1,303 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+
+package org.rhq.core.util.updater;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.rhq.core.template.TemplateEngine;
+import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.progresswatch.ProgressWatcher;
+import org.rhq.core.util.stream.StreamCopyDigest;
+import org.rhq.core.util.stream.StreamUtil;
+
+/**
+ * Extracts and/or calculates the hashcodes of all file entries found in a zip file, processing several
+ * entries concurrently.
+ *
+ * Unlike {@link ExtractorZipFileVisitor} and {@link InMemoryZipFileVisitor}, which are driven by a sequential
+ * {@link java.util.zip.ZipInputStream} walk, this reads the zip's central directory via {@link ZipFile} and then
+ * hands each file entry to a worker thread that opens its own random-access stream to the entry. Each entry is
+ * read exactly once - its content is written to disk (if extracting) and digested in the same pass.
+ *
+ * If this extractor is not given a root directory, it will not write anything to the file system; it will only
+ * calculate the hashcodes of the entries (realizing them in-memory if need be), which is the equivalent of
+ * walking the zip with an {@link InMemoryZipFileVisitor}. Otherwise, this is the equivalent of walking the zip
+ * with an {@link ExtractorZipFileVisitor}.
+ */
+public class ParallelZipFileExtractor {
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger(0);
+
+    private final File zipFile;
+    private final File rootDir;
+    private final Pattern filesToRealizeRegex;
+    private final TemplateEngine templateEngine;
+    private final Set<String> filesToNotExtract;
+    private final DeployDifferences diff;
+    private final boolean dryRun;
+    private final int threads;
+    private ProgressWatcher progressWatcher;
+
+    /**
+     * Creates an extractor that only calculates the hashcodes of the zip entries; nothing is written to disk.
+     *
+     * @param zipFile the zip file whose entries are to be processed
+     * @param filesToRealizeRegex pattern of files that are to be realized prior to hashcodes being computed
+     * @param templateEngine the template engine that replaces replacement variables in files to be realized
+     * @param threads the maximum number of entries that will be processed concurrently
+     */
+    public ParallelZipFileExtractor(File zipFile, Pattern filesToRealizeRegex, TemplateEngine templateEngine,
+        int threads) {
+        this(zipFile, null, filesToRealizeRegex, templateEngine, null, null, true, threads);
+    }
+
+    /**
+     * Creates the extractor. When the extractor hits a zip entry whose name matches
+     * filesToRealizeRegex, that zip entry will be realized via the template engine prior
+     * to its hashcode being computed and its file created.
+     * If you just want this extractor to extract the zip file without realizing any files, pass in
+     * a null pattern or pass in a null template engine.
+     *
+     * @param zipFile the zip file whose entries are to be processed
+     * @param rootDir the top level directory where all zip file entries will be extracted to. If <code>null</code>,
+     *                nothing will be extracted, only hashcodes will be calculated.
+     * @param filesToRealizeRegex pattern of files that are to be realized prior to hashcodes being computed
+     * @param templateEngine the template engine that replaces replacement variables in files to be realized
+     * @param filesToNotExtract set of files that are not to be extracted from the zip and stored; these are to be skipped
+     * @param diff optional object that is told when files are realized
+     * @param dryRun if <code>true</code>, this won't actually write files to the filesystem
+     * @param threads the maximum number of entries that will be processed concurrently
+     */
+    public ParallelZipFileExtractor(File zipFile, File rootDir, Pattern filesToRealizeRegex,
+        TemplateEngine templateEngine, Set<String> filesToNotExtract, DeployDifferences diff, boolean dryRun,
+        int threads) {
+
+        if (zipFile == null) {
+            throw new IllegalArgumentException("zipFile == null");
+        }
+
+        if (filesToRealizeRegex == null || templateEngine == null) {
+            filesToRealizeRegex = null;
+            templateEngine = null;
+        }
+
+        if (filesToNotExtract != null && filesToNotExtract.size() == 0) {
+            filesToNotExtract = null;
+        }
+
+        this.zipFile = zipFile;
+        this.rootDir = rootDir;
+        this.filesToRealizeRegex = filesToRealizeRegex;
+        this.templateEngine = templateEngine;
+        this.filesToNotExtract = filesToNotExtract;
+        this.diff = diff;
+        this.dryRun = (rootDir == null) || dryRun;
+        this.threads = (threads > 0) ? threads : 1;
+    }
+
+    /**
+     * If set, the given watcher will have work added to it for each file entry found in the zip and that work
+     * will be finished as each entry is processed. The watcher must already have been started.
+     *
+     * @param progressWatcher the watcher to report progress to (may be <code>null</code>)
+     */
+    public void setProgressWatcher(ProgressWatcher progressWatcher) {
+        this.progressWatcher = progressWatcher;
+    }
+
+    /**
+     * Processes all the entries in the zip file.
+     *
+     * @return map containing filenames (zip file entry names) and their hashcodes
+     * @throws Exception if any entry failed to be processed
+     */
+    public FileHashcodeMap extract() throws Exception {
+        final ZipFile zip = new ZipFile(this.zipFile);
+        try {
+            List<ZipEntry> fileEntries = readCentralDirectory(zip);
+
+            if (this.progressWatcher != null) {
+                this.progressWatcher.addWork(fileEntries.size());
+            }
+
+            FileHashcodeMap fileHashcodeMap = new FileHashcodeMap();
+
+            if (this.threads == 1 || fileEntries.size() <= 1) {
+                for (ZipEntry entry : fileEntries) {
+                    fileHashcodeMap.put(entry.getName(), processEntry(zip, entry));
+                }
+                return fileHashcodeMap;
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.threads, fileEntries.size()),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "ParallelZipFileExtractor-" + THREAD_COUNTER.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+            try {
+                List<Future<String>> futures = new ArrayList<Future<String>>(fileEntries.size());
+                for (final ZipEntry entry : fileEntries) {
+                    futures.add(executor.submit(new Callable<String>() {
+                        public String call() throws Exception {
+                            return processEntry(zip, entry);
+                        }
+                    }));
+                }
+
+                for (int i = 0; i < futures.size(); i++) {
+                    String hashcode;
+                    try {
+                        hashcode = futures.get(i).get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof Exception) {
+                            throw (Exception) cause;
+                        }
+                        throw e;
+                    }
+                    fileHashcodeMap.put(fileEntries.get(i).getName(), hashcode);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+
+            return fileHashcodeMap;
+        } finally {
+            zip.close();
+        }
+    }
+
+    /**
+     * Reads the central directory of the zip, returning the file entries that need to be processed.
+     * Directories (both explicit directory entries and the parent directories of file entries) are created
+     * here, serially, so the worker threads never race each other creating the same directories.
+     */
+    private List<ZipEntry> readCentralDirectory(ZipFile zip) {
+        List<ZipEntry> fileEntries = new ArrayList<ZipEntry>(zip.size());
+        Set<String> createdDirs = new HashSet<String>();
+
+        for (Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements();) {
+            ZipEntry entry = entries.nextElement();
+            String pathname = entry.getName();
+
+            if (this.filesToNotExtract != null && this.filesToNotExtract.contains(pathname)) {
+                continue;
+            }
+
+            if (entry.isDirectory()) {
+                if (!this.dryRun) {
+                    new File(this.rootDir, pathname).mkdirs();
+                }
+                continue;
+            }
+
+            if (!this.dryRun) {
+                File parentDir = new File(this.rootDir, pathname).getParentFile();
+                if (createdDirs.add(parentDir.getPath())) {
+                    parentDir.mkdirs();
+                }
+            }
+
+            fileEntries.add(entry);
+        }
+
+        return fileEntries;
+    }
+
+    private String processEntry(ZipFile zip, ZipEntry entry) throws Exception {
+        String pathname = entry.getName();
+        String hashcode;
+
+        InputStream stream = zip.getInputStream(entry);
+        try {
+            if (this.filesToRealizeRegex != null && this.filesToRealizeRegex.matcher(pathname).matches()) {
+                // this entry needs to be realized, do it now
+                // note: tempateEngine will never be null if we got here
+                int contentSize = (int) entry.getSize();
+                ByteArrayOutputStream baos = new ByteArrayOutputStream((contentSize > 0) ? contentSize : 32768);
+                StreamUtil.copy(stream, baos, false);
+                String content = this.templateEngine.replaceTokens(baos.toString());
+                baos = null;
+                if (this.diff != null) {
+                    synchronized (this.diff) {
+                        this.diff.addRealizedFile(pathname, content);
+                    }
+                }
+
+                byte[] bytes = content.getBytes();
+
+                if (!this.dryRun) {
+                    FileOutputStream fos = new FileOutputStream(new File(this.rootDir, pathname));
+                    try {
+                        fos.write(bytes);
+                    } finally {
+                        fos.close();
+                    }
+                }
+
+                MessageDigestGenerator hashcodeGenerator = new MessageDigestGenerator();
+                hashcodeGenerator.add(bytes);
+                hashcode = hashcodeGenerator.getDigestString();
+            } else if (!this.dryRun) {
+                FileOutputStream fos = new FileOutputStream(new File(this.rootDir, pathname));
+                try {
+                    hashcode = new StreamCopyDigest().copyAndCalculateHashcode(stream, fos);
+                } finally {
+                    fos.close();
+                }
+            } else {
+                hashcode = MessageDigestGenerator.getDigestString(stream);
+            }
+        } finally {
+            stream.close();
+        }
+
+        if (this.progressWatcher != null) {
+            this.progressWatcher.finishWork(1);
+        }
+
+        return hashcode;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+
+package org.rhq.core.util.updater;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import org.rhq.core.template.TemplateEngine;
+import org.rhq.core.util.MessageDigestGenerator;
+import org.rhq.core.util.ZipUtil;
+import org.rhq.core.util.file.FileUtil;
+import org.rhq.core.util.progresswatch.ProgressWatcher;
+
+@Test
+public class ParallelZipFileExtractorTest {
+
+    private static final String fileSeparator = "/";
+
+    private TemplateEngine templateEngine;
+
+    @BeforeClass
+    public void beforeClass() {
+        Map<String, String> tokens = new HashMap<String, String>();
+        tokens.put("rhq.system.hostname", "localhost");
+        tokens.put("rhq.system.sysprop.java.version", System.getProperty("java.version"));
+
+        templateEngine = new TemplateEngine(tokens);
+    }
+
+    public void testInMemoryMatchesVisitor() throws Exception {
+        File testZipFile = new File("target/test-classes/updater-test2.zip");
+        Pattern filesToRealizeRegex = Pattern.compile("(fileA)|(dir1.fileB)");
+
+        InMemoryZipFileVisitor visitor = new InMemoryZipFileVisitor(filesToRealizeRegex, templateEngine);
+        ZipUtil.walkZipFile(testZipFile, visitor);
+
+        ProgressWatcher progressWatcher = new ProgressWatcher();
+        progressWatcher.start();
+        ParallelZipFileExtractor extractor = new ParallelZipFileExtractor(testZipFile, filesToRealizeRegex,
+            templateEngine, 4);
+        extractor.setProgressWatcher(progressWatcher);
+        FileHashcodeMap map = extractor.extract();
+
+        assert map.size() == 7 : map;
+        assert map.equals(visitor.getFileHashcodeMap()) : map + " != " + visitor.getFileHashcodeMap();
+        assert progressWatcher.getPercentComplete() == 100 : progressWatcher.getPercentComplete();
+    }
+
+    public void testExtractMatchesVisitor() throws Exception {
+        extract(false);
+    }
+
+    public void testExtractDryRun() throws Exception {
+        extract(true);
+    }
+
+    private void extract(boolean dryRun) throws Exception {
+        File visitorDir = FileUtil.createTempDirectory("testParallelExtractVisitor", ".dir", null);
+        File tmpDir = FileUtil.createTempDirectory("testParallelExtract", ".dir", null);
+        try {
+            File testZipFile = new File("target/test-classes/updater-test2.zip");
+            Pattern filesToRealizeRegex = Pattern.compile("(fileA)|(dir1.fileB)");
+
+            ExtractorZipFileVisitor visitor = new ExtractorZipFileVisitor(visitorDir, filesToRealizeRegex,
+                templateEngine, null, null, dryRun);
+            ZipUtil.walkZipFile(testZipFile, visitor);
+
+            DeployDifferences diff = new DeployDifferences();
+            ParallelZipFileExtractor extractor = new ParallelZipFileExtractor(testZipFile, tmpDir,
+                filesToRealizeRegex, templateEngine, null, diff, dryRun, 4);
+            FileHashcodeMap map = extractor.extract();
+
+            assert map.equals(visitor.getFileHashcodeMap()) : map + " != " + visitor.getFileHashcodeMap();
+            assert diff.getRealizedFiles().size() == 2 : diff;
+            assert diff.getRealizedFiles().containsKey("fileA") : diff;
+            assert diff.getRealizedFiles().containsKey("dir1" + fileSeparator + "fileB") : diff;
+
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                File f = new File(tmpDir, entry.getKey());
+                assert f.exists() == !dryRun : f;
+                assert dryRun || MessageDigestGenerator.getDigestString(f).equals(entry.getValue()) : f;
+            }
+        } finally {
+            FileUtil.purge(visitorDir, true);
+            FileUtil.purge(tmpDir, true);
+        }
+    }
+
+    public void testExtractAndSkip() throws Exception {
+        File tmpDir = FileUtil.createTempDirectory("testParallelExtract", ".dir", null);
+        try {
+            File testZipFile = new File("target/test-classes/updater-test2.zip");
+
+            Set<String> skip = new HashSet<String>();
+            skip.add("dir2" + fileSeparator + "file3");
+            skip.add("dir3" + fileSeparator + "dir4" + fileSeparator + "file4");
+            skip.add("fileA");
+            skip.add("dir1" + fileSeparator + "fileB");
+            skip.add("dir2" + fileSeparator + "fileC");
+            ParallelZipFileExtractor extractor = new ParallelZipFileExtractor(testZipFile, tmpDir, null,
+                templateEngine, skip, null, false, 4);
+            FileHashcodeMap map = extractor.extract();
+            assert map.size() == 2 : map + ": all but 2 files in test jar should be skipped";
+            for (String f : skip) {
+                assert !new File(tmpDir, f).exists() : f;
+            }
+        } finally {
+            FileUtil.purge(tmpDir, true);
+        }
+    }
+}
@@ -1170,6 +1170,9 @@ public class AgentConfiguration {
         int avail_scan_threadpool_size = m_preferences.getInt(
             AgentConfigurationConstants.PLUGINS_AVAILABILITY_SCAN_THREADPOOL_SIZE,
             AgentConfigurationConstants.DEFAULT_PLUGINS_AVAILABILITY_SCAN_THREADPOOL_SIZE);
+        int avail_scan_max_backoff_factor = m_preferences.getInt(
+            AgentConfigurationConstants.PLUGINS_AVAILABILITY_SCAN_MAX_BACKOFF_FACTOR,
+            AgentConfigurationConstants.DEFAULT_PLUGINS_AVAILABILITY_SCAN_MAX_BACKOFF_FACTOR);
 
         // get the initial delay before measurement collections begin
         long meas_scan_initial_delay = m_preferences.getLong(
@@ -1294,6 +1297,7 @@ public class AgentConfiguration {
         config.setAvailabilityScanInitialDelay(avail_scan_initial_delay);
         config.setAvailabilityScanPeriod(avail_scan_period);
         config.setAvailabilityScanThreadPoolSize(avail_scan_threadpool_size);
+        config.setAvailabilityMaxBackoffFactor(avail_scan_max_backoff_factor);
         config.setMeasurementCollectionThreadPoolSize(meas_threadpool_size);
         config.setMeasurementCollectionInitialDelay(meas_scan_initial_delay);
         config.setDriftDetectionInitialDelay(drift_initial_delay);
@@ -669,6 +669,18 @@ public interface AgentConfigurationConstants {
      */
     int DEFAULT_PLUGINS_AVAILABILITY_SCAN_THREADPOOL_SIZE = PluginContainerConfiguration.AVAILABILITY_SCAN_THREADPOOL_SIZE_DEFAULT;
 
+    /**
+     * Defines the maximum factor the availability check interval of a resource whose availability has been stable for
+     * a while is multiplied by. 1 disables the back off.
+     */
+    String PLUGINS_AVAILABILITY_SCAN_MAX_BACKOFF_FACTOR = PROPERTY_NAME_PREFIX
+        + "plugins.availability-scan.max-backoff-factor";
+
+    /**
+     * The default maximum back off factor of availability checks.
+     */
+    int DEFAULT_PLUGINS_AVAILABILITY_SCAN_MAX_BACKOFF_FACTOR = PluginContainerConfiguration.AVAILABILITY_MAX_BACKOFF_FACTOR_DEFAULT;
+
     /**
      * If defined, this is to be the size of the measurement collection thread pool. If not defined, the plugin
      * container should default to something it considers appropriate.
@@ -31,10 +31,14 @@ import java.io.ObjectOutputStream;
 import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.ejb.EJBException;
@@ -233,6 +237,39 @@ public class DiscoveryBossBeanTest extends AbstractEJB3Test {
         assertNotNull(results.getPlatformSyncInfo());
     }
 
+    @Test(groups = "integration.ejb3")
+    public void testMergeInventoryReportAddsAncestors() throws Exception {
+        InventoryReport inventoryReport = new InventoryReport(agent);
+        Resource platform = new Resource(prefix("alpha"), prefix("platform"), platformType);
+        Resource server = new Resource(prefix("bravo"), prefix("server"), serverType);
+        platform.addChildResource(server);
+        Resource service1 = new Resource(prefix("charlie"), prefix("service 1"), serviceType1);
+        server.addChildResource(service1);
+
+        platform.setUuid(String.valueOf(new Random().nextInt()));
+        server.setUuid(String.valueOf(new Random().nextInt()));
+        service1.setUuid(String.valueOf(new Random().nextInt()));
+
+        inventoryReport.addAddedRoot(platform);
+
+        MergeInventoryReportResults results = discoveryBoss.mergeInventoryReport(serialize(inventoryReport));
+        assertNotNull(results.getPlatformSyncInfo());
+        assertEquals(3, assertAncestorsMatchParents());
+
+        // a new service below the existing server, merged as an update
+        platform.setId(results.getPlatformSyncInfo().getPlatform().getId());
+        server.setId(results.getPlatformSyncInfo().getTopLevelServerIds().iterator().next());
+        Resource service2 = new Resource(prefix("delta"), prefix("service 2"), serviceType2);
+        service2.setUuid(String.valueOf(new Random().nextInt()));
+        server.addChildResource(service2);
+
+        inventoryReport = new InventoryReport(agent);
+        inventoryReport.addAddedRoot(server);
+        results = discoveryBoss.mergeInventoryReport(serialize(inventoryReport));
+        assertNotNull(results.getPlatformSyncInfo());
+        assertEquals(4, assertAncestorsMatchParents());
+    }
+
     // given test interaction there could be ignored types, make sure they are not relevant to these tests
     private boolean checkIgnoredTypes(MergeInventoryReportResults results) {
         return checkIgnoredTypes(results, 0);
@@ -703,6 +740,43 @@ public class DiscoveryBossBeanTest extends AbstractEJB3Test {
         }
     }
 
+    /**
+     * Checks that the closure of the resource hierarchy holds the ancestors given by the parent references, for all
+     * the resources of the agent.
+     *
+     * @return the number of resources of the agent
+     */
+    private int assertAncestorsMatchParents() {
+        Map<Integer, Integer> parentIds = new HashMap<Integer, Integer>();
+        for (Object row : getEntityManager().createNativeQuery(
+            "SELECT ID, PARENT_RESOURCE_ID FROM RHQ_RESOURCE WHERE AGENT_ID = " + agent.getId()).getResultList()) {
+            Object[] columns = (Object[]) row;
+            parentIds.put(((Number) columns[0]).intValue(),
+                (columns[1] != null) ? ((Number) columns[1]).intValue() : null);
+        }
+
+        Set<String> expected = new HashSet<String>();
+        for (Integer resourceId : parentIds.keySet()) {
+            int depth = 0;
+            for (Integer ancestorId = resourceId; ancestorId != null; ancestorId = parentIds.get(ancestorId)) {
+                expected.add(ancestorId + "/" + resourceId + "/" + depth++);
+            }
+        }
+
+        Set<String> actual = new HashSet<String>();
+        for (Object row : getEntityManager().createNativeQuery(
+            "SELECT ra.ANCESTOR_ID, ra.DESCENDANT_ID, ra.DEPTH FROM RHQ_RESOURCE_ANCESTOR ra "
+                + "JOIN RHQ_RESOURCE res ON res.ID = ra.DESCENDANT_ID WHERE res.AGENT_ID = " + agent.getId())
+            .getResultList()) {
+            Object[] columns = (Object[]) row;
+            actual.add(((Number) columns[0]).intValue() + "/" + ((Number) columns[1]).intValue() + "/"
+                + ((Number) columns[2]).intValue());
+        }
+
+        assertEquals("The ancestors should match the parent references", expected, actual);
+        return parentIds.size();
+    }
+
     private StorageNode findStorageNode(Resource resource) {
         List<StorageNode> storageNodes = em
             .createQuery("SELECT s FROM StorageNode s where s.resource = :resource", StorageNode.class)
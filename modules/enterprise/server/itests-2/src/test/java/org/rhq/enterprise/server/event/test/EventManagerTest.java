@@ -36,6 +36,7 @@ import org.rhq.core.domain.authz.Role;
 import org.rhq.core.domain.common.EntityContext;
 import org.rhq.core.domain.criteria.EventCriteria;
 import org.rhq.core.domain.event.Event;
+import org.rhq.core.domain.event.EventCount;
 import org.rhq.core.domain.event.EventDefinition;
 import org.rhq.core.domain.event.EventSeverity;
 import org.rhq.core.domain.event.EventSource;
@@ -322,6 +323,58 @@ public class EventManagerTest extends AbstractEJB3Test {
         });
     }
 
+    @Test
+    public void testEventCountsFromCounters() {
+        executeInTransaction(new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                Resource resource = SessionTestHelper.createNewResource(em, "fake resource");
+                EventDefinition eventDefinition = createEventDefinition(resource);
+                em.persist(eventDefinition);
+                em.flush();
+                EventSource eventSource = createEventSource(eventDefinition, resource);
+
+                // two whole hours, answered from the counters, followed by a partial hour answered from the events
+                long begin = EventCount.getRollupTimeBucket(System.currentTimeMillis())
+                    - 2 * EventCount.ROLLUP_BUCKET_SIZE;
+                long end = begin + 2 * EventCount.ROLLUP_BUCKET_SIZE + EventCount.ROLLUP_BUCKET_SIZE / 2;
+                Set<Event> events = newEventSet();
+                for (int i = 0; i < 3; i++) {
+                    events.add(createEvent(eventSource, EventSeverity.WARN, begin + 60000L + i));
+                }
+                for (int i = 0; i < 2; i++) {
+                    events.add(createEvent(eventSource, EventSeverity.ERROR,
+                        begin + EventCount.ROLLUP_BUCKET_SIZE + 60000L + i));
+                }
+                events.add(createEvent(eventSource, EventSeverity.INFO, end - 1000L));
+                eventManager.addEventData(newEventMap(eventSource, events));
+
+                Subject overlord = subjectManager.getOverlord();
+                Map<EventSeverity, Integer> eventCountsBySeverity = eventManager.getEventCountsBySeverity(overlord,
+                    resource.getId(), begin, end);
+                assertEquals(3, eventCountsBySeverity.keySet().size());
+                assertEquals(3, eventCountsBySeverity.get(EventSeverity.WARN).intValue());
+                assertEquals(2, eventCountsBySeverity.get(EventSeverity.ERROR).intValue());
+                assertEquals(1, eventCountsBySeverity.get(EventSeverity.INFO).intValue());
+
+                int[] buckets = eventManager.getEventCounts(overlord, resource.getId(), begin, end, 5);
+                assertEquals(3, buckets[0]);
+                assertEquals(0, buckets[1]);
+                assertEquals(2, buckets[2]);
+                assertEquals(0, buckets[3]);
+                assertEquals(1, buckets[4]);
+
+                EventSeverity[] severityBuckets = eventManager.getSeverityBucketsByContext(overlord,
+                    EntityContext.forResource(resource.getId()), begin, end, 5);
+                assertEquals(EventSeverity.WARN, severityBuckets[0]);
+                assertNull(severityBuckets[1]);
+                assertEquals(EventSeverity.ERROR, severityBuckets[2]);
+                assertNull(severityBuckets[3]);
+                assertEquals(EventSeverity.INFO, severityBuckets[4]);
+            }
+        });
+    }
+
     @Test
     public void testFindEventsByCriteria() {
         executeInTransaction(new TransactionCallback() {
@@ -374,6 +427,11 @@ public class EventManagerTest extends AbstractEJB3Test {
             "fake event detail", eventSource);
     }
 
+    private Event createEvent(EventSource eventSource, EventSeverity eventSeverity, long timestamp) {
+        return new Event("fake event type", eventSource.getLocation(), timestamp, eventSeverity,
+            "fake event detail", eventSource);
+    }
+
     private Map<EventSource, Set<Event>> newEventMap(EventSource eventSource, Set<Event> events) {
         Map<EventSource, Set<Event>> eventMap = new HashMap<EventSource, Set<Event>>();
         eventMap.put(eventSource, events);
@@ -0,0 +1,257 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.measurement.test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.persistence.Query;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.auth.Subject;
+import org.rhq.core.domain.common.EntityContext;
+import org.rhq.core.domain.criteria.CallTimeDataCriteria;
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.DisplayType;
+import org.rhq.core.domain.measurement.MeasurementCategory;
+import org.rhq.core.domain.measurement.MeasurementDefinition;
+import org.rhq.core.domain.measurement.MeasurementSchedule;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.measurement.MeasurementUnits;
+import org.rhq.core.domain.measurement.calltime.CallTimeData;
+import org.rhq.core.domain.measurement.calltime.CallTimeDataComposite;
+import org.rhq.core.domain.measurement.calltime.CallTimeDataKey;
+import org.rhq.core.domain.resource.Agent;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.core.domain.util.OrderingField;
+import org.rhq.core.domain.util.PageControl;
+import org.rhq.core.domain.util.PageList;
+import org.rhq.core.domain.util.PageOrdering;
+import org.rhq.enterprise.server.measurement.CallTimeDataManagerLocal;
+import org.rhq.enterprise.server.purge.PurgeManagerLocal;
+import org.rhq.enterprise.server.test.AbstractEJB3Test;
+import org.rhq.enterprise.server.test.TransactionCallback;
+import org.rhq.enterprise.server.util.LookupUtil;
+import org.rhq.enterprise.server.util.ResourceTreeHelper;
+
+/**
+ * Compares the call-time data aggregated from the rollups with the data aggregated from the raw values.
+ */
+@Test
+public class CallTimeDataRollupTest extends AbstractEJB3Test {
+
+    private static final long MINUTE = 60L * 1000L;
+    private static final long HOUR = 60L * MINUTE;
+    private static final long DAY = 24L * HOUR;
+
+    private static final String[] DESTINATIONS = { "/a", "/B", "/c" };
+
+    private CallTimeDataManagerLocal callTimeDataManager;
+    private PurgeManagerLocal purgeManager;
+
+    private Subject overlord;
+
+    private Agent theAgent;
+    private ResourceType theResourceType;
+    private MeasurementDefinition definition;
+    private Resource resource;
+    private MeasurementSchedule schedule;
+
+    // the start of a day long enough ago for it to be rolled up
+    private long day;
+
+    @Override
+    protected void beforeMethod() throws Exception {
+        callTimeDataManager = LookupUtil.getCallTimeDataManager();
+        purgeManager = LookupUtil.getPurgeManager();
+        overlord = LookupUtil.getSubjectManager().getOverlord();
+
+        day = ((System.currentTimeMillis() / DAY) - 10) * DAY;
+
+        executeInTransaction(new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                setupResources();
+            }
+        });
+    }
+
+    private void setupResources() {
+        theAgent = new Agent("testagent", "localhost", 1234, "", "randomToken");
+        em.persist(theAgent);
+
+        theResourceType = new ResourceType("test-plat", "test-plugin", ResourceCategory.PLATFORM, null);
+        em.persist(theResourceType);
+
+        definition = new MeasurementDefinition("CT-Rollup", MeasurementCategory.PERFORMANCE,
+            MeasurementUnits.MILLISECONDS, DataType.CALLTIME, true, 60000, DisplayType.SUMMARY);
+        definition.setResourceType(theResourceType);
+        em.persist(definition);
+
+        resource = new Resource("test-platform-key", "test-platform-name", theResourceType);
+        resource.setUuid("" + new Random().nextInt());
+        resource.setAgent(theAgent);
+        em.persist(resource);
+
+        schedule = new MeasurementSchedule(definition, resource);
+        em.persist(schedule);
+        definition.addSchedule(schedule);
+        resource.addSchedule(schedule);
+    }
+
+    @Override
+    protected void afterMethod() throws Exception {
+        // delete values
+        purgeManager.purgeCallTimeData(System.currentTimeMillis());
+
+        executeInTransaction(new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                deleteResources();
+            }
+        });
+    }
+
+    private void deleteResources() {
+        // delete keys, and with them the rollups
+        Query q = em.createNamedQuery(CallTimeDataKey.QUERY_DELETE_BY_RESOURCES);
+        q.setParameter("resourceIds", Arrays.asList(resource.getId()));
+        q.executeUpdate();
+
+        resource = em.merge(resource);
+        for (MeasurementSchedule sched : resource.getSchedules()) {
+            em.remove(sched);
+        }
+        ResourceTreeHelper.deleteResource(em, resource);
+
+        definition = em.merge(definition);
+        em.remove(definition);
+
+        theResourceType = em.merge(theResourceType);
+        em.remove(theResourceType);
+
+        theAgent = em.merge(theAgent);
+        em.remove(theAgent);
+    }
+
+    public void testRollupsMatchRawValues() throws Exception {
+        // from three hours before the day to five hours after the next one, with values ending on the hours
+        Set<CallTimeData> dataSet = new HashSet<CallTimeData>();
+        int duration = 1;
+        for (long time = day - 3 * HOUR; time < day + 2 * DAY + 5 * HOUR; time += 20 * MINUTE) {
+            CallTimeData data = new CallTimeData(new MeasurementScheduleRequest(schedule));
+            for (String destination : DESTINATIONS) {
+                data.addCallData(destination, new Date(time - duration), duration);
+                duration = (duration % 97) + 3;
+            }
+            dataSet.add(data);
+        }
+        callTimeDataManager.addCallTimeData(dataSet);
+
+        purgeManager.rollupCallTimeData(System.currentTimeMillis());
+        assertTrue("The hours should have been rolled up", countRollups("RHQ_CALLTIME_DATA_1H") > 0);
+        assertTrue("The days should have been rolled up", countRollups("RHQ_CALLTIME_DATA_1D") > 0);
+
+        assertRollupsMatchRawValues();
+
+        // a value replayed from the spool of the agent, for an hour and a day that have been rolled up
+        CallTimeData late = new CallTimeData(new MeasurementScheduleRequest(schedule));
+        late.addCallData("/a", new Date(day + 5 * HOUR + 7 * MINUTE), 1000);
+        late.addCallData("/late", new Date(day + 5 * HOUR + 8 * MINUTE), 2000);
+        callTimeDataManager.addCallTimeData(new HashSet<CallTimeData>(Arrays.asList(late)));
+
+        assertRollupsMatchRawValues();
+    }
+
+    private void assertRollupsMatchRawValues() {
+        // the edges of the windows are read from the raw values, the hours and days in between from the rollups
+        long[][] windows = { { day - 150 * MINUTE, day + 2 * DAY + 255 * MINUTE }, // edge hours, days and hours
+            { day, day + DAY }, // one day
+            { day + 150 * MINUTE, day + 9 * HOUR }, // hours only
+            { day + 10 * MINUTE, day + 50 * MINUTE } }; // no whole hour
+        for (long[] window : windows) {
+            assertSameComposites(window, null, null);
+            assertSameComposites(window, "b", null);
+            assertSameComposites(window, "/", new PageControl(1, 2, new OrderingField(
+                "calltimedatavalue.key.callDestination", PageOrdering.DESC)));
+            assertSameComposites(window, null, new PageControl(0, 2, new OrderingField(
+                "SUM(calltimedatavalue.count)", PageOrdering.ASC)));
+        }
+    }
+
+    private void assertSameComposites(long[] window, String destination, PageControl pageControl) {
+        EntityContext context = EntityContext.forResource(resource.getId());
+
+        PageList<CallTimeDataComposite> fromRollups = callTimeDataManager.findCallTimeDataForContext(overlord,
+            context, window[0], window[1], destination, copy(pageControl));
+
+        // filtering by resource id reads the raw values only
+        CallTimeDataCriteria criteria = new CallTimeDataCriteria();
+        criteria.addFilterResourceId(resource.getId());
+        criteria.addFilterBeginTime(window[0]);
+        criteria.addFilterEndTime(window[1]);
+        if (destination != null) {
+            criteria.addFilterDestination(destination);
+        }
+        criteria.setPageControl(copy(pageControl));
+        PageList<CallTimeDataComposite> fromRawValues = callTimeDataManager.findCallTimeDataForContext(overlord,
+            context, criteria);
+
+        String message = "window " + new Date(window[0]) + " - " + new Date(window[1]) + ", destination "
+            + destination + ": ";
+        assertEquals(message + "total size", fromRawValues.getTotalSize(), fromRollups.getTotalSize());
+        assertEquals(message + "page size", fromRawValues.size(), fromRollups.size());
+        // the durations are whole milliseconds, the sums are exact
+        for (int i = 0; i < fromRawValues.size(); i++) {
+            CallTimeDataComposite expected = fromRawValues.get(i);
+            CallTimeDataComposite actual = fromRollups.get(i);
+            String callDestination = expected.getCallDestination();
+            assertEquals(message + "destination", callDestination, actual.getCallDestination());
+            assertEquals(message + callDestination, expected.getMinimum(), actual.getMinimum());
+            assertEquals(message + callDestination, expected.getMaximum(), actual.getMaximum());
+            assertEquals(message + callDestination, expected.getTotal(), actual.getTotal());
+            assertEquals(message + callDestination, expected.getCount(), actual.getCount());
+        }
+    }
+
+    private PageControl copy(PageControl pageControl) {
+        if (pageControl == null) {
+            return new PageControl(0, PageControl.SIZE_UNLIMITED, new OrderingField(
+                "calltimedatavalue.key.callDestination", PageOrdering.ASC));
+        }
+        List<OrderingField> orderingFields = pageControl.getOrderingFields();
+        return new PageControl(pageControl.getPageNumber(), pageControl.getPageSize(),
+            orderingFields.toArray(new OrderingField[orderingFields.size()]));
+    }
+
+    private long countRollups(String table) {
+        Query q = getEntityManager().createNativeQuery(
+            "SELECT COUNT(*) FROM " + table + " r JOIN RHQ_CALLTIME_DATA_KEY k ON k.ID = r.KEY_ID "
+                + "WHERE k.SCHEDULE_ID = " + schedule.getId());
+        return ((Number) q.getSingleResult()).longValue();
+    }
+}
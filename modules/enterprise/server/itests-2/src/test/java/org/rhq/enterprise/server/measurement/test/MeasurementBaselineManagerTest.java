@@ -393,7 +393,7 @@ public class MeasurementBaselineManagerTest extends AbstractEJB3Test {
             assert comps.size() == 1 : "Expected 1 composite, but got " + comps.size();
 
             // Compute some more OOBs
-            oobManager.computeOOBsFromHourBeginingAt(overlord, elder);
+            oobManager.computeOOBsForLastHour(overlord, aggregates);
             q = em.createQuery("SELECT oo FROM MeasurementOOB oo");
             oobs = q.getResultList();
             //    System.out.println("OOBs calculated: \n" + oobs);
@@ -0,0 +1,193 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.measurement.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.persistence.Query;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.DisplayType;
+import org.rhq.core.domain.measurement.MeasurementCategory;
+import org.rhq.core.domain.measurement.MeasurementDefinition;
+import org.rhq.core.domain.measurement.MeasurementOOB;
+import org.rhq.core.domain.measurement.MeasurementSchedule;
+import org.rhq.core.domain.measurement.MeasurementUnits;
+import org.rhq.core.domain.resource.Agent;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.enterprise.server.measurement.MeasurementOOBManagerLocal;
+import org.rhq.enterprise.server.test.AbstractEJB3Test;
+import org.rhq.enterprise.server.test.TransactionCallback;
+import org.rhq.enterprise.server.util.LookupUtil;
+import org.rhq.enterprise.server.util.ResourceTreeHelper;
+
+/**
+ * Tests that saving OOBs only inserts the OOBs of schedules without one, and only updates the ones that changed.
+ */
+@Test
+public class MeasurementOOBSaveTest extends AbstractEJB3Test {
+
+    private static final long HOUR = 60L * 60L * 1000L;
+
+    private MeasurementOOBManagerLocal oobManager;
+
+    private Agent theAgent;
+    private ResourceType theResourceType;
+    private List<MeasurementDefinition> definitions;
+    private Resource resource;
+    private List<MeasurementSchedule> schedules;
+
+    @Override
+    protected void beforeMethod() throws Exception {
+        oobManager = LookupUtil.getOOBManager();
+
+        executeInTransaction(new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                setupResources();
+            }
+        });
+    }
+
+    private void setupResources() {
+        theAgent = new Agent("testagent", "localhost", 1234, "", "randomToken");
+        em.persist(theAgent);
+
+        theResourceType = new ResourceType("test-oob-plat", "test-oob-plugin", ResourceCategory.PLATFORM, null);
+        em.persist(theResourceType);
+
+        resource = new Resource("test-oob-platform-key", "test-oob-platform-name", theResourceType);
+        resource.setUuid("" + new Random().nextInt());
+        resource.setAgent(theAgent);
+        em.persist(resource);
+
+        definitions = new ArrayList<MeasurementDefinition>();
+        schedules = new ArrayList<MeasurementSchedule>();
+        for (int i = 0; i < 3; i++) {
+            MeasurementDefinition definition = new MeasurementDefinition("OOB-Save-" + i,
+                MeasurementCategory.PERFORMANCE, MeasurementUnits.BYTES, DataType.MEASUREMENT, true, 60000,
+                DisplayType.SUMMARY);
+            definition.setResourceType(theResourceType);
+            em.persist(definition);
+            definitions.add(definition);
+
+            MeasurementSchedule schedule = new MeasurementSchedule(definition, resource);
+            em.persist(schedule);
+            definition.addSchedule(schedule);
+            resource.addSchedule(schedule);
+            schedules.add(schedule);
+        }
+    }
+
+    @Override
+    protected void afterMethod() throws Exception {
+        executeInTransaction(new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                deleteResources();
+            }
+        });
+    }
+
+    private void deleteResources() {
+        Query q = em.createNamedQuery(MeasurementOOB.DELETE_FOR_RESOURCES);
+        q.setParameter("resourceIds", Arrays.asList(resource.getId()));
+        q.executeUpdate();
+
+        resource = em.merge(resource);
+        for (MeasurementSchedule sched : resource.getSchedules()) {
+            em.remove(sched);
+        }
+        ResourceTreeHelper.deleteResource(em, resource);
+
+        for (MeasurementDefinition definition : definitions) {
+            em.remove(em.merge(definition));
+        }
+
+        theResourceType = em.merge(theResourceType);
+        em.remove(theResourceType);
+
+        theAgent = em.merge(theAgent);
+        em.remove(theAgent);
+    }
+
+    public void testOnlyNewAndChangedOOBsWritten() throws Exception {
+        int s0 = schedules.get(0).getId();
+        int s1 = schedules.get(1).getId();
+        int s2 = schedules.get(2).getId();
+        long now = (System.currentTimeMillis() / HOUR) * HOUR;
+
+        assertEquals("Both OOBs should have been inserted", 2,
+            oobManager.saveOOBs(Arrays.asList(oob(s0, now - HOUR, 50), oob(s1, now - HOUR, 100))));
+        Map<Integer, String> expected = new HashMap<Integer, String>();
+        expected.put(s0, (now - HOUR) + "/50");
+        expected.put(s1, (now - HOUR) + "/100");
+        assertEquals(expected, getOOBs());
+
+        // s0 is unchanged, s1 is newer and s2 has no OOB yet
+        assertEquals("The unchanged OOB should not have been written", 2,
+            oobManager.saveOOBs(Arrays.asList(oob(s0, now - HOUR, 50), oob(s1, now, 120), oob(s2, now, 30))));
+        expected.put(s1, now + "/120");
+        expected.put(s2, now + "/30");
+        assertEquals(expected, getOOBs());
+
+        // only the factor changes
+        assertEquals(1, oobManager.saveOOBs(Arrays.asList(oob(s0, now - HOUR, 50), oob(s2, now, 40))));
+        expected.put(s2, now + "/40");
+        assertEquals(expected, getOOBs());
+
+        assertEquals("Nothing changed, nothing should have been written", 0,
+            oobManager.saveOOBs(Arrays.asList(oob(s0, now - HOUR, 50), oob(s1, now, 120), oob(s2, now, 40))));
+        assertEquals(expected, getOOBs());
+    }
+
+    private MeasurementOOB oob(int scheduleId, long timestamp, int oobFactor) {
+        MeasurementOOB oob = new MeasurementOOB();
+        oob.setScheduleId(scheduleId);
+        oob.setTimestamp(timestamp);
+        oob.setOobFactor(oobFactor);
+        return oob;
+    }
+
+    /**
+     * @return the timestamp and factor of the stored OOBs, by schedule id
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Integer, String> getOOBs() {
+        Query q = getEntityManager().createNativeQuery(
+            "SELECT o.SCHEDULE_ID, o.TIME_STAMP, o.OOB_FACTOR FROM RHQ_MEASUREMENT_OOB o "
+                + "JOIN RHQ_MEASUREMENT_SCHED s ON s.ID = o.SCHEDULE_ID WHERE s.RESOURCE_ID = " + resource.getId());
+        Map<Integer, String> oobs = new HashMap<Integer, String>();
+        for (Object[] row : (List<Object[]>) q.getResultList()) {
+            oobs.put(((Number) row[0]).intValue(),
+                ((Number) row[1]).longValue() + "/" + ((Number) row[2]).intValue());
+        }
+        return oobs;
+    }
+}
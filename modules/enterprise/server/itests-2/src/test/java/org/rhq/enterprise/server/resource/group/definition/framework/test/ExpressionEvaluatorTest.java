@@ -20,6 +20,7 @@ package org.rhq.enterprise.server.resource.group.definition.framework.test;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
 
 import org.testng.annotations.Test;
@@ -27,6 +28,7 @@ import org.testng.annotations.Test;
 import org.rhq.core.domain.resource.group.DuplicateExpressionTypeException;
 import org.rhq.core.domain.resource.group.InvalidExpressionException;
 import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator;
+import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator.Dependency;
 import org.rhq.enterprise.server.test.AbstractEJB3Test;
 import org.rhq.enterprise.server.util.QueryUtility;
 
@@ -222,6 +224,46 @@ public class ExpressionEvaluatorTest extends AbstractEJB3Test {
         }
     }
 
+    @Test(groups = "integration.session")
+    public void testDependencies() throws Exception {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator();
+        evaluator.setTestMode(true); // to prevent actual query from happening
+        evaluator.addExpression("resource.type.plugin = JBossAS");
+        evaluator.addExpression("groupby resource.trait[jboss.version]");
+        assert evaluator.getDependencies().equals(
+            EnumSet.of(Dependency.INVENTORY_STATUS, Dependency.RESOURCE, Dependency.TRAIT));
+        assert !evaluator.isHierarchical();
+        assert evaluator.hasGroupByExpressions();
+
+        evaluator = new ExpressionEvaluator();
+        evaluator.setTestMode(true);
+        evaluator.addExpression("resource.parent.pluginConfiguration[partition] = cluster-1");
+        evaluator.addExpression("resource.availability = up");
+        assert evaluator.getDependencies().equals(
+            EnumSet.of(Dependency.INVENTORY_STATUS, Dependency.PLUGIN_CONFIGURATION, Dependency.AVAILABILITY));
+        assert evaluator.isHierarchical();
+
+        evaluator = new ExpressionEvaluator();
+        evaluator.setTestMode(true);
+        evaluator.addExpression("memberof = foo");
+        assert evaluator.getDependencies().equals(EnumSet.of(Dependency.INVENTORY_STATUS));
+        assert evaluator.isHierarchical();
+    }
+
+    @Test(groups = "integration.session")
+    public void testResourceIdRestriction() throws Exception {
+        ExpressionEvaluator evaluator = new ExpressionEvaluator();
+        evaluator.setTestMode(true); // to prevent actual query from happening
+        evaluator.addExpression("resource.name = joseph");
+        evaluator.setResourceIdRestriction(Arrays.asList(1, 2));
+        evaluator.execute();
+
+        String expected = "SELECT res.id FROM Resource res " + //
+            "WHERE res.name = :arg1 AND res.id IN ( :restrictedResourceIds )";
+        assert cleanUp(expected).equalsIgnoreCase(cleanUp(evaluator.getComputedJPQLStatement())) : evaluator
+            .getComputedJPQLStatement();
+    }
+
     @Test(groups = "integration.session")
     public void testTokenizer() {
 
@@ -0,0 +1,183 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.resource.group.definition.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.auth.Subject;
+import org.rhq.core.domain.criteria.ResourceGroupCriteria;
+import org.rhq.core.domain.resource.Agent;
+import org.rhq.core.domain.resource.InventoryStatus;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+import org.rhq.core.domain.resource.group.GroupDefinition;
+import org.rhq.core.domain.resource.group.ResourceGroup;
+import org.rhq.enterprise.server.resource.ResourceManagerLocal;
+import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.GroupDefinitionManagerLocal;
+import org.rhq.enterprise.server.test.AbstractEJB3Test;
+import org.rhq.enterprise.server.test.TransactionCallback;
+import org.rhq.enterprise.server.util.LookupUtil;
+import org.rhq.enterprise.server.util.ResourceTreeHelper;
+
+/**
+ * Tests re-evaluating the membership of some resources only, as done after inventory changes.
+ */
+@Test
+public class GroupMembershipForResourcesTest extends AbstractEJB3Test {
+
+    private GroupDefinitionManagerLocal groupDefinitionManager;
+    private ResourceGroupManagerLocal resourceGroupManager;
+    private ResourceManagerLocal resourceManager;
+
+    private Subject overlord;
+
+    private Agent theAgent;
+    private ResourceType theResourceType;
+    private List<Resource> resources;
+    private GroupDefinition groupDefinition;
+
+    @Override
+    protected void beforeMethod() throws Exception {
+        groupDefinitionManager = LookupUtil.getGroupDefinitionManager();
+        resourceGroupManager = LookupUtil.getResourceGroupManager();
+        resourceManager = LookupUtil.getResourceManager();
+        overlord = LookupUtil.getSubjectManager().getOverlord();
+
+        executeInTransaction(new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                setupResources();
+            }
+        });
+
+        groupDefinition = new GroupDefinition("test-membership-for-resources");
+        groupDefinition.setExpression("resource.type.plugin = test-membership-plugin\n"
+            + "resource.name.startswith = member\n" + "groupby resource.version");
+        groupDefinition = groupDefinitionManager.createGroupDefinition(overlord, groupDefinition);
+    }
+
+    private void setupResources() {
+        theAgent = new Agent("testagent", "localhost", 1234, "", "randomToken");
+        em.persist(theAgent);
+
+        theResourceType = new ResourceType("test-membership-plat", "test-membership-plugin",
+            ResourceCategory.PLATFORM, null);
+        em.persist(theResourceType);
+
+        resources = new ArrayList<Resource>();
+        String[] versions = { "1.0", "1.0", "2.0" };
+        for (int i = 0; i < versions.length; i++) {
+            Resource resource = new Resource("member-key-" + i, "member-" + i, theResourceType);
+            resource.setUuid("" + new Random().nextInt());
+            resource.setAgent(theAgent);
+            resource.setVersion(versions[i]);
+            resource.setInventoryStatus(InventoryStatus.COMMITTED);
+            em.persist(resource);
+            resources.add(resource);
+        }
+    }
+
+    @Override
+    protected void afterMethod() throws Exception {
+        if (groupDefinition != null) {
+            groupDefinitionManager.removeGroupDefinition(overlord, groupDefinition.getId());
+        }
+
+        executeInTransaction(new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                for (Resource resource : resources) {
+                    ResourceTreeHelper.deleteResource(em, em.find(Resource.class, resource.getId()));
+                }
+                em.remove(em.find(ResourceType.class, theResourceType.getId()));
+                em.remove(em.find(Agent.class, theAgent.getId()));
+            }
+        });
+    }
+
+    public void testStaleMembersAndEmptyGroupsRemoved() throws Exception {
+        final Resource r0 = resources.get(0);
+        final Resource r1 = resources.get(1);
+        final Resource r2 = resources.get(2);
+
+        groupDefinitionManager.calculateGroupMembership(overlord, groupDefinition.getId());
+        assertEquals(new HashSet<Set<Integer>>(Arrays.asList(ids(r0, r1), ids(r2))), getMemberships());
+
+        // r1 no longer matches, r2 moves from the 2.0 group to the 1.0 group
+        executeInTransaction(new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                em.find(Resource.class, r1.getId()).setName("renamed-1");
+                em.find(Resource.class, r2.getId()).setVersion("1.0");
+            }
+        });
+
+        groupDefinitionManager.calculateGroupMembershipForResources(overlord, groupDefinition.getId(),
+            Arrays.asList(r1.getId(), r2.getId()));
+        assertEquals("The empty 2.0 group should have been deleted, and r1 removed from the 1.0 group",
+            new HashSet<Set<Integer>>(Arrays.asList(ids(r0, r2))), getMemberships());
+
+        // r0 is not evaluated, so it stays even though it no longer matches
+        executeInTransaction(new TransactionCallback() {
+            @Override
+            public void execute() throws Exception {
+                em.find(Resource.class, r0.getId()).setName("renamed-0");
+            }
+        });
+        groupDefinitionManager.calculateGroupMembershipForResources(overlord, groupDefinition.getId(),
+            Arrays.asList(r2.getId()));
+        assertEquals(new HashSet<Set<Integer>>(Arrays.asList(ids(r0, r2))), getMemberships());
+
+        groupDefinitionManager.calculateGroupMembershipForResources(overlord, groupDefinition.getId(),
+            Arrays.asList(r0.getId(), r2.getId()));
+        assertEquals(new HashSet<Set<Integer>>(Arrays.asList(ids(r2))), getMemberships());
+    }
+
+    /**
+     * @return the explicit members of each group managed by the definition
+     */
+    private Set<Set<Integer>> getMemberships() {
+        ResourceGroupCriteria criteria = new ResourceGroupCriteria();
+        criteria.addFilterGroupDefinitionId(groupDefinition.getId());
+        Set<Set<Integer>> memberships = new HashSet<Set<Integer>>();
+        for (ResourceGroup group : resourceGroupManager.findResourceGroupsByCriteria(overlord, criteria)) {
+            memberships.add(new HashSet<Integer>(resourceManager.findExplicitResourceIdsByResourceGroup(group
+                .getId())));
+        }
+        return memberships;
+    }
+
+    private Set<Integer> ids(Resource... members) {
+        Set<Integer> ids = new HashSet<Integer>();
+        for (Resource member : members) {
+            ids.add(member.getId());
+        }
+        return ids;
+    }
+}
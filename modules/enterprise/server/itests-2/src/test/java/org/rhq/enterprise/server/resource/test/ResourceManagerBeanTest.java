@@ -18,9 +18,14 @@
  */
 package org.rhq.enterprise.server.resource.test;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.UUID;
 
 import javax.transaction.NotSupportedException;
@@ -67,6 +72,7 @@ import org.rhq.enterprise.server.resource.group.ResourceGroupNotFoundException;
 import org.rhq.enterprise.server.resource.group.definition.exception.GroupDefinitionNotFoundException;
 import org.rhq.enterprise.server.resource.metadata.test.UpdatePluginMetadataTestBase;
 import org.rhq.enterprise.server.util.LookupUtil;
+import org.rhq.enterprise.server.util.ResourceTreeHelper;
 
 /**
  * Test for {@link ResourceManagerLocal} SLSB.
@@ -170,6 +176,149 @@ public class ResourceManagerBeanTest extends UpdatePluginMetadataTestBase {
         }
     }
 
+    public void testMoveResourceAncestors() throws Exception {
+        int leafResourceId = givenASampleResourceHierarchy();
+        List<Resource> resourceLineage = resourceManager.getResourceLineage(leafResourceId);
+        int platformId = resourceLineage.get(0).getId();
+        int appserverId = resourceLineage.get(1).getId();
+        int jvmId = resourceLineage.get(2).getId();
+
+        // move the jvm, and the memory subsystem with it, from the app server to the platform
+        getTransactionManager().begin();
+        try {
+            Resource jvm = em.find(Resource.class, jvmId);
+            jvm.getParentResource().removeChildResource(jvm);
+            em.find(Resource.class, platformId).addChildResource(jvm);
+            em.flush();
+            resourceManager.moveResourceAncestors(jvmId);
+            getTransactionManager().commit();
+        } catch (Exception e) {
+            getTransactionManager().rollback();
+            throw e;
+        }
+
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        expected.put(leafResourceId, 0);
+        expected.put(jvmId, 1);
+        expected.put(platformId, 2);
+        assertEquals(expected, getAncestorDepths(leafResourceId));
+        expected.clear();
+        expected.put(appserverId, 0);
+        expected.put(platformId, 1);
+        assertEquals("The rows of the old parent should be left alone", expected, getAncestorDepths(appserverId));
+        assertEquals(3, resourceManager.getResourceLineage(leafResourceId).size());
+
+        deleteNewResourceAgentResourceType(resourceLineage.get(3));
+        deleteNewResourceAgentResourceType(resourceLineage.get(2));
+        deleteNewResourceAgentResourceType(resourceLineage.get(1));
+        deleteNewResourceAgentResourceType(resourceLineage.get(0));
+    }
+
+    public void testUninventoryUnlinksAncestors() throws Exception {
+        int leafResourceId = givenASampleResourceHierarchy();
+        List<Resource> resourceLineage = resourceManager.getResourceLineage(leafResourceId);
+        int platformId = resourceLineage.get(0).getId();
+
+        // uninventory the app server, and with it the jvm and the memory subsystem
+        resourceManager.uninventoryResource(getOverlord(), resourceLineage.get(1).getId());
+
+        for (Resource resource : resourceLineage.subList(1, 4)) {
+            assertEquals("Uninventoried resources should only be their own ancestors",
+                Collections.singletonMap(resource.getId(), 0), getAncestorDepths(resource.getId()));
+        }
+        assertEquals(Collections.singletonMap(platformId, 0), getAncestorDepths(platformId));
+
+        // finish the uninventory, then remove the platform
+        getTransactionManager().begin();
+        try {
+            for (int i = resourceLineage.size() - 1; i >= 1; i--) {
+                Resource resource = resourceLineage.get(i);
+                resourceManager.uninventoryResourceAsyncWork(getOverlord(), resource.getId());
+                em.flush();
+                em.remove(em.find(ResourceType.class, resource.getResourceType().getId()));
+                em.flush();
+            }
+            getTransactionManager().commit();
+        } catch (Exception e) {
+            getTransactionManager().rollback();
+            throw e;
+        }
+        deleteNewResourceAgentResourceType(resourceLineage.get(0));
+    }
+
+    public void testCreateResourceAddsAncestors() throws Exception {
+        int leafResourceId = givenASampleResourceHierarchy();
+        List<Resource> resourceLineage = resourceManager.getResourceLineage(leafResourceId);
+
+        Resource leaf = resourceLineage.get(3);
+        Resource child = new Resource("child" + System.currentTimeMillis(), "child", leaf.getResourceType());
+        child.setUuid(UUID.randomUUID().toString());
+        resourceManager.createResource(getOverlord(), child, leafResourceId);
+
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        expected.put(child.getId(), 0);
+        for (int i = 0; i < resourceLineage.size(); i++) {
+            expected.put(resourceLineage.get(i).getId(), resourceLineage.size() - i);
+        }
+        assertEquals(expected, getAncestorDepths(child.getId()));
+        assertEquals(5, resourceManager.getResourceLineage(child.getId()).size());
+
+        // the child goes with the uninventory of the leaf
+        for (int i = resourceLineage.size() - 1; i >= 0; i--) {
+            deleteNewResourceAgentResourceType(resourceLineage.get(i));
+        }
+    }
+
+    public void testRecursiveGroupMembershipAfterMove() throws Exception {
+        int leafResourceId = givenASampleResourceHierarchy();
+        List<Resource> resourceLineage = resourceManager.getResourceLineage(leafResourceId);
+        int platformId = resourceLineage.get(0).getId();
+        int appserverId = resourceLineage.get(1).getId();
+        int jvmId = resourceLineage.get(2).getId();
+
+        // move the jvm, and the memory subsystem with it, from the app server to the platform
+        getTransactionManager().begin();
+        try {
+            Resource jvm = em.find(Resource.class, jvmId);
+            jvm.getParentResource().removeChildResource(jvm);
+            em.find(Resource.class, platformId).addChildResource(jvm);
+            em.flush();
+            resourceManager.moveResourceAncestors(jvmId);
+            getTransactionManager().commit();
+        } catch (Exception e) {
+            getTransactionManager().rollback();
+            throw e;
+        }
+
+        ResourceGroup recursiveGroup = new ResourceGroup("testRecursiveGroup" + System.currentTimeMillis());
+        recursiveGroup.setRecursive(true);
+        groupManager.createResourceGroup(getOverlord(), recursiveGroup);
+        try {
+            groupManager.addResourcesToGroup(getOverlord(), recursiveGroup.getId(), new int[] { appserverId });
+            assertEquals("The moved resources should not be members through their old parent",
+                Collections.singleton(appserverId), getImplicitResourceIds(recursiveGroup));
+
+            groupManager.addResourcesToGroup(getOverlord(), recursiveGroup.getId(), new int[] { jvmId });
+            assertEquals(new HashSet<Integer>(Arrays.asList(appserverId, jvmId, leafResourceId)),
+                getImplicitResourceIds(recursiveGroup));
+
+            groupManager.removeResourcesFromGroup(getOverlord(), recursiveGroup.getId(), new int[] { appserverId });
+            assertEquals("The moved resources should stay members through their new ancestor",
+                new HashSet<Integer>(Arrays.asList(jvmId, leafResourceId)), getImplicitResourceIds(recursiveGroup));
+
+            groupManager.addResourcesToGroup(getOverlord(), recursiveGroup.getId(), new int[] { platformId });
+            groupManager.removeResourcesFromGroup(getOverlord(), recursiveGroup.getId(), new int[] { jvmId });
+            assertEquals(new HashSet<Integer>(Arrays.asList(platformId, appserverId, jvmId, leafResourceId)),
+                getImplicitResourceIds(recursiveGroup));
+        } finally {
+            groupManager.deleteResourceGroup(getOverlord(), recursiveGroup.getId());
+        }
+
+        for (int i = resourceLineage.size() - 1; i >= 0; i--) {
+            deleteNewResourceAgentResourceType(resourceLineage.get(i));
+        }
+    }
+
     // Make sure our application exceptions are not wrapped
     public void bz886850Test() {
         try {
@@ -455,6 +604,25 @@ public class ResourceManagerBeanTest extends UpdatePluginMetadataTestBase {
         return leafResourceId;
     }
 
+    /**
+     * @return the depth of each ancestor of the resource, read from the closure of the resource hierarchy
+     */
+    private Map<Integer, Integer> getAncestorDepths(int resourceId) {
+        List<?> rows = getEntityManager().createNativeQuery(
+            "SELECT ANCESTOR_ID, DEPTH FROM RHQ_RESOURCE_ANCESTOR WHERE DESCENDANT_ID = " + resourceId)
+            .getResultList();
+        Map<Integer, Integer> depths = new HashMap<Integer, Integer>();
+        for (Object row : rows) {
+            Object[] columns = (Object[]) row;
+            depths.put(((Number) columns[0]).intValue(), ((Number) columns[1]).intValue());
+        }
+        return depths;
+    }
+
+    private Set<Integer> getImplicitResourceIds(ResourceGroup group) {
+        return new HashSet<Integer>(resourceManager.findImplicitResourceIdsByResourceGroup(group.getId()));
+    }
+
     private Resource createResource(ResourceType platformType, Agent agent, String resourceKey, String resourceName,
         Resource parent) {
         Resource resource = new Resource(resourceKey, resourceName, platformType);
@@ -462,6 +630,8 @@ public class ResourceManagerBeanTest extends UpdatePluginMetadataTestBase {
         resource.setAgent(agent);
         resource.setParentResource(parent);
         em.persist(resource);
+        em.flush();
+        ResourceTreeHelper.addAncestors(em, resource);
         return resource;
     }
 
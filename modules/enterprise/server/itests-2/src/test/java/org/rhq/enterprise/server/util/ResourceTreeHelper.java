@@ -33,6 +33,7 @@ import javax.persistence.Query;
 import org.rhq.core.domain.measurement.Availability;
 import org.rhq.core.domain.resource.InventoryStatus;
 import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceAncestor;
 import org.rhq.core.domain.resource.ResourceCategory;
 import org.rhq.core.domain.resource.ResourceType;
 
@@ -144,12 +145,34 @@ public class ResourceTreeHelper {
         }
 
         // only flush when we are in persisting mode
-        if (entityManager != null)
+        if (entityManager != null) {
             entityManager.flush();
+            addAncestors(entityManager, roots);
+        }
 
         return roots;
     }
 
+    /**
+     * The server maintains the closure of the resource hierarchy as it adds resources; resources persisted directly by
+     * tests need their rows added here. The trees are walked breadth-first, so parents are added before children.
+     */
+    public static void addAncestors(EntityManager entityManager, List<Resource> roots) {
+        LinkedList<Resource> toBeAdded = new LinkedList<Resource>(roots);
+        while (!toBeAdded.isEmpty()) {
+            Resource next = toBeAdded.removeFirst();
+            addAncestors(entityManager, next);
+            toBeAdded.addAll(next.getChildResources());
+        }
+    }
+
+    public static void addAncestors(EntityManager entityManager, Resource resource) {
+        Query query = entityManager.createNativeQuery(ResourceAncestor.QUERY_NATIVE_ADD_RESOURCE);
+        query.setParameter(1, resource.getId());
+        query.setParameter(2, resource.getId());
+        query.executeUpdate();
+    }
+
     public static void deleteForest(EntityManager entityManager, List<Resource> roots) {
 
         for (Resource root : roots) {
@@ -258,6 +258,7 @@ public class SessionTestHelper {
         em.persist(resource);
         if (doFlush) {
             em.flush();
+            ResourceTreeHelper.addAncestors(em, resource);
         }
 
         return resource;
@@ -295,6 +296,7 @@ public class SessionTestHelper {
 
         em.persist(resource);
         em.flush();
+        ResourceTreeHelper.addAncestors(em, resource);
 
         return resource;
     }
@@ -0,0 +1,187 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.authz;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The {@link SubjectPermissions} of the subjects that recently used this server, shared by all the sessions.
+ * <p/>
+ * Any change to the roles, the group memberships or the inventory made on this server must invalidate the cache
+ * {@link #invalidateAfterCompletion(TransactionSynchronizationRegistry) once its transaction completes}, otherwise a
+ * snapshot loaded from the old rows before the commit would be cached. Since changes made by the other servers of the
+ * cloud are not seen, snapshots are also reloaded when they are older than {@link #MAX_AGE}.
+ * <p/>
+ * The cache holds at most {@link #MAX_SUBJECTS} snapshots, and at most {@link #MAX_IDS} resource and group ids in all
+ * its snapshots; the least recently used snapshots are dropped first.
+ */
+public class AuthorizationCache {
+    private static final Log LOG = LogFactory.getLog(AuthorizationCache.class);
+
+    private static final String MAX_AGE_SYSTEM_PROPERTY = "rhq.server.authz.cache.max-age";
+    static final long MAX_AGE = Long.getLong(MAX_AGE_SYSTEM_PROPERTY, 30000L);
+
+    private static final String MAX_SUBJECTS_SYSTEM_PROPERTY = "rhq.server.authz.cache.max-subjects";
+    static final int MAX_SUBJECTS = Integer.getInteger(MAX_SUBJECTS_SYSTEM_PROPERTY, 500);
+
+    // about 4 bytes per id
+    private static final String MAX_IDS_SYSTEM_PROPERTY = "rhq.server.authz.cache.max-ids";
+    static final int MAX_IDS = Integer.getInteger(MAX_IDS_SYSTEM_PROPERTY, 10000000);
+
+    // marks the transactions that already registered an invalidation
+    private static final String INVALIDATION_RESOURCE_KEY = AuthorizationCache.class.getName() + ".invalidation";
+
+    private static final AuthorizationCache singleton = new AuthorizationCache(MAX_AGE, MAX_SUBJECTS,
+        MAX_IDS);
+
+    private final long maxAge;
+    private final int maxSubjects;
+    private final int maxIds;
+
+    // incremented by each invalidation, so that a snapshot loaded before an invalidation is not cached after it
+    private long generation;
+
+    // in access order
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<Integer, Entry>(16, 0.75f, true);
+
+    // the sizes of the cached snapshots
+    private long size;
+
+    public static AuthorizationCache getSingleton() {
+        return singleton;
+    }
+
+    AuthorizationCache(long maxAge, int maxSubjects, int maxIds) {
+        this.maxAge = maxAge;
+        this.maxSubjects = maxSubjects;
+        this.maxIds = maxIds;
+    }
+
+    /**
+     * @return the snapshot of the subject, or null if it is not cached or is too old
+     */
+    public synchronized SubjectPermissions get(int subjectId) {
+        Entry entry = entries.get(subjectId);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.loadTime > maxAge) {
+            remove(subjectId);
+            return null;
+        }
+        return entry.permissions;
+    }
+
+    /**
+     * To be called before loading a snapshot, and passed to {@link #put(int, SubjectPermissions, long)}.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches a snapshot, unless the cache was invalidated since it started to be loaded, or the snapshot alone exceeds
+     * the maximum number of ids.
+     *
+     * @param generation the {@link #getGeneration() generation} of the cache when loading started
+     */
+    public synchronized void put(int subjectId, SubjectPermissions permissions, long generation) {
+        if (generation != this.generation) {
+            return;
+        }
+        remove(subjectId);
+        if (permissions.getSize() > maxIds) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Not caching the authorization snapshot of subject " + subjectId + ", it holds "
+                    + permissions.getSize() + " ids");
+            }
+            return;
+        }
+        entries.put(subjectId, new Entry(permissions, System.currentTimeMillis()));
+        size += permissions.getSize();
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxSubjects || size > maxIds) {
+            size -= eldest.next().permissions.getSize();
+            eldest.remove();
+        }
+    }
+
+    public synchronized void invalidate() {
+        generation++;
+        if (LOG.isDebugEnabled() && !entries.isEmpty()) {
+            LOG.debug("Invalidating the authorization snapshots of " + entries.size() + " subjects");
+        }
+        entries.clear();
+        size = 0L;
+    }
+
+    /**
+     * Invalidates the cache now, so that the current transaction sees its own changes, and again once the current
+     * transaction has completed, so that no snapshot loaded from the old rows in the meantime remains cached. The
+     * invalidation is registered once per transaction, however many changes it makes. Without a transaction, the cache
+     * is only invalidated now.
+     */
+    public void invalidateAfterCompletion(TransactionSynchronizationRegistry transactionSynchronizationRegistry) {
+        if (transactionSynchronizationRegistry == null
+            || transactionSynchronizationRegistry.getTransactionKey() == null) {
+            invalidate();
+            return;
+        }
+        if (transactionSynchronizationRegistry.getResource(INVALIDATION_RESOURCE_KEY) != null) {
+            return;
+        }
+        transactionSynchronizationRegistry.putResource(INVALIDATION_RESOURCE_KEY, Boolean.TRUE);
+        invalidate();
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                invalidate();
+            }
+        });
+    }
+
+    private void remove(int subjectId) {
+        Entry entry = entries.remove(subjectId);
+        if (entry != null) {
+            size -= entry.permissions.getSize();
+        }
+    }
+
+    private static class Entry {
+        private final SubjectPermissions permissions;
+        private final long loadTime;
+
+        private Entry(SubjectPermissions permissions, long loadTime) {
+            this.permissions = permissions;
+            this.loadTime = loadTime;
+        }
+    }
+}
@@ -136,11 +136,7 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
             return true;
         }
 
-        Query query = entityManager.createNamedQuery(Subject.QUERY_HAS_GLOBAL_PERMISSION);
-        query.setParameter("subject", subject);
-        query.setParameter("permission", permission);
-        long count = (Long) query.getSingleResult();
-        return (count != 0);
+        return getSubjectPermissions(subject).hasGlobalPermission(permission);
     }
 
     @Override
@@ -155,12 +151,7 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
 
         if (null == owner) {
             // role-owned group
-            Query query = entityManager.createNamedQuery(Subject.QUERY_HAS_GROUP_PERMISSION);
-            query.setParameter("subject", subject);
-            query.setParameter("permission", permission);
-            query.setParameter("groupId", groupId);
-            long count = (Long) query.getSingleResult();
-            return (count != 0);
+            return getSubjectPermissions(subject).hasGroupPermission(permission, groupId);
 
         } else {
             // don't let a user other than the owner do anything with this group
@@ -183,12 +174,7 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
             return true;
         }
 
-        Query query = entityManager.createNamedQuery(Subject.QUERY_HAS_RESOURCE_PERMISSION);
-        query.setParameter("subject", subject);
-        query.setParameter("permission", permission);
-        query.setParameter("resourceId", resourceId);
-        long count = (Long) query.getSingleResult();
-        return (count != 0);
+        return getSubjectPermissions(subject).hasResourcePermission(permission, resourceId);
     }
 
     @SuppressWarnings("unchecked")
@@ -291,11 +277,7 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
             return true;
         }
 
-        Query query = entityManager.createNamedQuery(Subject.QUERY_CAN_VIEW_RESOURCE);
-        query.setParameter("subject", subject);
-        query.setParameter("resourceId", resourceId);
-        long count = (Long) query.getSingleResult();
-        return (count != 0);
+        return getSubjectPermissions(subject).canViewResource(resourceId);
     }
 
     @Override
@@ -304,12 +286,7 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
             return true;
         }
 
-        Query query = entityManager.createNamedQuery(Subject.QUERY_CAN_VIEW_RESOURCES);
-        query.setParameter("subject", subject);
-        query.setParameter("resourceIds", resourceIds);
-        long count = (Long) query.getSingleResult();
-
-        return count == resourceIds.size();
+        return getSubjectPermissions(subject).canViewResources(resourceIds);
     }
 
     @Override
@@ -318,11 +295,7 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
             return true;
         }
 
-        Query query = entityManager.createNamedQuery(Subject.QUERY_CAN_VIEW_GROUP);
-        query.setParameter("subject", subject);
-        query.setParameter("groupId", groupId);
-        long count = (Long) query.getSingleResult();
-        return (count != 0);
+        return getSubjectPermissions(subject).canViewGroup(groupId);
     }
 
     @Override
@@ -380,18 +353,12 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public boolean hasResourcePermission(Subject subject, Permission permission, Collection<Integer> resourceIds) {
         if (isInventoryManager(subject)) {
             return true;
         }
 
-        Query query = entityManager.createNamedQuery(Subject.QUERY_GET_RESOURCES_BY_PERMISSION);
-        query.setParameter("subject", subject);
-        query.setParameter("permission", permission);
-
-        List<Integer> results = query.getResultList();
-        return results.containsAll(resourceIds);
+        return getSubjectPermissions(subject).hasResourcePermission(permission, resourceIds);
     }
 
     @Override
@@ -434,4 +401,52 @@ public class AuthorizationManagerBean implements AuthorizationManagerLocal {
         return num > 0;
     }
 
-}
\ No newline at end of file
+
+    /**
+     * Returns the authorization snapshot of the subject, loading it if it is not cached.
+     */
+    private SubjectPermissions getSubjectPermissions(Subject subject) {
+        AuthorizationCache cache = AuthorizationCache.getSingleton();
+        SubjectPermissions permissions = cache.get(subject.getId());
+        if (permissions == null) {
+            long generation = cache.getGeneration();
+            permissions = loadSubjectPermissions(subject.getId());
+            cache.put(subject.getId(), permissions, generation);
+        }
+        return permissions;
+    }
+
+    @SuppressWarnings("unchecked")
+    private SubjectPermissions loadSubjectPermissions(int subjectId) {
+        SubjectPermissions permissions = new SubjectPermissions();
+
+        Query query = entityManager.createNamedQuery(Subject.QUERY_GET_ROLE_PERMISSIONS_BY_SUBJECT_ID);
+        query.setParameter("subjectId", subjectId);
+        for (Object[] row : (List<Object[]>) query.getResultList()) {
+            permissions.addRolePermission((Integer) row[0], (Permission) row[1]);
+        }
+
+        query = entityManager.createNamedQuery(Subject.QUERY_GET_ROLE_RESOURCE_IDS_BY_SUBJECT_ID);
+        query.setParameter("subjectId", subjectId);
+        for (Object[] row : (List<Object[]>) query.getResultList()) {
+            permissions.addRoleResource((Integer) row[0], (Integer) row[1]);
+        }
+
+        for (String groupQuery : new String[] { Subject.QUERY_GET_ROLE_GROUP_IDS_BY_SUBJECT_ID,
+            Subject.QUERY_GET_ROLE_CLUSTER_BACKING_GROUP_IDS_BY_SUBJECT_ID }) {
+            query = entityManager.createNamedQuery(groupQuery);
+            query.setParameter("subjectId", subjectId);
+            for (Object[] row : (List<Object[]>) query.getResultList()) {
+                permissions.addRoleGroup((Integer) row[0], (Integer) row[1]);
+            }
+        }
+
+        query = entityManager.createNamedQuery(Subject.QUERY_GET_PRIVATE_GROUP_IDS_BY_SUBJECT_ID);
+        query.setParameter("subjectId", subjectId);
+        for (Integer groupId : (List<Integer>) query.getResultList()) {
+            permissions.addPrivateGroup(groupId);
+        }
+
+        return permissions.build();
+    }
+}
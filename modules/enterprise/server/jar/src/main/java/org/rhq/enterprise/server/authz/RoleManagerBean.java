@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import javax.annotation.Resource;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
 import javax.interceptor.ExcludeDefaultInterceptors;
@@ -32,6 +33,7 @@ import javax.persistence.EntityExistsException;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -69,6 +71,9 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
+    @Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     @EJB
     private RoleManagerLocal roleManager; // self-referencing
 
@@ -189,6 +194,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
     @Override
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void deleteRoles(Subject subject, int[] doomedRoleIds) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         if (doomedRoleIds != null) {
             for (int roleId : doomedRoleIds) {
                 Role doomedRole = entityManager.find(Role.class, roleId);
@@ -255,6 +262,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
      */
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void addRolesToSubject(Subject subject, int subjectId, int[] roleIds, boolean isLdap) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         if (roleIds != null) {
             Subject subjectToModify = subjectManager.getSubjectById(subjectId); // attach it
             if (subjectToModify == null) {
@@ -288,6 +297,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
     @Override
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void addSubjectsToRole(Subject subject, int roleId, int[] subjectIds) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         if (subjectIds != null) {
             Role role = getRoleById(roleId); // attach it
             if (role == null) {
@@ -320,6 +331,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
     @Override
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void removeRolesFromSubject(Subject subject, int subjectId, int[] roleIds) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         if (roleIds != null) {
             Subject subjectToModify = subjectManager.getSubjectById(subjectId); // attach it
 
@@ -387,6 +400,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
     @Override
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void setPermissions(Subject subject, Integer roleId, Set<Permission> permissions) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         Role role = entityManager.find(Role.class, roleId);
         Set<Permission> rolePermissions = role.getPermissions();
         rolePermissions.clear();
@@ -412,6 +427,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
     @Override
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public Role updateRole(Subject whoami, Role role) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         Role attachedRole = entityManager.find(Role.class, role.getId());
         if (attachedRole == null) {
             throw new IllegalStateException("Cannot update " + role + ", since no role exists with that id.");
@@ -646,6 +663,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
     @Override
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void addResourceGroupsToRole(Subject subject, int roleId, int[] groupIds) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         if ((groupIds != null) && (groupIds.length > 0)) {
             Role role = entityManager.find(Role.class, roleId);
             if (role == null) {
@@ -694,6 +713,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
     @Override
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void removeResourceGroupsFromRole(Subject subject, int roleId, int[] groupIds) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         if ((groupIds != null) && (groupIds.length > 0)) {
             Role role = entityManager.find(Role.class, roleId);
             if (role == null) {
@@ -807,6 +828,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
     @Override
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void removeSubjectsFromRole(Subject subject, int roleId, int[] subjectIds) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         if ((subjectIds != null) && (subjectIds.length > 0)) {
             Role role = entityManager.find(Role.class, roleId);
             if (role == null) {
@@ -889,6 +912,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
     @Override
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void removeRolesFromResourceGroup(Subject subject, int groupId, int[] roleIds) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         if ((roleIds != null) && (roleIds.length > 0)) {
             ResourceGroup group = entityManager.find(ResourceGroup.class, groupId);
             if (group == null) {
@@ -941,6 +966,8 @@ public class RoleManagerBean implements RoleManagerLocal, RoleManagerRemote {
     @Override
     @RequiredPermission(Permission.MANAGE_SECURITY)
     public void addRolesToResourceGroup(Subject subject, int groupId, int[] roleIds) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         if ((roleIds != null) && (roleIds.length > 0)) {
             ResourceGroup group = entityManager.find(ResourceGroup.class, groupId);
             if (group == null) {
@@ -0,0 +1,209 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.authz;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.rhq.core.domain.authz.Permission;
+
+/**
+ * A snapshot of what a subject is allowed to do, as derived from its roles: the permissions of its roles, and the ids
+ * of the resources and role-associated groups it can view or holds a given permission on. The groups include the
+ * groups of the roles, the backing groups of recursive cluster groups of the roles and the private groups of the
+ * subject.
+ * <p/>
+ * Snapshots are built by {@link #addRolePermission}, {@link #addRoleResource}, {@link #addRoleGroup} and
+ * {@link #addPrivateGroup} calls, followed by a call to {@link #build()}; they are immutable after that. A built
+ * snapshot holds its ids as sorted arrays, shared between the permissions that grant the same ids, so that its
+ * {@link #getSize() size} follows the number of ids rather than the highest id.
+ */
+public class SubjectPermissions {
+
+    private static final int[] NO_IDS = new int[0];
+
+    private Map<Integer, RoleData> roles = new HashMap<Integer, RoleData>();
+    private BitSet privateGroups = new BitSet();
+
+    private Set<Permission> globalPermissions;
+    private int[] viewableResources;
+    private int[] viewableGroups;
+    private Map<Permission, int[]> resourcesByPermission;
+    private Map<Permission, int[]> groupsByPermission;
+    private int size;
+
+    public void addRolePermission(int roleId, Permission permission) {
+        getRole(roleId).permissions.add(permission);
+    }
+
+    public void addRoleResource(int roleId, int resourceId) {
+        getRole(roleId).resources.set(resourceId);
+    }
+
+    public void addRoleGroup(int roleId, int groupId) {
+        getRole(roleId).groups.set(groupId);
+    }
+
+    public void addPrivateGroup(int groupId) {
+        privateGroups.set(groupId);
+    }
+
+    /**
+     * Computes the id arrays of the snapshot from the roles of the subject.
+     *
+     * @return this snapshot
+     */
+    public SubjectPermissions build() {
+        globalPermissions = EnumSet.noneOf(Permission.class);
+        BitSet resources = new BitSet();
+        BitSet groups = privateGroups;
+        Map<Permission, BitSet> resourceBitsets = new EnumMap<Permission, BitSet>(Permission.class);
+        Map<Permission, BitSet> groupBitsets = new EnumMap<Permission, BitSet>(Permission.class);
+
+        for (RoleData role : roles.values()) {
+            resources.or(role.resources);
+            groups.or(role.groups);
+            for (Permission permission : role.permissions) {
+                // like the queries, don't look at the target of the permissions
+                globalPermissions.add(permission);
+                or(resourceBitsets, permission, role.resources);
+                or(groupBitsets, permission, role.groups);
+            }
+        }
+
+        // most permissions are granted on the same ids, by the same roles
+        Map<BitSet, int[]> arrays = new HashMap<BitSet, int[]>();
+        viewableResources = toArray(arrays, resources);
+        viewableGroups = toArray(arrays, groups);
+        resourcesByPermission = toArrays(arrays, resourceBitsets);
+        groupsByPermission = toArrays(arrays, groupBitsets);
+        for (int[] ids : arrays.values()) {
+            size += ids.length;
+        }
+
+        roles = null;
+        privateGroups = null;
+        return this;
+    }
+
+    public boolean hasGlobalPermission(Permission permission) {
+        return globalPermissions.contains(permission);
+    }
+
+    public boolean canViewResource(int resourceId) {
+        return contains(viewableResources, resourceId);
+    }
+
+    public boolean canViewResources(Collection<Integer> resourceIds) {
+        return containsAll(viewableResources, resourceIds);
+    }
+
+    public boolean hasResourcePermission(Permission permission, int resourceId) {
+        int[] resources = resourcesByPermission.get(permission);
+        return resources != null && contains(resources, resourceId);
+    }
+
+    public boolean hasResourcePermission(Permission permission, Collection<Integer> resourceIds) {
+        int[] resources = resourcesByPermission.get(permission);
+        return containsAll(resources != null ? resources : NO_IDS, resourceIds);
+    }
+
+    /**
+     * Note that this does not cover private groups; the permissions on those are derived from their members.
+     */
+    public boolean hasGroupPermission(Permission permission, int groupId) {
+        int[] groups = groupsByPermission.get(permission);
+        return groups != null && contains(groups, groupId);
+    }
+
+    public boolean canViewGroup(int groupId) {
+        return contains(viewableGroups, groupId);
+    }
+
+    /**
+     * @return the number of ids held by the snapshot, the ids shared by several permissions counted once
+     */
+    public int getSize() {
+        return size;
+    }
+
+    private RoleData getRole(int roleId) {
+        RoleData role = roles.get(roleId);
+        if (role == null) {
+            role = new RoleData();
+            roles.put(roleId, role);
+        }
+        return role;
+    }
+
+    private static void or(Map<Permission, BitSet> bitsets, Permission permission, BitSet ids) {
+        BitSet bitset = bitsets.get(permission);
+        if (bitset == null) {
+            bitset = new BitSet();
+            bitsets.put(permission, bitset);
+        }
+        bitset.or(ids);
+    }
+
+    private static Map<Permission, int[]> toArrays(Map<BitSet, int[]> arrays, Map<Permission, BitSet> bitsets) {
+        Map<Permission, int[]> result = new EnumMap<Permission, int[]>(Permission.class);
+        for (Map.Entry<Permission, BitSet> entry : bitsets.entrySet()) {
+            result.put(entry.getKey(), toArray(arrays, entry.getValue()));
+        }
+        return result;
+    }
+
+    private static int[] toArray(Map<BitSet, int[]> arrays, BitSet bitset) {
+        int[] ids = arrays.get(bitset);
+        if (ids == null) {
+            ids = new int[bitset.cardinality()];
+            int i = 0;
+            for (int id = bitset.nextSetBit(0); id >= 0; id = bitset.nextSetBit(id + 1)) {
+                ids[i++] = id;
+            }
+            arrays.put(bitset, ids);
+        }
+        return ids;
+    }
+
+    private static boolean containsAll(int[] ids, Collection<Integer> wanted) {
+        for (Integer id : wanted) {
+            if (!contains(ids, id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(int[] ids, int id) {
+        return Arrays.binarySearch(ids, id) >= 0;
+    }
+
+    private static class RoleData {
+        private final Set<Permission> permissions = EnumSet.noneOf(Permission.class);
+        private final BitSet resources = new BitSet();
+        private final BitSet groups = new BitSet();
+    }
+}
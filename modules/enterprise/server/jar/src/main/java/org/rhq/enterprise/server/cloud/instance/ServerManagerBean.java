@@ -55,6 +55,7 @@ import org.rhq.enterprise.server.auth.SubjectManagerLocal;
 import org.rhq.enterprise.server.cloud.PartitionEventManagerLocal;
 import org.rhq.enterprise.server.cloud.StatusManagerLocal;
 import org.rhq.enterprise.server.cloud.TopologyManagerLocal;
+import org.rhq.enterprise.server.core.AgentManagerLocal;
 import org.rhq.enterprise.server.core.comm.ServerCommunicationsServiceUtil;
 import org.rhq.enterprise.server.storage.StorageClientManager;
 
@@ -107,6 +108,9 @@ public class ServerManagerBean implements ServerManagerLocal {
     @EJB
     private ServerManagerLocal serverManager;
 
+    @EJB
+    private AgentManagerLocal agentManager;
+
     public void scheduleServerHeartbeat() {
         /* each time the webapp is reloaded, it would create
          * duplicate events if we don't cancel the existing ones
@@ -131,6 +135,13 @@ public class ServerManagerBean implements ServerManagerLocal {
         } catch (Throwable t) {
             log.error("Failed to handle cloud heartbeat timer - will try again later. Cause: " + t);
         }
+
+        // each server writes the availability pings of its own agents
+        try {
+            agentManager.flushAgentHeartbeats();
+        } catch (Throwable t) {
+            log.error("Failed to flush agent heartbeats - will try again later. Cause: " + t);
+        }
     }
 
     public int create(Server server) {
@@ -38,6 +38,7 @@ import javax.persistence.EntityNotFoundException;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
@@ -124,6 +125,8 @@ import org.rhq.enterprise.server.resource.ResourceNotFoundException;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
 import org.rhq.enterprise.server.resource.group.ResourceGroupNotFoundException;
 import org.rhq.enterprise.server.resource.group.ResourceGroupUpdateException;
+import org.rhq.enterprise.server.resource.group.definition.DynaGroupChangeTracker;
+import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator.Dependency;
 import org.rhq.enterprise.server.rest.BadArgumentException;
 import org.rhq.enterprise.server.scheduler.SchedulerLocal;
 import org.rhq.enterprise.server.util.CriteriaQuery;
@@ -145,6 +148,9 @@ public class ConfigurationManagerBean implements ConfigurationManagerLocal, Conf
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
+    @javax.annotation.Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     @EJB
     private AgentManagerLocal agentManager;
     @EJB
@@ -380,6 +386,8 @@ public class ConfigurationManagerBean implements ConfigurationManagerLocal, Conf
         } else {
             resource.setResourceConfiguration(configuration.deepCopyWithoutProxies());
         }
+        DynaGroupChangeTracker.getSingleton().resourceChanged(transactionSynchronizationRegistry,
+            Dependency.RESOURCE_CONFIGURATION, resource.getId());
     }
 
     private void setOrUpdatePluginConfiguration(Resource resource, Configuration configuration) {
@@ -389,6 +397,8 @@ public class ConfigurationManagerBean implements ConfigurationManagerLocal, Conf
         } else {
             resource.setPluginConfiguration(configuration.deepCopyWithoutProxies());
         }
+        DynaGroupChangeTracker.getSingleton().resourceChanged(transactionSynchronizationRegistry,
+            Dependency.PLUGIN_CONFIGURATION, resource.getId());
     }
     // Use new transaction because this only works if the resource in question has not
     // yet been loaded by Hibernate.  We want the query to return a non-proxied configuration,
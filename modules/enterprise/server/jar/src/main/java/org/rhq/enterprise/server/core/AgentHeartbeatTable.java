@@ -0,0 +1,156 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.core;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The availability pings this server received from its agents, by agent name, along with whether each agent is known
+ * to be backfilled.
+ * <p/>
+ * Pings are only recorded in memory; the ones that are not in the database yet are periodically written in a single
+ * batch (see {@link AgentManagerLocal#flushAgentHeartbeats()}), which also refreshes the backfilled flags, since
+ * agents can be backfilled by another server of the cloud. An agent that is not in the table (i.e. it did not ping
+ * this server since it started, or for a long time) has to be looked up in the database on its first ping.
+ */
+public class AgentHeartbeatTable {
+
+    /**
+     * Agents that did not ping for that long (they are down or moved to another server) are dropped from the table.
+     */
+    static final long STALE_ENTRY_AGE = 1000L * 60 * 60;
+
+    private static final AgentHeartbeatTable singleton = new AgentHeartbeatTable();
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    public static AgentHeartbeatTable getSingleton() {
+        return singleton;
+    }
+
+    AgentHeartbeatTable() {
+    }
+
+    /**
+     * Records a ping of a known agent.
+     *
+     * @param agentName the name of the agent
+     * @param time when the ping was received
+     * @return whether the agent is backfilled, or null if the agent is not in the table, in which case nothing was
+     *         recorded and the ping has to be written to the database and then {@link #add added}
+     */
+    public synchronized Boolean recordPing(String agentName, long time) {
+        Entry entry = entries.get(agentName);
+        if (entry == null) {
+            return null;
+        }
+        if (time > entry.lastPing) {
+            entry.lastPing = time;
+            entry.dirty = true;
+        }
+        return entry.backfilled;
+    }
+
+    /**
+     * Adds an agent whose ping was already written to the database.
+     */
+    public synchronized void add(String agentName, long time, boolean backfilled) {
+        Entry entry = new Entry();
+        entry.lastPing = time;
+        entry.backfilled = backfilled;
+        entries.put(agentName, entry);
+    }
+
+    public synchronized void remove(String agentName) {
+        entries.remove(agentName);
+    }
+
+    /**
+     * @return the time of the last ping this server received from the agent, or null if the agent is not in the table
+     */
+    public synchronized Long getLastPing(String agentName) {
+        Entry entry = entries.get(agentName);
+        return (entry == null) ? null : Long.valueOf(entry.lastPing);
+    }
+
+    /**
+     * Sets the backfilled flag of an agent, if it is in the table.
+     */
+    public synchronized void setBackfilled(String agentName, boolean backfilled) {
+        Entry entry = entries.get(agentName);
+        if (entry != null) {
+            entry.backfilled = backfilled;
+        }
+    }
+
+    /**
+     * Sets the backfilled flags of all the agents in the table.
+     *
+     * @param backfilledAgentNames the names of all the agents that are backfilled
+     */
+    public synchronized void refreshBackfilled(Set<String> backfilledAgentNames) {
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            entry.getValue().backfilled = backfilledAgentNames.contains(entry.getKey());
+        }
+    }
+
+    /**
+     * Returns the pings that are not in the database yet and marks them as written. If writing them fails, they
+     * should be given back with {@link #restoreDirtyPings(Map)}. Entries of agents that did not ping for
+     * {@link #STALE_ENTRY_AGE} are dropped at the same time.
+     *
+     * @param now the current time
+     * @return the time of the last ping by agent name
+     */
+    public synchronized Map<String, Long> takeDirtyPings(long now) {
+        Map<String, Long> pings = new HashMap<String, Long>();
+        for (Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator(); i.hasNext();) {
+            Map.Entry<String, Entry> entry = i.next();
+            Entry value = entry.getValue();
+            if (value.dirty) {
+                pings.put(entry.getKey(), Long.valueOf(value.lastPing));
+                value.dirty = false;
+            } else if (now - value.lastPing > STALE_ENTRY_AGE) {
+                i.remove();
+            }
+        }
+        return pings;
+    }
+
+    /**
+     * Marks pings returned by {@link #takeDirtyPings(long)} as not written again, unless the agents pinged since.
+     */
+    public synchronized void restoreDirtyPings(Map<String, Long> pings) {
+        for (Map.Entry<String, Long> ping : pings.entrySet()) {
+            Entry entry = entries.get(ping.getKey());
+            if (entry != null && entry.lastPing == ping.getValue().longValue()) {
+                entry.dirty = true;
+            }
+        }
+    }
+
+    private static class Entry {
+        private long lastPing;
+        private boolean backfilled;
+        private boolean dirty;
+    }
+}
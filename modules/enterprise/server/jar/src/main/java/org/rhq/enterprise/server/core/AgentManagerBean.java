@@ -23,8 +23,13 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -40,6 +45,7 @@ import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -61,6 +67,7 @@ import org.rhq.core.domain.util.PageList;
 import org.rhq.core.util.MessageDigestGenerator;
 import org.rhq.core.util.exception.ThrowableUtil;
 import org.rhq.core.util.file.FileUtil;
+import org.rhq.core.util.jdbc.JDBCUtil;
 import org.rhq.core.util.obfuscation.Obfuscator;
 import org.rhq.core.util.stream.StreamUtil;
 import org.rhq.enterprise.server.RHQConstants;
@@ -91,9 +98,16 @@ import org.rhq.enterprise.server.util.concurrent.AvailabilityReportSerializer;
 public class AgentManagerBean implements AgentManagerLocal, AgentManagerRemote {
     private static final Log LOG = LogFactory.getLog(AgentManagerBean.class);
 
+    // only moves the ping forward, another server may have written a newer one if the agent failed over
+    private static final String UPDATE_LAST_AVAIL_PING_SQL = "UPDATE RHQ_AGENT SET LAST_AVAILABILITY_PING = ? "
+        + "WHERE NAME = ? AND (LAST_AVAILABILITY_PING IS NULL OR LAST_AVAILABILITY_PING < ?)";
+
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
+    @javax.annotation.Resource(name = "RHQ_DS", mappedName = RHQConstants.DATASOURCE_JNDI_NAME)
+    private DataSource rhqDs;
+
     @EJB
     //@IgnoreDependency
     private FailoverListManagerLocal failoverListManager;
@@ -262,6 +276,7 @@ public class AgentManagerBean implements AgentManagerLocal, AgentManagerRemote {
         q.executeUpdate();
 
         destroyAgentClient(agent);
+        AgentHeartbeatTable.getSingleton().remove(agent.getName());
         LOG.info("Removed agent: " + agent);
     }
 
@@ -387,15 +402,27 @@ public class AgentManagerBean implements AgentManagerLocal, AgentManagerRemote {
 
         List<AgentLastAvailabilityPingComposite> records;
 
+        // make sure the pings this server received are in the database; the other servers flush theirs often
+        // enough (see flushAgentHeartbeats) for them to be well within the quiet time allowed
+        agentManager.flushAgentHeartbeats();
+
         long nowEpoch = System.currentTimeMillis();
+        long dateThreshold = nowEpoch - maximumQuietTimeAllowed;
 
         Query q = entityManager.createNamedQuery(Agent.QUERY_FIND_ALL_SUSPECT_AGENTS);
-        q.setParameter("dateThreshold", nowEpoch - maximumQuietTimeAllowed);
+        q.setParameter("dateThreshold", dateThreshold);
         records = q.getResultList();
 
         ServerCommunicationsServiceMBean serverComm = null;
+        AgentHeartbeatTable heartbeats = AgentHeartbeatTable.getSingleton();
 
         for (AgentLastAvailabilityPingComposite record : records) {
+            // the agent may have pinged us since the flush above
+            Long lastPing = heartbeats.getLastPing(record.getAgentName());
+            if (lastPing != null && lastPing.longValue() >= dateThreshold) {
+                continue;
+            }
+
             long lastReport = record.getLastAvailabilityPing();
             long timeSinceLastReport = nowEpoch - lastReport;
 
@@ -451,6 +478,7 @@ public class AgentManagerBean implements AgentManagerLocal, AgentManagerRemote {
             // can take time.  Performing this after the backfill to minimize the window between the commits as
             // much as possible.
             agentManager.setAgentBackfilledInNewTransaction(agentId, true);
+            AgentHeartbeatTable.getSingleton().setBackfilled(agentName, true);
 
         } finally {
             AvailabilityReportSerializer.getSingleton().unlock(agentName);
@@ -800,7 +828,15 @@ public class AgentManagerBean implements AgentManagerLocal, AgentManagerRemote {
         long now = System.currentTimeMillis();
 
         if (request.isRequestUpdateAvailability()) {
-            request.setReplyAgentIsBackfilled(updateLastAvailabilityPing(request.getAgentName(), now));
+            // the ping is only recorded in memory, it is written to the database with the others by
+            // flushAgentHeartbeats, unless this is the first ping we get from the agent
+            AgentHeartbeatTable heartbeats = AgentHeartbeatTable.getSingleton();
+            Boolean backfilled = heartbeats.recordPing(request.getAgentName(), now);
+            if (backfilled == null) {
+                backfilled = updateLastAvailabilityPing(request.getAgentName(), now);
+                heartbeats.add(request.getAgentName(), now, backfilled);
+            }
+            request.setReplyAgentIsBackfilled(backfilled);
             request.setReplyUpdateAvailability(true);
         }
 
@@ -838,6 +874,45 @@ public class AgentManagerBean implements AgentManagerLocal, AgentManagerRemote {
         return false;
     }
 
+    @ExcludeDefaultInterceptors
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    @SuppressWarnings("unchecked")
+    public void flushAgentHeartbeats() {
+        AgentHeartbeatTable heartbeats = AgentHeartbeatTable.getSingleton();
+        Map<String, Long> pings = heartbeats.takeDirtyPings(System.currentTimeMillis());
+
+        if (!pings.isEmpty()) {
+            Connection conn = null;
+            PreparedStatement ps = null;
+            try {
+                conn = rhqDs.getConnection();
+                ps = conn.prepareStatement(UPDATE_LAST_AVAIL_PING_SQL);
+                for (Map.Entry<String, Long> ping : pings.entrySet()) {
+                    ps.setLong(1, ping.getValue());
+                    ps.setString(2, ping.getKey());
+                    ps.setLong(3, ping.getValue());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            } catch (SQLException e) {
+                heartbeats.restoreDirtyPings(pings);
+                LOG.warn("Failed to write the availability pings of " + pings.size()
+                    + " agents, will try again later: " + ThrowableUtil.getAllMessages(e));
+                return;
+            } finally {
+                JDBCUtil.safeClose(conn, ps, null);
+            }
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Wrote the availability pings of " + pings.size() + " agents");
+            }
+        }
+
+        // agents may have been backfilled by another server
+        Query query = entityManager.createNamedQuery(Agent.QUERY_FIND_ALL_BACKFILLED_NAMES);
+        heartbeats.refreshBackfilled(new HashSet<String>(query.getResultList()));
+    }
+
     @ExcludeDefaultInterceptors
     public Boolean pingAgentByResourceId(Subject subject, int resourceId) {
         Boolean pingResults = Boolean.FALSE;
@@ -265,6 +265,13 @@ public interface AgentManagerLocal extends AgentManagerRemote {
      */
     void checkForSuspectAgents();
 
+    /**
+     * Writes the availability pings this server received since the last call to the database, in a single batch, and
+     * refreshes the backfilled flags of the agents in the {@link AgentHeartbeatTable}. This is periodically called by
+     * the server heartbeat timer of each server.
+     */
+    void flushAgentHeartbeats();
+
     /**
      * Determines if the given agent version is supported by this server. In other words, this will
      * return <code>true</code> if this server can talk to any agent of the given version.
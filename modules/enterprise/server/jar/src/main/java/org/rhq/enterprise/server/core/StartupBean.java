@@ -79,6 +79,7 @@ import org.rhq.enterprise.server.naming.NamingHack;
 import org.rhq.enterprise.server.plugin.pc.MasterServerPluginContainer;
 import org.rhq.enterprise.server.plugin.pc.ServerPluginServiceMBean;
 import org.rhq.enterprise.server.resource.ResourceTypeManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.GroupDefinitionManagerLocal;
 import org.rhq.enterprise.server.scheduler.SchedulerLocal;
 import org.rhq.enterprise.server.scheduler.jobs.AsyncResourceDeleteJob;
 import org.rhq.enterprise.server.scheduler.jobs.CheckForSuspectedAgentsJob;
@@ -135,6 +136,9 @@ public class StartupBean implements StartupLocal {
     @EJB
     private ResourceTypeManagerLocal resourceTypeManager;
 
+    @EJB
+    private GroupDefinitionManagerLocal groupDefinitionManager;
+
     @EJB
     private SchedulerLocal schedulerBean;
 
@@ -657,6 +661,7 @@ public class StartupBean implements StartupLocal {
 
         serverManager.scheduleServerHeartbeat();
         cacheConsistencyManager.scheduleServerCacheReloader();
+        groupDefinitionManager.scheduleDynaGroupChangesTimer();
         systemManager.scheduleConfigCacheReloader();
         subjectManager.scheduleSessionPurgeJob();
         storageClientManager.scheduleStorageSessionMaintenance();
@@ -47,6 +47,7 @@ import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.security.auth.login.LoginException;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -112,6 +113,8 @@ import org.rhq.enterprise.server.resource.ResourceAvailabilityManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceTypeManagerLocal;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.DynaGroupChangeTracker;
+import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator.Dependency;
 import org.rhq.enterprise.server.resource.metadata.PluginManagerLocal;
 import org.rhq.enterprise.server.system.SystemManagerLocal;
 import org.rhq.enterprise.server.util.LookupUtil;
@@ -143,6 +146,9 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
+    @javax.annotation.Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     @EJB
     private AgentManagerLocal agentManager;
     @EJB
@@ -710,6 +716,8 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
             } catch (ResourceAlreadyExistsException e) {
                 throw new IllegalStateException(e);
             }
+            DynaGroupChangeTracker.getSingleton().resourceChanged(transactionSynchronizationRegistry,
+                Dependency.INVENTORY_STATUS, resource.getId());
 
             mergeResourceResponse = new MergeResourceResponse(resource.getId(), resource.getCtime(), false);
         }
@@ -790,6 +798,8 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
                 LOG.info("Resource [" + resource + "] changed its version from [" + oldVersion + "] to [" + newVersion
                     + "]");
                 resource.setVersion(newVersion);
+                DynaGroupChangeTracker.getSingleton().resourceChanged(transactionSynchronizationRegistry,
+                    Dependency.RESOURCE, resource.getId());
 
                 ProductVersion productVersion = null;
                 if (newVersion.length() > 0) {
@@ -841,6 +851,8 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
                 resource.setName(name);
                 logMessage.append("name, ");
                 ret.setUpgradedResourceName(resource.getName());
+                DynaGroupChangeTracker.getSingleton().resourceChanged(transactionSynchronizationRegistry,
+                    Dependency.RESOURCE, resource.getId());
             }
 
             if (isUpgradeAll && needsUpgrade(resource.getDescription(), description)) {
@@ -853,6 +865,8 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
                 resource.setVersion(version);
                 logMessage.append("version, ");
                 ret.setUpgradedResourceVersion(resource.getVersion());
+                DynaGroupChangeTracker.getSingleton().resourceChanged(transactionSynchronizationRegistry,
+                    Dependency.RESOURCE, resource.getId());
             }
 
             // If provided, assume the new plugin config should replace the old plugin config in its entirety.
@@ -1017,6 +1031,8 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
         boolean isDebugEnabled = LOG.isDebugEnabled();
         // Cache parent resources we've already fetched from the DB, many resources will have the same parent
         Map<Integer, Resource> parentMap = new HashMap<Integer, Resource>();
+        // The persisted resources still to be added to the closure of the resource hierarchy, in merge order
+        List<Resource> newResources = new ArrayList<Resource>();
 
         for (Resource resource : resourceBatch) {
             Resource existingResource;
@@ -1026,11 +1042,12 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
 
             // Does this resource already exist in inventory? If so, update, otherwise add
             if (null != existingResource) {
-                updateExistingResource(resource, existingResource);
+                updateExistingResource(resource, existingResource, newResources);
 
             } else {
                 presetAgent(resource, agent);
                 persistResource(resource, parentMap, postMergeActions);
+                newResources.add(resource);
             }
 
             if (isDebugEnabled) {
@@ -1039,6 +1056,8 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
             }
         }
 
+        addResourceAncestors(newResources);
+
         // Help out the GC
         parentMap.clear();
 
@@ -1196,8 +1215,8 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
      * @param existingResource attached entity
      * @throws InvalidInventoryReportException
      */
-    private void updateExistingResource(Resource updatedResource, Resource existingResource)
-        throws InvalidInventoryReportException {
+    private void updateExistingResource(Resource updatedResource, Resource existingResource,
+        List<Resource> newResources) throws InvalidInventoryReportException {
         /*
          * there exists a small window of time after the synchronous part of the uninventory and before the async
          * quartz job comes along to perform the actual removal of the resource from the database, that an inventory
@@ -1240,6 +1259,9 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
                 } else {
                     existingResource.setParentResource(Resource.ROOT);
                 }
+                // the new parent may have been persisted earlier in this batch
+                addResourceAncestors(newResources);
+                resourceManager.moveResourceAncestors(existingResource.getId());
 
             } else {
                 if (LOG.isDebugEnabled()) {
@@ -1396,11 +1418,42 @@ public class DiscoveryBossBean implements DiscoveryBossLocal, DiscoveryBossRemot
         resource.setModifiedBy(overlord.getName());
 
         setInventoryStatus(parentResource, resource, postMergeActions);
+        if (resource.getInventoryStatus() == InventoryStatus.COMMITTED) {
+            DynaGroupChangeTracker.getSingleton().resourceChanged(transactionSynchronizationRegistry,
+                Dependency.INVENTORY_STATUS, resource.getId());
+        }
+    }
+
+    /**
+     * Adds newly persisted resources to the closure of the resource hierarchy, all at once rather than flushing and
+     * updating it for each resource, and then extends the implicit (recursive) group membership of their parents to
+     * them.
+     *
+     * @param newResources the new resources, parents before their children; cleared once added
+     */
+    private void addResourceAncestors(List<Resource> newResources) {
+        if (newResources.isEmpty()) {
+            return;
+        }
+
+        List<Integer> newResourceIds = new ArrayList<Integer>(newResources.size());
+        for (Resource resource : newResources) {
+            newResourceIds.add(resource.getId());
+        }
+        resourceManager.addResourceAncestors(newResourceIds);
 
-        // Extend implicit (recursive) group membership of the parent to the new child
-        if (null != parentResource) {
-            groupManager.updateImplicitGroupMembership(overlord, resource);
+        // the membership is extended to the descendants of the resource too, so only do it for the top of each new
+        // subtree
+        Subject overlord = subjectManager.getOverlord();
+        Set<Integer> newResourceIdSet = new HashSet<Integer>(newResourceIds);
+        for (Resource resource : newResources) {
+            Resource parentResource = resource.getParentResource();
+            if (null != parentResource && !newResourceIdSet.contains(parentResource.getId())) {
+                groupManager.updateImplicitGroupMembership(overlord, resource);
+            }
         }
+
+        newResources.clear();
     }
 
     private CreateResourceHistory findMatchingCreateResourceHistory(Integer parentId, String resourceKey) {
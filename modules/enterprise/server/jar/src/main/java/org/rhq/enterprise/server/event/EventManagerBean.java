@@ -21,19 +21,29 @@ package org.rhq.enterprise.server.event;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.sql.DataSource;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -49,6 +59,7 @@ import org.rhq.core.domain.authz.Permission;
 import org.rhq.core.domain.common.EntityContext;
 import org.rhq.core.domain.criteria.EventCriteria;
 import org.rhq.core.domain.event.Event;
+import org.rhq.core.domain.event.EventCount;
 import org.rhq.core.domain.event.EventDefinition;
 import org.rhq.core.domain.event.EventSeverity;
 import org.rhq.core.domain.event.EventSource;
@@ -74,7 +85,8 @@ import org.rhq.enterprise.server.util.CriteriaQueryRunner;
 public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
 
     // NOTE: We need to do the fancy subselects to figure out the event def id, because the PC does not know the id's of
-    //       metadata objects such as EventDefinition (ips, 02/20/08).
+    //       metadata objects such as EventDefinition (ips, 02/20/08). The resulting event source ids are cached, so
+    //       this is only done for event sources that have not been seen before.
     private static final String EVENT_SOURCE_INSERT_STMT = "INSERT INTO RHQ_Event_Source (id, event_def_id, resource_id, location) "
         + "SELECT %s, (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)), ?, ? FROM RHQ_Numbers WHERE i = 42 "
         + "AND NOT EXISTS (SELECT * FROM RHQ_Event_Source WHERE event_def_id = (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)) AND resource_id = ? AND location = ?)";
@@ -83,11 +95,40 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         + "SELECT (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)), ?, ? FROM RHQ_Numbers WHERE i = 42 "
         + "AND NOT EXISTS (SELECT * FROM RHQ_Event_Source WHERE event_def_id = (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)) AND resource_id = ? AND location = ?)";
 
+    private static final String EVENT_SOURCE_SELECT_ID_STMT = "SELECT id FROM RHQ_Event_Source "
+        + "WHERE event_def_id = (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)) AND resource_id = ? AND location = ?";
+
     private static final String EVENT_INSERT_STMT = "INSERT INTO RHQ_Event (id, event_source_id, timestamp, severity, detail) "
-        + "VALUES (%s, (SELECT id FROM RHQ_Event_Source WHERE event_def_id = (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)) AND resource_id = ? AND location = ?), ?, ?, ?)";
+        + "VALUES (%s, ?, ?, ?, ?)";
 
     private static final String EVENT_INSERT_STMT_AUTOINC = "INSERT INTO RHQ_Event (event_source_id, timestamp, severity, detail) "
-        + "VALUES ((SELECT id FROM RHQ_Event_Source WHERE event_def_id = (SELECT id FROM RHQ_Event_Def WHERE name = ? AND resource_type_id = (SELECT id FROM RHQ_Resource_Type WHERE name = ? AND plugin = ?)) AND resource_id = ? AND location = ?), ?, ?, ?)";
+        + "VALUES (?, ?, ?, ?)";
+
+    private static final String BATCH_SIZE_SYSTEM_PROPERTY = "org.rhq.enterprise.server.event.EventManagerBean.BATCH_SIZE";
+    private static final int BATCH_SIZE = Integer.getInteger(BATCH_SIZE_SYSTEM_PROPERTY, 5000);
+
+    private static final String EVENT_SOURCE_SELECT_EXISTING_IDS_STMT = "SELECT id FROM RHQ_Event_Source WHERE id IN (@@IDS@@)";
+
+    private static final int MAX_IN_CLAUSE_PARAMS = 1000;
+
+    // NOTE: Event counters are created (with a zero count) if they don't exist yet and then incremented. Like above,
+    //       this avoids having to know whether a counter already exists for a given resource, severity and time bucket.
+    //       The counters are created in their own transaction (see insertEventCounters), so that the unique index on
+    //       resource, severity and time bucket only makes concurrent reports of the same resources retry the creation,
+    //       rather than fail to store their events. Counters of resources that transaction can not see yet (i.e. that
+    //       were created by the calling transaction) are skipped there and created in the calling transaction.
+    private static final String EVENT_COUNT_INSERT_STMT = "INSERT INTO RHQ_Event_Count (id, resource_id, severity, time_bucket, event_count) "
+        + "SELECT %s, ?, ?, ?, 0 FROM RHQ_Numbers WHERE i = 42 "
+        + "AND EXISTS (SELECT * FROM RHQ_Resource WHERE id = ?) "
+        + "AND NOT EXISTS (SELECT * FROM RHQ_Event_Count WHERE resource_id = ? AND severity = ? AND time_bucket = ?)";
+
+    private static final String EVENT_COUNT_INSERT_STMT_AUTOINC = "INSERT INTO RHQ_Event_Count (resource_id, severity, time_bucket, event_count) "
+        + "SELECT ?, ?, ?, 0 FROM RHQ_Numbers WHERE i = 42 "
+        + "AND EXISTS (SELECT * FROM RHQ_Resource WHERE id = ?) "
+        + "AND NOT EXISTS (SELECT * FROM RHQ_Event_Count WHERE resource_id = ? AND severity = ? AND time_bucket = ?)";
+
+    private static final String EVENT_COUNT_UPDATE_STMT = "UPDATE RHQ_Event_Count SET event_count = event_count + ? "
+        + "WHERE resource_id = ? AND severity = ? AND time_bucket = ?";
 
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
@@ -101,6 +142,12 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
     @EJB
     private AuthorizationManagerLocal authorizationManager;
 
+    @EJB
+    private EventManagerLocal eventManager;
+
+    @javax.annotation.Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     Log log = LogFactory.getLog(EventManagerBean.class);
 
     @Override
@@ -116,38 +163,8 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
             conn = rhqDs.getConnection();
             DatabaseType dbType = DatabaseTypeFactory.getDefaultDatabaseType();
 
-            if (dbType instanceof PostgresqlDatabaseType || dbType instanceof OracleDatabaseType
-                || dbType instanceof H2DatabaseType) {
-                String nextvalSql = JDBCUtil.getNextValSql(conn, EventSource.TABLE_NAME);
-                statementSql = String.format(EVENT_SOURCE_INSERT_STMT, nextvalSql);
-            } else if (dbType instanceof SQLServerDatabaseType) {
-                statementSql = EVENT_SOURCE_INSERT_STMT_AUTOINC;
-            } else {
-                throw new IllegalArgumentException("Unknown database type, can't continue: " + dbType);
-            }
-
-            // First insert the "keys" (i.e. the EventSources).
-            ps = conn.prepareStatement(statementSql);
-            try {
-                for (EventSource eventSource : events.keySet()) {
-                    int paramIndex = 1;
-                    ps.setString(paramIndex++, eventSource.getEventDefinition().getName());
-                    ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getName());
-                    ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getPlugin());
-                    ps.setInt(paramIndex++, eventSource.getResource().getId());
-                    ps.setString(paramIndex++, eventSource.getLocation());
-                    ps.setString(paramIndex++, eventSource.getEventDefinition().getName());
-                    ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getName());
-                    ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getPlugin());
-                    ps.setInt(paramIndex++, eventSource.getResource().getId());
-                    ps.setString(paramIndex++, eventSource.getLocation());
-
-                    ps.addBatch();
-                }
-                ps.executeBatch();
-            } finally {
-                JDBCUtil.safeClose(ps);
-            }
+            // First resolve the ids of the "keys" (i.e. the EventSources), creating them if need be.
+            Map<EventSource, Integer> eventSourceIds = getEventSourceIds(conn, dbType, events.keySet());
 
             if (dbType instanceof PostgresqlDatabaseType || dbType instanceof OracleDatabaseType
                 || dbType instanceof H2DatabaseType) {
@@ -162,33 +179,57 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
             // Then insert the "values" (i.e. the Events).
             ps = conn.prepareStatement(statementSql);
             try {
-                for (EventSource eventSource : events.keySet()) {
-                    Set<Event> eventData = events.get(eventSource);
-                    for (Event event : eventData) {
+                int batchCount = 0;
+                for (Map.Entry<EventSource, Integer> eventSourceId : eventSourceIds.entrySet()) {
+                    for (Event event : events.get(eventSourceId.getKey())) {
                         int paramIndex = 1;
-                        ps.setString(paramIndex++, eventSource.getEventDefinition().getName());
-                        ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getName());
-                        ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getPlugin());
-                        ps.setInt(paramIndex++, eventSource.getResource().getId());
-                        ps.setString(paramIndex++, eventSource.getLocation());
+                        ps.setInt(paramIndex++, eventSourceId.getValue());
                         ps.setLong(paramIndex++, event.getTimestamp());
                         ps.setString(paramIndex++, event.getSeverity().toString());
                         String detail = dbType.getString(event.getDetail(), Event.DETAIL_MAX_LENGTH);
                         ps.setString(paramIndex++, detail);
                         ps.addBatch();
-                    }
 
-                    // We may have trimmed the event detail for storage reasons, but for alerting use the
-                    // full, potentially larger detail string.
-                    notifyAlertConditionCacheManager("addEventData", eventSource,
-                        eventData.toArray(new Event[eventData.size()]));
+                        if (++batchCount == BATCH_SIZE) {
+                            ps.executeBatch();
+                            batchCount = 0;
+                        }
+                    }
+                }
+                if (batchCount > 0) {
+                    ps.executeBatch();
                 }
-                ps.executeBatch();
             } finally {
                 JDBCUtil.safeClose(ps);
             }
 
+            Map<EventSource, Set<Event>> storedEvents = new HashMap<EventSource, Set<Event>>(eventSourceIds.size());
+            for (EventSource eventSource : eventSourceIds.keySet()) {
+                storedEvents.put(eventSource, events.get(eventSource));
+            }
+
+            // Then update the event counters the event histograms are computed from.
+            try {
+                eventManager.insertEventCounters(storedEvents);
+            } catch (EventStorageException e) {
+                // a concurrent report most likely created some of the same counters, which are committed by now
+                log.debug("addEventData: Retrying to create the event counters: " + e.getMessage());
+                eventManager.insertEventCounters(storedEvents);
+            }
+            Map<EventCountKey, Integer> eventCounts = getEventCounts(storedEvents);
+            insertEventCounters(conn, dbType, eventCounts.keySet());
+            addEventCounts(conn, eventCounts);
+
+            // Finally check the alert conditions once the events are committed, outside of this transaction so that
+            // storing the events does not wait for it. We may have trimmed the event detail for storage reasons, but
+            // for alerting use the full, potentially larger detail string.
+            updateAlertConditionCacheAfterCommit("addEventData", storedEvents);
+
         } catch (Throwable t) {
+            // any cached event source id might be the reason for the failure (e.g. if the event source was deleted
+            // in the meantime), so don't reuse them
+            EventSourceIdCache.getSingleton().clear();
+
             // TODO what do we want to do here ?
             log.warn("addEventData: Insert of events failed : " + t.getMessage());
             if (t instanceof SQLException) {
@@ -204,29 +245,261 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         }
     }
 
-    private void notifyAlertConditionCacheManager(String callingMethod, EventSource source, Event... events) {
-        AlertConditionCacheStats stats = alertConditionCacheManager.checkConditions(source, events);
+    /**
+     * Returns the ids of the given event sources. The ids are taken from the cache if possible, as long as they still
+     * exist; the other event sources are created if they do not exist yet, and their ids are looked up and cached
+     * once the transaction commits. Event sources whose id can not be resolved (i.e. whose event definition does not
+     * exist) are left out.
+     */
+    private Map<EventSource, Integer> getEventSourceIds(Connection conn, DatabaseType dbType,
+        Set<EventSource> eventSources) throws SQLException {
+
+        EventSourceIdCache eventSourceIdCache = EventSourceIdCache.getSingleton();
+        Map<EventSource, Integer> eventSourceIds = new HashMap<EventSource, Integer>(eventSources.size());
+        List<EventSource> uncachedEventSources = new ArrayList<EventSource>();
+        for (EventSource eventSource : eventSources) {
+            Integer id = eventSourceIdCache.get(eventSource);
+            if (id != null) {
+                eventSourceIds.put(eventSource, id);
+            } else {
+                uncachedEventSources.add(eventSource);
+            }
+        }
+
+        // a cached event source may have been deleted since, possibly by another server, look those up again rather
+        // than fail on the foreign key of the events
+        if (!eventSourceIds.isEmpty()) {
+            Set<Integer> existingIds = getExistingEventSourceIds(conn, eventSourceIds.values());
+            for (Iterator<Map.Entry<EventSource, Integer>> i = eventSourceIds.entrySet().iterator(); i.hasNext();) {
+                Map.Entry<EventSource, Integer> eventSourceId = i.next();
+                if (!existingIds.contains(eventSourceId.getValue())) {
+                    eventSourceIdCache.remove(eventSourceId.getKey());
+                    uncachedEventSources.add(eventSourceId.getKey());
+                    i.remove();
+                }
+            }
+        }
+
+        if (uncachedEventSources.isEmpty()) {
+            return eventSourceIds;
+        }
+
+        String statementSql;
+        if (dbType instanceof PostgresqlDatabaseType || dbType instanceof OracleDatabaseType
+            || dbType instanceof H2DatabaseType) {
+            String nextvalSql = JDBCUtil.getNextValSql(conn, EventSource.TABLE_NAME);
+            statementSql = String.format(EVENT_SOURCE_INSERT_STMT, nextvalSql);
+        } else if (dbType instanceof SQLServerDatabaseType) {
+            statementSql = EVENT_SOURCE_INSERT_STMT_AUTOINC;
+        } else {
+            throw new IllegalArgumentException("Unknown database type, can't continue: " + dbType);
+        }
+
+        PreparedStatement ps = conn.prepareStatement(statementSql);
+        try {
+            for (EventSource eventSource : uncachedEventSources) {
+                int paramIndex = setEventSourceParameters(ps, 1, eventSource);
+                setEventSourceParameters(ps, paramIndex, eventSource);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            JDBCUtil.safeClose(ps);
+        }
+
+        Map<EventSource, Integer> resolvedIds = new HashMap<EventSource, Integer>(uncachedEventSources.size());
+        ps = conn.prepareStatement(EVENT_SOURCE_SELECT_ID_STMT);
+        try {
+            for (EventSource eventSource : uncachedEventSources) {
+                setEventSourceParameters(ps, 1, eventSource);
+                ResultSet rs = ps.executeQuery();
+                try {
+                    if (rs.next()) {
+                        resolvedIds.put(eventSource, rs.getInt(1));
+                    } else {
+                        log.warn("addEventData: Dropping the events of unknown " + eventSource);
+                    }
+                } finally {
+                    JDBCUtil.safeClose(rs);
+                }
+            }
+        } finally {
+            JDBCUtil.safeClose(ps);
+        }
+
+        // the sources may have just been created, only cache their ids once they are committed
+        eventSourceIdCache.putAfterCommit(transactionSynchronizationRegistry, resolvedIds);
+        eventSourceIds.putAll(resolvedIds);
+
+        return eventSourceIds;
+    }
+
+    private static Set<Integer> getExistingEventSourceIds(Connection conn, Collection<Integer> ids)
+        throws SQLException {
+
+        Set<Integer> existingIds = new HashSet<Integer>(ids.size());
+        List<Integer> idList = new ArrayList<Integer>(ids);
+        for (int from = 0; from < idList.size(); from += MAX_IN_CLAUSE_PARAMS) {
+            List<Integer> chunk = idList.subList(from, Math.min(from + MAX_IN_CLAUSE_PARAMS, idList.size()));
+            PreparedStatement ps = conn.prepareStatement(JDBCUtil.transformQueryForMultipleInParameters(
+                EVENT_SOURCE_SELECT_EXISTING_IDS_STMT, "@@IDS@@", chunk.size()));
+            ResultSet rs = null;
+            try {
+                int paramIndex = 1;
+                for (Integer id : chunk) {
+                    ps.setInt(paramIndex++, id);
+                }
+                rs = ps.executeQuery();
+                while (rs.next()) {
+                    existingIds.add(rs.getInt(1));
+                }
+            } finally {
+                JDBCUtil.safeClose(ps, rs);
+            }
+        }
+        return existingIds;
+    }
 
-        log.debug(callingMethod + ": " + stats.toString());
+    private static int setEventSourceParameters(PreparedStatement ps, int paramIndex, EventSource eventSource)
+        throws SQLException {
+        ps.setString(paramIndex++, eventSource.getEventDefinition().getName());
+        ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getName());
+        ps.setString(paramIndex++, eventSource.getEventDefinition().getResourceType().getPlugin());
+        ps.setInt(paramIndex++, eventSource.getResource().getId());
+        ps.setString(paramIndex++, eventSource.getLocation());
+        return paramIndex;
     }
 
+    /*
+     * internal method, do not expose to the remote API
+     */
     @Override
-    public int[] getEventCounts(Subject subject, int resourceId, long begin, long end, int numBuckets) {
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void insertEventCounters(Map<EventSource, Set<Event>> events) {
+        Connection conn = null;
+        try {
+            conn = rhqDs.getConnection();
+            insertEventCounters(conn, DatabaseTypeFactory.getDefaultDatabaseType(), getEventCounts(events).keySet());
+        } catch (SQLException e) {
+            throw new EventStorageException("Failed to create the event counters", e);
+        } finally {
+            JDBCUtil.safeClose(conn);
+        }
+    }
 
-        int[] buckets = new int[numBuckets];
+    private static Map<EventCountKey, Integer> getEventCounts(Map<EventSource, Set<Event>> events) {
+        Map<EventCountKey, Integer> eventCounts = new HashMap<EventCountKey, Integer>();
+        for (Map.Entry<EventSource, Set<Event>> entry : events.entrySet()) {
+            int resourceId = entry.getKey().getResource().getId();
+            for (Event event : entry.getValue()) {
+                EventCountKey key = new EventCountKey(resourceId, event.getSeverity(),
+                    EventCount.getTimeBucket(event.getTimestamp()));
+                Integer count = eventCounts.get(key);
+                eventCounts.put(key, (count == null) ? 1 : (count + 1));
+            }
+        }
+        return eventCounts;
+    }
+
+    private static void insertEventCounters(Connection conn, DatabaseType dbType, Set<EventCountKey> keys)
+        throws SQLException {
+
+        String statementSql;
+        if (dbType instanceof PostgresqlDatabaseType || dbType instanceof OracleDatabaseType
+            || dbType instanceof H2DatabaseType) {
+            String nextvalSql = JDBCUtil.getNextValSql(conn, EventCount.TABLE_NAME);
+            statementSql = String.format(EVENT_COUNT_INSERT_STMT, nextvalSql);
+        } else if (dbType instanceof SQLServerDatabaseType) {
+            statementSql = EVENT_COUNT_INSERT_STMT_AUTOINC;
+        } else {
+            throw new IllegalArgumentException("Unknown database type, can't continue: " + dbType);
+        }
+
+        PreparedStatement ps = conn.prepareStatement(statementSql);
+        try {
+            for (EventCountKey key : keys) {
+                int paramIndex = 1;
+                ps.setInt(paramIndex++, key.resourceId);
+                ps.setString(paramIndex++, key.severity.toString());
+                ps.setLong(paramIndex++, key.timeBucket);
+                ps.setInt(paramIndex++, key.resourceId);
+                ps.setInt(paramIndex++, key.resourceId);
+                ps.setString(paramIndex++, key.severity.toString());
+                ps.setLong(paramIndex++, key.timeBucket);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            JDBCUtil.safeClose(ps);
+        }
+    }
+
+    private static void addEventCounts(Connection conn, Map<EventCountKey, Integer> eventCounts) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(EVENT_COUNT_UPDATE_STMT);
+        try {
+            for (Map.Entry<EventCountKey, Integer> entry : eventCounts.entrySet()) {
+                EventCountKey key = entry.getKey();
+                int paramIndex = 1;
+                ps.setInt(paramIndex++, entry.getValue());
+                ps.setInt(paramIndex++, key.resourceId);
+                ps.setString(paramIndex++, key.severity.toString());
+                ps.setLong(paramIndex++, key.timeBucket);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            JDBCUtil.safeClose(ps);
+        }
+    }
+
+    /**
+     * Checks the alert conditions against the given events once the current transaction has committed, so that no
+     * alert fires for events that are rolled back. Without a transaction, they are checked right away.
+     */
+    private void updateAlertConditionCacheAfterCommit(final String callingMethod,
+        final Map<EventSource, Set<Event>> events) {
+        if (transactionSynchronizationRegistry == null
+            || transactionSynchronizationRegistry.getTransactionKey() == null) {
+            eventManager.updateAlertConditionCache(callingMethod, events);
+            return;
+        }
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    eventManager.updateAlertConditionCache(callingMethod, events);
+                }
+            }
+        });
+    }
+
+    @Asynchronous
+    @Override
+    public void updateAlertConditionCache(String callingMethod, Map<EventSource, Set<Event>> events) {
+        for (Map.Entry<EventSource, Set<Event>> entry : events.entrySet()) {
+            Set<Event> eventData = entry.getValue();
+            AlertConditionCacheStats stats = alertConditionCacheManager.checkConditions(entry.getKey(),
+                eventData.toArray(new Event[eventData.size()]));
 
-        // TODO possibly rewrite query so that the db calculates the buckets (?)
-        List<EventComposite> events = findEventComposites(subject, EntityContext.forResource(resourceId), begin, end,
-            null, null, null, PageControl.getUnlimitedInstance());
+            log.debug(callingMethod + ": " + stats.toString());
+        }
+    }
 
-        long timeDiff = end - begin;
-        long timePerBucket = timeDiff / numBuckets;
+    @Override
+    public int[] getEventCounts(Subject subject, int resourceId, long begin, long end, int numBuckets) {
+
+        int[][] severityCounts = getSeverityCountBuckets(subject, EntityContext.forResource(resourceId), begin, end,
+            numBuckets);
 
-        for (EventComposite event : events) {
-            long evTime = event.getTimestamp().getTime();
-            evTime = evTime - begin;
-            int bucket = (int) (evTime / timePerBucket);
-            buckets[bucket]++;
+        int[] buckets = new int[numBuckets];
+        for (int bucket = 0; bucket < numBuckets; bucket++) {
+            for (int count : severityCounts[bucket]) {
+                buckets[bucket] += count;
+            }
         }
 
         return buckets;
@@ -256,6 +529,7 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         for (EventSource source : sources) {
             entityManager.remove(source);
         }
+        EventSourceIdCache.getSingleton().clear();
     }
 
     @Override
@@ -282,6 +556,8 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
             }
         }
 
+        decrementEventCounts(eventIds);
+
         Query q = entityManager.createNamedQuery(Event.DELETE_BY_EVENT_IDS);
         q.setParameter("eventIds", eventIds);
         int deletedCount = q.executeUpdate();
@@ -289,6 +565,41 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         return deletedCount;
     }
 
+    /**
+     * Takes the given events, which are about to be deleted, out of the event counters. Counters that have already
+     * been rolled up are decremented if the minute counter an event was originally counted in no longer exists.
+     */
+    @SuppressWarnings("unchecked")
+    private void decrementEventCounts(List<Integer> eventIds) {
+        Query q = entityManager.createQuery("" //
+            + "SELECT es.resourceId, e.severity, e.timestamp " //
+            + "  FROM Event e JOIN e.source es " //
+            + " WHERE e.id IN ( :eventIds )");
+        q.setParameter("eventIds", eventIds);
+        List<Object[]> rawResults = q.getResultList();
+
+        Map<EventCountKey, Integer> eventCounts = new HashMap<EventCountKey, Integer>();
+        for (Object[] rawResult : rawResults) {
+            EventCountKey key = new EventCountKey((Integer) rawResult[0], (EventSeverity) rawResult[1],
+                EventCount.getTimeBucket((Long) rawResult[2]));
+            Integer count = eventCounts.get(key);
+            eventCounts.put(key, (count == null) ? 1 : (count + 1));
+        }
+
+        Query decrement = entityManager.createNamedQuery(EventCount.UPDATE_DECREMENT);
+        for (Map.Entry<EventCountKey, Integer> entry : eventCounts.entrySet()) {
+            EventCountKey key = entry.getKey();
+            decrement.setParameter("delta", entry.getValue());
+            decrement.setParameter("resourceId", key.resourceId);
+            decrement.setParameter("severity", key.severity);
+            decrement.setParameter("timeBucket", key.timeBucket);
+            if (decrement.executeUpdate() == 0) {
+                decrement.setParameter("timeBucket", EventCount.getRollupTimeBucket(key.timeBucket));
+                decrement.executeUpdate();
+            }
+        }
+    }
+
     @Override
     public int purgeEventsForContext(Subject subject, EntityContext context) {
 
@@ -307,71 +618,191 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         }
 
         Query purgeQuery = null;
+        Query purgeCountsQuery = null;
         if (context.type == EntityContext.Type.Resource) {
             purgeQuery = entityManager.createNamedQuery(Event.DELETE_ALL_BY_RESOURCE);
             purgeQuery.setParameter("resourceId", context.resourceId);
+            purgeCountsQuery = entityManager.createNamedQuery(EventCount.DELETE_ALL_BY_RESOURCE);
+            purgeCountsQuery.setParameter("resourceId", context.resourceId);
         } else if (context.type == EntityContext.Type.ResourceGroup) {
             purgeQuery = entityManager.createNamedQuery(Event.DELETE_ALL_BY_RESOURCE_GROUP);
             purgeQuery.setParameter("groupId", context.groupId);
+            purgeCountsQuery = entityManager.createNamedQuery(EventCount.DELETE_ALL_BY_RESOURCE_GROUP);
+            purgeCountsQuery.setParameter("groupId", context.groupId);
         }
 
         int deletedCount = purgeQuery.executeUpdate();
+        purgeCountsQuery.executeUpdate();
 
         return deletedCount;
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public Map<EventSeverity, Integer> getEventCountsBySeverity(Subject subject, int resourceId, long startDate,
         long endDate) {
-        Map<EventSeverity, Integer> results = new HashMap<EventSeverity, Integer>();
-        Query q = entityManager.createNamedQuery(Event.QUERY_EVENT_COUNTS_BY_SEVERITY);
-        q.setParameter("resourceId", resourceId);
-        q.setParameter("start", startDate);
-        q.setParameter("end", endDate);
-        List<Object[]> rawResults = q.getResultList();
-        for (Object[] rawResult : rawResults) {
-            EventSeverity severity = (EventSeverity) rawResult[0];
-            long count = (Long) rawResult[1];
-            results.put(severity, (int) count);
-        }
-        return results;
+        return getEventCountsBySeverity(EventCount.QUERY_EVENT_COUNTS_BY_SEVERITY,
+            Event.QUERY_EVENT_COUNTS_BY_SEVERITY, "resourceId", resourceId, startDate, endDate);
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public Map<EventSeverity, Integer> getEventCountsBySeverityForGroup(Subject subject, int groupId, long startDate,
         long endDate) {
+        return getEventCountsBySeverity(EventCount.QUERY_EVENT_COUNTS_BY_SEVERITY_GROUP,
+            Event.QUERY_EVENT_COUNTS_BY_SEVERITY_GROUP, "groupId", groupId, startDate, endDate);
+    }
+
+    /**
+     * Counts the events in [startDate, endDate] by severity. The whole hours in that window are answered from the
+     * event counters, only the partial hours at either end of the window are counted from the events themselves.
+     */
+    private Map<EventSeverity, Integer> getEventCountsBySeverity(String countersQueryName, String eventsQueryName,
+        String idParameterName, int id, long startDate, long endDate) {
+
         Map<EventSeverity, Integer> results = new HashMap<EventSeverity, Integer>();
-        Query q = entityManager.createNamedQuery(Event.QUERY_EVENT_COUNTS_BY_SEVERITY_GROUP);
-        q.setParameter("groupId", groupId);
+
+        long countersBegin = getCountersBegin(startDate);
+        long countersEnd = getCountersEnd(endDate);
+        if (countersBegin >= countersEnd) {
+            addEventCountsBySeverity(results, eventsQueryName, idParameterName, id, startDate, endDate);
+            return results;
+        }
+
+        Query q = entityManager.createNamedQuery(countersQueryName);
+        q.setParameter(idParameterName, id);
+        q.setParameter("start", countersBegin);
+        q.setParameter("end", countersEnd);
+        addEventCountsBySeverity(results, q);
+
+        if (startDate < countersBegin) {
+            addEventCountsBySeverity(results, eventsQueryName, idParameterName, id, startDate, countersBegin - 1);
+        }
+        if (countersEnd <= endDate) {
+            addEventCountsBySeverity(results, eventsQueryName, idParameterName, id, countersEnd, endDate);
+        }
+
+        return results;
+    }
+
+    private void addEventCountsBySeverity(Map<EventSeverity, Integer> results, String eventsQueryName,
+        String idParameterName, int id, long startDate, long endDate) {
+        Query q = entityManager.createNamedQuery(eventsQueryName);
+        q.setParameter(idParameterName, id);
         q.setParameter("start", startDate);
         q.setParameter("end", endDate);
+        addEventCountsBySeverity(results, q);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addEventCountsBySeverity(Map<EventSeverity, Integer> results, Query q) {
         List<Object[]> rawResults = q.getResultList();
         for (Object[] rawResult : rawResults) {
             EventSeverity severity = (EventSeverity) rawResult[0];
-            long count = (Long) rawResult[1];
-            results.put(severity, (int) count);
+            Number count = (Number) rawResult[1];
+            if (count == null || count.intValue() == 0) {
+                continue;
+            }
+            Integer current = results.get(severity);
+            results.put(severity, (current == null) ? count.intValue() : (current + count.intValue()));
         }
-        return results;
     }
 
     @Override
     public EventSeverity[] getSeverityBucketsByContext(Subject subject, EntityContext context, long begin, long end,
         int bucketCount) {
 
+        int[][] severityCounts = getSeverityCountBuckets(subject, context, begin, end, bucketCount);
+
+        EventSeverity[] severities = EventSeverity.values();
+        EventSeverity[] buckets = new EventSeverity[bucketCount];
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            for (int severity = severities.length - 1; severity >= 0; severity--) {
+                if (severityCounts[bucket][severity] > 0) {
+                    buckets[bucket] = severities[severity];
+                    break;
+                }
+            }
+        }
+
+        return buckets;
+    }
+
+    /**
+     * Splits [begin, end] into <code>bucketCount</code> buckets and counts the events in each bucket by severity.
+     * The whole hours in that window are answered from the event counters, only the partial hours at either end of
+     * the window are read from the events themselves. Counters are placed in the bucket their time bucket starts
+     * in, so a bucket boundary that does not fall on a counter boundary is only as precise as the counter; that is,
+     * to the minute for recent events and to the hour for events whose counters have been rolled up. Buckets shorter
+     * than an hour are therefore not computed from the counters that may have been rolled up; the events of those
+     * hours are read instead.
+     *
+     * @return the counts, indexed by bucket and then by {@link EventSeverity#ordinal() severity ordinal}
+     */
+    @SuppressWarnings("unchecked")
+    private int[][] getSeverityCountBuckets(Subject subject, EntityContext context, long begin, long end,
+        int bucketCount) {
+
+        checkViewPermission(subject, context);
+
+        int[][] buckets = new int[bucketCount][EventSeverity.values().length];
+        long timePerBucket = Math.max(1L, (end - begin) / bucketCount);
+
+        long countersBegin = getCountersBegin(begin);
+        if (timePerBucket < EventCount.ROLLUP_BUCKET_SIZE) {
+            // an hourly counter can not be split across buckets, only use the counters that are still per minute
+            countersBegin = Math.max(countersBegin,
+                EventCount.getRollupTimeBucket(System.currentTimeMillis() - EventCount.ROLLUP_AGE));
+        }
+        long countersEnd = getCountersEnd(end);
+        if (countersBegin >= countersEnd) {
+            countersBegin = countersEnd = end + 1;
+        } else {
+            Query q;
+            if (context.type == EntityContext.Type.Resource) {
+                q = entityManager.createNamedQuery(EventCount.QUERY_FIND_BY_RESOURCE);
+                q.setParameter("resourceId", context.resourceId);
+            } else if (context.type == EntityContext.Type.ResourceGroup) {
+                q = entityManager.createNamedQuery(EventCount.QUERY_FIND_BY_RESOURCE_GROUP);
+                q.setParameter("groupId", context.groupId);
+            } else if (context.type == EntityContext.Type.AutoGroup) {
+                q = entityManager.createNamedQuery(EventCount.QUERY_FIND_BY_AUTOGROUP);
+                q.setParameter("parentResourceId", context.parentResourceId);
+                q.setParameter("resourceTypeId", context.resourceTypeId);
+            } else {
+                throw new IllegalArgumentException(context.getUnknownContextMessage());
+            }
+            q.setParameter("start", countersBegin);
+            q.setParameter("end", countersEnd);
+
+            List<Object[]> counters = q.getResultList();
+            for (Object[] counter : counters) {
+                long timeBucket = (Long) counter[0];
+                EventSeverity severity = (EventSeverity) counter[1];
+                int count = (Integer) counter[2];
+                buckets[getBucket(begin, timeBucket, timePerBucket, bucketCount)][severity.ordinal()] += count;
+            }
+        }
+
+        if (begin < countersBegin) {
+            addSeverityCountBuckets(buckets, subject, context, begin, Math.min(countersBegin - 1, end), begin,
+                timePerBucket);
+        }
+        if (countersEnd <= end && countersEnd > countersBegin) {
+            addSeverityCountBuckets(buckets, subject, context, countersEnd, end, begin, timePerBucket);
+        }
+
+        return buckets;
+    }
+
+    private void addSeverityCountBuckets(int[][] buckets, Subject subject, EntityContext context, long start,
+        long end, long begin, long timePerBucket) {
+
         EventCriteria criteria = new EventCriteria();
-        criteria.addFilterStartTime(begin);
+        criteria.addFilterStartTime(start);
         criteria.addFilterEndTime(end);
+        criteria.addFilterEntityContext(context);
+        criteria.clearPaging();
 
-        /*
-         * if the bucket computation is pushed into the database, it saves on data transfer across the wire. this
-         * solution is currently querying N number of strings (event.severity) and N number of longs (event.timestamp),
-         * where N is the number of events between 'begin' and 'end'.  if the severity buckets are computed in a single
-         * query, the wire load would only be K integers, where K is the bucketCount.
-         */
         CriteriaQueryGenerator generator = new CriteriaQueryGenerator(subject, criteria);
-        ;
         String replacementSelectList = " event.severity, event.timestamp ";
         generator.alterProjection(replacementSelectList);
 
@@ -384,28 +815,33 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
             entityManager);
         PageList<Object[]> flyWeights = queryRunner.execute();
 
-        EventSeverity[] buckets = new EventSeverity[bucketCount];
-        long timeDiff = end - begin;
-        long timePerBucket = timeDiff / bucketCount;
-
         for (Object[] nextFly : flyWeights) {
-            long eventTime = (Long) nextFly[1];
             EventSeverity eventSeverity = (EventSeverity) nextFly[0];
-
-            eventTime = eventTime - begin;
-            int bucket = (int) (eventTime / timePerBucket);
-            if (eventSeverity.isMoreSevereThan(buckets[bucket])) {
-                buckets[bucket] = eventSeverity;
-            }
+            long eventTime = (Long) nextFly[1];
+            buckets[getBucket(begin, eventTime, timePerBucket, buckets.length)][eventSeverity.ordinal()]++;
         }
+    }
 
-        return buckets;
+    private static int getBucket(long begin, long time, long timePerBucket, int bucketCount) {
+        return (int) Math.min((time - begin) / timePerBucket, bucketCount - 1);
     }
 
-    @Override
-    public PageList<EventComposite> findEventComposites(Subject subject, EntityContext context, long begin, long end,
-        EventSeverity[] severities, String source, String detail, PageControl pc) {
+    /**
+     * @return the start of the first whole hour in a window beginning at <code>begin</code>, i.e. the first time
+     *         bucket whose counters can be used to count the events in the window
+     */
+    private static long getCountersBegin(long begin) {
+        return EventCount.getRollupTimeBucket(begin + EventCount.ROLLUP_BUCKET_SIZE - 1);
+    }
 
+    /**
+     * @return the end (exclusive) of the last whole hour in a window ending (inclusive) at <code>end</code>
+     */
+    private static long getCountersEnd(long end) {
+        return EventCount.getRollupTimeBucket(end + 1);
+    }
+
+    private void checkViewPermission(Subject subject, EntityContext context) {
         if (context.type == EntityContext.Type.Resource) {
             if (authorizationManager.canViewResource(subject, context.resourceId) == false) {
                 throw new PermissionException("User [" + subject.getName()
@@ -423,6 +859,13 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
                     + context.parentResourceId + ", resourceTypeId=" + context.resourceTypeId + "]");
             }
         }
+    }
+
+    @Override
+    public PageList<EventComposite> findEventComposites(Subject subject, EntityContext context, long begin, long end,
+        EventSeverity[] severities, String source, String detail, PageControl pc) {
+
+        checkViewPermission(subject, context);
 
         EventCriteria criteria = new EventCriteria();
         criteria.addFilterStartTime(begin);
@@ -515,4 +958,38 @@ public class EventManagerBean implements EventManagerLocal, EventManagerRemote {
         return getSeverityBucketsByContext(subject, EntityContext.forGroup(resourceGroupId), begin, end, numBuckets);
     }
 
+    /**
+     * Identifies an event counter, see {@link EventCount}.
+     */
+    private static class EventCountKey {
+        private final int resourceId;
+        private final EventSeverity severity;
+        private final long timeBucket;
+
+        private EventCountKey(int resourceId, EventSeverity severity, long timeBucket) {
+            this.resourceId = resourceId;
+            this.severity = severity;
+            this.timeBucket = timeBucket;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof EventCountKey)) {
+                return false;
+            }
+            EventCountKey that = (EventCountKey) obj;
+            return resourceId == that.resourceId && severity == that.severity && timeBucket == that.timeBucket;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = resourceId;
+            result = 31 * result + severity.hashCode();
+            result = 31 * result + (int) (timeBucket ^ (timeBucket >>> 32));
+            return result;
+        }
+    }
 }
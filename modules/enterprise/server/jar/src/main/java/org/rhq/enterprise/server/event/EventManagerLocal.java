@@ -51,6 +51,29 @@ public interface EventManagerLocal extends EventManagerRemote {
      */
     void addEventData(Map<EventSource, Set<Event>> events);
 
+    /**
+     * Creates the (empty) event counters the passed events will be counted in, if they do not exist yet. This is done
+     * in a new transaction, so that concurrent reports of events of the same resources find the counters committed.
+     * The counters of resources that are not committed yet are skipped.
+     * This is an internal method that is exposed here so as to enable finer-grained manipulation of transactional
+     * boundaries.
+     *
+     * @param events the events to be counted
+     *
+     * @throws EventStorageException if the counters can not be created, e.g. because some of them have been created
+     *                               concurrently
+     */
+    void insertEventCounters(Map<EventSource, Set<Event>> events);
+
+    /**
+     * Checks the alert conditions against the passed events, which have been stored already. This is done
+     * asynchronously, so that it is not part of the transaction that stored the events.
+     *
+     * @param callingMethod the name of the calling method, for logging purposes
+     * @param events the stored events
+     */
+    void updateAlertConditionCache(String callingMethod, Map<EventSource, Set<Event>> events);
+
     Map<EventSeverity, Integer> getEventCountsBySeverity(Subject subject, int resourceId, long startDate, long endDate);
 
     Map<EventSeverity, Integer> getEventCountsBySeverityForGroup(Subject subject, int groupId, long startDate,
@@ -0,0 +1,198 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.event;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.event.EventDefinition;
+import org.rhq.core.domain.event.EventSource;
+
+/**
+ * Caches the ids of the {@link EventSource}s that events have been stored for, so that storing more events for the
+ * same sources does not need to look them up again.
+ *
+ * The agent does not know the ids of the event sources it reports, only their natural key (the event definition name,
+ * the name and plugin of the definition's resource type, the resource id and the source location), which is what
+ * this cache is keyed on. Once created, an event source never changes; it can only be deleted. Entries of deleted
+ * sources must be {@link #removeResources(Collection) removed} when that happens, or {@link #clear() cleared} when
+ * storing events fails for a reason that could be a stale entry. As the event sources may also be deleted by another
+ * server of the cloud, whose cache this one does not know about, callers still verify that the cached ids exist.
+ *
+ * Ids of event sources created by a transaction are only {@link #putAfterCommit(TransactionSynchronizationRegistry,
+ * Map) cached once it commits}, so that a rolled back transaction does not leave the ids of sources that do not exist.
+ *
+ * The cache is bounded; it is simply cleared when it fills up, since the ids are cheap to look up again.
+ */
+public class EventSourceIdCache {
+    private static final Log LOG = LogFactory.getLog(EventSourceIdCache.class);
+
+    private static final String MAX_SIZE_SYSTEM_PROPERTY = "org.rhq.enterprise.server.event.EventSourceIdCache.MAX_SIZE";
+    private static final int MAX_SIZE = Integer.getInteger(MAX_SIZE_SYSTEM_PROPERTY, 100000);
+    static {
+        LOG.info(MAX_SIZE_SYSTEM_PROPERTY + " = " + MAX_SIZE);
+    }
+
+    private static final EventSourceIdCache singleton = new EventSourceIdCache(MAX_SIZE);
+
+    private final int maxSize;
+
+    private final ConcurrentMap<Key, Integer> ids = new ConcurrentHashMap<Key, Integer>();
+
+    public static EventSourceIdCache getSingleton() {
+        return singleton;
+    }
+
+    EventSourceIdCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the id of the given event source, or <code>null</code> if it is not cached
+     */
+    Integer get(EventSource eventSource) {
+        return ids.get(new Key(eventSource));
+    }
+
+    void put(EventSource eventSource, int id) {
+        put(new Key(eventSource), id);
+    }
+
+    private void put(Key key, int id) {
+        if (ids.size() >= maxSize) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Clearing event source id cache, it reached its maximum size of " + maxSize);
+            }
+            ids.clear();
+        }
+        ids.put(key, id);
+    }
+
+    /**
+     * Caches the given ids once the current transaction has committed; they are dropped if it rolls back. Without a
+     * transaction, they are cached right away.
+     */
+    void putAfterCommit(TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+        Map<EventSource, Integer> eventSourceIds) {
+        final Map<Key, Integer> keyIds = new HashMap<Key, Integer>(eventSourceIds.size());
+        for (Map.Entry<EventSource, Integer> eventSourceId : eventSourceIds.entrySet()) {
+            keyIds.put(new Key(eventSourceId.getKey()), eventSourceId.getValue());
+        }
+
+        if (transactionSynchronizationRegistry == null
+            || transactionSynchronizationRegistry.getTransactionKey() == null) {
+            putAll(keyIds);
+            return;
+        }
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    putAll(keyIds);
+                }
+            }
+        });
+    }
+
+    private void putAll(Map<Key, Integer> keyIds) {
+        for (Map.Entry<Key, Integer> keyId : keyIds.entrySet()) {
+            put(keyId.getKey(), keyId.getValue());
+        }
+    }
+
+    void remove(EventSource eventSource) {
+        ids.remove(new Key(eventSource));
+    }
+
+    /**
+     * Removes the ids of the event sources of the given resources, whose event sources are being deleted.
+     */
+    public void removeResources(Collection<Integer> resourceIds) {
+        for (Iterator<Key> i = ids.keySet().iterator(); i.hasNext();) {
+            if (resourceIds.contains(i.next().resourceId)) {
+                i.remove();
+            }
+        }
+    }
+
+    void clear() {
+        ids.clear();
+    }
+
+    int size() {
+        return ids.size();
+    }
+
+    private static class Key {
+        private final String definitionName;
+        private final String resourceTypeName;
+        private final String plugin;
+        private final int resourceId;
+        private final String location;
+
+        private Key(EventSource eventSource) {
+            EventDefinition definition = eventSource.getEventDefinition();
+            this.definitionName = definition.getName();
+            this.resourceTypeName = definition.getResourceType().getName();
+            this.plugin = definition.getResourceType().getPlugin();
+            this.resourceId = eventSource.getResource().getId();
+            this.location = eventSource.getLocation();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) obj;
+            return resourceId == that.resourceId && definitionName.equals(that.definitionName)
+                && resourceTypeName.equals(that.resourceTypeName) && plugin.equals(that.plugin)
+                && location.equals(that.location);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = resourceId;
+            result = 31 * result + definitionName.hashCode();
+            result = 31 * result + resourceTypeName.hashCode();
+            result = 31 * result + plugin.hashCode();
+            result = 31 * result + location.hashCode();
+            return result;
+        }
+    }
+}
@@ -41,6 +41,7 @@ import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -73,11 +74,14 @@ import org.rhq.enterprise.server.alert.engine.AlertConditionCacheStats;
 import org.rhq.enterprise.server.alert.engine.model.AvailabilityDurationCacheElement;
 import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
 import org.rhq.enterprise.server.authz.PermissionException;
+import org.rhq.enterprise.server.core.AgentHeartbeatTable;
 import org.rhq.enterprise.server.core.AgentManagerLocal;
 import org.rhq.enterprise.server.measurement.instrumentation.MeasurementMonitor;
 import org.rhq.enterprise.server.resource.ResourceAvailabilityManagerLocal;
 import org.rhq.enterprise.server.resource.ResourceManagerLocal;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.DynaGroupChangeTracker;
+import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator.Dependency;
 import org.rhq.enterprise.server.scheduler.jobs.AlertAvailabilityDurationJob;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
@@ -111,6 +115,9 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
+    @javax.annotation.Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     @EJB
     private AvailabilityManagerLocal availabilityManager;
     @EJB
@@ -731,6 +738,7 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
 
             // update the lastAvailReport time and unset the backfill flag if it is set.
             availabilityManager.updateLastAvailabilityReportInNewTransaction(agentToUpdate.intValue());
+            AgentHeartbeatTable.getSingleton().setBackfilled(agentName, false);
 
         }
 
@@ -1047,6 +1055,8 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
         if (currentAvailability != null && currentAvailability.getAvailabilityType() != reported.getAvailabilityType()) {
             currentAvailability.setAvailabilityType(reported.getAvailabilityType());
             entityManager.merge(currentAvailability);
+            DynaGroupChangeTracker.getSingleton().resourceChanged(transactionSynchronizationRegistry,
+                Dependency.AVAILABILITY, reported.getResource().getId());
 
         } else if (currentAvailability == null) {
             // This should not happen unless the Resource in the report is stale, which can happen in certain
@@ -1143,6 +1153,7 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
 
         int newAvailsSize = platformResourcesWithStatus.size() + resourcesWithStatus.size();
         List<Availability> newAvailabilities = new ArrayList<Availability>(newAvailsSize);
+        List<Integer> changedResourceIds = new ArrayList<Integer>(newAvailsSize);
 
         // if the platform is being set to a new status handle it now
         if (!platformResourcesWithStatus.isEmpty()) {
@@ -1151,6 +1162,7 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
             if (newAvailabilityInterval != null) {
                 newAvailabilities.add(newAvailabilityInterval);
             }
+            changedResourceIds.add(platformResourcesWithStatus.get(0).getResourceId());
 
             resourceAvailabilityManager.updateAgentResourcesLatestAvailability(agentId, platformAvailType, true);
         }
@@ -1161,9 +1173,12 @@ public class AvailabilityManagerBean implements AvailabilityManagerLocal, Availa
             if (newAvailabilityInterval != null) {
                 newAvailabilities.add(newAvailabilityInterval);
             }
+            changedResourceIds.add(record.getResourceId());
         }
 
         resourceAvailabilityManager.updateAgentResourcesLatestAvailability(agentId, childAvailType, false);
+        DynaGroupChangeTracker.getSingleton().resourcesChanged(transactionSynchronizationRegistry,
+            Dependency.AVAILABILITY, changedResourceIds);
 
         // To handle backfilling process, which will mark them unknown
         notifyAlertConditionCacheManager("setAllAgentResourceAvailabilities",
@@ -0,0 +1,110 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.measurement;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The ids of the call-time data keys, by schedule id and call destination, so that the call-time data values can be
+ * inserted with their key id and only the new destinations need a key insert.
+ * <p/>
+ * Keys are never purged, they are only deleted along with their schedule. An id cached for a deleted key is detected
+ * when inserting the values fails, the caller then {@link #removeSchedules(Collection) removes} the entries of the
+ * schedules and falls back to resolving the keys in the database.
+ */
+public class CallTimeDataKeyCache {
+
+    private static final String MAX_SIZE_SYSTEM_PROPERTY = "rhq.server.calltime.key-cache.max-size";
+
+    static final int MAX_SIZE = Integer.getInteger(MAX_SIZE_SYSTEM_PROPERTY, 100000);
+
+    private static final CallTimeDataKeyCache singleton = new CallTimeDataKeyCache(MAX_SIZE);
+
+    private final LinkedHashMap<Key, Integer> keyIds;
+
+    public static CallTimeDataKeyCache getSingleton() {
+        return singleton;
+    }
+
+    CallTimeDataKeyCache(final int maxSize) {
+        this.keyIds = new LinkedHashMap<Key, Integer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param callDestination the destination as stored, i.e. clipped to the size of the column
+     *
+     * @return the id of the key, or null if it is not cached
+     */
+    public synchronized Integer get(int scheduleId, String callDestination) {
+        return keyIds.get(new Key(scheduleId, callDestination));
+    }
+
+    public synchronized void put(int scheduleId, String callDestination, int keyId) {
+        keyIds.put(new Key(scheduleId, callDestination), keyId);
+    }
+
+    public synchronized void removeSchedules(Collection<Integer> scheduleIds) {
+        for (Iterator<Key> i = keyIds.keySet().iterator(); i.hasNext();) {
+            if (scheduleIds.contains(i.next().scheduleId)) {
+                i.remove();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return keyIds.size();
+    }
+
+    private static class Key {
+        private final int scheduleId;
+        private final String callDestination;
+
+        private Key(int scheduleId, String callDestination) {
+            this.scheduleId = scheduleId;
+            this.callDestination = callDestination;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * scheduleId) + callDestination.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return (scheduleId == other.scheduleId) && callDestination.equals(other.callDestination);
+        }
+    }
+}
@@ -21,9 +21,14 @@ package org.rhq.enterprise.server.measurement;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.ejb.EJB;
@@ -58,6 +63,7 @@ import org.rhq.core.domain.server.PersistenceUtility;
 import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.domain.util.PageList;
 import org.rhq.core.domain.util.PageOrdering;
+import org.rhq.core.util.exception.ThrowableUtil;
 import org.rhq.core.util.jdbc.JDBCUtil;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.alert.engine.AlertConditionCacheManagerLocal;
@@ -95,6 +101,21 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
         + "(key_id, begin_time, end_time, minimum, maximum, total, count) SELECT key.id, ?, ?, ?, ?, ?, ? FROM "
         + DATA_KEY_TABLE_NAME + " key WHERE key.schedule_id = ? AND key.call_destination = ?";
 
+    private static final String CALLTIME_VALUE_INSERT_BY_KEY_ID_STATEMENT = "INSERT INTO " + DATA_VALUE_TABLE_NAME
+        + "(id, key_id, begin_time, end_time, minimum, maximum, total, count) VALUES (%s, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String CALLTIME_VALUE_INSERT_BY_KEY_ID_STATEMENT_AUTOINC = "INSERT INTO "
+        + DATA_VALUE_TABLE_NAME + "(key_id, begin_time, end_time, minimum, maximum, total, count) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String CALLTIME_KEY_SELECT_STATEMENT = "SELECT id, call_destination FROM "
+        + DATA_KEY_TABLE_NAME + " WHERE schedule_id = ? AND call_destination IN ( @@DESTINATIONS@@ )";
+
+    // Oracle does not allow more than 1000 expressions in an IN list
+    private static final int KEY_SELECT_CHUNK_SIZE = 1000;
+
+    private static final int VALUE_INSERT_BATCH_SIZE = 1000;
+
     private final Log log = LogFactory.getLog(CallTimeDataManagerBean.class);
 
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
@@ -127,7 +148,17 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
         callTimeDataManager.insertCallTimeDataKeys(callTimeDataSet);
 
         // Finally, add the stats themselves to the value table.
-        callTimeDataManager.insertCallTimeDataValues(callTimeDataSet);
+        try {
+            callTimeDataManager.insertCallTimeDataValues(callTimeDataSet);
+        } catch (MeasurementStorageException e) {
+            log.warn("Retrying to persist call-time data values with the keys resolved by the database: "
+                + ThrowableUtil.getAllMessages(e));
+            callTimeDataManager.insertCallTimeDataValues(callTimeDataSet);
+        }
+
+        // The rollup job does not go back to the hours it has rolled up, values stored late (e.g. replayed from the
+        // agent's spool) are merged into the rollups once they are committed, in a transaction of their own.
+        callTimeDataManager.mergeCallTimeDataRollups(callTimeDataSet);
         MeasurementMonitor.getMBean().incrementCallTimeInsertTime(System.currentTimeMillis() - startTime);
 
     }
@@ -178,6 +209,13 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
                 + "] and resource[id=" + resourceId + "]");
         }
 
+        PageList<CallTimeDataComposite> rollupResults = findCallTimeDataFromRollups(new CallTimeDataRollupQuery(rhqDs,
+            CallTimeDataRollupQuery.KEYS_FOR_SCHEDULE, new Object[] { scheduleId }, true), beginTime, endTime, null,
+            pageControl);
+        if (rollupResults != null) {
+            return rollupResults;
+        }
+
         String query = CallTimeDataValue.QUERY_FIND_COMPOSITES_FOR_RESOURCE;
 
         Query queryWithOrderBy = PersistenceUtility.createQueryWithOrderBy(entityManager, query, pageControl);
@@ -241,6 +279,16 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
             pageControl.addDefaultOrderingField("calltimedatavalue.key.callDestination", PageOrdering.ASC); // add this to sort, if not already specified
         }
 
+        CallTimeDataRollupQuery rollupQuery = getRollupQuery(subject, context, criteria);
+        if (rollupQuery != null) {
+            PageList<CallTimeDataComposite> rollupResults = findCallTimeDataFromRollups(rollupQuery,
+                criteria.getFilterBeginTime(), criteria.getFilterEndTime(), criteria.getFilterDestination(),
+                pageControl);
+            if (rollupResults != null) {
+                return rollupResults;
+            }
+        }
+
         if (context.type == EntityContext.Type.Resource) {
             criteria.addFilterResourceId(context.resourceId);
         } else if (context.type == EntityContext.Type.ResourceGroup) {
@@ -277,6 +325,62 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
         return results;
     }
 
+    /**
+     * The rollups can only answer the plain time window queries of the UI: paged and sorted by the page control, with
+     * no filter on the aggregated values. The subject must be allowed to view the whole context since the rollups are
+     * not filtered per resource.
+     *
+     * @return the query of the context, or null if the raw values have to be queried
+     */
+    private CallTimeDataRollupQuery getRollupQuery(Subject subject, EntityContext context,
+        CallTimeDataCriteria criteria) {
+        if (criteria.getPageControlOverrides() == null || criteria.getFilterBeginTime() == null
+            || criteria.getFilterEndTime() == null || criteria.getFilterMinimum() != null
+            || criteria.getFilterMaximum() != null || criteria.getFilterTotal() != null
+            || criteria.getFilterCount() != null || criteria.getFilterResourceId() != null
+            || criteria.getFilterResourceGroupId() != null || criteria.getFilterAutoGroupParentResourceId() != null
+            || criteria.getFilterAutoGroupResourceTypeId() != null || criteria.isFiltersOptional()
+            || criteria.getRestriction() != null || criteria.getSearchExpression() != null
+            || criteria.getPagingAfterId() != null) {
+            return null;
+        }
+        if (criteria.getFilterDestination() != null
+            && (criteria.isStrict() || criteria.getStrictFilters() != null || criteria.isCaseSensitive() || criteria
+                .getCaseSensitiveFilters() != null)) {
+            return null;
+        }
+
+        boolean inventoryManager = authorizationManager.isInventoryManager(subject);
+        if (context.type == EntityContext.Type.Resource) {
+            if (inventoryManager || authorizationManager.canViewResource(subject, context.resourceId)) {
+                return new CallTimeDataRollupQuery(rhqDs, CallTimeDataRollupQuery.KEYS_FOR_RESOURCE,
+                    new Object[] { context.resourceId }, false);
+            }
+        } else if (context.type == EntityContext.Type.ResourceGroup) {
+            if (inventoryManager || authorizationManager.canViewGroup(subject, context.groupId)) {
+                return new CallTimeDataRollupQuery(rhqDs, CallTimeDataRollupQuery.KEYS_FOR_GROUP,
+                    new Object[] { context.groupId }, false);
+            }
+        } else if (context.type == EntityContext.Type.AutoGroup) {
+            if (inventoryManager
+                || authorizationManager.canViewAutoGroup(subject, context.parentResourceId, context.resourceTypeId)) {
+                return new CallTimeDataRollupQuery(rhqDs, CallTimeDataRollupQuery.KEYS_FOR_AUTOGROUP, new Object[] {
+                    context.parentResourceId, context.resourceTypeId }, false);
+            }
+        }
+        return null;
+    }
+
+    private PageList<CallTimeDataComposite> findCallTimeDataFromRollups(CallTimeDataRollupQuery rollupQuery,
+        long beginTime, long endTime, String destination, PageControl pageControl) {
+        try {
+            return rollupQuery.execute(beginTime, endTime, destination, pageControl);
+        } catch (SQLException e) {
+            log.warn("Failed to query the call-time data rollups, querying the raw values instead: " + e);
+            return null;
+        }
+    }
+
     /*
      * internal method, do not expose to the remote API
      */
@@ -287,12 +391,40 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
         int[] results;
         String insertKeySql;
         PreparedStatement ps = null;
+        ResultSet rs = null;
         Connection conn = null;
 
         try {
             conn = rhqDs.getConnection();
             DatabaseType dbType = DatabaseTypeFactory.getDefaultDatabaseType();
 
+            // only the destinations whose key id is not cached can be new
+            CallTimeDataKeyCache keyCache = CallTimeDataKeyCache.getSingleton();
+            Map<Integer, Set<String>> uncachedDestinations = new HashMap<Integer, Set<String>>();
+            int uncachedCount = 0;
+            for (CallTimeData callTimeData : callTimeDataSet) {
+                int scheduleId = callTimeData.getScheduleId();
+                for (String callDestination : callTimeData.getValues().keySet()) {
+                    // make sure the destination string is safe for storage, clip as needed
+                    String safeCallDestination = dbType.getString(callDestination,
+                        CallTimeDataKey.DESTINATION_MAX_LENGTH);
+                    if (keyCache.get(scheduleId, safeCallDestination) == null) {
+                        Set<String> destinations = uncachedDestinations.get(scheduleId);
+                        if (destinations == null) {
+                            destinations = new HashSet<String>();
+                            uncachedDestinations.put(scheduleId, destinations);
+                        }
+                        if (destinations.add(safeCallDestination)) {
+                            uncachedCount++;
+                        }
+                    }
+                }
+            }
+
+            if (uncachedDestinations.isEmpty()) {
+                return;
+            }
+
             if (dbType instanceof Postgresql83DatabaseType) {
                 Statement st = null;
                 try {
@@ -314,15 +446,12 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
                 throw new IllegalArgumentException("Unknown database type, can't continue: " + dbType);
             }
 
+            // the keys may exist already (cold cache, or stored by another server), the insert skips those
             ps = conn.prepareStatement(insertKeySql);
-            for (CallTimeData callTimeData : callTimeDataSet) {
-                ps.setInt(1, callTimeData.getScheduleId());
-                ps.setInt(3, callTimeData.getScheduleId());
-                Set<String> callDestinations = callTimeData.getValues().keySet();
-                for (String callDestination : callDestinations) {
-                    // make sure the destination string is safe for storage, clip as needed
-                    String safeCallDestination = dbType.getString(callDestination,
-                        CallTimeDataKey.DESTINATION_MAX_LENGTH);
+            for (Map.Entry<Integer, Set<String>> entry : uncachedDestinations.entrySet()) {
+                ps.setInt(1, entry.getKey());
+                ps.setInt(3, entry.getKey());
+                for (String safeCallDestination : entry.getValue()) {
                     ps.setString(2, safeCallDestination);
                     ps.setString(4, safeCallDestination);
                     ps.addBatch();
@@ -341,15 +470,41 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
 
                 insertedRowCount += results[i] == -2 ? 1 : results[i]; // If Oracle returns -2, just count 1 row
             }
+            JDBCUtil.safeClose(ps);
+            ps = null;
+
+            // now cache the ids of the keys, so that the values can reference them directly
+            for (Map.Entry<Integer, Set<String>> entry : uncachedDestinations.entrySet()) {
+                int scheduleId = entry.getKey();
+                List<String> destinations = new ArrayList<String>(entry.getValue());
+                for (int from = 0; from < destinations.size(); from += KEY_SELECT_CHUNK_SIZE) {
+                    List<String> chunk = destinations.subList(from,
+                        Math.min(from + KEY_SELECT_CHUNK_SIZE, destinations.size()));
+                    ps = conn.prepareStatement(JDBCUtil.transformQueryForMultipleInParameters(
+                        CALLTIME_KEY_SELECT_STATEMENT, "@@DESTINATIONS@@", chunk.size()));
+                    ps.setInt(1, scheduleId);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        ps.setString(i + 2, chunk.get(i));
+                    }
+                    rs = ps.executeQuery();
+                    while (rs.next()) {
+                        keyCache.put(scheduleId, rs.getString(2), rs.getInt(1));
+                    }
+                    JDBCUtil.safeClose(ps, rs);
+                    ps = null;
+                    rs = null;
+                }
+            }
 
             log.debug("Inserted new call-time data key rows for " + ((insertedRowCount >= 0) ? insertedRowCount : "?")
-                + " out of " + results.length + " reported key-value pairs.");
+                + " out of " + uncachedCount + " uncached and " + countValues(callTimeDataSet)
+                + " reported key-value pairs.");
         } catch (SQLException e) {
             logSQLException("Failed to persist call-time data keys", e);
         } catch (Throwable t) {
             log.error("Failed to persist call-time data keys", t);
         } finally {
-            JDBCUtil.safeClose(conn, ps, null);
+            JDBCUtil.safeClose(conn, ps, rs);
         }
     }
 
@@ -359,10 +514,12 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
     @Override
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void insertCallTimeDataValues(Set<CallTimeData> callTimeDataSet) {
-        int[] results;
         String insertValueSql;
+        String insertValueByKeySql;
         PreparedStatement ps = null;
+        PreparedStatement resolvingPs = null;
         Connection conn = null;
+        boolean usedCachedKeyIds = false;
 
         try {
             conn = rhqDs.getConnection();
@@ -383,43 +540,58 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
                 || dbType instanceof H2DatabaseType) {
                 String valueNextvalSql = JDBCUtil.getNextValSql(conn, "RHQ_calltime_data_value");
                 insertValueSql = String.format(CALLTIME_VALUE_INSERT_STATEMENT, valueNextvalSql);
+                insertValueByKeySql = String.format(CALLTIME_VALUE_INSERT_BY_KEY_ID_STATEMENT, valueNextvalSql);
             } else if (dbType instanceof SQLServerDatabaseType) {
                 insertValueSql = CALLTIME_VALUE_INSERT_STATEMENT_AUTOINC;
+                insertValueByKeySql = CALLTIME_VALUE_INSERT_BY_KEY_ID_STATEMENT_AUTOINC;
             } else {
                 throw new IllegalArgumentException("Unknown database type, can't continue: " + dbType);
             }
 
-            ps = conn.prepareStatement(insertValueSql);
+            // the values are inserted with the id of their key when it is cached, which should be almost always the
+            // case; otherwise the key is resolved by the database, as when its insert failed
+            CallTimeDataKeyCache keyCache = CallTimeDataKeyCache.getSingleton();
+            ps = conn.prepareStatement(insertValueByKeySql);
+            int batchSize = 0;
+            int resolvingBatchSize = 0;
+            int insertedRowCount = 0;
             for (CallTimeData callTimeData : callTimeDataSet) {
-                ps.setInt(7, callTimeData.getScheduleId());
-                Set<String> callDestinations = callTimeData.getValues().keySet();
-                for (String callDestination : callDestinations) {
-                    CallTimeDataValue callTimeDataValue = callTimeData.getValues().get(callDestination);
-                    ps.setLong(1, callTimeDataValue.getBeginTime());
-                    ps.setLong(2, callTimeDataValue.getEndTime());
-                    ps.setDouble(3, callTimeDataValue.getMinimum());
-                    ps.setDouble(4, callTimeDataValue.getMaximum());
-                    ps.setDouble(5, callTimeDataValue.getTotal());
-                    ps.setLong(6, callTimeDataValue.getCount());
+                int scheduleId = callTimeData.getScheduleId();
+                for (Map.Entry<String, CallTimeDataValue> entry : callTimeData.getValues().entrySet()) {
+                    CallTimeDataValue callTimeDataValue = entry.getValue();
                     // make sure the destination string is safe for storage, clip as needed
-                    String safeCallDestination = dbType.getString(callDestination,
+                    String safeCallDestination = dbType.getString(entry.getKey(),
                         CallTimeDataKey.DESTINATION_MAX_LENGTH);
-                    ps.setString(8, safeCallDestination);
-                    ps.addBatch();
+                    Integer keyId = keyCache.get(scheduleId, safeCallDestination);
+                    if (keyId != null) {
+                        ps.setInt(1, keyId);
+                        setValueParameters(ps, 2, callTimeDataValue);
+                        ps.addBatch();
+                        usedCachedKeyIds = true;
+                        if (++batchSize == VALUE_INSERT_BATCH_SIZE) {
+                            insertedRowCount += executeValueBatch(ps);
+                            batchSize = 0;
+                        }
+                    } else {
+                        if (resolvingPs == null) {
+                            resolvingPs = conn.prepareStatement(insertValueSql);
+                        }
+                        setValueParameters(resolvingPs, 1, callTimeDataValue);
+                        resolvingPs.setInt(7, scheduleId);
+                        resolvingPs.setString(8, safeCallDestination);
+                        resolvingPs.addBatch();
+                        if (++resolvingBatchSize == VALUE_INSERT_BATCH_SIZE) {
+                            insertedRowCount += executeValueBatch(resolvingPs);
+                            resolvingBatchSize = 0;
+                        }
+                    }
                 }
             }
-
-            results = ps.executeBatch();
-
-            int insertedRowCount = 0;
-            for (int i = 0; i < results.length; i++) {
-                if ((results[i] != 1) && (results[i] != -2)) // Oracle likes to return -2 becuase it doesn't track batch update counts
-                {
-                    throw new MeasurementStorageException("Failed to insert call-time data value rows - result ["
-                        + results[i] + "] for batch command [" + i + "] does not equal 1.");
-                }
-
-                insertedRowCount += results[i] == -2 ? 1 : results[i]; // If Oracle returns -2, just count 1 row;
+            if (batchSize > 0) {
+                insertedRowCount += executeValueBatch(ps);
+            }
+            if (resolvingBatchSize > 0) {
+                insertedRowCount += executeValueBatch(resolvingPs);
             }
 
             notifyAlertConditionCacheManager("insertCallTimeDataValues",
@@ -432,15 +604,89 @@ public class CallTimeDataManagerBean implements CallTimeDataManagerLocal, CallTi
             }
 
         } catch (SQLException e) {
+            if (usedCachedKeyIds) {
+                // a cached key may have been deleted along with its schedule, roll back and let the caller retry
+                // with the keys resolved by the database
+                List<Integer> scheduleIds = new ArrayList<Integer>(callTimeDataSet.size());
+                for (CallTimeData callTimeData : callTimeDataSet) {
+                    scheduleIds.add(callTimeData.getScheduleId());
+                }
+                CallTimeDataKeyCache.getSingleton().removeSchedules(scheduleIds);
+                throw new MeasurementStorageException("Failed to persist call-time data values with cached keys", e);
+            }
             logSQLException("Failed to persist call-time data values", e);
         } catch (Throwable t) {
             log.error("Failed to persist call-time data values", t);
         } finally {
+            JDBCUtil.safeClose(resolvingPs);
             JDBCUtil.safeClose(conn, ps, null);
         }
 
     }
 
+    /*
+     * internal method, do not expose to the remote API
+     */
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void mergeCallTimeDataRollups(Set<CallTimeData> callTimeDataSet) {
+        Connection conn = null;
+
+        try {
+            conn = rhqDs.getConnection();
+            DatabaseType dbType = DatabaseTypeFactory.getDatabaseType(conn);
+            if (!(dbType instanceof PostgresqlDatabaseType || dbType instanceof OracleDatabaseType)) {
+                return;
+            }
+
+            int mergedRowCount = CallTimeDataRollupMerge.merge(conn, dbType, callTimeDataSet,
+                System.currentTimeMillis());
+            if (mergedRowCount > 0) {
+                log.debug("Merged late call-time data values into " + mergedRowCount + " rollup rows.");
+            }
+        } catch (SQLException e) {
+            logSQLException("Failed to merge call-time data values into the rollups", e);
+        } catch (Throwable t) {
+            log.error("Failed to merge call-time data values into the rollups", t);
+        } finally {
+            JDBCUtil.safeClose(conn);
+        }
+    }
+
+    private static void setValueParameters(PreparedStatement ps, int firstIndex, CallTimeDataValue callTimeDataValue)
+        throws SQLException {
+        ps.setLong(firstIndex, callTimeDataValue.getBeginTime());
+        ps.setLong(firstIndex + 1, callTimeDataValue.getEndTime());
+        ps.setDouble(firstIndex + 2, callTimeDataValue.getMinimum());
+        ps.setDouble(firstIndex + 3, callTimeDataValue.getMaximum());
+        ps.setDouble(firstIndex + 4, callTimeDataValue.getTotal());
+        ps.setLong(firstIndex + 5, callTimeDataValue.getCount());
+    }
+
+    private static int executeValueBatch(PreparedStatement ps) throws SQLException {
+        int[] results = ps.executeBatch();
+
+        int insertedRowCount = 0;
+        for (int i = 0; i < results.length; i++) {
+            if ((results[i] != 1) && (results[i] != -2)) // Oracle likes to return -2 becuase it doesn't track batch update counts
+            {
+                throw new MeasurementStorageException("Failed to insert call-time data value rows - result ["
+                    + results[i] + "] for batch command [" + i + "] does not equal 1.");
+            }
+
+            insertedRowCount += results[i] == -2 ? 1 : results[i]; // If Oracle returns -2, just count 1 row;
+        }
+        return insertedRowCount;
+    }
+
+    private static int countValues(Set<CallTimeData> callTimeDataSet) {
+        int count = 0;
+        for (CallTimeData callTimeData : callTimeDataSet) {
+            count += callTimeData.getValues().size();
+        }
+        return count;
+    }
+
     private void notifyAlertConditionCacheManager(String callingMethod, CallTimeData... data) {
         AlertConditionCacheStats stats = alertConditionCacheManager.checkConditions(data);
 
@@ -56,4 +56,6 @@ public interface CallTimeDataManagerLocal extends CallTimeDataManagerRemote {
     void insertCallTimeDataKeys(Set<CallTimeData> callTimeDataSet);
 
     void insertCallTimeDataValues(Set<CallTimeData> callTimeDataSet);
+
+    void mergeCallTimeDataRollups(Set<CallTimeData> callTimeDataSet);
 }
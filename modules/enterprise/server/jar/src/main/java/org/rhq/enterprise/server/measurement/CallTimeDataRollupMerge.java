@@ -0,0 +1,271 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.measurement;
+
+import static org.rhq.enterprise.server.measurement.CallTimeDataRollupType.DAILY;
+import static org.rhq.enterprise.server.measurement.CallTimeDataRollupType.HOURLY;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.rhq.core.db.DatabaseType;
+import org.rhq.core.domain.measurement.calltime.CallTimeData;
+import org.rhq.core.domain.measurement.calltime.CallTimeDataKey;
+import org.rhq.core.domain.measurement.calltime.CallTimeDataValue;
+import org.rhq.core.util.jdbc.JDBCUtil;
+
+/**
+ * Merges the call-time data values stored for hours and days that have already been {@link CallTimeDataRollupType
+ * rolled up} (e.g. values replayed from the agent's spool) into the rollups, as the rollup job only rolls up the time
+ * buckets after the latest one. The rows of the rollups are updated, or created for the destinations that had no
+ * values in the bucket yet. Like the rollup job, values without calls are left out.
+ */
+class CallTimeDataRollupMerge {
+
+    private static final String QUERY_SELECT_LATEST_BUCKET = "SELECT MAX(TIME_BUCKET) FROM %s";
+
+    private static final String QUERY_UPDATE_ROLLUP = "" //
+        + "UPDATE %s " //
+        + "   SET BEGIN_TIME = LEAST(BEGIN_TIME, ?), END_TIME = GREATEST(END_TIME, ?), " //
+        + "       MINIMUM = LEAST(MINIMUM, ?), MAXIMUM = GREATEST(MAXIMUM, ?), TOTAL = TOTAL + ?, COUNT = COUNT + ? " //
+        + " WHERE TIME_BUCKET = ? " //
+        + "   AND KEY_ID = ( SELECT k.ID FROM RHQ_CALLTIME_DATA_KEY k " //
+        + "                   WHERE k.SCHEDULE_ID = ? AND k.CALL_DESTINATION = ? )";
+
+    private static final String QUERY_INSERT_ROLLUP = "" //
+        + "INSERT INTO %s ( ID, KEY_ID, TIME_BUCKET, BEGIN_TIME, END_TIME, MINIMUM, MAXIMUM, TOTAL, COUNT ) " //
+        + "SELECT %s, k.ID, ?, ?, ?, ?, ?, ?, ? " //
+        + "  FROM RHQ_CALLTIME_DATA_KEY k " //
+        + " WHERE k.SCHEDULE_ID = ? AND k.CALL_DESTINATION = ? " //
+        + "   AND NOT EXISTS ( SELECT * FROM %s r WHERE r.KEY_ID = k.ID AND r.TIME_BUCKET = ? )";
+
+    private CallTimeDataRollupMerge() {
+    }
+
+    /**
+     * @param now the current time; values of the hours that have not ended yet can not have been rolled up, the
+     * rollups are only looked at when some values are older
+     *
+     * @return the number of hourly and daily rollup rows that were updated or created
+     */
+    static int merge(Connection connection, DatabaseType dbType, Set<CallTimeData> callTimeDataSet, long now)
+        throws SQLException {
+        Map<Bucket, Aggregate> hours = getLateHours(dbType, callTimeDataSet, now);
+        if (hours.isEmpty()) {
+            return 0;
+        }
+
+        Long latestHour = selectLatestBucket(connection, HOURLY);
+        if (latestHour == null) {
+            return 0;
+        }
+        Long latestDay = selectLatestBucket(connection, DAILY);
+
+        Map<Bucket, Aggregate> rolledUpHours = new HashMap<Bucket, Aggregate>();
+        Map<Bucket, Aggregate> rolledUpDays = new HashMap<Bucket, Aggregate>();
+        for (Map.Entry<Bucket, Aggregate> hour : hours.entrySet()) {
+            Bucket bucket = hour.getKey();
+            if (bucket.timeBucket > latestHour) {
+                continue;
+            }
+            rolledUpHours.put(bucket, hour.getValue());
+
+            // a day is only rolled up once all its hours are
+            long day = DAILY.getTimeBucket(bucket.timeBucket);
+            if (latestDay != null && day <= latestDay) {
+                Bucket dayBucket = new Bucket(bucket.scheduleId, bucket.callDestination, day);
+                Aggregate aggregate = rolledUpDays.get(dayBucket);
+                if (aggregate == null) {
+                    rolledUpDays.put(dayBucket, new Aggregate(hour.getValue()));
+                } else {
+                    aggregate.add(hour.getValue());
+                }
+            }
+        }
+
+        return merge(connection, HOURLY, rolledUpHours) + merge(connection, DAILY, rolledUpDays);
+    }
+
+    /**
+     * @return the values of the hours that have ended, aggregated by schedule, destination and hour
+     */
+    static Map<Bucket, Aggregate> getLateHours(DatabaseType dbType, Set<CallTimeData> callTimeDataSet, long now) {
+        Map<Bucket, Aggregate> hours = new HashMap<Bucket, Aggregate>();
+        for (CallTimeData callTimeData : callTimeDataSet) {
+            for (Map.Entry<String, CallTimeDataValue> entry : callTimeData.getValues().entrySet()) {
+                CallTimeDataValue value = entry.getValue();
+                long hour = HOURLY.getTimeBucket(value.getEndTime());
+                if (value.getCount() == 0 || value.getMinimum() == -1 || hour + HOURLY.getBucketSize() > now) {
+                    continue;
+                }
+                Bucket bucket = new Bucket(callTimeData.getScheduleId(), dbType.getString(entry.getKey(),
+                    CallTimeDataKey.DESTINATION_MAX_LENGTH), hour);
+                Aggregate aggregate = hours.get(bucket);
+                if (aggregate == null) {
+                    hours.put(bucket, new Aggregate(value));
+                } else {
+                    aggregate.add(new Aggregate(value));
+                }
+            }
+        }
+        return hours;
+    }
+
+    private static int merge(Connection connection, CallTimeDataRollupType type, Map<Bucket, Aggregate> buckets)
+        throws SQLException {
+        if (buckets.isEmpty()) {
+            return 0;
+        }
+
+        // every bucket is merged once, so a bucket is either updated or, if it does not exist, created
+        PreparedStatement preparedStatement = null;
+        try {
+            preparedStatement = connection.prepareStatement(String.format(QUERY_UPDATE_ROLLUP, type.getTableName()));
+            for (Map.Entry<Bucket, Aggregate> bucket : buckets.entrySet()) {
+                Aggregate aggregate = bucket.getValue();
+                preparedStatement.setLong(1, aggregate.beginTime);
+                preparedStatement.setLong(2, aggregate.endTime);
+                preparedStatement.setDouble(3, aggregate.minimum);
+                preparedStatement.setDouble(4, aggregate.maximum);
+                preparedStatement.setDouble(5, aggregate.total);
+                preparedStatement.setLong(6, aggregate.count);
+                preparedStatement.setLong(7, bucket.getKey().timeBucket);
+                preparedStatement.setInt(8, bucket.getKey().scheduleId);
+                preparedStatement.setString(9, bucket.getKey().callDestination);
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+            JDBCUtil.safeClose(preparedStatement);
+
+            preparedStatement = connection.prepareStatement(String.format(QUERY_INSERT_ROLLUP, type.getTableName(),
+                JDBCUtil.getNextValSql(connection, type.getTableName()), type.getTableName()));
+            for (Map.Entry<Bucket, Aggregate> bucket : buckets.entrySet()) {
+                Aggregate aggregate = bucket.getValue();
+                preparedStatement.setLong(1, bucket.getKey().timeBucket);
+                preparedStatement.setLong(2, aggregate.beginTime);
+                preparedStatement.setLong(3, aggregate.endTime);
+                preparedStatement.setDouble(4, aggregate.minimum);
+                preparedStatement.setDouble(5, aggregate.maximum);
+                preparedStatement.setDouble(6, aggregate.total);
+                preparedStatement.setLong(7, aggregate.count);
+                preparedStatement.setInt(8, bucket.getKey().scheduleId);
+                preparedStatement.setString(9, bucket.getKey().callDestination);
+                preparedStatement.setLong(10, bucket.getKey().timeBucket);
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+        } finally {
+            JDBCUtil.safeClose(preparedStatement);
+        }
+        return buckets.size();
+    }
+
+    private static Long selectLatestBucket(Connection connection, CallTimeDataRollupType type) throws SQLException {
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        try {
+            preparedStatement = connection.prepareStatement(String.format(QUERY_SELECT_LATEST_BUCKET,
+                type.getTableName()));
+            resultSet = preparedStatement.executeQuery();
+            if (resultSet.next()) {
+                long latestBucket = resultSet.getLong(1);
+                if (!resultSet.wasNull()) {
+                    return latestBucket;
+                }
+            }
+            return null;
+        } finally {
+            JDBCUtil.safeClose(null, preparedStatement, resultSet);
+        }
+    }
+
+    static class Bucket {
+        final int scheduleId;
+        final String callDestination;
+        final long timeBucket;
+
+        Bucket(int scheduleId, String callDestination, long timeBucket) {
+            this.scheduleId = scheduleId;
+            this.callDestination = callDestination;
+            this.timeBucket = timeBucket;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = scheduleId;
+            result = 31 * result + callDestination.hashCode();
+            result = 31 * result + (int) (timeBucket ^ (timeBucket >>> 32));
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Bucket)) {
+                return false;
+            }
+            Bucket other = (Bucket) obj;
+            return (scheduleId == other.scheduleId) && (timeBucket == other.timeBucket)
+                && callDestination.equals(other.callDestination);
+        }
+    }
+
+    static class Aggregate {
+        long beginTime;
+        long endTime;
+        double minimum;
+        double maximum;
+        double total;
+        long count;
+
+        Aggregate(CallTimeDataValue value) {
+            this.beginTime = value.getBeginTime();
+            this.endTime = value.getEndTime();
+            this.minimum = value.getMinimum();
+            this.maximum = value.getMaximum();
+            this.total = value.getTotal();
+            this.count = value.getCount();
+        }
+
+        Aggregate(Aggregate aggregate) {
+            this.beginTime = aggregate.beginTime;
+            this.endTime = aggregate.endTime;
+            this.minimum = aggregate.minimum;
+            this.maximum = aggregate.maximum;
+            this.total = aggregate.total;
+            this.count = aggregate.count;
+        }
+
+        void add(Aggregate aggregate) {
+            beginTime = Math.min(beginTime, aggregate.beginTime);
+            endTime = Math.max(endTime, aggregate.endTime);
+            minimum = Math.min(minimum, aggregate.minimum);
+            maximum = Math.max(maximum, aggregate.maximum);
+            total += aggregate.total;
+            count += aggregate.count;
+        }
+    }
+}
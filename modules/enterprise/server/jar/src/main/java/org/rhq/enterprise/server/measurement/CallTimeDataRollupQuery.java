@@ -0,0 +1,336 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.measurement;
+
+import static org.rhq.enterprise.server.measurement.CallTimeDataRollupType.DAILY;
+import static org.rhq.enterprise.server.measurement.CallTimeDataRollupType.HOURLY;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.rhq.core.domain.measurement.calltime.CallTimeDataComposite;
+import org.rhq.core.domain.util.OrderingField;
+import org.rhq.core.domain.util.PageControl;
+import org.rhq.core.domain.util.PageList;
+import org.rhq.core.domain.util.PageOrdering;
+import org.rhq.core.util.jdbc.JDBCUtil;
+import org.rhq.enterprise.server.util.QueryUtility;
+
+/**
+ * Aggregates the call-time data of a time window per destination, reading the whole hours and days of the window from
+ * the {@link CallTimeDataRollupType rollups} and only its edges from the raw values.<br>
+ * <br>
+ * The first hour of the window is always read from the raw values since its values may have begun before the window.
+ * Hours and days that have not been rolled up yet are read from the raw values as well. Raw values without calls are
+ * left out, as in {@link org.rhq.core.domain.measurement.calltime.CallTimeDataValue#QUERY_FIND_COMPOSITES_FOR_RESOURCE}.
+ * The composites are sorted by the database, so destinations collate as they do on the raw path.
+ */
+class CallTimeDataRollupQuery {
+
+    static final String KEYS_FOR_SCHEDULE = "k2.SCHEDULE_ID = ?";
+
+    static final String KEYS_FOR_RESOURCE = "k2.SCHEDULE_ID IN " //
+        + "( SELECT s.ID FROM RHQ_MEASUREMENT_SCHED s WHERE s.RESOURCE_ID = ? )";
+
+    static final String KEYS_FOR_GROUP = "k2.SCHEDULE_ID IN " //
+        + "( SELECT s.ID " //
+        + "    FROM RHQ_MEASUREMENT_SCHED s " //
+        + "    JOIN RHQ_RESOURCE_GROUP_RES_IMP_MAP m ON m.RESOURCE_ID = s.RESOURCE_ID " //
+        + "   WHERE m.RESOURCE_GROUP_ID = ? )";
+
+    static final String KEYS_FOR_AUTOGROUP = "k2.SCHEDULE_ID IN " //
+        + "( SELECT s.ID " //
+        + "    FROM RHQ_MEASUREMENT_SCHED s " //
+        + "    JOIN RHQ_RESOURCE res ON res.ID = s.RESOURCE_ID " //
+        + "   WHERE res.PARENT_RESOURCE_ID = ? AND res.RESOURCE_TYPE_ID = ? )";
+
+    private static final String QUERY_SELECT_LATEST_BUCKET = "SELECT MAX(TIME_BUCKET) FROM %s";
+
+    private static final String RAW_BRANCH = "" //
+        + "SELECT v.KEY_ID, v.MINIMUM, v.MAXIMUM, v.TOTAL, v.COUNT " //
+        + "  FROM RHQ_CALLTIME_DATA_VALUE v " //
+        + " WHERE v.KEY_ID IN ( SELECT k2.ID FROM RHQ_CALLTIME_DATA_KEY k2 WHERE %s ) " //
+        + "   AND v.BEGIN_TIME %s ? AND v.END_TIME %s ? AND v.COUNT <> 0 AND v.MINIMUM <> -1 " //
+        + "   AND v.END_TIME %s ? ";
+
+    private static final String ROLLUP_BRANCH = "" //
+        + "SELECT r.KEY_ID, r.MINIMUM, r.MAXIMUM, r.TOTAL, r.COUNT " //
+        + "  FROM %s r " //
+        + " WHERE r.KEY_ID IN ( SELECT k2.ID FROM RHQ_CALLTIME_DATA_KEY k2 WHERE %s ) " //
+        + "   AND r.BEGIN_TIME %s ? AND r.TIME_BUCKET >= ? AND r.TIME_BUCKET < ? ";
+
+    private static final String QUERY_AGGREGATE = "" //
+        + "SELECT k.CALL_DESTINATION, MIN(u.MINIMUM), MAX(u.MAXIMUM), SUM(u.TOTAL), SUM(u.COUNT) " //
+        + "  FROM ( %s ) u " //
+        + "  JOIN RHQ_CALLTIME_DATA_KEY k ON k.ID = u.KEY_ID " //
+        + "%s" //
+        + " GROUP BY k.CALL_DESTINATION" //
+        + "%s";
+
+    private final DataSource dataSource;
+    private final String keysFilter;
+    private final Object[] keysFilterParams;
+    private final boolean inclusiveWindow;
+
+    /**
+     * @param dataSource the source of JDBC connections to the database
+     * @param keysFilter the condition on the keys <code>k2</code> to aggregate, one of the <code>KEYS_FOR_*</code>
+     * @param keysFilterParams the parameters of the condition
+     * @param inclusiveWindow whether the values may begin and end exactly at the edges of the window
+     */
+    CallTimeDataRollupQuery(DataSource dataSource, String keysFilter, Object[] keysFilterParams,
+        boolean inclusiveWindow) {
+        this.dataSource = dataSource;
+        this.keysFilter = keysFilter;
+        this.keysFilterParams = keysFilterParams;
+        this.inclusiveWindow = inclusiveWindow;
+    }
+
+    /**
+     * @param destinationFilter a case-insensitive substring of the destinations to aggregate, or null
+     *
+     * @return the page of composites, or null if the rollups would not help for this window or the ordering is not
+     * supported, in which case the raw values should be queried
+     */
+    PageList<CallTimeDataComposite> execute(long beginTime, long endTime, String destinationFilter,
+        PageControl pageControl) throws SQLException {
+        String orderBy = getOrderBy(pageControl.getOrderingFields());
+        if (orderBy == null) {
+            return null;
+        }
+
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        try {
+            connection = dataSource.getConnection();
+
+            long[] window = getRollupWindow(beginTime, endTime, selectLatestBucket(connection, HOURLY),
+                selectLatestBucket(connection, DAILY));
+            if (window == null) {
+                return null;
+            }
+
+            List<Object> params = new ArrayList<Object>();
+            String sql = buildQuery(beginTime, endTime, window, destinationFilter, orderBy, params);
+            preparedStatement = connection.prepareStatement(sql);
+            for (int i = 0; i < params.size(); i++) {
+                Object param = params.get(i);
+                if (param instanceof Long) {
+                    preparedStatement.setLong(i + 1, (Long) param);
+                } else if (param instanceof Integer) {
+                    preparedStatement.setInt(i + 1, (Integer) param);
+                } else {
+                    preparedStatement.setString(i + 1, (String) param);
+                }
+            }
+
+            List<CallTimeDataComposite> composites = new ArrayList<CallTimeDataComposite>();
+            resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()) {
+                double total = resultSet.getDouble(4);
+                long count = resultSet.getLong(5);
+                composites.add(new CallTimeDataComposite(resultSet.getString(1), resultSet.getDouble(2), resultSet
+                    .getDouble(3), total, count, total / count));
+            }
+
+            int fromIndex = Math.min(pageControl.getStartRow(), composites.size());
+            int toIndex = (pageControl.getPageSize() == PageControl.SIZE_UNLIMITED) ? composites.size() : Math.min(
+                fromIndex + pageControl.getPageSize(), composites.size());
+            return new PageList<CallTimeDataComposite>(new ArrayList<CallTimeDataComposite>(composites.subList(
+                fromIndex, toIndex)), composites.size(), pageControl);
+        } finally {
+            JDBCUtil.safeClose(connection, preparedStatement, resultSet);
+        }
+    }
+
+    /**
+     * Splits the window into the hours and days to read from the rollups; what is before the first hour or after the
+     * last hour is read from the raw values.
+     *
+     * @param latestHourlyBucket the latest hourly time bucket, or null if nothing has been rolled up
+     * @param latestDailyBucket the latest daily time bucket, or null if no day has been rolled up
+     *
+     * @return the start of the first hour, the start of the first day, the end of the last day and the end of the last
+     * hour; or null if there is no whole hour to read from the rollups
+     */
+    static long[] getRollupWindow(long beginTime, long endTime, Long latestHourlyBucket, Long latestDailyBucket) {
+        if (latestHourlyBucket == null) {
+            return null;
+        }
+
+        long hourStart = HOURLY.getNextTimeBucket(beginTime) + HOURLY.getBucketSize();
+        long hourEnd = Math.min(HOURLY.getTimeBucket(endTime), latestHourlyBucket + HOURLY.getBucketSize());
+        if (hourEnd <= hourStart) {
+            return null;
+        }
+
+        long dayStart = DAILY.getNextTimeBucket(hourStart);
+        if (dayStart >= hourEnd) {
+            return new long[] { hourStart, hourEnd, hourEnd, hourEnd };
+        }
+        long dayEnd = dayStart;
+        if (latestDailyBucket != null) {
+            dayEnd = Math.max(dayStart,
+                Math.min(DAILY.getTimeBucket(hourEnd), latestDailyBucket + DAILY.getBucketSize()));
+        }
+        return new long[] { hourStart, dayStart, dayEnd, hourEnd };
+    }
+
+    /**
+     * @return the ORDER BY clause of the aggregate query, empty if there is no ordering field, or null if an ordering
+     * field is not supported
+     */
+    static String getOrderBy(List<OrderingField> orderingFields) {
+        StringBuilder orderBy = new StringBuilder();
+        for (OrderingField orderingField : orderingFields) {
+            SortColumn sortColumn = SortColumn.forField(orderingField.getField());
+            if (sortColumn == null) {
+                return null;
+            }
+            orderBy.append((orderBy.length() == 0) ? " ORDER BY " : ", ");
+            orderBy.append(sortColumn.getExpression());
+            orderBy.append((orderingField.getOrdering() == PageOrdering.DESC) ? " DESC" : " ASC");
+        }
+        return orderBy.toString();
+    }
+
+    private String buildQuery(long beginTime, long endTime, long[] window, String destinationFilter, String orderBy,
+        List<Object> params) {
+        String beginOperator = inclusiveWindow ? ">=" : ">";
+        String endOperator = inclusiveWindow ? "<=" : "<";
+
+        StringBuilder branches = new StringBuilder();
+        appendRawBranch(branches, beginOperator, endOperator, "<", beginTime, endTime, window[0], params);
+        appendRollupBranch(branches, HOURLY, beginOperator, beginTime, window[0], window[1], params);
+        appendRollupBranch(branches, DAILY, beginOperator, beginTime, window[1], window[2], params);
+        appendRollupBranch(branches, HOURLY, beginOperator, beginTime, window[2], window[3], params);
+        appendRawBranch(branches, beginOperator, endOperator, ">=", beginTime, endTime, window[3], params);
+
+        String destinationCondition = "";
+        if (destinationFilter != null) {
+            destinationCondition = " WHERE LOWER(k.CALL_DESTINATION) LIKE ?" + QueryUtility.getEscapeClause();
+            params.add(("%" + QueryUtility.escapeSearchParameter(destinationFilter) + "%").toLowerCase());
+        }
+
+        return String.format(QUERY_AGGREGATE, branches, destinationCondition, orderBy);
+    }
+
+    private void appendRawBranch(StringBuilder branches, String beginOperator, String endOperator,
+        String splitOperator, long beginTime, long endTime, long splitTime, List<Object> params) {
+        appendUnion(branches);
+        branches.append(String.format(RAW_BRANCH, keysFilter, beginOperator, endOperator, splitOperator));
+        Collections.addAll(params, keysFilterParams);
+        params.add(beginTime);
+        params.add(endTime);
+        params.add(splitTime);
+    }
+
+    private void appendRollupBranch(StringBuilder branches, CallTimeDataRollupType type, String beginOperator,
+        long beginTime, long fromBucket, long toBucket, List<Object> params) {
+        if (fromBucket >= toBucket) {
+            return;
+        }
+        appendUnion(branches);
+        branches.append(String.format(ROLLUP_BRANCH, type.getTableName(), keysFilter, beginOperator));
+        Collections.addAll(params, keysFilterParams);
+        params.add(beginTime);
+        params.add(fromBucket);
+        params.add(toBucket);
+    }
+
+    private static void appendUnion(StringBuilder branches) {
+        if (branches.length() > 0) {
+            branches.append(" UNION ALL ");
+        }
+    }
+
+    private static Long selectLatestBucket(Connection connection, CallTimeDataRollupType type) throws SQLException {
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        try {
+            preparedStatement = connection.prepareStatement(String.format(QUERY_SELECT_LATEST_BUCKET,
+                type.getTableName()));
+            resultSet = preparedStatement.executeQuery();
+            if (resultSet.next()) {
+                long latestBucket = resultSet.getLong(1);
+                if (!resultSet.wasNull()) {
+                    return latestBucket;
+                }
+            }
+            return null;
+        } finally {
+            JDBCUtil.safeClose(null, preparedStatement, resultSet);
+        }
+    }
+
+    /**
+     * The columns the composites can be sorted by, recognized from the ordering fields the UI and the criteria use.
+     */
+    enum SortColumn {
+        DESTINATION("k.CALL_DESTINATION"), //
+        AVERAGE("SUM(u.TOTAL) / SUM(u.COUNT)"), //
+        MINIMUM("MIN(u.MINIMUM)"), //
+        MAXIMUM("MAX(u.MAXIMUM)"), //
+        TOTAL("SUM(u.TOTAL)"), //
+        COUNT("SUM(u.COUNT)");
+
+        private final String expression;
+
+        private SortColumn(String expression) {
+            this.expression = expression;
+        }
+
+        /**
+         * @return the expression of the column in the aggregate query
+         */
+        String getExpression() {
+            return expression;
+        }
+
+        /**
+         * @return the column of the ordering field, e.g. <code>SUM(value.total)/SUM(value.count)</code> is the
+         * average, or null if it is not recognized
+         */
+        static SortColumn forField(String field) {
+            String lowerCaseField = field.toLowerCase();
+            if (lowerCaseField.contains("destination")) {
+                return DESTINATION;
+            } else if (lowerCaseField.contains("/") || lowerCaseField.contains("average")) {
+                return AVERAGE;
+            } else if (lowerCaseField.contains("min")) {
+                return MINIMUM;
+            } else if (lowerCaseField.contains("max")) {
+                return MAXIMUM;
+            } else if (lowerCaseField.contains("total")) {
+                return TOTAL;
+            } else if (lowerCaseField.contains("count")) {
+                return COUNT;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.measurement;
+
+/**
+ * The rollups of the call-time data values. A rollup row aggregates, for one call-time data key, the values (or the
+ * rows of the finer rollup) whose end time falls into its time bucket; its begin and end times are the earliest begin
+ * time and the latest end time of those values. Time buckets are aligned on their size, in UTC.
+ * <p/>
+ * Rollups are maintained by the data calc job, hour by hour and then day by day, in chronological order: all the
+ * buckets before the latest bucket of a rollup table have been rolled up.
+ */
+public enum CallTimeDataRollupType {
+    HOURLY("RHQ_CALLTIME_DATA_1H", 60L * 60L * 1000L), //
+    DAILY("RHQ_CALLTIME_DATA_1D", 24L * 60L * 60L * 1000L);
+
+    private final String tableName;
+    private final long bucketSize;
+
+    private CallTimeDataRollupType(String tableName, long bucketSize) {
+        this.tableName = tableName;
+        this.bucketSize = bucketSize;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return the size of the time buckets, in milliseconds
+     */
+    public long getBucketSize() {
+        return bucketSize;
+    }
+
+    /**
+     * @return the start of the time bucket the time falls into
+     */
+    public long getTimeBucket(long time) {
+        return time - (time % bucketSize);
+    }
+
+    /**
+     * @return the start of the first time bucket starting at or after the time
+     */
+    public long getNextTimeBucket(long time) {
+        return getTimeBucket(time + bucketSize - 1);
+    }
+}
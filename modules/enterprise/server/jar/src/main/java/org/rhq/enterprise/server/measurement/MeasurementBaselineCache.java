@@ -0,0 +1,144 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.measurement;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.domain.measurement.MeasurementBaseline;
+import org.rhq.core.util.jdbc.JDBCUtil;
+
+/**
+ * The bounds of the baselines of all the measurement schedules, used to compute the OOBs of the aggregates produced
+ * by each hourly aggregation.
+ * <p/>
+ * Baselines are only recalculated every few days, so each {@link #refresh(Connection) refresh} only loads the
+ * baselines computed since the previous one; the compute time of the baselines is indexed. Baselines that are deleted
+ * without being recalculated (i.e. those of removed schedules) are only dropped by the full reload done every
+ * {@link #MAX_AGE}.
+ */
+public class MeasurementBaselineCache {
+    private static final Log LOG = LogFactory.getLog(MeasurementBaselineCache.class);
+
+    private static final String MAX_AGE_SYSTEM_PROPERTY = "rhq.server.baseline.cache.max-age";
+    static final long MAX_AGE = Long.getLong(MAX_AGE_SYSTEM_PROPERTY, 24L * 60L * 60L * 1000L);
+
+    // baselines are stored by all the servers of the cloud, allow for some clock skew and for long transactions
+    private static final long REFRESH_OVERLAP = 10L * 60L * 1000L;
+
+    private static final MeasurementBaselineCache singleton = new MeasurementBaselineCache(MAX_AGE);
+
+    private final long maxAge;
+
+    private Map<Integer, Bounds> bounds = new HashMap<Integer, Bounds>();
+
+    // the time of the last full reload, 0 if there was none yet
+    private long loadTime;
+
+    private long refreshTime;
+
+    public static MeasurementBaselineCache getSingleton() {
+        return singleton;
+    }
+
+    MeasurementBaselineCache(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Loads the baselines computed since the last refresh, or all of them if the cache is empty or older than its
+     * maximum age.
+     */
+    public synchronized void refresh(Connection conn) throws SQLException {
+        long now = System.currentTimeMillis();
+        boolean fullReload = (loadTime == 0L) || (now - loadTime > maxAge);
+        long computedAfter = fullReload ? -1L : refreshTime - REFRESH_OVERLAP;
+        Map<Integer, Bounds> target = fullReload ? new HashMap<Integer, Bounds>(Math.max(16, bounds.size() * 4 / 3))
+            : bounds;
+
+        int count = 0;
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = conn.prepareStatement(MeasurementBaseline.QUERY_NATIVE_FIND_BOUNDS_COMPUTED_AFTER);
+            ps.setFetchSize(1000);
+            ps.setLong(1, computedAfter);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                int scheduleId = rs.getInt(1);
+                double min = rs.getDouble(2);
+                boolean noMin = rs.wasNull();
+                double max = rs.getDouble(3);
+                boolean noMax = rs.wasNull();
+                if (noMin || noMax) {
+                    // a missing bound is not 0.0, no OOB can be computed against it, as with the former SQL
+                    target.remove(scheduleId);
+                } else {
+                    target.put(scheduleId, new Bounds(min, max));
+                }
+                count++;
+            }
+        } finally {
+            JDBCUtil.safeClose(ps, rs);
+        }
+
+        if (fullReload) {
+            bounds = target;
+            loadTime = now;
+        }
+        refreshTime = now;
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug((fullReload ? "Loaded " : "Refreshed ") + count + " baselines in "
+                + (System.currentTimeMillis() - now) + " ms, " + bounds.size() + " baselines cached");
+        }
+    }
+
+    /**
+     * @return the bounds of the baseline of the schedule, or null if it has none
+     */
+    public synchronized Bounds get(int scheduleId) {
+        return bounds.get(scheduleId);
+    }
+
+    public static class Bounds {
+        private final double min;
+        private final double max;
+
+        public Bounds(double min, double max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+    }
+}
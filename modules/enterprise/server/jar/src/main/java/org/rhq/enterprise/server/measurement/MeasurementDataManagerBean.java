@@ -50,6 +50,7 @@ import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.sql.DataSource;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.util.concurrent.FutureCallback;
@@ -102,6 +103,7 @@ import org.rhq.enterprise.server.core.AgentManagerLocal;
 import org.rhq.enterprise.server.measurement.instrumentation.MeasurementMonitor;
 import org.rhq.enterprise.server.measurement.util.MeasurementDataManagerUtility;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.DynaGroupChangeTracker;
 import org.rhq.enterprise.server.rest.ResourceHandlerBean;
 import org.rhq.enterprise.server.storage.StorageClientManager;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
@@ -142,6 +144,9 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
     @PersistenceContext(unitName = RHQConstants.PERSISTENCE_UNIT_NAME)
     private EntityManager entityManager;
 
+    @javax.annotation.Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     @javax.annotation.Resource(name = "RHQ_DS", mappedName = RHQConstants.DATASOURCE_JNDI_NAME)
     private DataSource rhqDs;
 
@@ -256,23 +261,45 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
             return;
         }
 
+        // filter out the traits known to be unchanged, in the order of the data as the conditional insert below
+        // compares each value with the one stored just before it
+        TraitValueCache traitValueCache = TraitValueCache.getSingleton();
+        Map<Integer, String> pendingValues = new HashMap<Integer, String>();
+        List<MeasurementDataTrait> changedData = new ArrayList<MeasurementDataTrait>(data.size());
+        for (MeasurementDataTrait aData : data) {
+            // There's a limitation of 4000 database characters in Oracle, try to overcome the issue
+            // The character set in Oracle could vary, using UTF-8 for "worst-case"
+            String value = truncateTraitValue(aData.getValue(), TRAIT_VALUE_SIZE_IN_DB);
+            aData.setValue(value);
+
+            int scheduleId = aData.getScheduleId();
+            boolean unchanged;
+            if (pendingValues.containsKey(scheduleId)) {
+                String pendingValue = pendingValues.get(scheduleId);
+                unchanged = (value == null) ? (pendingValue == null) : value.equals(pendingValue);
+            } else {
+                unchanged = traitValueCache.isUnchanged(scheduleId, value);
+            }
+            if (!unchanged) {
+                changedData.add(aData);
+                pendingValues.put(scheduleId, value);
+            }
+        }
+
+        MeasurementMonitor.getMBean().incrementTraitsSkipped(data.size() - changedData.size());
+        if (changedData.isEmpty()) {
+            notifyAlertConditionCacheManager("mergeMeasurementReport", data.toArray(new MeasurementData[data.size()]));
+            return;
+        }
+
         Connection conn = null;
         PreparedStatement ps = null;
         try {
             conn = rhqDs.getConnection();
             ps = conn.prepareStatement(TRAIT_INSERT_STATEMENT);
 
-            for (MeasurementDataTrait aData : data) {
+            for (MeasurementDataTrait aData : changedData) {
                 // time_stamp, schedule_id, value, schedule_id, schedule_id, value, value, value, value
-
-                // There's a limitation of 4000 database characters in Oracle, try to overcome the issue
-                // The character set in Oracle could vary, using UTF-8 for "worst-case"
-                if (aData.getValue() != null) {
-                    while (aData.getValue().getBytes("UTF-8").length > TRAIT_VALUE_SIZE_IN_DB) {
-                        aData.setValue(aData.getValue().substring(0, aData.getValue().length() - 1));
-                    }
-                }
-
                 ps.setLong(1, aData.getTimestamp());
                 ps.setInt(2, aData.getScheduleId());
                 ps.setString(3, aData.getValue());
@@ -286,10 +313,23 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
             }
 
             int[] res = ps.executeBatch();
-            if (res.length != data.size()) {
+            if (res.length != changedData.size()) {
                 throw new MeasurementStorageException("Failure to store measurement trait data.");
                 // It is expected that some of these batch updates didn't update anything as the previous value was the same
             }
+            MeasurementMonitor.getMBean().incrementTraitsWritten(changedData.size());
+
+            // only the values that were inserted changed, some drivers don't tell though
+            List<Integer> changedScheduleIds = new ArrayList<Integer>();
+            for (int i = 0; i < res.length; i++) {
+                if (res[i] != 0) {
+                    changedScheduleIds.add(changedData.get(i).getScheduleId());
+                }
+            }
+            DynaGroupChangeTracker.getSingleton().traitsChanged(transactionSynchronizationRegistry, changedScheduleIds);
+
+            // whether inserted or not, each value is the latest one stored for its schedule once this commits
+            traitValueCache.putAfterCommit(transactionSynchronizationRegistry, pendingValues);
 
             notifyAlertConditionCacheManager("mergeMeasurementReport", data.toArray(new MeasurementData[data.size()]));
         } catch (SQLException e) {
@@ -301,6 +341,42 @@ public class MeasurementDataManagerBean implements MeasurementDataManagerLocal,
         }
     }
 
+    /**
+     * Truncates a trait value to the longest prefix that takes at most maxBytes bytes in UTF-8, without splitting a
+     * surrogate pair. This is done in one pass over the chars, the value is not encoded.
+     *
+     * @return the value itself if it fits, or is null
+     */
+    static String truncateTraitValue(String value, int maxBytes) {
+        if (value == null || value.length() * 3 <= maxBytes) {
+            // no char takes more than 3 bytes, a surrogate pair takes 4 bytes for 2 chars
+            return value;
+        }
+        int bytes = 0;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            int charBytes;
+            int charCount = 1;
+            if (c < 0x80) {
+                charBytes = 1;
+            } else if (c < 0x800) {
+                charBytes = 2;
+            } else if (Character.isHighSurrogate(c) && (i + 1 < length)
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                charBytes = 4;
+                charCount = 2;
+            } else {
+                charBytes = 3;
+            }
+            if (bytes + charBytes > maxBytes) {
+                return value.substring(0, i);
+            }
+            bytes += charBytes;
+            i += charCount - 1;
+        }
+        return value;
+    }
+
     /**
      * Return a map of &lt;resource id, List&lt;MetricDisplaySummary&gt;&gt;, where the list contains the
      * {@link MetricDisplaySummary} for the (enabled) schedules of the resource
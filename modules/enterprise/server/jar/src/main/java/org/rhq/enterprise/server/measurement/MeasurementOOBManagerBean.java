@@ -23,9 +23,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -43,15 +42,7 @@ import com.datastax.driver.core.ResultSet;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import org.rhq.core.db.DatabaseType;
-import org.rhq.core.db.DatabaseTypeFactory;
-import org.rhq.core.db.H2DatabaseType;
-import org.rhq.core.db.OracleDatabaseType;
-import org.rhq.core.db.PostgresqlDatabaseType;
-import org.rhq.core.db.SQLServerDatabaseType;
 import org.rhq.core.domain.auth.Subject;
-import org.rhq.core.domain.measurement.MeasurementBaseline;
-import org.rhq.core.domain.measurement.MeasurementDataNumeric1H;
 import org.rhq.core.domain.measurement.MeasurementDataPK;
 import org.rhq.core.domain.measurement.MeasurementOOB;
 import org.rhq.core.domain.measurement.MeasurementSchedule;
@@ -98,264 +89,188 @@ public class MeasurementOOBManagerBean implements MeasurementOOBManagerLocal {
     @EJB
     StorageClientManager storageManager;
 
-    /**
-     * Compute oobs from the values in the 1h measurement table that just got added.
-     * For the total result, this is an incremental computation. The idea is that
-     * it gets run *directly* after the 1h compression (and the baseline recalculation too).
-     *
-     * Algorithm is as follows:
-     * <ul>
-     * <li> insert new values in tmp table
-     * <li> update real table with max (tmp table, real table)
-     * <li> insert items from tmp table that were not in real table
-     * <li> tuncate tmp table
-     * </ul>
-     *
-     * @param subject Subject of the caller
-     * @param begin Start time of the 1h entries to look at
-     */
     @Override
-    public void computeOOBsFromHourBeginingAt(Subject subject, long begin) {
-
-        Connection conn = null;
-        PreparedStatement stmt = null;
-        List<Long> timings = new ArrayList<Long>();
-
-        try {
-            log.info("Calculating OOBs for hour starting at " + new Date(begin));
-            conn = rhqDs.getConnection();
-            DatabaseType dbType = DatabaseTypeFactory.getDefaultDatabaseType();
-
-            long t0 = System.currentTimeMillis();
-            long tstart = t0;
-
-            // first truncate tmp table
-            log.debug("Truncating tmp table");
-            //            stmt = conn.prepareStatement(MeasurementOOB.TRUNCATE_TMP_TABLE);
-            stmt = conn.prepareStatement("DELETE FROM RHQ_MEASUREMENT_OOB_TMP");
-            stmt.executeUpdate();
-            long t1 = System.currentTimeMillis();
-            timings.add((t1 - t0));
-            log.debug("Truncating the tmp table done");
-
-            String theQuery;
-
-            // Compute the OOBs and put them in the tmp table
-            if (dbType instanceof PostgresqlDatabaseType || dbType instanceof H2DatabaseType)
-                theQuery = MeasurementOOB.INSERT_QUERY.replace("%TRUE%", "true");
-            else if (dbType instanceof OracleDatabaseType || dbType instanceof SQLServerDatabaseType)
-                theQuery = MeasurementOOB.INSERT_QUERY.replace("%TRUE%", "1");
-            else
-                throw new IllegalArgumentException("Unknown database type, can't continue: " + dbType);
-
-            stmt = conn.prepareStatement(theQuery);
-
-            stmt.setLong(1, begin);
-            stmt.setLong(2, begin);
-            stmt.setLong(3, begin);
-            int count = stmt.executeUpdate();
-            t1 = System.currentTimeMillis();
-            log.debug("Calculation of OOBs done");
-            timings.add((t1 - t0));
-            t0 = t1;
-
-            // Update the real table from the tmp table
-            if (dbType instanceof PostgresqlDatabaseType) {
-                stmt = conn.prepareStatement(MeasurementOOB.UPDATE_MASTER_POSTGRES);
-                stmt.executeUpdate();
-                t1 = System.currentTimeMillis();
-                timings.add((t1 - t0));
-                log.debug("Update of master table done");
-                t0 = t1;
-
-                // Insert missing ones
-                stmt = conn.prepareStatement(MeasurementOOB.INSERT_NEW_ONES);
-                stmt.executeUpdate();
-                t1 = System.currentTimeMillis();
-                timings.add((t1 - t0));
-                log.debug("Insert of new oobs done");
-            } else if (dbType instanceof OracleDatabaseType) {
-                stmt = conn.prepareStatement(MeasurementOOB.MERGE_TABLES_ORACLE);
-                stmt.executeUpdate();
-                t1 = System.currentTimeMillis();
-                timings.add((t1 - t0));
-                log.debug("Merge of master table done");
-            } else if (dbType instanceof H2DatabaseType || dbType instanceof SQLServerDatabaseType) {
-                stmt = conn.prepareStatement(MeasurementOOB.UPDATE_MASTER_GENERIC);
-                stmt.executeUpdate();
-                t1 = System.currentTimeMillis();
-                timings.add((t1 - t0));
-                log.debug("Update of master table done");
-                t0 = t1;
-
-                // Insert missing ones
-                stmt = conn.prepareStatement(MeasurementOOB.INSERT_NEW_ONES);
-                stmt.executeUpdate();
-                t1 = System.currentTimeMillis();
-                timings.add((t1 - t0));
-                log.debug("Insert of new oobs done");
-            } else
-                throw new IllegalArgumentException("Unknown database type, can't continue: " + dbType);
-
-            log.info("Done calculating OOBs. [" + count + "] entries in [" + (t1 - tstart) + "] ms (" + timings + ")");
-        } catch (SQLException e) {
-            log.error(e);
-        } catch (Exception e) {
-            log.error(e);
-        } finally {
-            JDBCUtil.safeClose(conn, stmt, null);
-        }
-    }
-
-    @Override
-    @SuppressWarnings("unchecked")
     @TransactionAttribute(value = TransactionAttributeType.NOT_SUPPORTED)
     public void computeOOBsForLastHour(Subject subject, Iterable<AggregateNumericMetric> metrics) {
         log.info("Computing OOBs");
         int count = 0;
+        int written = 0;
         long startTime = System.currentTimeMillis();
 
         try {
-            Iterator<AggregateNumericMetric> iterator = metrics.iterator();
-            while (iterator.hasNext()) {
-
-                List<Integer> scheduleIds = new ArrayList<Integer>(BATCH_SIZE);
-                List<AggregateNumericMetric> metricList = new ArrayList<AggregateNumericMetric>(BATCH_SIZE);
-
-                int i = 0;
-                do {
-                    AggregateNumericMetric aggregate = iterator.next();
-                    scheduleIds.add(aggregate.getScheduleId());
-                    metricList.add(aggregate);
-                    i++;
-                } while (i < BATCH_SIZE && iterator.hasNext());
-
-                Query q  = entityManager.createNamedQuery(MeasurementBaseline.QUERY_BY_SCHEDULE_IDS);
-                q.setParameter("scheduleIds",scheduleIds);
-                List<MeasurementBaseline> tmpList = q.getResultList();
-
-                // put the result in a HashMap to speed up query later
-                Map<Integer,MeasurementBaseline> baselineMap = new HashMap<Integer, MeasurementBaseline>(tmpList.size());
-                for (MeasurementBaseline baseline : tmpList) {
-                    baselineMap.put(baseline.getScheduleId(),baseline);
+            MeasurementBaselineCache baselines = MeasurementBaselineCache.getSingleton();
+            Connection conn = null;
+            try {
+                conn = rhqDs.getConnection();
+                baselines.refresh(conn);
+            } catch (SQLException e) {
+                throw new RuntimeException("Could not load the baselines", e);
+            } finally {
+                JDBCUtil.safeClose(conn);
+            }
+
+            // an OOB per schedule; when a schedule has several aggregates the last one wins, as it always did
+            Map<Integer, MeasurementOOB> oobs = new LinkedHashMap<Integer, MeasurementOOB>();
+            for (AggregateNumericMetric metric : metrics) {
+                MeasurementBaselineCache.Bounds baseline = baselines.get(metric.getScheduleId());
+                if (baseline == null) {
+                    continue;
                 }
 
-                for (AggregateNumericMetric metric : metricList) {
-                    MeasurementBaseline baseline = baselineMap.get(metric.getScheduleId());
-                    if (baseline==null)
-                        continue;
+                Integer oobFactor = computeOOBFactor(metric, baseline.getMin(), baseline.getMax());
+                if (oobFactor == null) {
+                    continue;
+                }
+
+                MeasurementOOB oob = new MeasurementOOB();
+                oob.setScheduleId(metric.getScheduleId());
+                oob.setTimestamp(metric.getTimestamp());
+                oob.setOobFactor(oobFactor);
+                if (log.isDebugEnabled()) {
+                    log.debug("Generated OOB " + oob + " for 1 hr metric " + metric);
+                }
 
-                    try {
-                        count += oobManager.calculateOOB(metric,baseline);
-                    } catch (Exception e) {
-                        log.error("An error occurred while calculating OOBs for " + metric, e);
-                        throw new RuntimeException(e);
-                    }
+                oobs.put(oob.getScheduleId(), oob);
+                count++;
 
+                if (oobs.size() == BATCH_SIZE) {
+                    written += oobManager.saveOOBs(new ArrayList<MeasurementOOB>(oobs.values()));
+                    oobs.clear();
                 }
             }
+            if (!oobs.isEmpty()) {
+                written += oobManager.saveOOBs(new ArrayList<MeasurementOOB>(oobs.values()));
+            }
         } finally {
             long endTime = System.currentTimeMillis();
             if (log.isInfoEnabled()) {
-                log.info("Finished calculating " + count + " OOBs in " + (endTime - startTime) + " ms");
+                log.info("Finished calculating " + count + " OOBs (" + written + " changed) in "
+                    + (endTime - startTime) + " ms");
             }
         }
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     @TransactionAttribute(value = TransactionAttributeType.REQUIRES_NEW)
-    public int calculateOOB(AggregateNumericMetric metric,MeasurementBaseline baseline) {
-        if (baseline==null) {
-            return 0;
+    public int saveOOBs(List<MeasurementOOB> oobs) {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        java.sql.ResultSet rs = null;
+        try {
+            conn = rhqDs.getConnection();
+
+            Map<Integer, MeasurementOOB> existing = new HashMap<Integer, MeasurementOOB>(oobs.size());
+            stmt = conn.prepareStatement(JDBCUtil.transformQueryForMultipleInParameters(
+                MeasurementOOB.NATIVE_FIND_FOR_SCHEDULES, "@@SCHEDULE_IDS@@", oobs.size()));
+            int i = 1;
+            for (MeasurementOOB oob : oobs) {
+                stmt.setInt(i++, oob.getScheduleId());
+            }
+            rs = stmt.executeQuery();
+            while (rs.next()) {
+                MeasurementOOB oob = new MeasurementOOB();
+                oob.setScheduleId(rs.getInt(1));
+                oob.setTimestamp(rs.getLong(2));
+                oob.setOobFactor(rs.getInt(3));
+                existing.put(oob.getScheduleId(), oob);
+            }
+            JDBCUtil.safeClose(stmt, rs);
+            rs = null;
+            stmt = null;
+
+            List<MeasurementOOB> inserts = new ArrayList<MeasurementOOB>();
+            List<MeasurementOOB> updates = new ArrayList<MeasurementOOB>();
+            for (MeasurementOOB oob : oobs) {
+                MeasurementOOB current = existing.get(oob.getScheduleId());
+                if (current == null) {
+                    inserts.add(oob);
+                } else if (current.getTimestamp() != oob.getTimestamp()
+                    || current.getOobFactor() != oob.getOobFactor()) {
+                    updates.add(oob);
+                }
+            }
+
+            // both statements bind the factor, the timestamp and the schedule id, in that order
+            executeBatch(conn, MeasurementOOB.NATIVE_INSERT, inserts, true);
+            executeBatch(conn, MeasurementOOB.NATIVE_UPDATE, updates, false);
+
+            return inserts.size() + updates.size();
+        } catch (SQLException e) {
+            throw new RuntimeException("Could not save " + oobs.size() + " OOBs", e);
+        } finally {
+            JDBCUtil.safeClose(conn, stmt, rs);
         }
+    }
 
+    private void executeBatch(Connection conn, String sql, List<MeasurementOOB> oobs, boolean isInsert)
+        throws SQLException {
+        if (oobs.isEmpty()) {
+            return;
+        }
+
+        PreparedStatement stmt = null;
+        try {
+            stmt = conn.prepareStatement(sql);
+            for (MeasurementOOB oob : oobs) {
+                stmt.setInt(1, oob.getOobFactor());
+                if (isInsert) {
+                    stmt.setInt(2, oob.getScheduleId());
+                    stmt.setLong(3, oob.getTimestamp());
+                } else {
+                    stmt.setLong(2, oob.getTimestamp());
+                    stmt.setInt(3, oob.getScheduleId());
+                }
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        } finally {
+            JDBCUtil.safeClose(stmt);
+        }
+    }
+
+    /**
+     * Computes the OOB factor of a 1 hr aggregate against the bounds of the baseline of its schedule: how far, in
+     * percent of the width of the baseline, the aggregate went past the baseline.
+     *
+     * @return the OOB factor, or null if the aggregate stayed within the baseline
+     */
+    static Integer computeOOBFactor(AggregateNumericMetric metric, double baselineMin, double baselineMax) {
         Long upperDelta = null;
         Long lowerDelta = null;
 
-        if (isPastUpperBound(baseline, metric)) {
-            upperDelta =
-                Math.round(((metric.getMax() - baseline.getMax()) / (baseline.getMax() - baseline.getMin())) * 100);
+        if (isPastUpperBound(baselineMin, baselineMax, metric)) {
+            upperDelta = Math.round(((metric.getMax() - baselineMax) / (baselineMax - baselineMin)) * 100);
         }
 
-        if (isPastLowerBound(baseline, metric)) {
-            lowerDelta =
-                Math.round(((baseline.getMin() - metric.getMin()) / (baseline.getMax() - baseline.getMin())) * 100);
+        if (isPastLowerBound(baselineMin, baselineMax, metric)) {
+            lowerDelta = Math.round(((baselineMin - metric.getMin()) / (baselineMax - baselineMin)) * 100);
         }
 
-        Integer oobFactor;
         if (upperDelta != null && lowerDelta == null) {
-            oobFactor = upperDelta.intValue();
+            return upperDelta.intValue();
         } else if (upperDelta == null && lowerDelta != null) {
-            oobFactor = lowerDelta.intValue();
+            return lowerDelta.intValue();
         } else if (upperDelta != null && lowerDelta != null) {
             if (upperDelta > lowerDelta) {
-                oobFactor = upperDelta.intValue();
+                return upperDelta.intValue();
             } else {
-                oobFactor = lowerDelta.intValue();
+                return lowerDelta.intValue();
             }
         } else { // both are null
-            oobFactor = null;
+            return null;
         }
-
-        if (oobFactor != null) {
-            MeasurementOOB oob = new MeasurementOOB();
-            oob.setScheduleId(metric.getScheduleId());
-            oob.setTimestamp(metric.getTimestamp());
-            oob.setOobFactor(oobFactor);
-
-            if (log.isDebugEnabled()) {
-                log.debug("Generated OOB " + oob + " for 1 hr metric " + metric + " with baseline " + baseline);
-            }
-
-            entityManager.merge(oob);
-            return 1;
-        }
-
-        return 0;
-    }
-
-    private boolean isPastUpperBound(MeasurementBaseline baseline, AggregateNumericMetric metric) {
-        return metric.getAvg() > baseline.getMax() &&
-            (baseline.getMax() - baseline.getMin() > 0.1) &&
-            (metric.getMax() - baseline.getMax() > 0);
     }
 
-    private boolean isPastLowerBound(MeasurementBaseline baseline, AggregateNumericMetric metric) {
-        return metric.getAvg() < baseline.getMax() &&
-            (baseline.getMax() - baseline.getMin() > 0.1) &&
-            (baseline.getMin() - metric.getMin()) > 0;
+    private static boolean isPastUpperBound(double baselineMin, double baselineMax, AggregateNumericMetric metric) {
+        return metric.getAvg() > baselineMax &&
+            (baselineMax - baselineMin > 0.1) &&
+            (metric.getMax() - baselineMax > 0);
     }
 
-    /**
-     * Computes the OOBs for the last hour.
-     * This is done by getting the latest timestamp of the 1h table and invoking
-     * #computeOOBsFromHourBeginingAt
-     * @param subject Caller
-     */
-    @Override
-    @TransactionAttribute(value = TransactionAttributeType.REQUIRES_NEW)
-    public void computeOOBsFromLastHour(Subject subject) {
-
-        Query q = entityManager.createNamedQuery(MeasurementDataNumeric1H.GET_MAX_TIMESTAMP);
-        Object res = q.getSingleResult();
-        if (res == null) {
-            if (log.isDebugEnabled())
-                log.debug("No data yet in 1h table, nothing to do");
-            return; // no data in that table yet - nothing to do.
-        }
-        long timeStamp = (Long) res;
-
-        // check if we did this already (because the server did not get data for > 1h
-        q = entityManager.createNamedQuery(MeasurementOOB.COUNT_FOR_DATE);
-        q.setParameter("timestamp", timeStamp);
-        Long count = (Long) q.getSingleResult();
-
-        if (count == 0)
-            computeOOBsFromHourBeginingAt(subject, timeStamp);
-        else
-            log.info("Calculation of OOBs already done for hour " + new Date(timeStamp));
-
+    private static boolean isPastLowerBound(double baselineMin, double baselineMax, AggregateNumericMetric metric) {
+        return metric.getAvg() < baselineMax &&
+            (baselineMax - baselineMin > 0.1) &&
+            (baselineMin - metric.getMin()) > 0;
     }
 
     /**
@@ -19,10 +19,12 @@
 
 package org.rhq.enterprise.server.measurement;
 
+import java.util.List;
+
 import javax.ejb.Local;
 
 import org.rhq.core.domain.auth.Subject;
-import org.rhq.core.domain.measurement.MeasurementBaseline;
+import org.rhq.core.domain.measurement.MeasurementOOB;
 import org.rhq.core.domain.measurement.MeasurementSchedule;
 import org.rhq.core.domain.measurement.composite.MeasurementOOBComposite;
 import org.rhq.core.domain.util.PageControl;
@@ -38,15 +40,6 @@ import org.rhq.server.metrics.domain.AggregateNumericMetric;
 @Local
 public interface MeasurementOOBManagerLocal {
 
-    /**
-     * Compute oobs from the values in the 1h measurement table that just got added.
-     * For the total result, this is an incremental computation. The idea is that
-     * it gets run *directly* after the 1h compression (and the baseline recalculation too).
-     * @param subject Subject of the caller
-     * @param begin Start time of the 1h entries to look at
-     */
-    void computeOOBsFromHourBeginingAt(Subject subject, long begin);
-
     /**
      * Computes OOBs using the provided 1 hr data which should be the most recent 1 hr
      * aggregates. These metrics are provided as an argument as opposed to querying for
@@ -59,16 +52,15 @@ public interface MeasurementOOBManagerLocal {
     void computeOOBsForLastHour(Subject subject, Iterable<AggregateNumericMetric> metrics);
 
     /**
-     * Determines and calculates an OOB if necessary, If an OOB is generated, this method
-     * saves it to the database.
+     * Saves OOBs, at most one per schedule, replacing the current OOBs of their schedules. Only the OOBs that differ
+     * from the current ones are written.
      * <br/><br/>
      * <strong>Note</strong> This method exists only for transaction demarcation.
      *
-     * @param metric The 1 hr metric that is used to determine whether or not an OOB should
-     *               be generated
-     * @return 1 if an OOB is generated, 0 otherwise
+     * @param oobs The OOBs computed from the most recent 1 hr aggregates
+     * @return the number of OOBs that were written
      */
-    int calculateOOB(AggregateNumericMetric metric, MeasurementBaseline baseline);
+    int saveOOBs(List<MeasurementOOB> oobs);
 
     /**
      * Return OOB Composites that contain all information about the OOBs in a given time as aggregates.
@@ -81,14 +73,6 @@ public interface MeasurementOOBManagerLocal {
     PageList<MeasurementOOBComposite> getSchedulesWithOOBs(Subject subject, String metricNameFilter,
         String resourceNameFilter, String parentNameFilter, PageControl pc);
 
-    /**
-     * Computes the OOBs for the last hour.
-     * This is done by getting the latest timestamp of the 1h table and invoking
-     * #computeOOBsFromHourBeginingAt
-     * @param subject caller
-     */
-    void computeOOBsFromLastHour(Subject subject);
-
     /**
      * Remove all OOB data for the passed schedule
      * @param subject Caller
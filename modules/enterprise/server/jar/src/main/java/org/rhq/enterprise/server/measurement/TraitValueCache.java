@@ -0,0 +1,168 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.measurement;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * A hash of the latest value stored by this server for each trait schedule, so that the traits reported unchanged
+ * (most of them: versions, paths, host names...) can be filtered out before they reach the database.
+ * <p/>
+ * The cache is only a filter in front of the conditional insert of the trait data, which still compares against the
+ * latest stored value: a cold or evicted entry just means the trait is sent to the database. An entry can however be
+ * stale when the agent of the resource failed over to another server of the cloud and the value changed there, so
+ * entries expire after {@link #MAX_AGE} and the staleness of a value stored back by this server is bounded by it.
+ */
+public class TraitValueCache {
+
+    private static final String MAX_SIZE_SYSTEM_PROPERTY = "rhq.server.trait.cache.max-size";
+    private static final String MAX_AGE_SYSTEM_PROPERTY = "rhq.server.trait.cache.max-age";
+
+    static final int MAX_SIZE = Integer.getInteger(MAX_SIZE_SYSTEM_PROPERTY, 200000);
+    static final long MAX_AGE = Long.getLong(MAX_AGE_SYSTEM_PROPERTY, 60L * 60L * 1000L);
+
+    private static final TraitValueCache singleton = new TraitValueCache(MAX_SIZE, MAX_AGE);
+
+    // the hash of the null value, distinct from the hash of any string as those are never 0
+    private static final long NULL_HASH = 0L;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long maxAge;
+
+    private final LinkedHashMap<Integer, Entry> entries;
+
+    public static TraitValueCache getSingleton() {
+        return singleton;
+    }
+
+    TraitValueCache(final int maxSize, long maxAge) {
+        this.maxAge = maxAge;
+        this.entries = new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return true if the value is known to be the latest value stored for the schedule, false if it changed or if
+     * the latest stored value is unknown
+     */
+    public synchronized boolean isUnchanged(int scheduleId, String value) {
+        Entry entry = entries.get(scheduleId);
+        if (entry == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - entry.storeTime > maxAge) {
+            entries.remove(scheduleId);
+            return false;
+        }
+        return entry.hash == hash(value);
+    }
+
+    /**
+     * Records the value as the latest value stored for the schedule. Only call this once the value is committed, see
+     * {@link #putAfterCommit(TransactionSynchronizationRegistry, Map)}.
+     */
+    public synchronized void put(int scheduleId, String value) {
+        entries.put(scheduleId, new Entry(hash(value), System.currentTimeMillis()));
+    }
+
+    /**
+     * Records the given values once the current transaction has committed; they are dropped if it rolls back. Without
+     * a transaction, they are recorded right away.
+     *
+     * @param values the values stored, by schedule id
+     */
+    public void putAfterCommit(TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+        Map<Integer, String> values) {
+        final Map<Integer, String> committedValues = new HashMap<Integer, String>(values);
+
+        if (transactionSynchronizationRegistry == null
+            || transactionSynchronizationRegistry.getTransactionKey() == null) {
+            putAll(committedValues);
+            return;
+        }
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status == Status.STATUS_COMMITTED) {
+                    putAll(committedValues);
+                }
+            }
+        });
+    }
+
+    private synchronized void putAll(Map<Integer, String> values) {
+        for (Map.Entry<Integer, String> value : values.entrySet()) {
+            put(value.getKey(), value.getValue());
+        }
+    }
+
+    public synchronized void remove(int scheduleId) {
+        entries.remove(scheduleId);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the 64-bit FNV-1a hash of the UTF-16 chars of the value, never 0 unless the value is null
+     */
+    static long hash(String value) {
+        if (value == null) {
+            return NULL_HASH;
+        }
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            hash ^= (c & 0xff);
+            hash *= FNV_PRIME;
+            hash ^= (c >>> 8);
+            hash *= FNV_PRIME;
+        }
+        return (hash == NULL_HASH) ? 1L : hash;
+    }
+
+    private static class Entry {
+        private final long hash;
+        private final long storeTime;
+
+        private Entry(long hash, long storeTime) {
+            this.hash = hash;
+            this.storeTime = storeTime;
+        }
+    }
+}
@@ -61,6 +61,11 @@ public class MeasurementMonitor implements MeasurementMonitorMBean {
 
     private AtomicLong calltimeValuesInserted = new AtomicLong();
 
+    // traits sent to the database, and traits skipped because the server knew they were unchanged
+    private AtomicLong traitsWritten = new AtomicLong();
+
+    private AtomicLong traitsSkipped = new AtomicLong();
+
     private AtomicLong availabilityInsertTime = new AtomicLong();
 
     private AtomicLong availabilitiesInserted = new AtomicLong();
@@ -141,6 +146,22 @@ public class MeasurementMonitor implements MeasurementMonitorMBean {
         this.callTimeInsertTime.addAndGet(delta);
     }
 
+    public long getTraitsWritten() {
+        return traitsWritten.get();
+    }
+
+    public void incrementTraitsWritten(long delta) {
+        this.traitsWritten.addAndGet(delta);
+    }
+
+    public long getTraitsSkipped() {
+        return traitsSkipped.get();
+    }
+
+    public void incrementTraitsSkipped(long delta) {
+        this.traitsSkipped.addAndGet(delta);
+    }
+
     public long getAvailabilityInsertTime() {
         return availabilityInsertTime.get();
     }
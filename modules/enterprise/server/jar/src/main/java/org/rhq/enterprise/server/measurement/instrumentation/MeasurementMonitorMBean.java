@@ -39,6 +39,14 @@ public interface MeasurementMonitorMBean {
 
     void incrementCalltimeValuesInserted(long delta);
 
+    long getTraitsWritten();
+
+    void incrementTraitsWritten(long delta);
+
+    long getTraitsSkipped();
+
+    void incrementTraitsSkipped(long delta);
+
     int getScheduledMeasurementsPerMinute();
 
     long getPurgeTime();
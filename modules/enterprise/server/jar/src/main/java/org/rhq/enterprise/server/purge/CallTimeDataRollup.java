@@ -0,0 +1,195 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.purge;
+
+import static org.rhq.core.db.DatabaseTypeFactory.isOracle;
+import static org.rhq.core.db.DatabaseTypeFactory.isPostgres;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import javax.sql.DataSource;
+import javax.transaction.Status;
+import javax.transaction.UserTransaction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.db.DatabaseType;
+import org.rhq.core.db.DatabaseTypeFactory;
+import org.rhq.core.util.jdbc.JDBCUtil;
+import org.rhq.enterprise.server.measurement.CallTimeDataRollupType;
+
+/**
+ * Rolls the call-time data values up into the {@link CallTimeDataRollupType#HOURLY hourly} rollups, and those into the
+ * {@link CallTimeDataRollupType#DAILY daily} rollups.<br>
+ * <br>
+ * Each time bucket is rolled up in its own transaction, in chronological order, starting after the latest bucket of
+ * the rollup table; buckets without data are skipped. Values stored for a bucket after it was rolled up (i.e. reported
+ * very late) are merged into the rollups when they are stored, see
+ * {@link org.rhq.enterprise.server.measurement.CallTimeDataManagerBean#insertCallTimeDataValues}; only the hours that
+ * ended some time ago are rolled up so that this is rare.
+ */
+class CallTimeDataRollup {
+    private static final Log LOG = LogFactory.getLog(CallTimeDataRollup.class);
+
+    private static final String RAW_TABLE_NAME = "RHQ_CALLTIME_DATA_VALUE";
+
+    private static final String QUERY_SELECT_LATEST_BUCKET = "SELECT MAX(TIME_BUCKET) FROM %s";
+
+    private static final String QUERY_SELECT_OLDEST_TIME = "SELECT MIN(%s) FROM %s WHERE %s >= ? AND %s < ?";
+
+    // values without calls, as sent for the destinations that were not called, are left out like in the raw queries
+    private static final String QUERY_INSERT_ROLLUPS = "" //
+        + "INSERT INTO %s ( ID, KEY_ID, TIME_BUCKET, BEGIN_TIME, END_TIME, MINIMUM, MAXIMUM, TOTAL, COUNT ) " //
+        + "SELECT %s, r.KEY_ID, ?, r.BEGIN_TIME, r.END_TIME, r.MINIMUM, r.MAXIMUM, r.TOTAL, r.COUNT " //
+        + "  FROM ( SELECT KEY_ID, MIN(BEGIN_TIME) AS BEGIN_TIME, MAX(END_TIME) AS END_TIME, " //
+        + "                MIN(MINIMUM) AS MINIMUM, MAX(MAXIMUM) AS MAXIMUM, SUM(TOTAL) AS TOTAL, SUM(COUNT) AS COUNT " //
+        + "           FROM %s " //
+        + "          WHERE %s >= ? AND %s < ? AND COUNT <> 0 AND MINIMUM <> -1 " //
+        + "       GROUP BY KEY_ID ) r";
+
+    private final DataSource dataSource;
+    private final UserTransaction userTransaction;
+    private final DatabaseType databaseType;
+    private final long rollupUpToTime;
+
+    /**
+     * @param dataSource the source of JDBC connections to the database
+     * @param userTransaction the transaction management interface
+     * @param rollupUpToTime values of the hours that end before this time will be rolled up
+     */
+    CallTimeDataRollup(DataSource dataSource, UserTransaction userTransaction, long rollupUpToTime) {
+        this.dataSource = dataSource;
+        this.userTransaction = userTransaction;
+        this.databaseType = DatabaseTypeFactory.getDefaultDatabaseType();
+        this.rollupUpToTime = CallTimeDataRollupType.HOURLY.getTimeBucket(rollupUpToTime);
+    }
+
+    /**
+     * @return the number of rollup rows that were created
+     */
+    public int execute() {
+        if (!isPostgres(databaseType) && !isOracle(databaseType)) {
+            throw new UnsupportedOperationException(databaseType.getName());
+        }
+
+        int created = 0;
+        try {
+            created += rollup(CallTimeDataRollupType.HOURLY, RAW_TABLE_NAME, "END_TIME", rollupUpToTime);
+            // only the days whose hours have all been rolled up
+            created += rollup(CallTimeDataRollupType.DAILY, CallTimeDataRollupType.HOURLY.getTableName(),
+                "TIME_BUCKET", CallTimeDataRollupType.DAILY.getTimeBucket(rollupUpToTime));
+        } catch (Exception e) {
+            LOG.error("CallTimeData: could not fully process the rollup", e);
+        } finally {
+            rollbackIfTransactionActive();
+        }
+
+        return created;
+    }
+
+    private int rollup(CallTimeDataRollupType type, String sourceTable, String sourceTimeColumn, long upToTime)
+        throws Exception {
+        int created = 0;
+        Long latestBucket = selectLong(String.format(QUERY_SELECT_LATEST_BUCKET, type.getTableName()));
+        long bucket = (latestBucket == null) ? 0L : (latestBucket + type.getBucketSize());
+        while (bucket < upToTime) {
+            Long oldestTime = selectLong(String.format(QUERY_SELECT_OLDEST_TIME, sourceTimeColumn, sourceTable,
+                sourceTimeColumn, sourceTimeColumn), bucket, upToTime);
+            if (oldestTime == null) {
+                break;
+            }
+            bucket = type.getTimeBucket(oldestTime);
+            created += rollupBucket(type, sourceTable, sourceTimeColumn, bucket);
+            bucket += type.getBucketSize();
+        }
+        return created;
+    }
+
+    private Long selectLong(String sql, long... params) throws Exception {
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        try {
+            userTransaction.begin();
+
+            connection = dataSource.getConnection();
+            preparedStatement = connection.prepareStatement(sql);
+            for (int i = 0; i < params.length; i++) {
+                preparedStatement.setLong(i + 1, params[i]);
+            }
+            resultSet = preparedStatement.executeQuery();
+
+            Long result = null;
+            if (resultSet.next()) {
+                long value = resultSet.getLong(1);
+                if (!resultSet.wasNull()) {
+                    result = value;
+                }
+            }
+
+            userTransaction.commit();
+
+            return result;
+        } finally {
+            JDBCUtil.safeClose(connection, preparedStatement, resultSet);
+            rollbackIfTransactionActive();
+        }
+    }
+
+    private int rollupBucket(CallTimeDataRollupType type, String sourceTable, String sourceTimeColumn, long bucket)
+        throws Exception {
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+        try {
+            userTransaction.begin();
+
+            connection = dataSource.getConnection();
+            preparedStatement = connection.prepareStatement(String.format(QUERY_INSERT_ROLLUPS, type.getTableName(),
+                JDBCUtil.getNextValSql(connection, type.getTableName()), sourceTable, sourceTimeColumn,
+                sourceTimeColumn));
+            preparedStatement.setLong(1, bucket);
+            preparedStatement.setLong(2, bucket);
+            preparedStatement.setLong(3, bucket + type.getBucketSize());
+            int created = preparedStatement.executeUpdate();
+
+            userTransaction.commit();
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Created " + created + " " + type.getTableName() + " row(s) for time bucket " + bucket);
+            }
+
+            return created;
+        } finally {
+            JDBCUtil.safeClose(connection, preparedStatement, null);
+            rollbackIfTransactionActive();
+        }
+    }
+
+    private void rollbackIfTransactionActive() {
+        try {
+            if (userTransaction.getStatus() == Status.STATUS_ACTIVE) {
+                userTransaction.rollback();
+            }
+        } catch (Throwable ignore) {
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.purge;
+
+import static org.rhq.core.db.DatabaseTypeFactory.isOracle;
+import static org.rhq.core.db.DatabaseTypeFactory.isPostgres;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+import javax.transaction.UserTransaction;
+
+import org.rhq.core.db.DatabaseType;
+import org.rhq.core.domain.event.EventCount;
+
+/**
+ * Purges the event counters (see {@link EventCount}) whose time bucket ends by the given time. A counter whose
+ * time bucket straddles the given time is kept, as it still counts events that are not purged. Counters aligned on an
+ * hour are taken for hourly counters, even though they may only be the first minute counter of an hour that has not
+ * been rolled up yet.
+ */
+class EventCountPurge extends PurgeTemplate<Integer> {
+    private static final String ENTITY_NAME = "EventCount";
+
+    private static final String QUERY_SELECT_KEYS_FOR_PURGE = "" //
+        + "SELECT ID FROM RHQ_EVENT_COUNT " //
+        + " WHERE TIME_BUCKET < ? " //
+        + "   AND TIME_BUCKET + CASE WHEN MOD(TIME_BUCKET, " + EventCount.ROLLUP_BUCKET_SIZE + ") = 0 " //
+        + "                          THEN " + EventCount.ROLLUP_BUCKET_SIZE //
+        + "                          ELSE " + EventCount.BUCKET_SIZE + " END <= ?";
+
+    private static final String QUERY_PURGE_BY_KEY = "DELETE FROM RHQ_EVENT_COUNT WHERE ID = ?";
+
+    private final long deleteUpToTime;
+
+    EventCountPurge(DataSource dataSource, UserTransaction userTransaction, long deleteUpToTime) {
+        super(dataSource, userTransaction);
+        this.deleteUpToTime = deleteUpToTime;
+    }
+
+    @Override
+    protected String getEntityName() {
+        return ENTITY_NAME;
+    }
+
+    @Override
+    protected String getFindRowKeysQuery(DatabaseType databaseType) {
+        if (isPostgres(databaseType) || isOracle(databaseType)) {
+            return QUERY_SELECT_KEYS_FOR_PURGE;
+        }
+        throw new UnsupportedOperationException(databaseType.getName());
+    }
+
+    @Override
+    protected void setFindRowKeysQueryParams(PreparedStatement preparedStatement) throws SQLException {
+        preparedStatement.setLong(1, deleteUpToTime);
+        preparedStatement.setLong(2, deleteUpToTime);
+    }
+
+    @Override
+    protected Integer getKeyFromResultSet(ResultSet resultSet) throws SQLException {
+        return resultSet.getInt(1);
+    }
+
+    @Override
+    protected String getDeleteRowByKeyQuery(DatabaseType databaseType) {
+        if (isPostgres(databaseType) || isOracle(databaseType)) {
+            return QUERY_PURGE_BY_KEY;
+        }
+        throw new UnsupportedOperationException(databaseType.getName());
+    }
+
+    @Override
+    protected void setDeleteRowByKeyQueryParams(PreparedStatement preparedStatement, Integer key) throws SQLException {
+        preparedStatement.setInt(1, key);
+    }
+}
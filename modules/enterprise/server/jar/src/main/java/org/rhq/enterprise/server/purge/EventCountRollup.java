@@ -0,0 +1,245 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+
+package org.rhq.enterprise.server.purge;
+
+import static org.rhq.core.db.DatabaseTypeFactory.isOracle;
+import static org.rhq.core.db.DatabaseTypeFactory.isPostgres;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+import javax.transaction.Status;
+import javax.transaction.UserTransaction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.rhq.core.db.DatabaseType;
+import org.rhq.core.db.DatabaseTypeFactory;
+import org.rhq.core.domain.event.EventCount;
+import org.rhq.core.util.jdbc.JDBCUtil;
+
+/**
+ * Rolls the per-minute event counters (see {@link EventCount}) up into hourly counters.<br>
+ * <br>
+ * Each hour is rolled up in its own transaction: the minute counters of the hour are summed into the counter keyed by
+ * the start of the hour (which is created if need be) and then deleted. Minute counters are recognized by their time
+ * bucket not being aligned on an hour, so hours that have already been rolled up are left alone, and minute counters
+ * created afterwards for late events are rolled up by the next execution.
+ */
+class EventCountRollup {
+    private static final Log LOG = LogFactory.getLog(EventCountRollup.class);
+
+    private static final String QUERY_SELECT_OLDEST_BUCKET = "" //
+        + "SELECT MIN(TIME_BUCKET) FROM RHQ_EVENT_COUNT " //
+        + " WHERE TIME_BUCKET >= ? AND TIME_BUCKET < ? AND MOD(TIME_BUCKET, " + EventCount.ROLLUP_BUCKET_SIZE
+        + ") <> 0";
+
+    private static final String QUERY_SELECT_BUCKETS_OF_HOUR = "" //
+        + "SELECT ID, RESOURCE_ID, SEVERITY, EVENT_COUNT FROM RHQ_EVENT_COUNT " //
+        + " WHERE TIME_BUCKET > ? AND TIME_BUCKET < ?";
+
+    private static final String QUERY_INSERT_ROLLUP_BUCKET = "" //
+        + "INSERT INTO RHQ_EVENT_COUNT (ID, RESOURCE_ID, SEVERITY, TIME_BUCKET, EVENT_COUNT) " //
+        + "SELECT %s, ?, ?, ?, 0 FROM RHQ_NUMBERS WHERE I = 42 " //
+        + "AND NOT EXISTS (SELECT * FROM RHQ_EVENT_COUNT WHERE RESOURCE_ID = ? AND SEVERITY = ? AND TIME_BUCKET = ?)";
+
+    private static final String QUERY_UPDATE_ROLLUP_BUCKET = "" //
+        + "UPDATE RHQ_EVENT_COUNT SET EVENT_COUNT = EVENT_COUNT + ? " //
+        + " WHERE RESOURCE_ID = ? AND SEVERITY = ? AND TIME_BUCKET = ?";
+
+    private static final String QUERY_DELETE_BY_KEY = "DELETE FROM RHQ_EVENT_COUNT WHERE ID = ?";
+
+    private final DataSource dataSource;
+    private final UserTransaction userTransaction;
+    private final DatabaseType databaseType;
+    private final long rollupUpToTime;
+
+    /**
+     * @param dataSource the source of JDBC connections to the database
+     * @param userTransaction the transaction management interface
+     * @param rollupUpToTime minute counters of the hours that end before this time will be rolled up
+     */
+    EventCountRollup(DataSource dataSource, UserTransaction userTransaction, long rollupUpToTime) {
+        this.dataSource = dataSource;
+        this.userTransaction = userTransaction;
+        this.databaseType = DatabaseTypeFactory.getDefaultDatabaseType();
+        this.rollupUpToTime = EventCount.getRollupTimeBucket(rollupUpToTime);
+    }
+
+    /**
+     * @return the number of minute counters that were rolled up
+     */
+    public int execute() {
+        if (!isPostgres(databaseType) && !isOracle(databaseType)) {
+            throw new UnsupportedOperationException(databaseType.getName());
+        }
+
+        int rolledUp = 0;
+        try {
+            long hour = 0;
+            while (true) {
+                Long oldestBucket = findOldestBucket(hour);
+                if (oldestBucket == null) {
+                    break;
+                }
+                hour = EventCount.getRollupTimeBucket(oldestBucket);
+                rolledUp += rollupHour(hour);
+                hour += EventCount.ROLLUP_BUCKET_SIZE;
+            }
+        } catch (Exception e) {
+            LOG.error("EventCount: could not fully process the rollup", e);
+        } finally {
+            rollbackIfTransactionActive();
+        }
+
+        return rolledUp;
+    }
+
+    private Long findOldestBucket(long fromTime) throws Exception {
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        try {
+            userTransaction.begin();
+
+            connection = dataSource.getConnection();
+            preparedStatement = connection.prepareStatement(QUERY_SELECT_OLDEST_BUCKET);
+            preparedStatement.setLong(1, fromTime);
+            preparedStatement.setLong(2, rollupUpToTime);
+            resultSet = preparedStatement.executeQuery();
+
+            Long oldestBucket = null;
+            if (resultSet.next()) {
+                long value = resultSet.getLong(1);
+                if (!resultSet.wasNull()) {
+                    oldestBucket = value;
+                }
+            }
+
+            userTransaction.commit();
+
+            return oldestBucket;
+        } finally {
+            JDBCUtil.safeClose(connection, preparedStatement, resultSet);
+            rollbackIfTransactionActive();
+        }
+    }
+
+    private int rollupHour(long hour) throws Exception {
+        Connection connection = null;
+        PreparedStatement preparedStatement = null;
+        ResultSet resultSet = null;
+        try {
+            userTransaction.begin();
+
+            connection = dataSource.getConnection();
+
+            // sum the minute counters by resource and severity
+            Map<Integer, Map<String, Integer>> sums = new HashMap<Integer, Map<String, Integer>>();
+            List<Integer> ids = new ArrayList<Integer>();
+            preparedStatement = connection.prepareStatement(QUERY_SELECT_BUCKETS_OF_HOUR);
+            preparedStatement.setLong(1, hour);
+            preparedStatement.setLong(2, hour + EventCount.ROLLUP_BUCKET_SIZE);
+            resultSet = preparedStatement.executeQuery();
+            while (resultSet.next()) {
+                ids.add(resultSet.getInt(1));
+                int resourceId = resultSet.getInt(2);
+                String severity = resultSet.getString(3);
+                int count = resultSet.getInt(4);
+
+                Map<String, Integer> resourceSums = sums.get(resourceId);
+                if (resourceSums == null) {
+                    resourceSums = new HashMap<String, Integer>();
+                    sums.put(resourceId, resourceSums);
+                }
+                Integer sum = resourceSums.get(severity);
+                resourceSums.put(severity, (sum == null) ? count : (sum + count));
+            }
+            JDBCUtil.safeClose(preparedStatement, resultSet);
+            resultSet = null;
+
+            // make sure the hourly counters exist
+            preparedStatement = connection.prepareStatement(String.format(QUERY_INSERT_ROLLUP_BUCKET,
+                JDBCUtil.getNextValSql(connection, EventCount.TABLE_NAME)));
+            for (Map.Entry<Integer, Map<String, Integer>> resourceSums : sums.entrySet()) {
+                for (String severity : resourceSums.getValue().keySet()) {
+                    preparedStatement.setInt(1, resourceSums.getKey());
+                    preparedStatement.setString(2, severity);
+                    preparedStatement.setLong(3, hour);
+                    preparedStatement.setInt(4, resourceSums.getKey());
+                    preparedStatement.setString(5, severity);
+                    preparedStatement.setLong(6, hour);
+                    preparedStatement.addBatch();
+                }
+            }
+            preparedStatement.executeBatch();
+            JDBCUtil.safeClose(preparedStatement);
+
+            // add the sums to them
+            preparedStatement = connection.prepareStatement(QUERY_UPDATE_ROLLUP_BUCKET);
+            for (Map.Entry<Integer, Map<String, Integer>> resourceSums : sums.entrySet()) {
+                for (Map.Entry<String, Integer> sum : resourceSums.getValue().entrySet()) {
+                    preparedStatement.setInt(1, sum.getValue());
+                    preparedStatement.setInt(2, resourceSums.getKey());
+                    preparedStatement.setString(3, sum.getKey());
+                    preparedStatement.setLong(4, hour);
+                    preparedStatement.addBatch();
+                }
+            }
+            preparedStatement.executeBatch();
+            JDBCUtil.safeClose(preparedStatement);
+
+            // and drop the minute counters
+            preparedStatement = connection.prepareStatement(QUERY_DELETE_BY_KEY);
+            for (Integer id : ids) {
+                preparedStatement.setInt(1, id);
+                preparedStatement.addBatch();
+            }
+            preparedStatement.executeBatch();
+
+            userTransaction.commit();
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Rolled up " + ids.size() + " EventCount row(s) of hour " + hour);
+            }
+
+            return ids.size();
+        } finally {
+            JDBCUtil.safeClose(connection, preparedStatement, resultSet);
+            rollbackIfTransactionActive();
+        }
+    }
+
+    private void rollbackIfTransactionActive() {
+        try {
+            if (userTransaction.getStatus() == Status.STATUS_ACTIVE) {
+                userTransaction.rollback();
+            }
+        } catch (Throwable ignore) {
+        }
+    }
+}
@@ -30,6 +30,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.rhq.enterprise.server.RHQConstants;
+import org.rhq.enterprise.server.measurement.CallTimeDataRollupType;
 import org.rhq.enterprise.server.measurement.instrumentation.MeasurementMonitor;
 
 /**
@@ -77,11 +78,24 @@ public class PurgeManagerBean implements PurgeManagerLocal {
         EventDataPurge eventDataPurge = new EventDataPurge(dataSource, userTransaction, deleteUpToTime);
         long startTime = System.currentTimeMillis();
         int deleted = eventDataPurge.execute();
+        int deletedCounts = new EventCountPurge(dataSource, userTransaction, deleteUpToTime).execute();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Deleted [" + deletedCounts + "] event counters");
+        }
         MeasurementMonitor.getMBean().incrementPurgeTime(System.currentTimeMillis() - startTime);
         MeasurementMonitor.getMBean().setPurgedEvents(deleted);
         return deleted;
     }
 
+    @Override
+    public int rollupEventCounts(long rollupUpToTime) {
+        EventCountRollup eventCountRollup = new EventCountRollup(dataSource, userTransaction, rollupUpToTime);
+        long startTime = System.currentTimeMillis();
+        int rolledUp = eventCountRollup.execute();
+        MeasurementMonitor.getMBean().incrementPurgeTime(System.currentTimeMillis() - startTime);
+        return rolledUp;
+    }
+
     @Override
     public int purgeCallTimeData(long deleteUpToTime) {
         // NOTE: We do not purge unreferenced rows from RHQ_CALLTIME_DATA_KEY, because this can cause issues
@@ -92,11 +106,27 @@ public class PurgeManagerBean implements PurgeManagerLocal {
             deleteUpToTime);
         long startTime = System.currentTimeMillis();
         int deletedRowCount = callTimeDataValuePurge.execute();
+        for (CallTimeDataRollupType rollupType : CallTimeDataRollupType.values()) {
+            int deletedRollups = new CallTimeDataRollupPurge(dataSource, userTransaction, rollupType, deleteUpToTime)
+                .execute();
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Deleted [" + deletedRollups + "] " + rollupType.getTableName() + " rows");
+            }
+        }
         MeasurementMonitor.getMBean().incrementPurgeTime(System.currentTimeMillis() - startTime);
         MeasurementMonitor.getMBean().setPurgedCallTimeData(deletedRowCount);
         return deletedRowCount;
     }
 
+    @Override
+    public int rollupCallTimeData(long rollupUpToTime) {
+        CallTimeDataRollup callTimeDataRollup = new CallTimeDataRollup(dataSource, userTransaction, rollupUpToTime);
+        long startTime = System.currentTimeMillis();
+        int rolledUp = callTimeDataRollup.execute();
+        MeasurementMonitor.getMBean().incrementPurgeTime(System.currentTimeMillis() - startTime);
+        return rolledUp;
+    }
+
     @Override
     public int deleteAlerts(long beginTime, long endTime) {
         long totalTime = 0;
@@ -41,7 +41,7 @@ public interface PurgeManagerLocal {
     int purgeTraits(long oldest);
 
     /**
-     * Deletes event data older than the specified time.
+     * Deletes event data, and the event counters, older than the specified time.
      *
      * @param deleteUpToTime event data older than this time will be deleted
      * @return number of deleted Events
@@ -49,12 +49,30 @@ public interface PurgeManagerLocal {
     int purgeEventData(long deleteUpToTime);
 
     /**
-     * Deletes call-time data older than the specified time.
+     * Rolls the per-minute event counters of the hours that ended before the specified time up into hourly
+     * counters.
+     *
+     * @param rollupUpToTime minute counters older than this time will be rolled up
+     * @return number of minute counters that were rolled up
+     */
+    int rollupEventCounts(long rollupUpToTime);
+
+    /**
+     * Deletes call-time data, and the call-time data rollups, older than the specified time.
      *
      * @param deleteUpToTime call-time data older than this time will be deleted
      */
     int purgeCallTimeData(long deleteUpToTime);
 
+    /**
+     * Rolls the call-time data values of the hours that ended before the specified time up into hourly rollups, and
+     * the hourly rollups of the days that ended before the specified time up into daily rollups.
+     *
+     * @param rollupUpToTime call-time data older than this time will be rolled up
+     * @return number of rollup rows that were created
+     */
+    int rollupCallTimeData(long rollupUpToTime);
+
     /**
      * Remove alerts for the specified range of time.
      */
@@ -50,6 +50,7 @@ import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.sql.DataSource;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -91,6 +92,7 @@ import org.rhq.core.domain.discovery.AvailabilityReport;
 import org.rhq.core.domain.drift.JPADrift;
 import org.rhq.core.domain.drift.JPADriftChangeSet;
 import org.rhq.core.domain.event.Event;
+import org.rhq.core.domain.event.EventCount;
 import org.rhq.core.domain.event.EventSource;
 import org.rhq.core.domain.measurement.Availability;
 import org.rhq.core.domain.measurement.AvailabilityType;
@@ -108,6 +110,7 @@ import org.rhq.core.domain.resource.CreateResourceHistory;
 import org.rhq.core.domain.resource.DeleteResourceHistory;
 import org.rhq.core.domain.resource.InventoryStatus;
 import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceAncestor;
 import org.rhq.core.domain.resource.ResourceAncestryFormat;
 import org.rhq.core.domain.resource.ResourceCategory;
 import org.rhq.core.domain.resource.ResourceError;
@@ -134,20 +137,25 @@ import org.rhq.core.domain.util.PageList;
 import org.rhq.core.domain.util.PageOrdering;
 import org.rhq.core.util.IntExtractor;
 import org.rhq.core.util.collection.ArrayUtils;
+import org.rhq.core.util.jdbc.JDBCUtil;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.agentclient.AgentClient;
 import org.rhq.enterprise.server.auth.SubjectManagerLocal;
+import org.rhq.enterprise.server.authz.AuthorizationCache;
 import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
 import org.rhq.enterprise.server.authz.PermissionException;
 import org.rhq.enterprise.server.authz.RequiredPermission;
 import org.rhq.enterprise.server.core.AgentManagerLocal;
 import org.rhq.enterprise.server.discovery.DiscoveryServerServiceImpl;
+import org.rhq.enterprise.server.event.EventSourceIdCache;
 import org.rhq.enterprise.server.measurement.AvailabilityManagerLocal;
 import org.rhq.enterprise.server.measurement.MeasurementScheduleManagerLocal;
 import org.rhq.enterprise.server.resource.disambiguation.DisambiguationUpdateStrategy;
 import org.rhq.enterprise.server.resource.disambiguation.Disambiguator;
 import org.rhq.enterprise.server.resource.group.ResourceGroupDeleteException;
 import org.rhq.enterprise.server.resource.group.ResourceGroupManagerLocal;
+import org.rhq.enterprise.server.resource.group.definition.DynaGroupChangeTracker;
+import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator.Dependency;
 import org.rhq.enterprise.server.rest.ResourceHandlerBean;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
@@ -198,6 +206,9 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
     @javax.annotation.Resource(name = "RHQ_DS", mappedName = RHQConstants.DATASOURCE_JNDI_NAME)
     private DataSource dataSource;
 
+    @javax.annotation.Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     @Override
     public void createResource(Subject user, Resource resource, int parentId) throws ResourceAlreadyExistsException {
         Resource parent = null;
@@ -230,6 +241,7 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
 
         entityManager.persist(resource);
         LOG.debug("********* resource persisted ************");
+        addResourceAncestors(resource.getId());
         // Execute sub-methods as overlord to bypass additional security checks.
         Subject overlord = this.subjectManager.getOverlord();
         updateImplicitMembership(overlord, resource);
@@ -253,6 +265,64 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         groupManager.updateImplicitGroupMembership(subject, resource);
     }
 
+    @Override
+    public void addResourceAncestors(int resourceId) {
+        addResourceAncestors(Collections.singletonList(resourceId));
+    }
+
+    @Override
+    public void addResourceAncestors(List<Integer> resourceIds) {
+        if (resourceIds.isEmpty()) {
+            return;
+        }
+
+        // the statements read the parent references of the resources, make sure the db has them first
+        entityManager.flush();
+
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement(ResourceAncestor.QUERY_NATIVE_ADD_RESOURCE);
+            // a batch is executed in order, so the rows of a parent are there by the time its children are added
+            for (Integer resourceId : resourceIds) {
+                ps.setInt(1, resourceId);
+                ps.setInt(2, resourceId);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not add the ancestors of resources " + resourceIds, e);
+        } finally {
+            JDBCUtil.safeClose(conn, ps, null);
+        }
+    }
+
+    @Override
+    public void moveResourceAncestors(int resourceId) {
+        // the statements read the parent reference of the resource, make sure the db has it first
+        entityManager.flush();
+
+        Connection conn = null;
+        PreparedStatement ps = null;
+        try {
+            conn = dataSource.getConnection();
+            ps = conn.prepareStatement(ResourceAncestor.QUERY_NATIVE_DETACH_SUBTREE);
+            ps.setInt(1, resourceId);
+            ps.setInt(2, resourceId);
+            ps.executeUpdate();
+            JDBCUtil.safeClose(ps);
+
+            ps = conn.prepareStatement(ResourceAncestor.QUERY_NATIVE_ATTACH_SUBTREE);
+            ps.setInt(1, resourceId);
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not move the ancestors of resource[id=" + resourceId + "]", e);
+        } finally {
+            JDBCUtil.safeClose(conn, ps, null);
+        }
+    }
+
     @Override
     public Resource updateResource(Subject user, Resource resource) {
         Resource persistedResource = entityManager.find(Resource.class, resource.getId());
@@ -273,6 +343,8 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         if (!persistedResource.getName().equals(resource.getName())) {
             persistedResource.setName(resource.getName());
             updateAncestry(persistedResource);
+            DynaGroupChangeTracker.getSingleton().resourceChanged(transactionSynchronizationRegistry,
+                Dependency.RESOURCE, persistedResource.getId());
         }
         persistedResource.setLocation(resource.getLocation());
         persistedResource.setDescription(resource.getDescription());
@@ -479,6 +551,11 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
                 markDeletedQuery.setParameter("resourceIds", idsToDelete);
                 markDeletedQuery.setParameter("status", InventoryStatus.UNINVENTORIED);
                 resourcesDeleted += markDeletedQuery.executeUpdate();
+
+                // the parent references are cleared above, so are the ancestors; the rest goes with the resources
+                Query unlinkQuery = entityManager.createNativeQuery(ResourceAncestor.QUERY_NATIVE_UNLINK_BY_RESOURCE_IDS);
+                unlinkQuery.setParameter("resourceIds", idsToDelete);
+                unlinkQuery.executeUpdate();
                 i = j;
             }
 
@@ -487,6 +564,9 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
                     + " resources, but actually uninventoried " + resourcesDeleted);
             }
 
+            // the uninventoried resources and their group memberships no longer grant any permission
+            AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
             // flush to make sure the db is successfully updated with changes before we make more slsb calls and
             // before we notify the agent
             entityManager.flush();
@@ -576,36 +656,13 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
     public List<Integer> getResourceDescendantsByTypeAndName(Subject user, int resourceId, Integer resourceTypeId,
         String name) {
 
-        List<Integer> result;
-        Query query;
-        DatabaseType dbType = DatabaseTypeFactory.getDefaultDatabaseType();
-
-        if (DatabaseTypeFactory.isOracle(dbType)) {
-            query = entityManager.createNativeQuery(Resource.QUERY_NATIVE_FIND_DESCENDANTS_BY_TYPE_AND_NAME_ORACLE);
-
-        } else if (DatabaseTypeFactory.isPostgres(dbType)) {
-            query = entityManager.createNativeQuery(Resource.QUERY_NATIVE_FIND_DESCENDANTS_BY_TYPE_AND_NAME_POSTGRES);
-
-        } else {
-            query = entityManager.createNamedQuery(Resource.QUERY_FIND_DESCENDANTS_BY_TYPE_AND_NAME);
-        }
-
+        Query query = entityManager.createNamedQuery(ResourceAncestor.QUERY_FIND_DESCENDANT_IDS_BY_TYPE_AND_NAME);
         query.setParameter("resourceId", resourceId);
         query.setParameter("resourceTypeId", ((null != resourceTypeId) ? resourceTypeId : 0));
         name = QueryUtility.formatSearchParameter(name);
         query.setParameter("resourceName", ((null != name) ? name : "$$$null$$$"));
 
-        if (DatabaseTypeFactory.isOracle(dbType)) {
-            List<?> rl = query.getResultList();
-            result = new ArrayList<Integer>(rl.size());
-            for (Object id : rl) {
-                result.add(dbType.getInteger(id));
-            }
-        } else {
-            // native Integer support
-            result = query.getResultList();
-        }
-        return result;
+        return query.getResultList();
     }
 
     @Override
@@ -744,6 +801,7 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
             Availability.QUERY_DELETE_BY_RESOURCES, //
             ResourceError.QUERY_DELETE_BY_RESOURCES, //
             Event.DELETE_BY_RESOURCES, //
+            EventCount.QUERY_DELETE_BY_RESOURCES, //
             EventSource.QUERY_DELETE_BY_RESOURCES, //
             BundleResourceDeployment.QUERY_DELETE_BY_RESOURCES, //
             PackageInstallationStep.QUERY_DELETE_BY_RESOURCES, // steps BEFORE installed package history
@@ -805,6 +863,9 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
                 resourceIds);
         }
 
+        // the event sources are gone, so are their ids
+        EventSourceIdCache.getSingleton().removeResources(resourceIds);
+
         // If this resource had packages installed, remove their version and bits
         if (installedPackageIds.size() > 0) {
             hasErrors |= cleanOrphanedPackageVersions(overlord, installedPackageIds);
@@ -1005,6 +1066,10 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         resource.setInventoryStatus(newStatus);
         resource.setItime(now);
         resource.setAgentSynchronizationNeeded();
+        if (newStatus == InventoryStatus.COMMITTED) {
+            DynaGroupChangeTracker.getSingleton().resourceChanged(transactionSynchronizationRegistry,
+                Dependency.INVENTORY_STATUS, resource.getId());
+        }
     }
 
     @Override
@@ -1095,52 +1160,26 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
         return parent;
     }
 
-    @Nullable
-    private Integer getParentResourceId(int resourceId) {
-
-        Query query = entityManager.createNamedQuery(Resource.QUERY_FIND_PARENT_ID);
-        query.setParameter("id", resourceId);
-
-        try {
-            return (Integer) query.getSingleResult();
-        } catch (NoResultException nre) {
-            // this is OK, no parent means this is a platform
-            return null;
-        }
-    }
-
     // lineage is a getXXX (not findXXX) because it logically returns a single object, but modeled as a list here
     @Override
+    @SuppressWarnings("unchecked")
     public List<Integer> getResourceIdLineage(int resourceId) {
-        List<Integer> lineage = new ArrayList<Integer>();
-
-        Integer child = resourceId;
-        Integer parent;
-        while ((parent = getParentResourceId(child)) != null) {
-            lineage.add(parent);
-            child = parent;
-        }
-
-        return lineage;
+        Query query = entityManager.createNamedQuery(ResourceAncestor.QUERY_FIND_ANCESTOR_IDS);
+        query.setParameter("resourceId", resourceId);
+        return query.getResultList();
     }
 
     // lineage is a getXXX (not findXXX) because it logically returns a single object, but modeled as a list here
     @Override
+    @SuppressWarnings("unchecked")
     public List<Resource> getResourceLineage(int resourceId) {
-        LinkedList<Resource> resourceLineage = new LinkedList<Resource>();
-        Resource resource = entityManager.find(Resource.class, resourceId);
-        if (resource == null) {
+        Query query = entityManager.createNamedQuery(ResourceAncestor.QUERY_FIND_LINEAGE);
+        query.setParameter("resourceId", resourceId);
+        List<Resource> resourceLineage = query.getResultList();
+        if (resourceLineage.isEmpty()) {
             throw new ResourceNotFoundException(resourceId);
         }
 
-        resourceLineage.add(resource);
-        int childResourceId = resourceId;
-        Resource parent;
-        while ((parent = getParentResource(childResourceId)) != null) {
-            resourceLineage.addFirst(parent);
-            childResourceId = parent.getId(); // This also ensures Hibernate actually populates parent's fields.
-        }
-
         return resourceLineage;
     }
 
@@ -1365,33 +1404,11 @@ public class ResourceManagerBean implements ResourceManagerLocal, ResourceManage
     @Deprecated
     @NotNull
     public Resource getRootResourceForResource(int resourceId) {
-        Query query;
-        Resource result;
-        DatabaseType dbType = DatabaseTypeFactory.getDefaultDatabaseType();
-
-        if (DatabaseTypeFactory.isOracle(dbType)) {
-            query = entityManager.createNativeQuery(Resource.QUERY_NATIVE_FIND_RESOURCE_PLATFORM_ORACLE);
-
-        } else if (DatabaseTypeFactory.isPostgres(dbType)) {
-            query = entityManager.createNativeQuery(Resource.QUERY_NATIVE_FIND_RESOURCE_PLATFORM_POSTGRES);
-
-        } else {
-            query = entityManager.createNamedQuery(Resource.QUERY_FIND_ROOT_PLATFORM_OF_RESOURCE);
-        }
-
+        Query query = entityManager.createNamedQuery(ResourceAncestor.QUERY_FIND_ROOT_ID);
         query.setParameter("resourceId", resourceId);
+        Integer platformId = (Integer) query.getSingleResult();
 
-        Integer platformId;
-        if (DatabaseTypeFactory.isOracle(dbType)) {
-            platformId = dbType.getInteger(query.getSingleResult());
-
-        } else {
-            // native Integer support
-            platformId = (Integer) query.getSingleResult();
-        }
-
-        result = entityManager.find(Resource.class, platformId);
-        return result;
+        return entityManager.find(Resource.class, platformId);
     }
 
     @Override
@@ -72,6 +72,30 @@ public interface ResourceManagerLocal extends ResourceManagerRemote {
      */
     void createResource(Subject user, Resource resource, int parentId) throws ResourceAlreadyExistsException;
 
+    /**
+     * Adds a newly persisted resource to the closure of the resource hierarchy, below the ancestors of its parent.
+     * Must be called for every resource persisted outside of {@link #createResource(Subject, Resource, int)}, parents
+     * before their children.
+     *
+     * @param resourceId the id of the new resource
+     */
+    void addResourceAncestors(int resourceId);
+
+    /**
+     * Like {@link #addResourceAncestors(int)}, for many new resources at once.
+     *
+     * @param resourceIds the ids of the new resources, parents before their children
+     */
+    void addResourceAncestors(List<Integer> resourceIds);
+
+    /**
+     * Moves the subtree rooted at a resource in the closure of the resource hierarchy, after the parent of the resource
+     * has been changed.
+     *
+     * @param resourceId the id of the resource whose parent changed
+     */
+    void moveResourceAncestors(int resourceId);
+
     /**
      * This will uninventory the resource with the given ID along with all of its child resources. Existing
      * transactions will be suspended and the work will be done in a NEW transaction.
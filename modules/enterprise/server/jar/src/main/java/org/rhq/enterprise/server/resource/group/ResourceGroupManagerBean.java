@@ -30,7 +30,6 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -46,6 +45,7 @@ import javax.persistence.PersistenceContext;
 import javax.persistence.PersistenceException;
 import javax.persistence.Query;
 import javax.sql.DataSource;
+import javax.transaction.TransactionSynchronizationRegistry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -69,6 +69,7 @@ import org.rhq.core.domain.operation.GroupOperationHistory;
 import org.rhq.core.domain.operation.bean.GroupOperationSchedule;
 import org.rhq.core.domain.resource.InventoryStatus;
 import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceAncestor;
 import org.rhq.core.domain.resource.ResourceCategory;
 import org.rhq.core.domain.resource.ResourceType;
 import org.rhq.core.domain.resource.composite.ResourceFacets;
@@ -85,6 +86,7 @@ import org.rhq.core.util.jdbc.JDBCUtil;
 import org.rhq.enterprise.server.RHQConstants;
 import org.rhq.enterprise.server.alert.GroupAlertDefinitionManagerLocal;
 import org.rhq.enterprise.server.auth.SubjectManagerLocal;
+import org.rhq.enterprise.server.authz.AuthorizationCache;
 import org.rhq.enterprise.server.authz.AuthorizationManagerLocal;
 import org.rhq.enterprise.server.authz.PermissionException;
 import org.rhq.enterprise.server.authz.RequiredPermission;
@@ -130,6 +132,9 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
     @javax.annotation.Resource(name = "RHQ_DS", mappedName = RHQConstants.DATASOURCE_JNDI_NAME)
     private DataSource rhqDs;
 
+    @javax.annotation.Resource
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
     private DatabaseType dbType;
 
     @PostConstruct
@@ -147,6 +152,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
 
     @RequiredPermission(Permission.MANAGE_INVENTORY)
     public ResourceGroup createResourceGroup(Subject user, ResourceGroup group) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
 
         // We are now allowing Groups where names collide if the group is not visible as for autogroups and clusters
         Query query = entityManager.createNamedQuery(ResourceGroup.QUERY_FIND_BY_NAME_VISIBLE_GROUP);
@@ -183,6 +189,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
     @RequiredPermission(Permission.MANAGE_INVENTORY)
     public ResourceGroup updateResourceGroup(Subject user, ResourceGroup group, RecursivityChangeType changeType,
         boolean updateMembership) throws ResourceGroupUpdateException {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
 
         int groupId = group.getId();
         ResourceGroup attachedGroup = entityManager.find(ResourceGroup.class, groupId);
@@ -286,6 +293,8 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
     @RequiredPermission(Permission.MANAGE_INVENTORY)
     public void deleteResourceGroup(Subject subject, int groupId) throws ResourceGroupNotFoundException,
         ResourceGroupDeleteException {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         ResourceGroup group = getResourceGroupById(subject, groupId, null);
 
         // create a copy of the collection in order to avoid ConcurrentModificationException
@@ -425,6 +434,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void enableRecursivityForGroup(Subject subject, int groupId) throws ResourceGroupNotFoundException,
         ResourceGroupUpdateException {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
 
         // step 1: clear the implicit and preparation for adding a different set of resources to it
         clearImplicitResources(groupId);
@@ -438,6 +448,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
 
     @RequiredPermission(Permission.MANAGE_INVENTORY)
     public void addResourcesToGroup(Subject subject, int groupId, int[] resourceIds) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
 
         addResourcesToGroup(subject, groupId, resourceIds, true);
     }
@@ -534,20 +545,14 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
 
             // insert implicit resources
             if (isRecursive) {
-                insertImplicitStatement = conn
-                    .prepareStatement(ResourceGroup.QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT_RECURSIVE);
+                String insertImplicitQueryString = JDBCUtil.transformQueryForMultipleInParameters(
+                    ResourceGroup.QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT_RECURSIVE, "@@RESOURCE_IDS@@",
+                    resourceIdsToAdd.length);
+                insertImplicitStatement = conn.prepareStatement(insertImplicitQueryString);
                 insertImplicitStatement.setInt(1, groupId);
-                insertImplicitStatement.setInt(9, groupId);
-                for (int resourceId : resourceIdsToAdd) {
-                    insertImplicitStatement.setInt(2, resourceId);
-                    insertImplicitStatement.setInt(3, resourceId);
-                    insertImplicitStatement.setInt(4, resourceId);
-                    insertImplicitStatement.setInt(5, resourceId);
-                    insertImplicitStatement.setInt(6, resourceId);
-                    insertImplicitStatement.setInt(7, resourceId);
-                    insertImplicitStatement.setInt(8, resourceId);
-                    insertImplicitStatement.executeUpdate();
-                }
+                JDBCUtil.bindNTimes(insertImplicitStatement, resourceIdsToAdd, 2);
+                insertImplicitStatement.setInt(resourceIdsToAdd.length + 2, groupId);
+                insertImplicitStatement.executeUpdate();
             } else {
                 String insertImplicitQueryString = JDBCUtil.transformQueryForMultipleInParameters(
                     ResourceGroup.QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT, "@@RESOURCE_IDS@@",
@@ -589,6 +594,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
 
     @RequiredPermission(Permission.MANAGE_INVENTORY)
     public void removeResourcesFromGroup(Subject subject, int groupId, int[] resourceIds) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
 
         removeResourcesFromGroup(subject, groupId, resourceIds, true);
     }
@@ -637,28 +643,16 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
 
             // insert implicit resources, must occur before deleting explicit
             if (isRecursive) {
-                deleteImplicitStatement = conn
-                    .prepareStatement(ResourceGroup.QUERY_NATIVE_REMOVE_RESOURCES_FROM_GROUP_IMPLICIT_RECURSIVE);
+                // resources that are also descendants of the remaining explicit members stay implicit members
+                String deleteImplicitQueryString = JDBCUtil.transformQueryForMultipleInParameters(
+                    ResourceGroup.QUERY_NATIVE_REMOVE_RESOURCES_FROM_GROUP_IMPLICIT_RECURSIVE, "@@RESOURCE_IDS@@",
+                    resourceIds.length);
+                deleteImplicitStatement = conn.prepareStatement(deleteImplicitQueryString);
                 deleteImplicitStatement.setInt(1, groupId);
-                deleteImplicitStatement.setInt(9, groupId);
-                for (Integer resourceId : resourceIds) {
-                    // no-op if this resource's ancestor is also in the explicit list
-                    List<Integer> lineage = resourceManager.getResourceIdLineage(resourceId);
-                    List<Integer> nonMembers = getNonMemberExplicitResources(groupId, lineage);
-                    if (lineage.size() != nonMembers.size()) {
-                        // one or more of my parents were in the explicit list, no-op to remove me
-                        continue;
-                    }
-                    deleteImplicitStatement.setInt(2, resourceId);
-                    deleteImplicitStatement.setInt(3, resourceId);
-                    deleteImplicitStatement.setInt(4, resourceId);
-                    deleteImplicitStatement.setInt(5, resourceId);
-                    deleteImplicitStatement.setInt(6, resourceId);
-                    deleteImplicitStatement.setInt(7, resourceId);
-                    deleteImplicitStatement.setInt(8, resourceId);
-                    deleteImplicitStatement.setInt(10, resourceId);
-                    deleteImplicitStatement.executeUpdate();
-                }
+                JDBCUtil.bindNTimes(deleteImplicitStatement, resourceIdsArray, 2);
+                deleteImplicitStatement.setInt(resourceIds.length + 2, groupId);
+                JDBCUtil.bindNTimes(deleteImplicitStatement, resourceIdsArray, resourceIds.length + 3);
+                deleteImplicitStatement.executeUpdate();
             } else {
                 String deleteImplicitQueryString = JDBCUtil.transformQueryForMultipleInParameters(
                     ResourceGroup.QUERY_NATIVE_REMOVE_RESOURCES_FROM_GROUP_IMPLICIT, "@@RESOURCE_IDS@@",
@@ -692,6 +686,8 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
     @RequiredPermission(Permission.MANAGE_INVENTORY)
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void removeAllResourcesFromGroup(Subject subject, int groupId) throws ResourceGroupDeleteException {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         Connection conn = null;
         PreparedStatement explicitStatement = null;
         PreparedStatement implicitStatement = null;
@@ -802,17 +798,14 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
             return;
         }
 
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         /*
-         * BFS-construct the resource tree
+         * the resource and all of its descendants, straight from the closure of the resource hierarchy
          */
-        List<Integer> resourceIdsToAdd = new ArrayList<Integer>();
-        List<Resource> toBeSearched = new LinkedList<Resource>();
-        toBeSearched.add(resource);
-        while (toBeSearched.size() > 0) {
-            Resource next = toBeSearched.remove(0);
-            resourceIdsToAdd.add(next.getId());
-            toBeSearched.addAll(next.getChildResources());
-        }
+        Query descendantsQuery = entityManager.createNamedQuery(ResourceAncestor.QUERY_FIND_DESCENDANT_IDS);
+        descendantsQuery.setParameter("resourceId", resource.getId());
+        List<Integer> resourceIdsToAdd = descendantsQuery.getResultList();
 
         /*
          * now add this resource and all of its descendants to whatever recursive groups it's parent is already in
@@ -827,8 +820,8 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
                  * they are being newly committed to inventory and thus shouldn't be in any group except the work
                  * being done right now.
                  *
-                 * also, since we've already computed the toAddResourceIds by recursing down the chain resource passed
-                 * to this method, we can just do simple RHQ_RESOURCE_GROUP_RES_IMP_MAP table insertions
+                 * also, since we've already looked up the descendants of the resource passed to this method, we can
+                 * just do simple RHQ_RESOURCE_GROUP_RES_IMP_MAP table insertions
                  */
                 String insertImplicitQueryString = JDBCUtil.transformQueryForMultipleInParameters(
                     ResourceGroup.QUERY_NATIVE_ADD_RESOURCES_TO_GROUP_IMPLICIT, "@@RESOURCE_IDS@@",
@@ -1308,6 +1301,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
 
     public void setAssignedResources(Subject subject, int groupId, int[] resourceIds, boolean setType)
         throws ResourceGroupDeleteException {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
 
         ResourceGroup group = entityManager.find(ResourceGroup.class, groupId);
         if (group.isPrivateGroup()) {
@@ -1349,6 +1343,7 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
 
     public void setAssignedResourceGroupsForResource(Subject subject, int resourceId, int[] resourceGroupIds,
         boolean setType) throws ResourceGroupDeleteException {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
 
         Resource resource = entityManager.find(Resource.class, resourceId);
         Set<ResourceGroup> currentGroups = resource.getExplicitGroups();
@@ -1504,6 +1499,8 @@ public class ResourceGroupManagerBean implements ResourceGroupManagerLocal, Reso
         Subject subject, //
         int groupId, //
         boolean isRecursive) {
+        AuthorizationCache.getSingleton().invalidateAfterCompletion(transactionSynchronizationRegistry);
+
         ResourceGroup group = entityManager.find(ResourceGroup.class, groupId);
         if (group == null) {
             throw new ResourceGroupNotFoundException(groupId);
@@ -0,0 +1,243 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.resource.group.definition;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator.Dependency;
+
+/**
+ * The resources whose attributes changed on this server since the dynagroups were last brought up to date with those
+ * changes, by {@link Dependency attribute}. Trait changes are recorded by schedule id, since that is all the
+ * measurement reports carry.
+ * <p/>
+ * Changes made in a transaction are only recorded once it has committed, so that the dynagroups are never evaluated
+ * against rows which are not visible yet, or which were rolled back.
+ * <p/>
+ * The changes are periodically {@link #takeChanges() taken} by
+ * {@link GroupDefinitionManagerLocal#recalculateDynaGroupsForChanges(org.rhq.core.domain.auth.Subject)}, which only
+ * re-evaluates the definitions that depend on the changed attributes, and only for the changed resources, and
+ * {@link #requeueChanges(Changes, Collection) requeues} the changes of the definitions it failed to re-evaluate. Once
+ * more than {@link #MAX_CHANGES} changes are pending, the individual changes are dropped and every auto-recalculating
+ * definition is recalculated in full instead.
+ */
+public class DynaGroupChangeTracker {
+
+    private static final String MAX_CHANGES_SYSTEM_PROPERTY = "rhq.server.dynagroups.max-tracked-changes";
+    static final int MAX_CHANGES = Integer.getInteger(MAX_CHANGES_SYSTEM_PROPERTY, 100000);
+
+    private static final DynaGroupChangeTracker singleton = new DynaGroupChangeTracker(MAX_CHANGES);
+
+    private final int maxChanges;
+
+    private Changes changes;
+
+    public static DynaGroupChangeTracker getSingleton() {
+        return singleton;
+    }
+
+    DynaGroupChangeTracker(int maxChanges) {
+        this.maxChanges = maxChanges;
+        this.changes = new Changes(maxChanges);
+    }
+
+    public void resourceChanged(TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+        Dependency dependency, int resourceId) {
+        resourcesChanged(transactionSynchronizationRegistry, dependency, Collections.singleton(resourceId));
+    }
+
+    /**
+     * @param transactionSynchronizationRegistry the registry of the current transaction, whose commit the changes are
+     * recorded on; without a transaction, the changes are recorded right away
+     * @param dependency the attribute that changed, must not be {@link Dependency#TRAIT}
+     * @param resourceIds the ids of the resources whose attribute changed
+     */
+    public void resourcesChanged(TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+        Dependency dependency, Collection<Integer> resourceIds) {
+        if (dependency == Dependency.TRAIT) {
+            throw new IllegalArgumentException("Trait changes are recorded by schedule id");
+        }
+        if (resourceIds.isEmpty()) {
+            return;
+        }
+        Changes transactionChanges = getTransactionChanges(transactionSynchronizationRegistry);
+        if (transactionChanges != null) {
+            transactionChanges.add(dependency, resourceIds);
+        } else {
+            synchronized (this) {
+                changes.add(dependency, resourceIds);
+            }
+        }
+    }
+
+    /**
+     * @param transactionSynchronizationRegistry the registry of the current transaction, whose commit the changes are
+     * recorded on; without a transaction, the changes are recorded right away
+     * @param scheduleIds the ids of the trait schedules whose value changed
+     */
+    public void traitsChanged(TransactionSynchronizationRegistry transactionSynchronizationRegistry,
+        Collection<Integer> scheduleIds) {
+        if (scheduleIds.isEmpty()) {
+            return;
+        }
+        Changes transactionChanges = getTransactionChanges(transactionSynchronizationRegistry);
+        if (transactionChanges != null) {
+            transactionChanges.add(Dependency.TRAIT, scheduleIds);
+        } else {
+            synchronized (this) {
+                changes.add(Dependency.TRAIT, scheduleIds);
+            }
+        }
+    }
+
+    /**
+     * @return the changes recorded since the last call
+     */
+    public synchronized Changes takeChanges() {
+        Changes taken = changes;
+        changes = new Changes(maxChanges);
+        return taken;
+    }
+
+    /**
+     * Records taken changes again, e.g. because the definitions depending on them could not be re-evaluated.
+     *
+     * @param dependencies the attributes whose changes to record again
+     */
+    public synchronized void requeueChanges(Changes takenChanges, Collection<Dependency> dependencies) {
+        if (takenChanges.overflowed) {
+            changes.overflow();
+            return;
+        }
+        for (Dependency dependency : dependencies) {
+            Set<Integer> ids = takenChanges.ids.get(dependency);
+            if (ids != null) {
+                changes.add(dependency, ids);
+            }
+        }
+    }
+
+    /**
+     * @return the changes of the current transaction, which are recorded once it commits, or null if there is no
+     * transaction
+     */
+    private Changes getTransactionChanges(TransactionSynchronizationRegistry transactionSynchronizationRegistry) {
+        if (transactionSynchronizationRegistry == null
+            || transactionSynchronizationRegistry.getTransactionKey() == null) {
+            return null;
+        }
+        Changes transactionChanges = (Changes) transactionSynchronizationRegistry.getResource(this);
+        if (transactionChanges == null) {
+            final Changes newTransactionChanges = new Changes(maxChanges);
+            transactionSynchronizationRegistry.putResource(this, newTransactionChanges);
+            transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == Status.STATUS_COMMITTED) {
+                        addAll(newTransactionChanges);
+                    }
+                }
+            });
+            transactionChanges = newTransactionChanges;
+        }
+        return transactionChanges;
+    }
+
+    private synchronized void addAll(Changes committedChanges) {
+        if (committedChanges.overflowed) {
+            changes.overflow();
+            return;
+        }
+        for (Map.Entry<Dependency, Set<Integer>> ids : committedChanges.ids.entrySet()) {
+            changes.add(ids.getKey(), ids.getValue());
+        }
+    }
+
+    public static class Changes {
+        private final int maxChanges;
+        // trait changes are kept by schedule id under Dependency.TRAIT
+        private final Map<Dependency, Set<Integer>> ids = new EnumMap<Dependency, Set<Integer>>(Dependency.class);
+        private int count;
+        private boolean overflowed;
+
+        private Changes(int maxChanges) {
+            this.maxChanges = maxChanges;
+        }
+
+        private void add(Dependency dependency, Collection<Integer> newIds) {
+            if (overflowed) {
+                return;
+            }
+            Set<Integer> dependencyIds = ids.get(dependency);
+            if (dependencyIds == null) {
+                dependencyIds = new HashSet<Integer>();
+                ids.put(dependency, dependencyIds);
+            }
+            int size = dependencyIds.size();
+            dependencyIds.addAll(newIds);
+            count += dependencyIds.size() - size;
+            if (count > maxChanges) {
+                overflow();
+            }
+        }
+
+        private void overflow() {
+            overflowed = true;
+            ids.clear();
+            count = Math.max(count, 1);
+        }
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        /**
+         * @return true if too many changes were recorded for them to be kept, in which case they are all unknown
+         */
+        public boolean isOverflowed() {
+            return overflowed;
+        }
+
+        /**
+         * @return the ids of the resources whose attribute changed; always empty for {@link Dependency#TRAIT}
+         */
+        public Set<Integer> getResourceIds(Dependency dependency) {
+            Set<Integer> dependencyIds = (dependency == Dependency.TRAIT) ? null : ids.get(dependency);
+            return (dependencyIds == null) ? Collections.<Integer> emptySet() : dependencyIds;
+        }
+
+        public Set<Integer> getTraitScheduleIds() {
+            Set<Integer> scheduleIds = ids.get(Dependency.TRAIT);
+            return (scheduleIds == null) ? Collections.<Integer> emptySet() : scheduleIds;
+        }
+    }
+}
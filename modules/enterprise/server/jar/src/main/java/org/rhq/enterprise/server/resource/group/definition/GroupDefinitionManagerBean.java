@@ -21,6 +21,7 @@ package org.rhq.enterprise.server.resource.group.definition;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -29,6 +30,10 @@ import java.util.Set;
 
 import javax.ejb.EJB;
 import javax.ejb.Stateless;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
@@ -43,7 +48,9 @@ import org.apache.commons.logging.LogFactory;
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.authz.Permission;
 import org.rhq.core.domain.criteria.ResourceGroupDefinitionCriteria;
+import org.rhq.core.domain.measurement.MeasurementSchedule;
 import org.rhq.core.domain.plugin.CannedGroupExpression;
+import org.rhq.core.domain.resource.Resource;
 import org.rhq.core.domain.resource.group.GroupDefinition;
 import org.rhq.core.domain.resource.group.InvalidExpressionException;
 import org.rhq.core.domain.resource.group.ResourceGroup;
@@ -71,6 +78,7 @@ import org.rhq.enterprise.server.resource.group.definition.exception.GroupDefini
 import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator;
 import org.rhq.enterprise.server.resource.group.definition.mbean.GroupDefinitionRecalculationThreadMonitor;
 import org.rhq.enterprise.server.resource.group.definition.mbean.GroupDefinitionRecalculationThreadMonitorMBean;
+import org.rhq.enterprise.server.util.BatchIterator;
 import org.rhq.enterprise.server.util.CriteriaQueryGenerator;
 import org.rhq.enterprise.server.util.CriteriaQueryRunner;
 
@@ -96,6 +104,9 @@ public class GroupDefinitionManagerBean implements GroupDefinitionManagerLocal,
     @EJB
     private AuthorizationManagerLocal authorizationManager;
 
+    @javax.annotation.Resource
+    private TimerService timerService;
+
     @SuppressWarnings("unchecked")
     @RequiredPermission(Permission.MANAGE_INVENTORY)
     public void recalculateDynaGroups(Subject subject) {
@@ -319,29 +330,7 @@ public class GroupDefinitionManagerBean implements GroupDefinitionManagerLocal,
             doomedResourceGroupIds.add(managedGroupId);
         }
 
-        // BZ 1187680 : In a rare case a groupBy expression can generates multiple groupByClause strings differing
-        // only in case. Group names are [correctly] case insensitive and groupBy [correctly] is not. For example
-        // 'groupby resource.name' can cause this issue with two resources with the same name, ignoring case, like
-        // 'CPU' and 'cpu'.  In this situation we need to consolidate results into one dyna-group, otherwise
-        // we'll get naming conflicts in the generated groups. So, merge results where the groupByClause is equal,
-        // ignoring case.
-        Map<String, ExpressionEvaluator.Result> resultMap = new HashMap<String, ExpressionEvaluator.Result>();
-        for (ExpressionEvaluator.Result result : evaluator) {
-            String groupByClause = result.getGroupByClause();
-            String equivalentGroupByClauseKey = null;
-            for (String key : resultMap.keySet()) {
-                if (key.equalsIgnoreCase(groupByClause)) {
-                    equivalentGroupByClauseKey = key;
-                    break;
-                }
-            }
-            if (null != equivalentGroupByClauseKey) {
-                ExpressionEvaluator.Result sameResult = resultMap.get(equivalentGroupByClauseKey);
-                sameResult.getData().addAll(result.getData());
-            } else {
-                resultMap.put(result.getGroupByClause(), result);
-            }
-        }
+        Map<String, ExpressionEvaluator.Result> resultMap = evaluateResults(evaluator);
 
         for (ExpressionEvaluator.Result result : resultMap.values()) {
             if (result == null) {
@@ -396,52 +385,220 @@ public class GroupDefinitionManagerBean implements GroupDefinitionManagerLocal,
         log.debug("calculateGroupMembership took " + (endTime - startTime) + " millis");
     }
 
+    private Map<String, ExpressionEvaluator.Result> evaluateResults(ExpressionEvaluator evaluator) {
+        // BZ 1187680 : In a rare case a groupBy expression can generates multiple groupByClause strings differing
+        // only in case. Group names are [correctly] case insensitive and groupBy [correctly] is not. For example
+        // 'groupby resource.name' can cause this issue with two resources with the same name, ignoring case, like
+        // 'CPU' and 'cpu'.  In this situation we need to consolidate results into one dyna-group, otherwise
+        // we'll get naming conflicts in the generated groups. So, merge results where the groupByClause is equal,
+        // ignoring case.
+        Map<String, ExpressionEvaluator.Result> resultMap = new HashMap<String, ExpressionEvaluator.Result>();
+        for (ExpressionEvaluator.Result result : evaluator) {
+            if (result == null) {
+                // see below, null results are skipped anyway
+                continue;
+            }
+            String groupByClause = result.getGroupByClause();
+            String equivalentGroupByClauseKey = null;
+            for (String key : resultMap.keySet()) {
+                if (key.equalsIgnoreCase(groupByClause)) {
+                    equivalentGroupByClauseKey = key;
+                    break;
+                }
+            }
+            if (null != equivalentGroupByClauseKey) {
+                ExpressionEvaluator.Result sameResult = resultMap.get(equivalentGroupByClauseKey);
+                sameResult.getData().addAll(result.getData());
+            } else {
+                resultMap.put(result.getGroupByClause(), result);
+            }
+        }
+        return resultMap;
+    }
+
+    public void scheduleDynaGroupChangesTimer() {
+        /* each time the webapp is reloaded, it would create
+         * duplicate events if we don't cancel the existing ones
+         */
+        Collection<Timer> timers = timerService.getTimers();
+        for (Timer existingTimer : timers) {
+            log.debug("Found timer - attempting to cancel: " + existingTimer.toString());
+            try {
+                existingTimer.cancel();
+            } catch (Exception e) {
+                log.warn("Failed in attempting to cancel timer: " + existingTimer.toString());
+            }
+        }
+
+        timerService.createIntervalTimer(30000L, 30000L, new TimerConfig(null, false));
+    }
+
+    @Timeout
+    public void handleDynaGroupChangesTimer(Timer timer) {
+        // each server applies the inventory changes it received to the dynagroups
+        try {
+            groupDefinitionManager.recalculateDynaGroupsForChanges(subjectManager.getOverlord());
+        } catch (Throwable t) {
+            log.error("Failed to recalculate dynagroups after inventory changes - will try again later. Cause: " + t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @RequiredPermission(Permission.MANAGE_INVENTORY)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void recalculateDynaGroupsForChanges(Subject subject) {
+        DynaGroupChangeTracker.Changes changes = DynaGroupChangeTracker.getSingleton().takeChanges();
+        if (changes.isEmpty()) {
+            return;
+        }
+
+        Query query = entityManager.createNamedQuery(GroupDefinition.QUERY_FIND_ALL_RECALCULATING);
+        List<GroupDefinition> groupDefinitions = query.getResultList();
+
+        long start = System.currentTimeMillis();
+        int recalculated = 0;
+        Set<Integer> traitResourceIds = null; // only looked up if some definition depends on traits
+        Set<ExpressionEvaluator.Dependency> failedDependencies = EnumSet
+            .noneOf(ExpressionEvaluator.Dependency.class);
+        for (GroupDefinition groupDefinition : groupDefinitions) {
+            ExpressionEvaluator evaluator = new ExpressionEvaluator();
+            try {
+                for (String expression : groupDefinition.getExpressionAsList()) {
+                    evaluator.addExpression(expression);
+                }
+
+                Set<Integer> changedResourceIds = new HashSet<Integer>();
+                for (ExpressionEvaluator.Dependency dependency : evaluator.getDependencies()) {
+                    if (dependency == ExpressionEvaluator.Dependency.TRAIT) {
+                        if (traitResourceIds == null) {
+                            traitResourceIds = findResourceIdsBySchedules(changes.getTraitScheduleIds());
+                        }
+                        changedResourceIds.addAll(traitResourceIds);
+                    } else {
+                        changedResourceIds.addAll(changes.getResourceIds(dependency));
+                    }
+                }
+
+                if (changes.isOverflowed()
+                    || (evaluator.isHierarchical() && changedResourceIds.isEmpty() == false)) {
+                    // the memberships of unchanged resources can change too, see ExpressionEvaluator.isHierarchical
+                    groupDefinitionManager.calculateGroupMembership(subject, groupDefinition.getId());
+                    recalculated++;
+                } else if (changedResourceIds.isEmpty() == false) {
+                    groupDefinitionManager.calculateGroupMembershipForResources(subject, groupDefinition.getId(),
+                        changedResourceIds);
+                    recalculated++;
+                }
+            } catch (InvalidExpressionException iee) {
+                // nothing to try again, the definition is recalculated in full once its expression is fixed
+                log.error("Error recalculating DynaGroups for GroupDefinition[id=" + groupDefinition.getId()
+                    + "] after inventory changes: " + iee.getMessage());
+            } catch (Throwable t) {
+                // try the changes again next time, instead of waiting for the periodic recalculation of the definition
+                failedDependencies.addAll(evaluator.getDependencies());
+                log.error("Error recalculating DynaGroups for GroupDefinition[id=" + groupDefinition.getId()
+                    + "] after inventory changes", t);
+            }
+        }
+        if (failedDependencies.isEmpty() == false) {
+            DynaGroupChangeTracker.getSingleton().requeueChanges(changes, failedDependencies);
+        }
+
+        if (log.isDebugEnabled() && recalculated > 0) {
+            log.debug("Recalculated " + recalculated + " group definitions after inventory changes in "
+                + (System.currentTimeMillis() - start) + " millis");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<Integer> findResourceIdsBySchedules(Set<Integer> scheduleIds) {
+        Set<Integer> resourceIds = new HashSet<Integer>();
+        for (List<Integer> batch : new BatchIterator<Integer>(new ArrayList<Integer>(scheduleIds))) {
+            Query query = entityManager.createNamedQuery(MeasurementSchedule.FIND_RESOURCE_IDS_BY_IDS);
+            query.setParameter("scheduleIds", batch);
+            resourceIds.addAll(query.getResultList());
+        }
+        return resourceIds;
+    }
+
+    @SuppressWarnings("unchecked")
     @RequiredPermission(Permission.MANAGE_INVENTORY)
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    public Integer calculateGroupMembership_helper(Subject overlord, int groupDefinitionId,
-        ExpressionEvaluator.Result result) throws ResourceGroupDeleteException, GroupDefinitionNotFoundException,
-        GroupDefinitionNotFoundException {
+    public void calculateGroupMembershipForResources(Subject subject, int groupDefinitionId,
+        Collection<Integer> resourceIds) throws ResourceGroupDeleteException, GroupDefinitionDeleteException,
+        GroupDefinitionNotFoundException, InvalidExpressionException, ResourceGroupUpdateException {
         long startTime = System.currentTimeMillis();
 
         GroupDefinition groupDefinition = getById(groupDefinitionId);
 
-        String groupByClause = result.getGroupByClause();
-        boolean isNewGroup = false;
-        ResourceGroup resourceGroup = resourceGroupManager.getByGroupDefinitionAndGroupByClause(
-            groupDefinition.getId(), groupByClause);
-        int resourceGroupId = 0;
-
-        if (resourceGroup == null) {
-            isNewGroup = true;
-            String newDynamicGroupName = getDynamicGroupName(groupDefinition.getName(), groupByClause);
-            resourceGroup = new ResourceGroup(newDynamicGroupName);
-            try {
-            resourceGroupId = resourceGroupManager.createResourceGroup(overlord, resourceGroup).getId();
-            } catch (ResourceGroupAlreadyExistsException e) {
-                // BZ 1187680: In certain recalculation scenarios we need to lazily remove an existing
-                // resource group with the same name because it no longer has a groubByClause that supports
-                // its existence.  Remove the unwanted group and create a new one with the proper name.
-                Query query = entityManager.createNamedQuery(ResourceGroup.QUERY_FIND_BY_NAME_VISIBLE_GROUP);
-                query.setParameter("name", resourceGroup.getName());
-                List<ResourceGroup> groups = query.getResultList();
-                // in an unexpected situation, group not found or the name is actually the same, just re-throw
-                if (groups.size() != 1 || resourceGroup.getName().equals(groups.get(0).getName())) {
-                    throw e;
+        for (List<Integer> evaluatedResourceIds : new BatchIterator<Integer>(new ArrayList<Integer>(resourceIds))) {
+            // an evaluator can only be executed once
+            ExpressionEvaluator evaluator = new ExpressionEvaluator();
+            for (String expression : groupDefinition.getExpressionAsList()) {
+                evaluator.addExpression(expression);
+            }
+            evaluator.setResourceIdRestriction(evaluatedResourceIds);
+
+            // the managed groups the evaluated resources currently belong to
+            Query query = entityManager
+                .createNamedQuery(GroupDefinition.QUERY_FIND_MANAGED_MEMBERS_BY_RESOURCE_IDS_ADMIN);
+            query.setParameter("groupDefinitionId", groupDefinitionId);
+            query.setParameter("resourceIds", evaluatedResourceIds);
+            Map<Integer, List<Integer>> staleMembers = new HashMap<Integer, List<Integer>>();
+            for (Object[] row : (List<Object[]>) query.getResultList()) {
+                Integer groupId = (Integer) row[0];
+                List<Integer> members = staleMembers.get(groupId);
+                if (members == null) {
+                    members = new ArrayList<Integer>();
+                    staleMembers.put(groupId, members);
                 }
-                entityManager.remove(groups.get(0));
-                entityManager.flush();
+                members.add((Integer) row[1]);
+            }
+
+            for (ExpressionEvaluator.Result result : evaluateResults(evaluator).values()) {
+                Integer nextResourceGroupId = groupDefinitionManager.calculateGroupMembershipForResources_helper(
+                    subject, groupDefinitionId, result, evaluatedResourceIds);
+                resourceGroupManager.setResourceTypeInNewTx(nextResourceGroupId);
+                staleMembers.remove(nextResourceGroupId);
+            }
 
-                // now retry the create using the correct name
-                resourceGroupId = resourceGroupManager.createResourceGroup(overlord, resourceGroup).getId();
+            // the evaluated resources no longer belong to the groups that are left
+            for (Map.Entry<Integer, List<Integer>> members : staleMembers.entrySet()) {
+                groupDefinitionManager.removeResourcesFromManagedGroup_helper(subject, members.getKey(),
+                    members.getValue());
+                resourceGroupManager.setResourceTypeInNewTx(members.getKey());
             }
 
-            resourceGroup.setRecursive(groupDefinition.isRecursive());
-            resourceGroup.setGroupByClause(groupByClause);
-            groupDefinition.addResourceGroup(resourceGroup);
+            // unlike the single group of a definition without pivots, the groups of a pivot only exist while they
+            // have members
+            if (evaluator.hasGroupByExpressions() && staleMembers.isEmpty() == false) {
+                query = entityManager
+                    .createNamedQuery(GroupDefinition.QUERY_FIND_EMPTY_MANAGED_RESOURCE_GROUP_IDS_ADMIN);
+                query.setParameter("groupDefinitionId", groupDefinitionId);
+                query.setParameter("groupIds", staleMembers.keySet());
+                for (Integer doomedGroupId : (List<Integer>) query.getResultList()) {
+                    groupDefinitionManager.removeManagedResource_helper(subject, groupDefinitionId, doomedGroupId);
+                }
+            }
+        }
 
-        } else {
-            resourceGroupId = resourceGroup.getId();
+        if (log.isDebugEnabled()) {
+            log.debug("calculateGroupMembershipForResources took " + (System.currentTimeMillis() - startTime)
+                + " millis for " + resourceIds.size() + " resources");
         }
+    }
+
+    @RequiredPermission(Permission.MANAGE_INVENTORY)
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Integer calculateGroupMembership_helper(Subject overlord, int groupDefinitionId,
+        ExpressionEvaluator.Result result) throws ResourceGroupDeleteException, GroupDefinitionNotFoundException,
+        GroupDefinitionNotFoundException {
+        long startTime = System.currentTimeMillis();
+
+        GroupDefinition groupDefinition = getById(groupDefinitionId);
+
+        ResourceGroup resourceGroup = resourceGroupManager.getByGroupDefinitionAndGroupByClause(
+            groupDefinition.getId(), result.getGroupByClause());
 
         /*
          * group additions/deletions are actions made to the explicit group, the implicit group is modified (based on
@@ -450,26 +607,105 @@ public class GroupDefinitionManagerBean implements GroupDefinitionManagerLocal,
          * use resourceManager.getExplicitResourceIdsByResourceGroup instead of resourceGroup.getExplicitResources to keep
          * the data we need to pull across the line from the database as small as possible
          */
-        Collection<Integer> existingResourceIds = isNewGroup ? Collections.EMPTY_LIST : //
-            resourceManager.findExplicitResourceIdsByResourceGroup(resourceGroup.getId());
+        Collection<Integer> existingResourceIds;
+        if (resourceGroup == null) {
+            resourceGroup = createManagedResourceGroup(overlord, groupDefinition, result.getGroupByClause());
+            existingResourceIds = Collections.emptyList();
+        } else {
+            existingResourceIds = resourceManager.findExplicitResourceIdsByResourceGroup(resourceGroup.getId());
+        }
+
+        updateExplicitResources(overlord, resourceGroup.getId(), result.getData(), existingResourceIds);
+
+        long endTime = System.currentTimeMillis();
+
+        if (log.isDebugEnabled()) {
+            log.debug("calculateGroupMembership_helper took " + (endTime - startTime) + " millis");
+        }
+
+        return resourceGroup.getId();
+    }
+
+    @SuppressWarnings("unchecked")
+    @RequiredPermission(Permission.MANAGE_INVENTORY)
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public Integer calculateGroupMembershipForResources_helper(Subject overlord, int groupDefinitionId,
+        ExpressionEvaluator.Result result, Collection<Integer> evaluatedResourceIds)
+        throws GroupDefinitionNotFoundException {
+        GroupDefinition groupDefinition = getById(groupDefinitionId);
+
+        ResourceGroup resourceGroup = resourceGroupManager.getByGroupDefinitionAndGroupByClause(
+            groupDefinition.getId(), result.getGroupByClause());
+
+        // only the evaluated resources are considered, the other members stay as they are
+        Collection<Integer> existingResourceIds;
+        if (resourceGroup == null) {
+            resourceGroup = createManagedResourceGroup(overlord, groupDefinition, result.getGroupByClause());
+            existingResourceIds = Collections.emptyList();
+        } else {
+            Query query = entityManager
+                .createNamedQuery(Resource.QUERY_FIND_EXPLICIT_IDS_BY_RESOURCE_GROUP_AND_IDS_ADMIN);
+            query.setParameter("groupId", resourceGroup.getId());
+            query.setParameter("resourceIds", evaluatedResourceIds);
+            existingResourceIds = query.getResultList();
+        }
+
+        updateExplicitResources(overlord, resourceGroup.getId(), result.getData(), existingResourceIds);
+
+        return resourceGroup.getId();
+    }
 
-        Set<Integer> idsToAdd = new HashSet<Integer>(result.getData());
+    @RequiredPermission(Permission.MANAGE_INVENTORY)
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void removeResourcesFromManagedGroup_helper(Subject overlord, int resourceGroupId,
+        Collection<Integer> resourceIds) {
+        resourceGroupManager.removeResourcesFromGroup(overlord, resourceGroupId,
+            ArrayUtils.unwrapCollection(resourceIds));
+    }
+
+    private void updateExplicitResources(Subject overlord, int resourceGroupId, Collection<Integer> resourceIds,
+        Collection<Integer> existingResourceIds) {
+        Set<Integer> idsToAdd = new HashSet<Integer>(resourceIds);
         idsToAdd.removeAll(existingResourceIds);
 
         Set<Integer> idsToRemove = new HashSet<Integer>(existingResourceIds);
-        idsToRemove.removeAll(result.getData());
+        idsToRemove.removeAll(resourceIds);
 
         resourceGroupManager.addResourcesToGroup(overlord, resourceGroupId, ArrayUtils.unwrapCollection(idsToAdd));
         resourceGroupManager.removeResourcesFromGroup(overlord, resourceGroupId,
             ArrayUtils.unwrapCollection(idsToRemove));
+    }
 
-        long endTime = System.currentTimeMillis();
+    @SuppressWarnings("unchecked")
+    private ResourceGroup createManagedResourceGroup(Subject overlord, GroupDefinition groupDefinition,
+        String groupByClause) {
+        String newDynamicGroupName = getDynamicGroupName(groupDefinition.getName(), groupByClause);
+        ResourceGroup resourceGroup = new ResourceGroup(newDynamicGroupName);
+        try {
+            resourceGroupManager.createResourceGroup(overlord, resourceGroup);
+        } catch (ResourceGroupAlreadyExistsException e) {
+            // BZ 1187680: In certain recalculation scenarios we need to lazily remove an existing
+            // resource group with the same name because it no longer has a groubByClause that supports
+            // its existence.  Remove the unwanted group and create a new one with the proper name.
+            Query query = entityManager.createNamedQuery(ResourceGroup.QUERY_FIND_BY_NAME_VISIBLE_GROUP);
+            query.setParameter("name", resourceGroup.getName());
+            List<ResourceGroup> groups = query.getResultList();
+            // in an unexpected situation, group not found or the name is actually the same, just re-throw
+            if (groups.size() != 1 || resourceGroup.getName().equals(groups.get(0).getName())) {
+                throw e;
+            }
+            entityManager.remove(groups.get(0));
+            entityManager.flush();
 
-        if (log.isDebugEnabled()) {
-            log.debug("calculateGroupMembership_helper took " + (endTime - startTime) + " millis");
+            // now retry the create using the correct name
+            resourceGroupManager.createResourceGroup(overlord, resourceGroup);
         }
 
-        return resourceGroupId;
+        resourceGroup.setRecursive(groupDefinition.isRecursive());
+        resourceGroup.setGroupByClause(groupByClause);
+        groupDefinition.addResourceGroup(resourceGroup);
+
+        return resourceGroup;
     }
 
     @SuppressWarnings({ "unchecked" })
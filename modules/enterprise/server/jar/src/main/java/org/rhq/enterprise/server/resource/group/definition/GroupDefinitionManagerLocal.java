@@ -18,16 +18,20 @@
  */
 package org.rhq.enterprise.server.resource.group.definition;
 
+import java.util.Collection;
 import java.util.List;
 
 import javax.ejb.Local;
+import javax.ejb.Timer;
 
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.plugin.CannedGroupExpression;
 import org.rhq.core.domain.resource.group.GroupDefinition;
+import org.rhq.core.domain.resource.group.InvalidExpressionException;
 import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.domain.util.PageList;
 import org.rhq.enterprise.server.resource.group.ResourceGroupDeleteException;
+import org.rhq.enterprise.server.resource.group.ResourceGroupUpdateException;
 import org.rhq.enterprise.server.resource.group.definition.exception.GroupDefinitionDeleteException;
 import org.rhq.enterprise.server.resource.group.definition.exception.GroupDefinitionNotFoundException;
 import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator;
@@ -37,11 +41,41 @@ public interface GroupDefinitionManagerLocal extends GroupDefinitionManagerRemot
 
     void recalculateDynaGroups(Subject subject);
 
+    /**
+     * Schedules the per-server timer which periodically calls {@link #recalculateDynaGroupsForChanges(Subject)}.
+     */
+    void scheduleDynaGroupChangesTimer();
+
+    void handleDynaGroupChangesTimer(Timer timer);
+
+    /**
+     * Brings the auto-recalculating group definitions up to date with the inventory and trait changes recorded by
+     * the {@link DynaGroupChangeTracker} of this server. Only the definitions depending on the changed attributes are
+     * re-evaluated, and only for the changed resources, unless they look at the relatives of the resources. Each
+     * definition is re-evaluated in its own transaction; the changes of the definitions which fail are kept for the
+     * next call.
+     */
+    void recalculateDynaGroupsForChanges(Subject subject);
+
+    /**
+     * Like {@link #calculateGroupMembership(Subject, int)}, but only re-evaluates the membership of the given
+     * resources; the other members of the managed groups are left as they are.
+     */
+    void calculateGroupMembershipForResources(Subject subject, int groupDefinitionId, Collection<Integer> resourceIds)
+        throws ResourceGroupDeleteException, GroupDefinitionDeleteException, GroupDefinitionNotFoundException,
+        InvalidExpressionException, ResourceGroupUpdateException;
+
     GroupDefinition getById(int groupDefinitionId) throws GroupDefinitionNotFoundException;
 
     Integer calculateGroupMembership_helper(Subject subject, int groupDefinitionId, ExpressionEvaluator.Result result)
         throws ResourceGroupDeleteException, GroupDefinitionNotFoundException, GroupDefinitionNotFoundException;
 
+    Integer calculateGroupMembershipForResources_helper(Subject subject, int groupDefinitionId,
+        ExpressionEvaluator.Result result, Collection<Integer> evaluatedResourceIds)
+        throws GroupDefinitionNotFoundException;
+
+    void removeResourcesFromManagedGroup_helper(Subject subject, int resourceGroupId, Collection<Integer> resourceIds);
+
     PageList<GroupDefinition> getGroupDefinitions(Subject subject, PageControl pc);
 
     int getGroupDefinitionCount(Subject subject);
@@ -20,7 +20,9 @@ package org.rhq.enterprise.server.resource.group.definition.framework;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -56,6 +58,19 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
     private static final String PROP_SIMPLE_DEF_ALIAS = "simpleDef";
     private static final String TRAIT_ALIAS = "trait";
     private static final String METRIC_DEF_ALIAS = "def";
+    private static final String RESTRICTED_RESOURCE_IDS_ARGUMENT = "restrictedResourceIds";
+
+    /**
+     * The resource attributes the membership computed by an evaluator depends on; see {@link #getDependencies()}.
+     */
+    public enum Dependency {
+        INVENTORY_STATUS, // every dynagroup only contains committed resources
+        RESOURCE, // id, name, version, type or category
+        AVAILABILITY, //
+        TRAIT, //
+        PLUGIN_CONFIGURATION, //
+        RESOURCE_CONFIGURATION;
+    }
 
     private enum JoinCondition {
         RESOURCE_CONFIGURATION(".resourceConfiguration", "conf"), //
@@ -82,6 +97,9 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
     private Set<String> whereStatics;
     private List<String> groupByElements;
     private List<String> memberOfElements;
+    private Set<Dependency> dependencies;
+    private boolean isHierarchical;
+    private List<Integer> restrictedResourceIds;
 
     private List<String> simpleSubExpressions;
     private List<String> groupedSubExpressions;
@@ -115,6 +133,7 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
         whereStatics = new LinkedHashSet<String>();
         groupByElements = new ArrayList<String>();
         memberOfElements = new ArrayList<String>();
+        dependencies = EnumSet.of(Dependency.INVENTORY_STATUS);
 
         simpleSubExpressions = new ArrayList<String>();
         groupedSubExpressions = new ArrayList<String>();
@@ -241,6 +260,49 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
         whereStatics.remove("res.inventoryStatus = org.rhq.core.domain.resource.InventoryStatus.COMMITTED");
     }
 
+    /**
+     * Restricts the evaluation to the given resources, so that only the memberships of those resources are computed;
+     * must be called before the results are computed.
+     *
+     * @param resourceIds the ids of the resources to evaluate, must not be empty
+     */
+    public void setResourceIdRestriction(Collection<Integer> resourceIds) {
+        if (resultsComputed) {
+            throw new IllegalStateException("Results have already been computed");
+        }
+        if (resourceIds.isEmpty()) {
+            throw new IllegalArgumentException("The resource id restriction must not be empty");
+        }
+
+        restrictedResourceIds = new ArrayList<Integer>(resourceIds);
+        whereStatics.add("res.id IN ( :" + RESTRICTED_RESOURCE_IDS_ARGUMENT + " )");
+    }
+
+    /**
+     * @return the attributes of the resources the added expressions look at; a change to any other attribute of a
+     *         resource can not change its membership
+     */
+    public Set<Dependency> getDependencies() {
+        return Collections.unmodifiableSet(dependencies);
+    }
+
+    /**
+     * @return true if some added expression looks at the parents or the children of the resources, in which case a
+     *         change to a resource can change the membership of its relatives; also true for 'memberof' expressions,
+     *         which depend on the membership of other groups
+     */
+    public boolean isHierarchical() {
+        return isHierarchical;
+    }
+
+    /**
+     * @return true if some added expression is a 'groupby' expression, in which case there is one result for each
+     *         distinct combination of the pivoted values
+     */
+    public boolean hasGroupByExpressions() {
+        return !groupByElements.isEmpty();
+    }
+
     /**
      * @param  expression a string in the form of 'condition = value' or 'groupBy condition'
      *
@@ -473,6 +535,7 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
 
                     validateSubExpressionAgainstPreviouslySeen(groupName, false, true);
                     isMemberOf = true;
+                    isHierarchical = true;
                     populatePredicateCollections(null, groupName);
 
                 } else if (nextToken.equals("groupby")) {
@@ -733,26 +796,38 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
 
     private void parseExpression_resourceContext(String value, String[] tokens, String nextToken)
         throws InvalidExpressionException {
+        if (deepestResourceContext != ParseContext.Resource) {
+            isHierarchical = true;
+        }
+
         if (nextToken.equals("id")) {
             expressionType = Integer.class;
+            dependencies.add(Dependency.RESOURCE);
             populatePredicateCollections(getResourceRelativeContextToken() + ".id", value);
         } else if (nextToken.equals("name")) {
+            dependencies.add(Dependency.RESOURCE);
             populatePredicateCollections(getResourceRelativeContextToken() + ".name", value);
         } else if (nextToken.equals("version")) {
+            dependencies.add(Dependency.RESOURCE);
             populatePredicateCollections(getResourceRelativeContextToken() + ".version", value);
         } else if (nextToken.equals("type")) {
+            dependencies.add(Dependency.RESOURCE);
             context = ParseContext.ResourceType;
         } else if (nextToken.startsWith("availability")) {
+            dependencies.add(Dependency.AVAILABILITY);
             context = ParseContext.Availability;
             parseIndex--; // undo auto-inc, since this context requires element re-parse
         } else if (nextToken.startsWith("trait")) {
+            dependencies.add(Dependency.TRAIT);
             context = ParseContext.Trait;
             parseIndex--; // undo auto-inc, since this context requires element re-parse
         } else if (nextToken.startsWith("pluginconfiguration")) {
+            dependencies.add(Dependency.PLUGIN_CONFIGURATION);
             context = ParseContext.Configuration;
             subcontext = ParseSubContext.PluginConfiguration;
             parseIndex--; // undo auto-inc, since this context requires element re-parse
         } else if (nextToken.startsWith("resourceconfiguration")) {
+            dependencies.add(Dependency.RESOURCE_CONFIGURATION);
             context = ParseContext.Configuration;
             subcontext = ParseSubContext.ResourceConfiguration;
             parseIndex--; // undo auto-inc, since this context requires element re-parse
@@ -1060,6 +1135,10 @@ public class ExpressionEvaluator implements Iterable<ExpressionEvaluator.Result>
             }
         }
 
+        if (restrictedResourceIds != null) {
+            query.setParameter(RESTRICTED_RESOURCE_IDS_ARGUMENT, restrictedResourceIds);
+        }
+
         return query.getResultList();
     }
 
@@ -54,6 +54,8 @@ import org.rhq.server.metrics.domain.AggregateNumericMetric;
 public class DataCalcJob extends AbstractStatefulJob {
     private static final Log LOG = LogFactory.getLog(DataCalcJob.class);
 
+    private static final long CALLTIME_DATA_ROLLUP_AGE = 60L * 60L * 1000L;
+
     /**
      * Schedules a calc job to trigger right now. This will not block - it schedules the job to trigger but immediately
      * returns. This method will ensure that no two data calc jobs will execute at the same time (Quartz will ensure
@@ -83,6 +85,7 @@ public class DataCalcJob extends AbstractStatefulJob {
             Iterable<AggregateNumericMetric> oneHourAggregates = compressMeasurementData();
             calculateAutoBaselines(LookupUtil.getMeasurementBaselineManager());
             calculateOOBs(oneHourAggregates);
+            rollupCallTimeData(LookupUtil.getPurgeManager());
         } catch (Exception e) {
             LOG.error("Data Calc Job FAILED TO COMPLETE. Cause: " + e);
         } finally {
@@ -122,6 +125,24 @@ public class DataCalcJob extends AbstractStatefulJob {
         }
     }
 
+    private void rollupCallTimeData(PurgeManagerLocal purgeManager) {
+        long timeStart = System.currentTimeMillis();
+        LOG.info("Call-time data rollup starting at " + new Date(timeStart));
+        int rollupsCreated = 0;
+
+        try {
+            // leave the agents an hour to report the values of the last hour
+            long threshold = timeStart - CALLTIME_DATA_ROLLUP_AGE;
+            LOG.info("Rolling up call-time data older than " + new Date(threshold));
+            rollupsCreated = purgeManager.rollupCallTimeData(threshold);
+        } catch (Exception e) {
+            LOG.error("Failed to roll up call-time data. Cause: " + e, e);
+        } finally {
+            long duration = System.currentTimeMillis() - timeStart;
+            LOG.info("Call-time data rollups created [" + rollupsCreated + "] - completed in [" + duration + "]ms");
+        }
+    }
+
     /**
      * Calculate the OOB values for the last hour.
      * This also removes out-dated ones due to recalculated baselines.
@@ -44,6 +44,7 @@ import org.quartz.SimpleTrigger;
 
 import org.rhq.core.domain.auth.Subject;
 import org.rhq.core.domain.common.composite.SystemSettings;
+import org.rhq.core.domain.event.EventCount;
 import org.rhq.enterprise.server.alert.AlertConditionManagerLocal;
 import org.rhq.enterprise.server.alert.AlertDefinitionManagerLocal;
 import org.rhq.enterprise.server.alert.AlertNotificationManagerLocal;
@@ -135,6 +136,7 @@ public class DataPurgeJob extends AbstractStatefulJob {
     private void purgeEverything(SystemSettings systemSettings) {
         purgeCallTimeData(systemSettings);
         purgeEventData(systemSettings);
+        rollupEventCounts();
         purgeAlertData(systemSettings);
         purgeOrphanedAlertConditions();
         purgeUnusedAlertDefinitions();
@@ -269,6 +271,23 @@ public class DataPurgeJob extends AbstractStatefulJob {
         }
     }
 
+    private void rollupEventCounts() {
+        long timeStart = System.currentTimeMillis();
+        LOG.info("Event counter rollup starting at " + new Date(timeStart));
+        int countersRolledUp = 0;
+
+        try {
+            long threshold = timeStart - EventCount.ROLLUP_AGE;
+            LOG.info("Rolling up event counters older than " + new Date(threshold));
+            countersRolledUp = purgeManager.rollupEventCounts(threshold);
+        } catch (Exception e) {
+            LOG.error("Failed to roll up event counters. Cause: " + e, e);
+        } finally {
+            long duration = System.currentTimeMillis() - timeStart;
+            LOG.info("Event counters rolled up [" + countersRolledUp + "] - completed in [" + duration + "]ms");
+        }
+    }
+
     private void purgeAlertData(SystemSettings systemSettings) {
         long timeStart = System.currentTimeMillis();
         LOG.info("Alert data purge starting at " + new Date(timeStart));
@@ -18,10 +18,14 @@
  */
 package org.rhq.enterprise.server.util;
 
+import java.lang.reflect.Method;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import org.rhq.core.domain.criteria.BaseCriteria;
+import org.rhq.core.domain.criteria.Criteria;
+import org.rhq.core.domain.util.OrderingField;
 import org.rhq.core.domain.util.PageControl;
 import org.rhq.core.domain.util.PageList;
 
@@ -32,6 +36,10 @@ import org.rhq.core.domain.util.PageList;
  *   for (Resource entity : query) { 
  * 
  * and automatically page through all of the results in PageControl.getPageSize(def. 200) chunks.
+ *
+ * When the results are entities sorted on their id alone (the implicit sort), the pages after the first one are
+ * fetched with keyset paging (see {@link Criteria#setPagingAfterId(Integer)}), so that iterating over a large
+ * inventory does not get slower with each page and does not count the results again for each page.
  * 
  * @author John Sanda
  * @author Simeon Pinder
@@ -85,12 +93,15 @@ public class CriteriaQuery<T, C extends BaseCriteria> implements Iterable<T> {
 
         private boolean reachedEnd;
 
+        private boolean keysetPaging;
+
         /**The first pageList returned by the criteria instance is where iteration begins.
          * @param firstPage
          */
         public QueryResultsIterator(PageList<T> firstPage) {
             currentPage = firstPage;
             iterator = currentPage.iterator();
+            keysetPaging = isKeysetPagingSupported();
         }
 
         @Override
@@ -110,6 +121,16 @@ public class CriteriaQuery<T, C extends BaseCriteria> implements Iterable<T> {
                         pcOverrides.setPageNumber(pcOverrides.getPageNumber() + 1);
                     } else {
                         criteria.setPaging(pcCurrent.getPageNumber() + 1, pcCurrent.getPageSize());
+                        if (keysetPaging) {
+                            Integer lastId = getLastId();
+                            if (lastId != null) {
+                                ((Criteria) criteria).setPagingAfterId(lastId);
+                            } else {
+                                // the results are not the entities of the criteria, use the page number from now on
+                                keysetPaging = false;
+                                ((Criteria) criteria).setPagingAfterId(null);
+                            }
+                        }
                     }
 
                     //help out the GC.
@@ -119,6 +140,10 @@ public class CriteriaQuery<T, C extends BaseCriteria> implements Iterable<T> {
                     iterator = currentPage.iterator();
                     reachedEnd = !iterator.hasNext(); //if we got an empty collection as a result for obtaining the next page
                                                       //we can be pretty sure we're past the number of available results
+                    if (reachedEnd && keysetPaging) {
+                        // leave the criteria of the caller as it was given, reusing it should not seek past the end
+                        ((Criteria) criteria).setPagingAfterId(null);
+                    }
                 }
             }
 
@@ -137,5 +162,41 @@ public class CriteriaQuery<T, C extends BaseCriteria> implements Iterable<T> {
         public void remove() {
             iterator.remove();
         }
+
+        private boolean isKeysetPagingSupported() {
+            if (!(criteria instanceof Criteria) || criteria.getPageControlOverrides() != null) {
+                return false;
+            }
+            Criteria jpaCriteria = (Criteria) criteria;
+            if (jpaCriteria.hasCustomizedSorting() || jpaCriteria.getJPQLSortOverride("id") != null) {
+                return false;
+            }
+            // the implicit sort on id is only there if paging is limited and ids are supported
+            List<OrderingField> orderingFields = CriteriaQueryGenerator.getPageControl(jpaCriteria)
+                .getOrderingFields();
+            return orderingFields.size() == 1 && "id".equals(orderingFields.get(0).getField());
+        }
+
+        /**
+         * @return the id of the last result of the current page, or null if the results are not entities of the
+         *         criteria or the page is empty
+         */
+        private Integer getLastId() {
+            if (currentPage.isEmpty()) {
+                return null;
+            }
+            Object last = currentPage.get(currentPage.size() - 1);
+            if (!((Criteria) criteria).getPersistentClass().isInstance(last)) {
+                return null;
+            }
+            try {
+                Method getId = last.getClass().getMethod("getId");
+                getId.setAccessible(true);
+                Object id = getId.invoke(last);
+                return (id instanceof Integer) ? (Integer) id : null;
+            } catch (Exception e) {
+                return null;
+            }
+        }
     }
 }
@@ -607,8 +607,11 @@ public final class CriteriaQueryGenerator {
             conjunctiveResults.append(fragment).append(' ');
         }
 
+        String pagingAfterIdFragment = getPagingAfterIdFragment(pc);
+
         if (conjunctiveResults.length() > 0 || authorizationPermsFragment != null
-            || authorizationCustomConditionFragment != null || searchExpressionWhereClause != null) {
+            || authorizationCustomConditionFragment != null || pagingAfterIdFragment != null
+            || searchExpressionWhereClause != null) {
             results.append("WHERE ");
             if (conjunctiveResults.length() > 0) {
                 results.append("( ").append(conjunctiveResults).append(")");
@@ -636,6 +639,16 @@ public final class CriteriaQueryGenerator {
             results.append(this.authorizationCustomConditionFragment);
         }
 
+        if (pagingAfterIdFragment != null) {
+            if (firstCrit) {
+                firstCrit = false;
+            } else {
+                // like security, keyset paging always restricts the results
+                results.append(NL).append(" AND ");
+            }
+            results.append(pagingAfterIdFragment);
+        }
+
         if (searchExpressionWhereClause != null) {
             if (!firstCrit) {
                 // always want to additionally filter by translated from the RHQL search expression
@@ -685,6 +698,24 @@ public final class CriteriaQueryGenerator {
         return results.toString();
     }
 
+    /**
+     * @return the condition restricting the results to the ones after the id the keyset paging of the criteria starts
+     *         after, or null if the criteria does not use keyset paging
+     */
+    private String getPagingAfterIdFragment(PageControl pc) {
+        if (criteria.getPagingAfterId() == null) {
+            return null;
+        }
+        List<OrderingField> orderingFields = pc.getOrderingFields();
+        if (orderingFields.size() != 1 || !"id".equals(orderingFields.get(0).getField())
+            || criteria.getJPQLSortOverride("id") != null || criteria.hasCustomizedSorting()) {
+            throw new IllegalArgumentException(this.getClass().getSimpleName()
+                + " only supports keyset paging for criteria sorted on id alone, not on " + orderingFields);
+        }
+        String operator = (orderingFields.get(0).getOrdering() == PageOrdering.DESC) ? " < " : " > ";
+        return "( " + alias + ".id" + operator + ":pagingAfterId )";
+    }
+
     private boolean isNumber(String input) {
         if (input == null) {
             return false;
@@ -928,7 +959,13 @@ public final class CriteriaQueryGenerator {
         String queryString = getQueryString(false);
         Query query = em.createQuery(queryString);
         setBindValues(query);
-        PersistenceUtility.setDataPage(query, getPageControl(criteria));
+        PageControl pc = getPageControl(criteria);
+        if (criteria.getPagingAfterId() == null) {
+            PersistenceUtility.setDataPage(query, pc);
+        } else if (pc.getPageSize() > 0) {
+            // the page starts after the given id, not at the offset of the page number
+            query.setMaxResults(pc.getPageSize());
+        }
         return query;
     }
 
@@ -964,6 +1001,9 @@ public final class CriteriaQueryGenerator {
             query.setParameter("requiredPerms", requiredPerms);
             query.setParameter("requiredPermsSize", (long) requiredPerms.size());
         }
+        if (null != this.criteria.getPagingAfterId()) {
+            query.setParameter("pagingAfterId", this.criteria.getPagingAfterId());
+        }
     }
 
     private String prepareStringBindValue(String filter, String value) {
@@ -74,6 +74,10 @@ public class CriteriaQueryRunner<T> {
         PageControl pageControl = CriteriaQueryGenerator.getPageControl(criteria);
 
         Restriction criteriaRestriction = criteria.getRestriction();
+        if (criteriaRestriction == null && criteria.getPagingAfterId() != null) {
+            // keyset paging is meant to be cheap however deep the page is, which the count query is not
+            criteriaRestriction = Restriction.COLLECTION_ONLY;
+        }
         if (criteriaRestriction == null) {
             try {
                 results = QueryUtility.fetchPagedDataAndCount(queryGenerator.getQuery(entityManager),
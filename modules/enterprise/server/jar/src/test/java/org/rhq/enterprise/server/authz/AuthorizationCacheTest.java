@@ -0,0 +1,213 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.authz;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.authz.Permission;
+
+/**
+ * Test that doesn't require any EE infrastructure - just the authorization snapshots and their cache.
+ */
+@Test
+public class AuthorizationCacheTest {
+
+    public void testSubjectPermissions() {
+        SubjectPermissions permissions = new SubjectPermissions();
+        // role 1 can view and control resources 10 and 11 through group 100
+        permissions.addRolePermission(1, Permission.CONTROL);
+        permissions.addRoleResource(1, 10);
+        permissions.addRoleResource(1, 11);
+        permissions.addRoleGroup(1, 100);
+        // role 2 has no permissions but can view resource 12 through group 200, and can manage settings
+        permissions.addRoleResource(2, 12);
+        permissions.addRoleGroup(2, 200);
+        permissions.addRolePermission(3, Permission.MANAGE_SETTINGS);
+        permissions.addPrivateGroup(300);
+        permissions.build();
+
+        assertTrue(permissions.hasGlobalPermission(Permission.MANAGE_SETTINGS));
+        assertFalse(permissions.hasGlobalPermission(Permission.MANAGE_INVENTORY));
+
+        assertTrue(permissions.canViewResource(10));
+        assertTrue(permissions.canViewResource(12));
+        assertFalse(permissions.canViewResource(13));
+        assertFalse(permissions.canViewResource(-1));
+        assertTrue(permissions.canViewResources(Arrays.asList(10, 11, 12)));
+        assertFalse(permissions.canViewResources(Arrays.asList(10, 13)));
+
+        assertTrue(permissions.hasResourcePermission(Permission.CONTROL, 11));
+        assertFalse(permissions.hasResourcePermission(Permission.CONTROL, 12));
+        assertFalse(permissions.hasResourcePermission(Permission.MODIFY_RESOURCE, 10));
+        assertTrue(permissions.hasResourcePermission(Permission.CONTROL, Arrays.asList(10, 11)));
+        assertFalse(permissions.hasResourcePermission(Permission.CONTROL, Arrays.asList(10, 12)));
+
+        assertTrue(permissions.hasGroupPermission(Permission.CONTROL, 100));
+        assertFalse(permissions.hasGroupPermission(Permission.CONTROL, 200));
+        assertTrue(permissions.canViewGroup(200));
+        assertTrue(permissions.canViewGroup(300));
+        assertFalse(permissions.canViewGroup(400));
+
+        // 10, 11, 12 and 100, 200, 300 viewable, 10, 11 and 100 with CONTROL, none with MANAGE_SETTINGS
+        assertEquals(permissions.getSize(), 9);
+    }
+
+    public void testInvalidation() {
+        AuthorizationCache cache = new AuthorizationCache(60000L, 10, 1000);
+        SubjectPermissions permissions = new SubjectPermissions().build();
+
+        cache.put(1, permissions, cache.getGeneration());
+        assertSame(cache.get(1), permissions);
+
+        long generation = cache.getGeneration();
+        cache.invalidate();
+        assertNull(cache.get(1));
+
+        cache.put(1, permissions, generation);
+        assertNull(cache.get(1), "A snapshot loaded before an invalidation should not be cached");
+    }
+
+    public void testInvalidationAfterCompletion() {
+        AuthorizationCache cache = new AuthorizationCache(60000L, 10, 1000);
+        SubjectPermissions permissions = new SubjectPermissions().build();
+        TestTransactionRegistry registry = new TestTransactionRegistry();
+
+        cache.invalidateAfterCompletion(registry);
+        cache.invalidateAfterCompletion(registry);
+        assertEquals(registry.synchronizations.size(), 1, "The invalidation should be registered once per transaction");
+
+        // another thread loads the snapshot from the rows that are not committed yet
+        cache.put(1, permissions, cache.getGeneration());
+        assertSame(cache.get(1), permissions);
+
+        registry.synchronizations.get(0).afterCompletion(Status.STATUS_COMMITTED);
+        assertNull(cache.get(1), "A snapshot loaded before the commit should not be cached after it");
+    }
+
+    public void testInvalidationWithoutTransaction() {
+        AuthorizationCache cache = new AuthorizationCache(60000L, 10, 1000);
+        cache.put(1, new SubjectPermissions().build(), cache.getGeneration());
+        TestTransactionRegistry registry = new TestTransactionRegistry();
+        registry.transactionKey = null;
+
+        cache.invalidateAfterCompletion(registry);
+        assertNull(cache.get(1));
+        assertTrue(registry.synchronizations.isEmpty());
+    }
+
+    public void testExpiration() throws Exception {
+        AuthorizationCache cache = new AuthorizationCache(1L, 10, 1000);
+        cache.put(1, new SubjectPermissions().build(), cache.getGeneration());
+        Thread.sleep(10);
+        assertNull(cache.get(1));
+    }
+
+    public void testMaxSubjects() {
+        AuthorizationCache cache = new AuthorizationCache(60000L, 2, 1000);
+        cache.put(1, new SubjectPermissions().build(), cache.getGeneration());
+        cache.put(2, new SubjectPermissions().build(), cache.getGeneration());
+        cache.get(1);
+        cache.put(3, new SubjectPermissions().build(), cache.getGeneration());
+        assertNull(cache.get(2), "The least recently used subject should have been dropped");
+        assertTrue(cache.get(1) != null && cache.get(3) != null);
+    }
+
+    public void testMaxIds() {
+        AuthorizationCache cache = new AuthorizationCache(60000L, 10, 5);
+        cache.put(1, snapshot(1, 2), cache.getGeneration());
+        cache.put(2, snapshot(1000000), cache.getGeneration());
+        assertTrue(cache.get(1) != null && cache.get(2) != null, "The size should not depend on the highest id");
+
+        cache.get(1);
+        cache.put(3, snapshot(1, 2, 3), cache.getGeneration());
+        assertNull(cache.get(2), "The least recently used subject should have been dropped");
+        assertTrue(cache.get(1) != null && cache.get(3) != null);
+
+        cache.put(4, snapshot(1, 2, 3, 4, 5, 6), cache.getGeneration());
+        assertNull(cache.get(4), "A snapshot holding too many ids should not be cached");
+        assertTrue(cache.get(1) != null && cache.get(3) != null);
+    }
+
+    /**
+     * @return a snapshot with a single role viewing the given resources, without any permission
+     */
+    private SubjectPermissions snapshot(int... resourceIds) {
+        SubjectPermissions permissions = new SubjectPermissions();
+        for (int resourceId : resourceIds) {
+            permissions.addRoleResource(1, resourceId);
+        }
+        return permissions.build();
+    }
+
+    private static class TestTransactionRegistry implements TransactionSynchronizationRegistry {
+        private Object transactionKey = new Object();
+        private final Map<Object, Object> resources = new HashMap<Object, Object>();
+        private final List<Synchronization> synchronizations = new ArrayList<Synchronization>();
+
+        @Override
+        public Object getTransactionKey() {
+            return transactionKey;
+        }
+
+        @Override
+        public void putResource(Object key, Object value) {
+            resources.put(key, value);
+        }
+
+        @Override
+        public Object getResource(Object key) {
+            return resources.get(key);
+        }
+
+        @Override
+        public void registerInterposedSynchronization(Synchronization sync) {
+            synchronizations.add(sync);
+        }
+
+        @Override
+        public int getTransactionStatus() {
+            return (transactionKey == null) ? Status.STATUS_NO_TRANSACTION : Status.STATUS_ACTIVE;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return false;
+        }
+    }
+}
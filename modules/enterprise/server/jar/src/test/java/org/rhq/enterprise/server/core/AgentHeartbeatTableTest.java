@@ -0,0 +1,96 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.core;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test that doesn't require any EE infrastructure - just the in-memory bookkeeping of agent pings.
+ */
+@Test
+public class AgentHeartbeatTableTest {
+
+    public void testUnknownAgent() {
+        AgentHeartbeatTable table = new AgentHeartbeatTable();
+        assertNull(table.recordPing("a", 1000L));
+        assertNull(table.getLastPing("a"));
+        assertTrue(table.takeDirtyPings(1000L).isEmpty());
+    }
+
+    public void testDirtyPings() {
+        AgentHeartbeatTable table = new AgentHeartbeatTable();
+        table.add("a", 1000L, false);
+        table.add("b", 1000L, true);
+        assertTrue(table.takeDirtyPings(1000L).isEmpty(), "Added pings are already in the database");
+
+        assertEquals(table.recordPing("a", 2000L), Boolean.FALSE);
+        assertEquals(table.recordPing("a", 3000L), Boolean.FALSE);
+        assertEquals(table.recordPing("b", 500L), Boolean.TRUE);
+        assertEquals(table.getLastPing("b"), Long.valueOf(1000L), "Pings should never go back in time");
+
+        Map<String, Long> pings = table.takeDirtyPings(3000L);
+        assertEquals(pings, Collections.singletonMap("a", 3000L));
+        assertTrue(table.takeDirtyPings(3000L).isEmpty());
+
+        table.restoreDirtyPings(pings);
+        assertEquals(table.takeDirtyPings(3000L), pings);
+
+        // a failed write is not restored over a newer ping, which is dirty anyway
+        table.recordPing("a", 4000L);
+        table.restoreDirtyPings(pings);
+        assertEquals(table.takeDirtyPings(4000L), Collections.singletonMap("a", 4000L));
+    }
+
+    public void testBackfilled() {
+        AgentHeartbeatTable table = new AgentHeartbeatTable();
+        table.add("a", 1000L, false);
+        table.add("b", 1000L, true);
+
+        table.refreshBackfilled(Collections.singleton("a"));
+        assertEquals(table.recordPing("a", 2000L), Boolean.TRUE);
+        assertEquals(table.recordPing("b", 2000L), Boolean.FALSE);
+
+        table.setBackfilled("a", false);
+        table.setBackfilled("c", true);
+        assertEquals(table.recordPing("a", 3000L), Boolean.FALSE);
+        assertNull(table.recordPing("c", 3000L));
+    }
+
+    public void testStaleEntries() {
+        AgentHeartbeatTable table = new AgentHeartbeatTable();
+        table.add("a", 1000L, false);
+        table.add("b", 1000L, false);
+        table.recordPing("b", 2000L);
+
+        long now = 1000L + AgentHeartbeatTable.STALE_ENTRY_AGE + 1;
+        assertEquals(table.takeDirtyPings(now), Collections.singletonMap("b", 2000L));
+        assertNull(table.getLastPing("a"));
+        assertEquals(table.getLastPing("b"), Long.valueOf(2000L));
+
+        table.remove("b");
+        assertNull(table.recordPing("b", now));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.event;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.event.EventDefinition;
+import org.rhq.core.domain.event.EventSource;
+import org.rhq.core.domain.resource.Resource;
+import org.rhq.core.domain.resource.ResourceCategory;
+import org.rhq.core.domain.resource.ResourceType;
+
+@Test
+public class EventSourceIdCacheTest {
+
+    private static final ResourceType RESOURCE_TYPE = new ResourceType("Linux", "Platforms", ResourceCategory.PLATFORM,
+        null);
+
+    public void testGetByNaturalKey() {
+        EventSourceIdCache cache = new EventSourceIdCache(10);
+        cache.put(createEventSource(1, "logTrack", "/var/log/messages"), 10001);
+        cache.put(createEventSource(2, "logTrack", "/var/log/messages"), 10002);
+
+        // the cache is keyed on the natural key, not on the identity of the event source
+        assertEquals(cache.get(createEventSource(1, "logTrack", "/var/log/messages")), Integer.valueOf(10001));
+        assertEquals(cache.get(createEventSource(2, "logTrack", "/var/log/messages")), Integer.valueOf(10002));
+        assertNull(cache.get(createEventSource(1, "logTrack", "/var/log/secure")));
+        assertNull(cache.get(createEventSource(1, "errorLog", "/var/log/messages")));
+    }
+
+    public void testClearedWhenFull() {
+        EventSourceIdCache cache = new EventSourceIdCache(2);
+        cache.put(createEventSource(1, "logTrack", "a"), 10001);
+        cache.put(createEventSource(1, "logTrack", "b"), 10002);
+        cache.put(createEventSource(1, "logTrack", "c"), 10003);
+
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.get(createEventSource(1, "logTrack", "c")), Integer.valueOf(10003));
+    }
+
+    public void testRemoveResources() {
+        EventSourceIdCache cache = new EventSourceIdCache(10);
+        cache.put(createEventSource(1, "logTrack", "a"), 10001);
+        cache.put(createEventSource(2, "logTrack", "a"), 10002);
+        cache.put(createEventSource(2, "logTrack", "b"), 10003);
+        cache.put(createEventSource(3, "logTrack", "a"), 10004);
+
+        cache.removeResources(Arrays.asList(2, 3));
+
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.get(createEventSource(1, "logTrack", "a")), Integer.valueOf(10001));
+        assertNull(cache.get(createEventSource(2, "logTrack", "b")));
+    }
+
+    public void testPutAfterCommit() {
+        EventSourceIdCache cache = new EventSourceIdCache(10);
+        TestTransactionRegistry registry = new TestTransactionRegistry();
+
+        cache.putAfterCommit(registry, createIds(createEventSource(1, "logTrack", "a"), 10001));
+        assertNull(cache.get(createEventSource(1, "logTrack", "a")), "An id should not be cached before the commit");
+
+        registry.synchronizations.get(0).afterCompletion(Status.STATUS_COMMITTED);
+        assertEquals(cache.get(createEventSource(1, "logTrack", "a")), Integer.valueOf(10001));
+    }
+
+    public void testNotPutAfterRollback() {
+        EventSourceIdCache cache = new EventSourceIdCache(10);
+        TestTransactionRegistry registry = new TestTransactionRegistry();
+
+        cache.putAfterCommit(registry, createIds(createEventSource(1, "logTrack", "a"), 10001));
+        registry.synchronizations.get(0).afterCompletion(Status.STATUS_ROLLEDBACK);
+
+        assertNull(cache.get(createEventSource(1, "logTrack", "a")),
+            "The id of an event source that was rolled back should not be cached");
+    }
+
+    public void testPutWithoutTransaction() {
+        EventSourceIdCache cache = new EventSourceIdCache(10);
+        TestTransactionRegistry registry = new TestTransactionRegistry();
+        registry.transactionKey = null;
+
+        cache.putAfterCommit(registry, createIds(createEventSource(1, "logTrack", "a"), 10001));
+
+        assertEquals(cache.get(createEventSource(1, "logTrack", "a")), Integer.valueOf(10001));
+        assertTrue(registry.synchronizations.isEmpty());
+    }
+
+    private static EventSource createEventSource(int resourceId, String definitionName, String location) {
+        return new EventSource(location, new EventDefinition(RESOURCE_TYPE, definitionName), new Resource(resourceId));
+    }
+
+    private static Map<EventSource, Integer> createIds(EventSource eventSource, int id) {
+        Map<EventSource, Integer> ids = new HashMap<EventSource, Integer>();
+        ids.put(eventSource, id);
+        return ids;
+    }
+
+    private static class TestTransactionRegistry implements TransactionSynchronizationRegistry {
+        private Object transactionKey = new Object();
+        private final List<Synchronization> synchronizations = new ArrayList<Synchronization>();
+
+        @Override
+        public Object getTransactionKey() {
+            return transactionKey;
+        }
+
+        @Override
+        public void putResource(Object key, Object value) {
+        }
+
+        @Override
+        public Object getResource(Object key) {
+            return null;
+        }
+
+        @Override
+        public void registerInterposedSynchronization(Synchronization sync) {
+            synchronizations.add(sync);
+        }
+
+        @Override
+        public int getTransactionStatus() {
+            return (transactionKey == null) ? Status.STATUS_NO_TRANSACTION : Status.STATUS_ACTIVE;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return false;
+        }
+    }
+}
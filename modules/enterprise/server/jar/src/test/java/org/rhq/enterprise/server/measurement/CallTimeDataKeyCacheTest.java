@@ -0,0 +1,69 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.measurement;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.testng.annotations.Test;
+
+@Test
+public class CallTimeDataKeyCacheTest {
+
+    public void testGetByScheduleAndDestination() {
+        CallTimeDataKeyCache cache = new CallTimeDataKeyCache(10);
+        cache.put(1, "/index.html", 10001);
+        cache.put(2, "/index.html", 10002);
+
+        assertEquals(cache.get(1, "/index.html"), Integer.valueOf(10001));
+        assertEquals(cache.get(2, "/index.html"), Integer.valueOf(10002));
+        assertNull(cache.get(1, "/login.html"));
+        assertNull(cache.get(3, "/index.html"));
+    }
+
+    public void testEviction() {
+        CallTimeDataKeyCache cache = new CallTimeDataKeyCache(2);
+        cache.put(1, "a", 10001);
+        cache.put(1, "b", 10002);
+        cache.get(1, "a");
+        cache.put(1, "c", 10003);
+
+        // b was the least recently used
+        assertEquals(cache.size(), 2);
+        assertNull(cache.get(1, "b"));
+        assertEquals(cache.get(1, "a"), Integer.valueOf(10001));
+        assertEquals(cache.get(1, "c"), Integer.valueOf(10003));
+    }
+
+    public void testRemoveSchedules() {
+        CallTimeDataKeyCache cache = new CallTimeDataKeyCache(10);
+        cache.put(1, "a", 10001);
+        cache.put(2, "a", 10002);
+        cache.put(2, "b", 10003);
+        cache.put(3, "a", 10004);
+
+        cache.removeSchedules(Arrays.asList(2, 3));
+
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.get(1, "a"), Integer.valueOf(10001));
+        assertNull(cache.get(2, "b"));
+    }
+}
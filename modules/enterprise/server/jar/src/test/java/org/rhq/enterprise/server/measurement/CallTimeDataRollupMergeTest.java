@@ -0,0 +1,89 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.measurement;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.db.Postgresql83DatabaseType;
+import org.rhq.core.domain.measurement.DataType;
+import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
+import org.rhq.core.domain.measurement.calltime.CallTimeData;
+import org.rhq.enterprise.server.measurement.CallTimeDataRollupMerge.Aggregate;
+import org.rhq.enterprise.server.measurement.CallTimeDataRollupMerge.Bucket;
+
+@Test
+public class CallTimeDataRollupMergeTest {
+
+    private static final long HOUR = 60L * 60L * 1000L;
+
+    public void testLateHours() {
+        long now = 100 * HOUR + 30 * 60 * 1000;
+        CallTimeData data = new CallTimeData(new MeasurementScheduleRequest(7, "calltime", 60000, true,
+            DataType.CALLTIME));
+        data.addAggregatedCallData("/a", new Date(10 * HOUR), new Date(10 * HOUR + 1000), 5, 50, 100, 4);
+        data.addAggregatedCallData("/b", new Date(11 * HOUR - 1000), new Date(11 * HOUR), 1, 2, 3, 2);
+        // the current hour has not been rolled up
+        data.addAggregatedCallData("/c", new Date(now - 2000), new Date(now - 1000), 1, 2, 3, 2);
+        Set<CallTimeData> dataSet = new HashSet<CallTimeData>();
+        dataSet.add(data);
+
+        Map<Bucket, Aggregate> hours = CallTimeDataRollupMerge.getLateHours(new Postgresql83DatabaseType(), dataSet,
+            now);
+        assertEquals(hours.size(), 2);
+
+        Aggregate a = hours.get(new Bucket(7, "/a", 10 * HOUR));
+        assertEquals(a.beginTime, 10 * HOUR);
+        assertEquals(a.endTime, 10 * HOUR + 1000);
+        assertEquals(a.minimum, 5.0);
+        assertEquals(a.maximum, 50.0);
+        assertEquals(a.total, 100.0);
+        assertEquals(a.count, 4);
+
+        // values belong to the hour they end in, as in the rollups
+        assertTrue(hours.containsKey(new Bucket(7, "/b", 11 * HOUR)));
+    }
+
+    public void testAggregateAdd() {
+        CallTimeData data = new CallTimeData(new MeasurementScheduleRequest(7, "calltime", 60000, true,
+            DataType.CALLTIME));
+        data.addAggregatedCallData("/a", new Date(10 * HOUR), new Date(10 * HOUR + 1000), 5, 50, 100, 4);
+        data.addAggregatedCallData("/b", new Date(10 * HOUR + 500), new Date(10 * HOUR + 2000), 1, 20, 30, 2);
+        Set<CallTimeData> dataSet = new HashSet<CallTimeData>();
+        dataSet.add(data);
+
+        Map<Bucket, Aggregate> hours = CallTimeDataRollupMerge.getLateHours(new Postgresql83DatabaseType(), dataSet,
+            20 * HOUR);
+        Aggregate a = new Aggregate(hours.get(new Bucket(7, "/a", 10 * HOUR)));
+        a.add(hours.get(new Bucket(7, "/b", 10 * HOUR)));
+        assertEquals(a.beginTime, 10 * HOUR);
+        assertEquals(a.endTime, 10 * HOUR + 2000);
+        assertEquals(a.minimum, 1.0);
+        assertEquals(a.maximum, 50.0);
+        assertEquals(a.total, 130.0);
+        assertEquals(a.count, 6);
+    }
+}
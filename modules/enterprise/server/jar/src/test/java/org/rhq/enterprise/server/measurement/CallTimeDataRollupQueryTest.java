@@ -0,0 +1,106 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.measurement;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.util.OrderingField;
+import org.rhq.core.domain.util.PageOrdering;
+import org.rhq.enterprise.server.measurement.CallTimeDataRollupQuery.SortColumn;
+
+@Test
+public class CallTimeDataRollupQueryTest {
+
+    private static final long HOUR = 60L * 60L * 1000L;
+    private static final long DAY = 24L * HOUR;
+
+    public void testNothingRolledUp() {
+        assertNull(CallTimeDataRollupQuery.getRollupWindow(10 * DAY, 12 * DAY, null, null));
+    }
+
+    public void testNoWholeHourAfterTheFirstHour() {
+        // the first hour, 10:00 to 11:00, is read from the raw values
+        assertNull(CallTimeDataRollupQuery.getRollupWindow(10 * HOUR - 1, 11 * HOUR + 30, 100 * HOUR, null));
+    }
+
+    public void testHoursOnly() {
+        long[] window = CallTimeDataRollupQuery.getRollupWindow(10 * DAY + 2 * HOUR + 1, 10 * DAY + 8 * HOUR + 1,
+            11 * DAY, 9 * DAY);
+        assertEquals(window, new long[] { 10 * DAY + 4 * HOUR, 10 * DAY + 8 * HOUR, 10 * DAY + 8 * HOUR,
+            10 * DAY + 8 * HOUR });
+    }
+
+    public void testHoursLimitedByHourlyRollups() {
+        long[] window = CallTimeDataRollupQuery.getRollupWindow(10 * DAY, 10 * DAY + 8 * HOUR, 10 * DAY + 5 * HOUR,
+            null);
+        assertEquals(window, new long[] { 10 * DAY + HOUR, 10 * DAY + 6 * HOUR, 10 * DAY + 6 * HOUR,
+            10 * DAY + 6 * HOUR });
+    }
+
+    public void testDaysBetweenHours() {
+        long[] window = CallTimeDataRollupQuery.getRollupWindow(10 * DAY + 20 * HOUR, 14 * DAY + 3 * HOUR,
+            15 * DAY, 13 * DAY);
+        assertEquals(window, new long[] { 10 * DAY + 21 * HOUR, 11 * DAY, 14 * DAY, 14 * DAY + 3 * HOUR });
+    }
+
+    public void testDaysLimitedByDailyRollups() {
+        long[] window = CallTimeDataRollupQuery.getRollupWindow(10 * DAY + 20 * HOUR, 14 * DAY + 3 * HOUR,
+            15 * DAY, 11 * DAY);
+        assertEquals(window, new long[] { 10 * DAY + 21 * HOUR, 11 * DAY, 12 * DAY, 14 * DAY + 3 * HOUR });
+    }
+
+    public void testNoDayRolledUp() {
+        long[] window = CallTimeDataRollupQuery.getRollupWindow(10 * DAY + 20 * HOUR, 14 * DAY + 3 * HOUR,
+            15 * DAY, null);
+        assertEquals(window, new long[] { 10 * DAY + 21 * HOUR, 11 * DAY, 11 * DAY, 14 * DAY + 3 * HOUR });
+    }
+
+    public void testSortColumns() {
+        assertEquals(SortColumn.forField("SUM(calltimedatavalue.total)/SUM(calltimedatavalue.count)"),
+            SortColumn.AVERAGE);
+        assertEquals(SortColumn.forField("calltimedatavalue.key.callDestination"), SortColumn.DESTINATION);
+        assertEquals(SortColumn.forField("key.callDestination"), SortColumn.DESTINATION);
+        assertEquals(SortColumn.forField("minimum"), SortColumn.MINIMUM);
+        assertEquals(SortColumn.forField("maximum"), SortColumn.MAXIMUM);
+        assertEquals(SortColumn.forField("average"), SortColumn.AVERAGE);
+        assertEquals(SortColumn.forField("total"), SortColumn.TOTAL);
+        assertEquals(SortColumn.forField("count"), SortColumn.COUNT);
+        assertNull(SortColumn.forField("value.beginTime"));
+    }
+
+    public void testOrderBy() {
+        List<OrderingField> orderingFields = new ArrayList<OrderingField>();
+        assertEquals(CallTimeDataRollupQuery.getOrderBy(orderingFields), "");
+
+        // the destinations are sorted by the database, in its collation
+        orderingFields.add(new OrderingField("SUM(value.total)/SUM(value.count)", PageOrdering.DESC));
+        orderingFields.add(new OrderingField("key.callDestination", PageOrdering.ASC));
+        assertEquals(CallTimeDataRollupQuery.getOrderBy(orderingFields),
+            " ORDER BY SUM(u.TOTAL) / SUM(u.COUNT) DESC, k.CALL_DESTINATION ASC");
+
+        orderingFields.add(new OrderingField("value.beginTime", PageOrdering.ASC));
+        assertNull(CallTimeDataRollupQuery.getOrderBy(orderingFields));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.measurement;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import org.testng.annotations.Test;
+
+import org.rhq.server.metrics.domain.AggregateNumericMetric;
+import org.rhq.server.metrics.domain.Bucket;
+
+/**
+ * Test the in-memory computation of the OOB factors of 1 hr aggregates against baselines.
+ */
+@Test
+public class OOBFactorTest {
+
+    public void testPastLowerBound() {
+        AggregateNumericMetric metric = new AggregateNumericMetric(1, Bucket.ONE_HOUR, 3.8, 2.11, 4.6, 0L);
+        assertEquals(MeasurementOOBManagerBean.computeOOBFactor(metric, 3.9, 5.2), Integer.valueOf(138));
+    }
+
+    public void testPastUpperBound() {
+        AggregateNumericMetric metric = new AggregateNumericMetric(2, Bucket.ONE_HOUR, 9.492, 9.481, 9.53, 0L);
+        assertEquals(MeasurementOOBManagerBean.computeOOBFactor(metric, 7.38, 7.49), Integer.valueOf(1855));
+    }
+
+    public void testWithinBounds() {
+        AggregateNumericMetric metric = new AggregateNumericMetric(4, Bucket.ONE_HOUR, 3.15, 2.96, 3.59, 0L);
+        assertNull(MeasurementOOBManagerBean.computeOOBFactor(metric, 2.95, 3.6));
+    }
+
+    public void testNarrowBaseline() {
+        AggregateNumericMetric metric = new AggregateNumericMetric(5, Bucket.ONE_HOUR, 9.0, 8.0, 10.0, 0L);
+        assertNull(MeasurementOOBManagerBean.computeOOBFactor(metric, 1.0, 1.05));
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.measurement;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test the de-duplication of the trait values and their truncation to the size of the database column.
+ */
+@Test
+public class TraitValueCacheTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public void testUnchangedValue() {
+        TraitValueCache cache = new TraitValueCache(10, 60000L);
+        assertFalse(cache.isUnchanged(1, "4.14.0"));
+        cache.put(1, "4.14.0");
+        assertTrue(cache.isUnchanged(1, "4.14.0"));
+        assertFalse(cache.isUnchanged(1, "4.14.1"));
+        assertFalse(cache.isUnchanged(1, null));
+        assertFalse(cache.isUnchanged(2, "4.14.0"));
+
+        cache.put(2, null);
+        assertTrue(cache.isUnchanged(2, null));
+        assertFalse(cache.isUnchanged(2, ""));
+    }
+
+    public void testEviction() {
+        TraitValueCache cache = new TraitValueCache(2, 60000L);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        assertTrue(cache.isUnchanged(1, "a"));
+        cache.put(3, "c");
+        // 2 was the least recently used
+        assertEquals(cache.size(), 2);
+        assertFalse(cache.isUnchanged(2, "b"));
+        assertTrue(cache.isUnchanged(1, "a"));
+        assertTrue(cache.isUnchanged(3, "c"));
+    }
+
+    public void testExpiry() throws Exception {
+        TraitValueCache cache = new TraitValueCache(10, 1L);
+        cache.put(1, "a");
+        Thread.sleep(10L);
+        assertFalse(cache.isUnchanged(1, "a"));
+        assertEquals(cache.size(), 0);
+    }
+
+    public void testPutAfterCommit() {
+        TraitValueCache cache = new TraitValueCache(10, 60000L);
+        TestTransactionRegistry registry = new TestTransactionRegistry();
+
+        cache.putAfterCommit(registry, Collections.singletonMap(1, "a"));
+        assertFalse(cache.isUnchanged(1, "a"), "A value should not be cached before the commit");
+
+        registry.synchronizations.get(0).afterCompletion(Status.STATUS_COMMITTED);
+        assertTrue(cache.isUnchanged(1, "a"));
+    }
+
+    public void testPutAfterRollback() {
+        TraitValueCache cache = new TraitValueCache(10, 60000L);
+        TestTransactionRegistry registry = new TestTransactionRegistry();
+
+        cache.putAfterCommit(registry, Collections.singletonMap(1, "a"));
+        registry.synchronizations.get(0).afterCompletion(Status.STATUS_ROLLEDBACK);
+        assertFalse(cache.isUnchanged(1, "a"), "A value that was rolled back should not be cached");
+        assertEquals(cache.size(), 0);
+    }
+
+    public void testPutWithoutTransaction() {
+        TraitValueCache cache = new TraitValueCache(10, 60000L);
+        TestTransactionRegistry registry = new TestTransactionRegistry();
+        registry.transactionKey = null;
+
+        cache.putAfterCommit(registry, Collections.singletonMap(1, "a"));
+        assertTrue(cache.isUnchanged(1, "a"));
+        assertTrue(registry.synchronizations.isEmpty());
+    }
+
+    public void testTruncateShortValue() {
+        String value = "localhost.localdomain";
+        assertSame(MeasurementDataManagerBean.truncateTraitValue(value, 4000), value);
+        assertNull(MeasurementDataManagerBean.truncateTraitValue(null, 4000));
+    }
+
+    public void testTruncateMultiByteValue() {
+        // 2 bytes, 3 bytes and 4 bytes (a surrogate pair) in UTF-8
+        String value = "a\u00e9\u20ac\ud83d\ude00b";
+        assertEquals(MeasurementDataManagerBean.truncateTraitValue(value, 11), value);
+        assertEquals(MeasurementDataManagerBean.truncateTraitValue(value, 10), "a\u00e9\u20ac\ud83d\ude00");
+        // never split the surrogate pair
+        assertEquals(MeasurementDataManagerBean.truncateTraitValue(value, 9), "a\u00e9\u20ac");
+        assertEquals(MeasurementDataManagerBean.truncateTraitValue(value, 6), "a\u00e9\u20ac");
+        assertEquals(MeasurementDataManagerBean.truncateTraitValue(value, 5), "a\u00e9");
+    }
+
+    public void testTruncateToColumnSize() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1500; i++) {
+            builder.append("\u00e9x\u20ac");
+        }
+        String truncated = MeasurementDataManagerBean.truncateTraitValue(builder.toString(), 4000);
+        int bytes = truncated.getBytes(UTF_8).length;
+        assertTrue(bytes <= 4000, "too long: " + bytes);
+        assertTrue(bytes > 4000 - 3, "too short: " + bytes);
+        assertTrue(builder.toString().startsWith(truncated));
+    }
+
+    private static class TestTransactionRegistry implements TransactionSynchronizationRegistry {
+        private Object transactionKey = new Object();
+        private final List<Synchronization> synchronizations = new ArrayList<Synchronization>();
+
+        @Override
+        public Object getTransactionKey() {
+            return transactionKey;
+        }
+
+        @Override
+        public void putResource(Object key, Object value) {
+        }
+
+        @Override
+        public Object getResource(Object key) {
+            return null;
+        }
+
+        @Override
+        public void registerInterposedSynchronization(Synchronization sync) {
+            synchronizations.add(sync);
+        }
+
+        @Override
+        public int getTransactionStatus() {
+            return (transactionKey == null) ? Status.STATUS_NO_TRANSACTION : Status.STATUS_ACTIVE;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return false;
+        }
+    }
+}
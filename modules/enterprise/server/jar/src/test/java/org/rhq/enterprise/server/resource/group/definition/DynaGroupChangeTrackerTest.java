@@ -0,0 +1,180 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+package org.rhq.enterprise.server.resource.group.definition;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.testng.annotations.Test;
+
+import org.rhq.enterprise.server.resource.group.definition.framework.ExpressionEvaluator.Dependency;
+
+/**
+ * Test that doesn't require any EE infrastructure - just the in-memory bookkeeping of inventory changes.
+ */
+@Test
+public class DynaGroupChangeTrackerTest {
+
+    public void testChanges() {
+        DynaGroupChangeTracker tracker = new DynaGroupChangeTracker(100);
+        assertTrue(tracker.takeChanges().isEmpty());
+
+        tracker.resourceChanged(null, Dependency.AVAILABILITY, 1);
+        tracker.resourcesChanged(null, Dependency.AVAILABILITY, Arrays.asList(1, 2));
+        tracker.resourceChanged(null, Dependency.INVENTORY_STATUS, 3);
+        tracker.traitsChanged(null, Arrays.asList(10, 11));
+
+        DynaGroupChangeTracker.Changes changes = tracker.takeChanges();
+        assertFalse(changes.isEmpty());
+        assertFalse(changes.isOverflowed());
+        assertEquals(changes.getResourceIds(Dependency.AVAILABILITY), new HashSet<Integer>(Arrays.asList(1, 2)));
+        assertEquals(changes.getResourceIds(Dependency.INVENTORY_STATUS), Collections.singleton(3));
+        assertTrue(changes.getResourceIds(Dependency.RESOURCE).isEmpty());
+        assertEquals(changes.getTraitScheduleIds(), new HashSet<Integer>(Arrays.asList(10, 11)));
+
+        assertTrue(tracker.takeChanges().isEmpty(), "Changes should only be taken once");
+    }
+
+    public void testOverflow() {
+        DynaGroupChangeTracker tracker = new DynaGroupChangeTracker(3);
+        tracker.resourcesChanged(null, Dependency.RESOURCE, Arrays.asList(1, 2, 3));
+        tracker.resourceChanged(null, Dependency.RESOURCE, 3);
+        assertFalse(tracker.takeChanges().isOverflowed(), "Changes recorded twice should only count once");
+
+        tracker.resourcesChanged(null, Dependency.RESOURCE, Arrays.asList(1, 2, 3));
+        tracker.traitsChanged(null, Collections.singleton(10));
+        tracker.resourceChanged(null, Dependency.AVAILABILITY, 4);
+
+        DynaGroupChangeTracker.Changes changes = tracker.takeChanges();
+        assertFalse(changes.isEmpty());
+        assertTrue(changes.isOverflowed());
+        assertTrue(changes.getResourceIds(Dependency.RESOURCE).isEmpty());
+        assertTrue(changes.getResourceIds(Dependency.AVAILABILITY).isEmpty());
+        assertTrue(changes.getTraitScheduleIds().isEmpty());
+
+        assertFalse(tracker.takeChanges().isOverflowed());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testTraitChangesByResource() {
+        new DynaGroupChangeTracker(100).resourceChanged(null, Dependency.TRAIT, 1);
+    }
+
+    public void testChangesRecordedOnCommit() {
+        DynaGroupChangeTracker tracker = new DynaGroupChangeTracker(100);
+        TestTransactionRegistry transaction = new TestTransactionRegistry();
+        tracker.resourceChanged(transaction, Dependency.RESOURCE, 1);
+        tracker.traitsChanged(transaction, Collections.singleton(10));
+        assertEquals(transaction.synchronizations.size(), 1, "One synchronization per transaction");
+        assertTrue(tracker.takeChanges().isEmpty(), "Changes should not be visible before the commit");
+
+        transaction.complete(Status.STATUS_COMMITTED);
+        DynaGroupChangeTracker.Changes changes = tracker.takeChanges();
+        assertEquals(changes.getResourceIds(Dependency.RESOURCE), Collections.singleton(1));
+        assertEquals(changes.getTraitScheduleIds(), Collections.singleton(10));
+    }
+
+    public void testChangesDroppedOnRollback() {
+        DynaGroupChangeTracker tracker = new DynaGroupChangeTracker(100);
+        TestTransactionRegistry transaction = new TestTransactionRegistry();
+        tracker.resourceChanged(transaction, Dependency.AVAILABILITY, 1);
+        transaction.complete(Status.STATUS_ROLLEDBACK);
+        assertTrue(tracker.takeChanges().isEmpty());
+    }
+
+    public void testRequeue() {
+        DynaGroupChangeTracker tracker = new DynaGroupChangeTracker(100);
+        tracker.resourceChanged(null, Dependency.RESOURCE, 1);
+        tracker.resourceChanged(null, Dependency.AVAILABILITY, 2);
+        tracker.traitsChanged(null, Collections.singleton(10));
+        DynaGroupChangeTracker.Changes taken = tracker.takeChanges();
+
+        tracker.resourceChanged(null, Dependency.RESOURCE, 3);
+        tracker.requeueChanges(taken, EnumSet.of(Dependency.RESOURCE, Dependency.TRAIT));
+        DynaGroupChangeTracker.Changes changes = tracker.takeChanges();
+        assertEquals(changes.getResourceIds(Dependency.RESOURCE), new HashSet<Integer>(Arrays.asList(1, 3)));
+        assertTrue(changes.getResourceIds(Dependency.AVAILABILITY).isEmpty());
+        assertEquals(changes.getTraitScheduleIds(), Collections.singleton(10));
+
+        tracker = new DynaGroupChangeTracker(1);
+        tracker.resourcesChanged(null, Dependency.RESOURCE, Arrays.asList(1, 2));
+        tracker.requeueChanges(tracker.takeChanges(), EnumSet.of(Dependency.AVAILABILITY));
+        assertTrue(tracker.takeChanges().isOverflowed(), "An overflow should be requeued as such");
+    }
+
+    private static class TestTransactionRegistry implements TransactionSynchronizationRegistry {
+        private final Object transactionKey = new Object();
+        private final Map<Object, Object> resources = new HashMap<Object, Object>();
+        private final List<Synchronization> synchronizations = new ArrayList<Synchronization>();
+
+        void complete(int status) {
+            for (Synchronization synchronization : synchronizations) {
+                synchronization.afterCompletion(status);
+            }
+        }
+
+        @Override
+        public Object getTransactionKey() {
+            return transactionKey;
+        }
+
+        @Override
+        public void putResource(Object key, Object value) {
+            resources.put(key, value);
+        }
+
+        @Override
+        public Object getResource(Object key) {
+            return resources.get(key);
+        }
+
+        @Override
+        public void registerInterposedSynchronization(Synchronization sync) {
+            synchronizations.add(sync);
+        }
+
+        @Override
+        public int getTransactionStatus() {
+            return Status.STATUS_ACTIVE;
+        }
+
+        @Override
+        public void setRollbackOnly() {
+        }
+
+        @Override
+        public boolean getRollbackOnly() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.enterprise.server.util;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import org.rhq.core.domain.auth.Subject;
+import org.rhq.core.domain.criteria.ResourceCriteria;
+import org.rhq.core.domain.util.OrderingField;
+import org.rhq.core.domain.util.PageControl;
+import org.rhq.core.domain.util.PageOrdering;
+
+@Test
+public class CriteriaQueryGeneratorTest {
+
+    public void testNoPagingAfterId() {
+        ResourceCriteria criteria = new ResourceCriteria();
+        criteria.setPaging(1, 100);
+
+        String query = getQueryString(criteria);
+        assertFalse(query.contains(":pagingAfterId"), query);
+    }
+
+    public void testPagingAfterId() {
+        ResourceCriteria criteria = new ResourceCriteria();
+        criteria.setPaging(1, 100);
+        criteria.setPagingAfterId(99);
+
+        String query = getQueryString(criteria);
+        assertTrue(query.contains("AND ( resource.id > :pagingAfterId )"), query);
+        assertTrue(query.contains("ORDER BY resource.id"), query);
+    }
+
+    public void testPagingAfterIdDescending() {
+        ResourceCriteria criteria = new ResourceCriteria();
+        criteria.setPageControl(new PageControl(1, 100, new OrderingField("id", PageOrdering.DESC)));
+        criteria.setPagingAfterId(99);
+
+        String query = getQueryString(criteria);
+        assertTrue(query.contains("AND ( resource.id < :pagingAfterId )"), query);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testPagingAfterIdSortedOnOtherFields() {
+        ResourceCriteria criteria = new ResourceCriteria();
+        criteria.addSortName(PageOrdering.ASC);
+        criteria.setPaging(1, 100);
+        criteria.setPagingAfterId(99);
+
+        getQueryString(criteria);
+    }
+
+    private String getQueryString(ResourceCriteria criteria) {
+        // with a subject of its own the generator does not look up the overlord; ResourceCriteria always filters on
+        // the inventory status, so keyset paging is a further condition
+        return new CriteriaQueryGenerator(new Subject(), criteria).getQueryString(false);
+    }
+}
@@ -20,6 +20,7 @@ package org.rhq.enterprise.server.util;
 
 import static java.util.Arrays.asList;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -90,6 +91,32 @@ public class CriteriaQueryTest {
         }
     }
 
+    /**
+     * Serves entities 0 to totalSize - 1 by keyset, or by page number (of the overrides if any) when not seeking.
+     */
+    private static class KeysetCriteriaQueryExecutor implements CriteriaQueryExecutor<FakeEntity, FakeEntityCriteria> {
+
+        private int totalSize;
+
+        private List<Integer> pagingAfterIds = new ArrayList<Integer>();
+
+        public KeysetCriteriaQueryExecutor(int totalSize) {
+            this.totalSize = totalSize;
+        }
+
+        @Override
+        public PageList<FakeEntity> execute(FakeEntityCriteria criteria) {
+            pagingAfterIds.add(criteria.getPagingAfterId());
+            PageControl pc = CriteriaQueryGenerator.getPageControl(criteria);
+            int start = (criteria.getPagingAfterId() != null) ? criteria.getPagingAfterId() + 1 : pc.getStartRow();
+            List<FakeEntity> entities = new ArrayList<FakeEntity>();
+            for (int id = start; id < Math.min(start + pc.getPageSize(), totalSize); id++) {
+                entities.add(new FakeEntity(id));
+            }
+            return new PageList<FakeEntity>(entities, pc);
+        }
+    }
+
     @Test
     public void executeQueryThatReturnsASinglePageOfResults() {
         List<FakeEntity> expected = asList(new FakeEntity(1), new FakeEntity(2));
@@ -273,6 +300,45 @@ public class CriteriaQueryTest {
         assertEquals(num, realResults, "Unexpected number for results returned");
     }
 
+    @Test
+    public void testKeysetPaging() {
+        KeysetCriteriaQueryExecutor executor = new KeysetCriteriaQueryExecutor(250);
+
+        FakeEntityCriteria criteria = new FakeEntityCriteria();
+        criteria.setPaging(0, 100);
+
+        CriteriaQuery<FakeEntity, FakeEntityCriteria> query = new CriteriaQuery<FakeEntity, FakeEntityCriteria>(
+            criteria, executor);
+
+        int num = 0;
+        for (FakeEntity entity : query) {
+            assertEquals(entity.getId(), num++);
+        }
+
+        assertEquals(num, 250, "Unexpected number for results returned");
+        assertEquals(executor.pagingAfterIds, asList(null, 99, 199, 249), "The pages should start after the last id");
+        assertNull(criteria.getPagingAfterId(), "The criteria should not seek past the end once iterated");
+    }
+
+    @Test
+    public void testNoKeysetPagingWithPageControlOverrides() {
+        KeysetCriteriaQueryExecutor executor = new KeysetCriteriaQueryExecutor(250);
+
+        FakeEntityCriteria criteria = new FakeEntityCriteria();
+        criteria.setPageControl(new PageControl(0, 100));
+
+        CriteriaQuery<FakeEntity, FakeEntityCriteria> query = new CriteriaQuery<FakeEntity, FakeEntityCriteria>(
+            criteria, executor);
+
+        int num = 0;
+        for (FakeEntity entity : query) {
+            assertEquals(entity.getId(), num++);
+        }
+
+        assertEquals(num, 250, "Unexpected number for results returned");
+        assertEquals(executor.pagingAfterIds, asList(null, null, null, null), "Page overrides should not be seeked");
+    }
+
     @Test
     public void singleResultTest() {
         // This test doesn't really fit here but I;m adding it for convenience
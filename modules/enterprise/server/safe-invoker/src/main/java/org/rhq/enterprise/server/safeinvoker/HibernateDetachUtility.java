@@ -18,7 +18,7 @@
  */
 package org.rhq.enterprise.server.safeinvoker;
 
-import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.Constructor;
@@ -34,6 +34,8 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
@@ -84,6 +86,14 @@ public class HibernateDetachUtility {
 
     static HashCodeGenerator hashCodeGenerator = new SystemHashCodeGenerator();
 
+    // the fields of each class that can hold something to scrub, already made accessible (see getFieldsToClean)
+    private static final ConcurrentMap<Class<?>, Field[]> fieldsToCleanByClass =
+        new ConcurrentHashMap<Class<?>, Field[]>();
+
+    // the bean properties of each class, for JAXB serialization
+    private static final ConcurrentMap<Class<?>, PropertyDescriptor[]> propertiesByClass =
+        new ConcurrentHashMap<Class<?>, PropertyDescriptor[]>();
+
     // be able to configure the deepest recursion this utility will be allowed to go (see BZ 702109 that precipitated this need)
     private static final String DEPTH_ALLOWED_SYSPROP = "rhq.server.hibernate-detach-utility.depth-allowed";
     private static final String THROW_EXCEPTION_ON_DEPTH_LIMIT_SYSPROP = "rhq.server.hibernate-detach-utility.throw-exception-on-depth-limit";
@@ -142,13 +152,12 @@ public class HibernateDetachUtility {
 
     public static void nullOutUninitializedFields(Object value, SerializationType serializationType) throws Exception {
         long start = System.currentTimeMillis();
-        Map<Integer, Object> checkedObjectMap = new HashMap<Integer, Object>();
-        Map<Integer, List<Object>> checkedObjectCollisionMap = new HashMap<Integer, List<Object>>();
-        nullOutUninitializedFields(value, checkedObjectMap, checkedObjectCollisionMap, 0, serializationType);
+        IdentitySet checkedObjects = new IdentitySet();
+        nullOutUninitializedFields(value, checkedObjects, 0, serializationType);
         long duration = System.currentTimeMillis() - start;
 
         if (dumpStackOnThresholdLimit) {
-            int numObjectsProcessed = checkedObjectMap.size();
+            int numObjectsProcessed = checkedObjects.size();
             if (duration > millisThresholdLimit || numObjectsProcessed > sizeThresholdLimit) {
                 String rootObjectString = (value != null) ? value.getClass().toString() : "null";
                 LOG.warn("Detached [" + numObjectsProcessed + "] objects in [" + duration + "]ms from root object ["
@@ -157,34 +166,23 @@ public class HibernateDetachUtility {
         } else {
             // 10s is really long, log SOMETHING
             if (duration > 10000L && LOG.isDebugEnabled()) {
-                LOG.debug("Detached [" + checkedObjectMap.size() + "] objects in [" + duration + "]ms");
+                LOG.debug("Detached [" + checkedObjects.size() + "] objects in [" + duration + "]ms");
             }
         }
-
-        // help the garbage collector be clearing these before we leave
-        checkedObjectMap.clear();
-        checkedObjectCollisionMap.clear();
     }
 
     /**
      * @param value the object needing to be detached/scrubbed.
-     * @param checkedObjectMap This maps identityHashCodes to Objects we've already detached. In that way we can
-     * quickly determine if we've already done the work for the incoming value and avoid taversing it again. This
-     * works well almost all of the time, but it is possible that two different objects can have the same identity hash
-     * (conflicts are always possible with a hash). In that case we utilize the checkedObjectCollisionMap (see below).
-     * @param checkedObjectCollisionMap checkedObjectMap maps the identityhash to the *first* object with that hash. In
-     * most cases there will only be mapping for one hash, but it is possible to encounter the same hash for multiple
-     * objects, especially on 32bit or IBM JVMs. It is important to know if an object has already been detached
-     * because if it is somehow self-referencing, we have to stop the recursion. This map holds the 2nd..Nth mapping
-     * for a single hash and is used to ensure we never try to detach an object already processed.
+     * @param checkedObjects The objects we've already detached. In that way we can quickly determine if we've already
+     * done the work for the incoming value and avoid taversing it again. It is important to know if an object has
+     * already been detached because if it is somehow self-referencing, we have to stop the recursion.
      * @param depth used to stop infinite recursion, defaults to a depth we don't expectto see, but it is configurable.
      * @param serializationType
      * @throws Exception if a problem occurs
      * @throws IllegalStateException if the recursion depth limit is reached
      */
-    private static void nullOutUninitializedFields(Object value, Map<Integer, Object> checkedObjectMap,
-        Map<Integer, List<Object>> checkedObjectCollisionMap, int depth, SerializationType serializationType)
-        throws Exception {
+    private static void nullOutUninitializedFields(Object value, IdentitySet checkedObjects, int depth,
+        SerializationType serializationType) throws Exception {
         if (depth > depthAllowed) {
             String warningMessage = "Recursed too deep [" + depth + " > " + depthAllowed
                 + "], will not attempt to detach object of type ["
@@ -204,76 +202,9 @@ public class HibernateDetachUtility {
             return;
         }
 
-        // System.identityHashCode is a hash code, and therefore not guaranteed to be unique. And we've seen this
-        // be the case.  So, we use it to try and avoid duplicating work, but handle the case when two objects may
-        // have an identity crisis.
-        Integer valueIdentity = hashCodeGenerator.getHashCode(value);
-        Object checkedObject = checkedObjectMap.get(valueIdentity);
-
-        if (null == checkedObject) {
-            // if we have not yet encountered an object with this hash, store it in our map and start scrubbing
-            checkedObjectMap.put(valueIdentity, value);
-
-        } else if (value == checkedObject) {
+        if (!checkedObjects.add(value)) {
             // if we have scrubbed this already, no more work to be done
             return;
-
-        } else {
-            // we have a situation where multiple objects have the same identity hashcode, work with our
-            // collision map to decide whether it needs to be scrubbed and add if necessary.
-            // Note that this code block is infrequently hit, it is by design that we've pushed the extra
-            // work, map, etc, involved for this infrequent case into its own block. The standard cases must
-            // be as fast and lean as possible.
-
-            boolean alreadyDetached = false;
-            List<Object> collisionObjects = checkedObjectCollisionMap.get(valueIdentity);
-
-            if (null == collisionObjects) {
-                // if this is the 2nd occurrence for this hash, create a new map entry
-                collisionObjects = new ArrayList<Object>(1);
-                checkedObjectCollisionMap.put(valueIdentity, collisionObjects);
-
-            } else {
-                // if we have scrubbed this already, no more work to be done
-                for (Object collisionObject : collisionObjects) {
-                    if (value == collisionObject) {
-                        alreadyDetached = true;
-                        break;
-                    }
-                }
-            }
-
-            if (LOG.isDebugEnabled()) {
-                StringBuilder message = new StringBuilder("\n\tIDENTITY HASHCODE COLLISION [hash=");
-                message.append(valueIdentity);
-                message.append(", alreadyDetached=");
-                message.append(alreadyDetached);
-                message.append("]");
-                message.append("\n\tCurrent  : ");
-                message.append(value.getClass().getName());
-                message.append("\n\t    ");
-                message.append(value);
-                message.append("\n\tPrevious : ");
-                message.append(checkedObject.getClass().getName());
-                message.append("\n\t    ");
-                message.append(checkedObject);
-                for (Object collisionObject : collisionObjects) {
-                    message.append("\n\tPrevious : ");
-                    message.append(collisionObject.getClass().getName());
-                    message.append("\n\t    ");
-                    message.append(collisionObject);
-                }
-
-                LOG.debug(message);
-            }
-
-            // now that we've done our logging, if already detached we're done. Otherwise add to the list of collision
-            // objects for this hash, and start scrubbing
-            if (alreadyDetached) {
-                return;
-            }
-
-            collisionObjects.add(value);
         }
 
         // Perform the detaching
@@ -285,7 +216,7 @@ public class HibernateDetachUtility {
                 if (replaceEntry != null) {
                     objArray[i] = replaceEntry;
                 }
-                nullOutUninitializedFields(objArray[i], checkedObjectMap, checkedObjectCollisionMap, depth + 1,
+                nullOutUninitializedFields(objArray[i], checkedObjects, depth + 1,
                     serializationType);
             }
         } else if (value instanceof List) {
@@ -298,7 +229,7 @@ public class HibernateDetachUtility {
                     val = replace;
                     i.set(replace);
                 }
-                nullOutUninitializedFields(val, checkedObjectMap, checkedObjectCollisionMap, depth + 1,
+                nullOutUninitializedFields(val, checkedObjects, depth + 1,
                     serializationType);
             }
 
@@ -313,7 +244,7 @@ public class HibernateDetachUtility {
                     replacementItems.add(replacementItem);
                     item = replacementItem;
                 }
-                nullOutUninitializedFields(item, checkedObjectMap, checkedObjectCollisionMap, depth + 1,
+                nullOutUninitializedFields(item, checkedObjects, depth + 1,
                     serializationType);
             }
             collection.removeAll(itemsToBeReplaced);
@@ -346,9 +277,9 @@ public class HibernateDetachUtility {
 
             // now go through each item in the map and null out their internal fields
             for (Object key : originalMap.keySet()) {
-                nullOutUninitializedFields(originalMap.get(key), checkedObjectMap, checkedObjectCollisionMap,
+                nullOutUninitializedFields(originalMap.get(key), checkedObjects,
                     depth + 1, serializationType);
-                nullOutUninitializedFields(key, checkedObjectMap, checkedObjectCollisionMap, depth + 1,
+                nullOutUninitializedFields(key, checkedObjects, depth + 1,
                     serializationType);
             }
         } else if (value instanceof Enum) {
@@ -359,50 +290,62 @@ public class HibernateDetachUtility {
         if (serializationType == SerializationType.JAXB) {
             XmlAccessorType at = value.getClass().getAnnotation(XmlAccessorType.class);
             if (at != null && at.value() == XmlAccessType.FIELD) {
-                nullOutFieldsByFieldAccess(value, checkedObjectMap, checkedObjectCollisionMap, depth, serializationType);
+                nullOutFieldsByFieldAccess(value, checkedObjects, depth, serializationType);
             } else {
-                nullOutFieldsByAccessors(value, checkedObjectMap, checkedObjectCollisionMap, depth, serializationType);
+                nullOutFieldsByAccessors(value, checkedObjects, depth, serializationType);
             }
         } else if (serializationType == SerializationType.SERIALIZATION) {
-            nullOutFieldsByFieldAccess(value, checkedObjectMap, checkedObjectCollisionMap, depth, serializationType);
+            nullOutFieldsByFieldAccess(value, checkedObjects, depth, serializationType);
         }
 
     }
 
-    private static void nullOutFieldsByFieldAccess(Object object, Map<Integer, Object> checkedObjects,
-        Map<Integer, List<Object>> checkedObjectCollisionMap, int depth, SerializationType serializationType)
-        throws Exception {
-
-        Class tmpClass = object.getClass();
-        List<Field> fieldsToClean = new ArrayList<Field>();
-        while (tmpClass != null && tmpClass != Object.class) {
-            Field[] declaredFields = tmpClass.getDeclaredFields();
-            for (Field declaredField : declaredFields) {
-                // do not process static final or transient fields since they won't be serialized anyway
-                int modifiers = declaredField.getModifiers();
-                if (!((Modifier.isFinal(modifiers) && Modifier.isStatic(modifiers)) || Modifier.isTransient(modifiers))) {
-                    fieldsToClean.add(declaredField);
+    /**
+     * @return the fields of the class and its superclasses that can hold something to scrub, already made accessible.
+     * They are computed once per class, since walking the declared fields of the whole hierarchy is expensive when
+     * done for each object of big graphs.
+     */
+    private static Field[] getFieldsToClean(Class<?> clazz) {
+        Field[] fields = fieldsToCleanByClass.get(clazz);
+        if (fields == null) {
+            List<Field> fieldsToClean = new ArrayList<Field>();
+            for (Class<?> tmpClass = clazz; tmpClass != null && tmpClass != Object.class; tmpClass = tmpClass
+                .getSuperclass()) {
+                for (Field declaredField : tmpClass.getDeclaredFields()) {
+                    // do not process static final or transient fields since they won't be serialized anyway
+                    int modifiers = declaredField.getModifiers();
+                    if (!((Modifier.isFinal(modifiers) && Modifier.isStatic(modifiers)) || Modifier.isTransient(modifiers))
+                        && canHoldSomethingToClean(declaredField.getType())) {
+                        declaredField.setAccessible(true);
+                        fieldsToClean.add(declaredField);
+                    }
                 }
             }
-            tmpClass = tmpClass.getSuperclass();
+            fields = fieldsToClean.toArray(new Field[fieldsToClean.size()]);
+            fieldsToCleanByClass.putIfAbsent(clazz, fields);
         }
+        return fields;
+    }
 
-        nullOutFieldsByFieldAccess(object, fieldsToClean, checkedObjects, checkedObjectCollisionMap, depth,
-            serializationType);
+    /**
+     * Fields of primitive types, primitive arrays or final types like String or Integer never hold proxies, collections
+     * or anything we would traverse, unless the final type is one of ours.
+     */
+    private static boolean canHoldSomethingToClean(Class<?> type) {
+        if (type.isPrimitive() || (type.isArray() && type.getComponentType().isPrimitive())) {
+            return false;
+        }
+        if (type.isArray() || !Modifier.isFinal(type.getModifiers())) {
+            return true;
+        }
+        return type.getName().contains("org.rhq") || Collection.class.isAssignableFrom(type)
+            || Map.class.isAssignableFrom(type);
     }
 
-    private static void nullOutFieldsByFieldAccess(Object object, List<Field> classFields,
-        Map<Integer, Object> checkedObjects, Map<Integer, List<Object>> checkedObjectCollisionMap, int depth,
+    private static void nullOutFieldsByFieldAccess(Object object, IdentitySet checkedObjects, int depth,
         SerializationType serializationType) throws Exception {
 
-        boolean accessModifierFlag = false;
-        for (Field field : classFields) {
-            accessModifierFlag = false;
-            if (!field.isAccessible()) {
-                field.setAccessible(true);
-                accessModifierFlag = true;
-            }
-
+        for (Field field : getFieldsToClean(object.getClass())) {
             Object fieldValue = field.get(object);
 
             if (fieldValue instanceof HibernateProxy) {
@@ -420,7 +363,7 @@ public class HibernateDetachUtility {
 
                         assistClassName = assistClassName.substring(0, assistClassName.indexOf(assistNameDelimiter));
                         if (replacement != null && !replacement.getClass().getName().contains("hibernate")) {
-                            nullOutUninitializedFields(replacement, checkedObjects, checkedObjectCollisionMap,
+                            nullOutUninitializedFields(replacement, checkedObjects,
                                 depth + 1, serializationType);
 
                             field.set(object, replacement);
@@ -486,17 +429,17 @@ public class HibernateDetachUtility {
                             replacement = new ArrayList((List) fieldValue);
                         } else if (fieldValue instanceof Set) {
                             ArrayList l = new ArrayList((Set) fieldValue); // cannot recurse Sets, see BZ 688000
-                            nullOutUninitializedFields(l, checkedObjects, checkedObjectCollisionMap, depth + 1,
+                            nullOutUninitializedFields(l, checkedObjects, depth + 1,
                                 serializationType);
                             replacement = new HashSet(l); // convert it back to a Set since that's the type of the real collection, see BZ 688000
                             needToNullOutFields = false;
                         } else if (fieldValue instanceof Collection) {
                             replacement = new ArrayList((Collection) fieldValue);
                         }
-                        setField(object, field.getName(), replacement);
+                        field.set(object, replacement);
 
                         if (needToNullOutFields) {
-                            nullOutUninitializedFields(replacement, checkedObjects, checkedObjectCollisionMap,
+                            nullOutUninitializedFields(replacement, checkedObjects,
                                 depth + 1, serializationType);
                         }
                     }
@@ -505,13 +448,10 @@ public class HibernateDetachUtility {
                     if (fieldValue != null
                         && (fieldValue.getClass().getName().contains("org.rhq") || fieldValue instanceof Collection
                             || fieldValue instanceof Object[] || fieldValue instanceof Map))
-                        nullOutUninitializedFields((fieldValue), checkedObjects, checkedObjectCollisionMap, depth + 1,
+                        nullOutUninitializedFields((fieldValue), checkedObjects, depth + 1,
                             serializationType);
                 }
             }
-            if (accessModifierFlag) {
-                field.setAccessible(false);
-            }
         }
 
     }
@@ -534,14 +474,19 @@ public class HibernateDetachUtility {
         return replacement;
     }
 
-    private static void nullOutFieldsByAccessors(Object value, Map<Integer, Object> checkedObjects,
-        Map<Integer, List<Object>> checkedObjectCollisionMap, int depth, SerializationType serializationType)
-        throws Exception {
-        // Null out any collections that aren't loaded
-        BeanInfo bi = Introspector.getBeanInfo(value.getClass(), Object.class);
+    private static PropertyDescriptor[] getProperties(Class<?> clazz) throws IntrospectionException {
+        PropertyDescriptor[] properties = propertiesByClass.get(clazz);
+        if (properties == null) {
+            properties = Introspector.getBeanInfo(clazz, Object.class).getPropertyDescriptors();
+            propertiesByClass.putIfAbsent(clazz, properties);
+        }
+        return properties;
+    }
 
-        PropertyDescriptor[] pds = bi.getPropertyDescriptors();
-        for (PropertyDescriptor pd : pds) {
+    private static void nullOutFieldsByAccessors(Object value, IdentitySet checkedObjects, int depth,
+        SerializationType serializationType) throws Exception {
+        // Null out any collections that aren't loaded
+        for (PropertyDescriptor pd : getProperties(value.getClass())) {
             Object propertyValue = null;
             try {
                 propertyValue = pd.getReadMethod().invoke(value);
@@ -571,20 +516,20 @@ public class HibernateDetachUtility {
             } else {
                 if ((propertyValue instanceof Collection)
                     || ((propertyValue != null) && propertyValue.getClass().getName().startsWith("org.rhq.core.domain"))) {
-                    nullOutUninitializedFields(propertyValue, checkedObjects, checkedObjectCollisionMap, depth + 1,
+                    nullOutUninitializedFields(propertyValue, checkedObjects, depth + 1,
                         serializationType);
                 }
             }
         }
     }
 
-    private static void setField(Object object, String fieldName, Object newValue) {
+    private static void nullOutField(Object value, String fieldName) {
         try {
-            Field f = object.getClass().getDeclaredField(fieldName);
+            Field f = value.getClass().getDeclaredField(fieldName);
             if (f != null) {
                 // try to set the field this way
                 f.setAccessible(true);
-                f.set(object, newValue);
+                f.set(value, null);
             }
         } catch (NoSuchFieldException e) {
             // ignore this
@@ -593,18 +538,57 @@ public class HibernateDetachUtility {
         }
     }
 
-    private static void nullOutField(Object value, String fieldName) {
-        try {
-            Field f = value.getClass().getDeclaredField(fieldName);
-            if (f != null) {
-                // try to set the field this way
-                f.setAccessible(true);
-                f.set(value, null);
+    /**
+     * The objects already scrubbed during a detach. This is an open addressing hash set that compares objects by
+     * identity, so two different objects with the same identity hash code are told apart without any extra work. It
+     * does not allocate an entry per object either, which matters for the big graphs of large result pages.
+     */
+    static class IdentitySet {
+        private Object[] table = new Object[256];
+        private int size;
+
+        /**
+         * @return true if the object was added, false if it already was in the set
+         */
+        boolean add(Object value) {
+            int mask = table.length - 1;
+            int i = hash(value) & mask;
+            for (Object current = table[i]; current != null; current = table[i]) {
+                if (current == value) {
+                    return false;
+                }
+                i = (i + 1) & mask;
             }
-        } catch (NoSuchFieldException e) {
-            // ignore this
-        } catch (IllegalAccessException e) {
-            // ignore this
+            table[i] = value;
+            // keep the table at most 2/3 full so that probe sequences stay short
+            if (++size * 3 > table.length * 2) {
+                resize();
+            }
+            return true;
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void resize() {
+            Object[] oldTable = table;
+            table = new Object[oldTable.length * 2];
+            int mask = table.length - 1;
+            for (Object value : oldTable) {
+                if (value != null) {
+                    int i = hash(value) & mask;
+                    while (table[i] != null) {
+                        i = (i + 1) & mask;
+                    }
+                    table[i] = value;
+                }
+            }
+        }
+
+        private static int hash(Object value) {
+            int h = hashCodeGenerator.getHashCode(value).intValue();
+            return h ^ (h >>> 16);
         }
     }
 }
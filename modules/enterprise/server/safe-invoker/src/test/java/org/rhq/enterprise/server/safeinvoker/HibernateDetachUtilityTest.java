@@ -26,7 +26,9 @@ package org.rhq.enterprise.server.safeinvoker;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
+import org.hibernate.collection.internal.PersistentBag;
 import org.testng.annotations.Test;
 
 import org.rhq.enterprise.server.safeinvoker.HibernateDetachUtility;
@@ -34,6 +36,54 @@ import org.rhq.enterprise.server.safeinvoker.HibernateDetachUtility.Serializatio
 
 @Test
 public class HibernateDetachUtilityTest {
+
+    static class BaseBean implements Serializable {
+        private static final long serialVersionUID = 1L;
+        List<String> loaded;
+        List<String> lazy;
+    }
+
+    static class SubBean extends BaseBean {
+        private static final long serialVersionUID = 1L;
+        int count;
+        String name;
+    }
+
+    public void testPersistentCollectionsOfSuperclass() throws Exception {
+        SubBean bean = new SubBean();
+        bean.loaded = new PersistentBag(null, new ArrayList<String>(Arrays.asList("a", "b")));
+        bean.lazy = new PersistentBag();
+        bean.count = 2;
+        bean.name = "bean";
+
+        // twice, the second time with the cached fields of the classes
+        for (int i = 0; i < 2; i++) {
+            HibernateDetachUtility.nullOutUninitializedFields(bean, SerializationType.SERIALIZATION);
+            assert bean.loaded.getClass() == ArrayList.class : "Initialized collection not replaced: " + bean.loaded;
+            assert bean.loaded.equals(Arrays.asList("a", "b")) : bean.loaded;
+            assert bean.lazy == null : "Uninitialized collection not nulled out: " + bean.lazy;
+            assert bean.count == 2 && "bean".equals(bean.name);
+
+            bean.lazy = new PersistentBag();
+        }
+    }
+
+    public void testIdentitySet() {
+        HibernateDetachUtility.IdentitySet set = new HibernateDetachUtility.IdentitySet();
+        List<Object> objects = new ArrayList<Object>();
+        for (int i = 0; i < 10000; i++) {
+            // equal but not identical objects are different
+            objects.add(new String("object"));
+        }
+        for (Object object : objects) {
+            assert set.add(object);
+        }
+        for (Object object : objects) {
+            assert !set.add(object);
+        }
+        assert set.size() == objects.size() : set.size();
+    }
+
     /**
      * This tests the rare, but very possible, condition where two objects
      * have the same identity hashcode (System.identityHashCode(A) == System.identityHashCode(B))
@@ -95,6 +95,7 @@ import org.rhq.plugins.apache.augeas.ApacheAugeasNode;
 import org.rhq.plugins.apache.augeas.AugeasConfigurationApache;
 import org.rhq.plugins.apache.augeas.AugeasTreeBuilderApache;
 import org.rhq.plugins.apache.mapping.ApacheAugeasMapping;
+import org.rhq.plugins.apache.parser.ApacheConfigCache;
 import org.rhq.plugins.apache.parser.ApacheDirective;
 import org.rhq.plugins.apache.parser.ApacheDirectiveTree;
 import org.rhq.plugins.apache.util.ApacheBinaryInfo;
@@ -197,6 +198,9 @@ public class ApacheServerComponent implements AugeasRHQComponent, ResourceCompon
 
     private AvailabilityType lastKnownAvailability;
 
+    // parsed configuration shared by this server and its child resources
+    private final ApacheConfigCache configCache = new ApacheConfigCache();
+
     public void start(ResourceContext<PlatformComponent> resourceContext) throws Exception {
         LOG.info("Initializing Resource component for Apache Server [" + resourceContext.getResourceKey() + "]...");
 
@@ -348,6 +352,7 @@ public class ApacheServerComponent implements AugeasRHQComponent, ResourceCompon
             this.snmpClient.close();
         }
         this.lastKnownAvailability = null;
+        configCache.invalidate();
     }
 
     public String getBMXUrl() {
@@ -1111,6 +1116,8 @@ public class ApacheServerComponent implements AugeasRHQComponent, ResourceCompon
      * @throws Exception if the restart fails.
      */
     public void conditionalRestart() throws Exception {
+        // the configuration has just been written to, don't rely on the file timestamps only
+        configCache.invalidate();
         Configuration pluginConfig = resourceContext.getPluginConfiguration();
         boolean restart = pluginConfig.getSimple(PLUGIN_CONFIG_PROP_RESTART_AFTER_CONFIG_UPDATE).getBooleanValue();
         if (restart) {
@@ -1281,21 +1288,42 @@ public class ApacheServerComponent implements AugeasRHQComponent, ResourceCompon
         }
     }
 
+    /**
+     * The returned tree is a copy of the one cached for this server, which is only parsed again when the configuration
+     * files changed.
+     */
     public ApacheDirectiveTree parseFullConfiguration() {
-        String httpdConfPath = getHttpdConfFile().getAbsolutePath();
-        return ApacheServerDiscoveryComponent.parseFullConfiguration(httpdConfPath, binaryInfo.getRoot());
+        final String httpdConfPath = getHttpdConfFile().getAbsolutePath();
+        return configCache.getTree("full", new ApacheConfigCache.TreeBuilder() {
+            public ApacheDirectiveTree build() {
+                return ApacheServerDiscoveryComponent.parseFullConfiguration(httpdConfPath, binaryInfo.getRoot(),
+                    configCache);
+            }
+        });
     }
 
     public ApacheDirectiveTree parseRuntimeConfiguration(boolean suppressUnknownModuleWarnings) {
         return parseRuntimeConfiguration(suppressUnknownModuleWarnings,false);
     }
-    
-    public ApacheDirectiveTree parseRuntimeConfiguration(boolean suppressUnknownModuleWarnings, boolean keepConditional) {
-        String httpdConfPath = getHttpdConfFile().getAbsolutePath();
-        ProcessInfo processInfo = resourceContext.getNativeProcess();
 
-        return ApacheServerDiscoveryComponent.parseRuntimeConfiguration(httpdConfPath, processInfo, binaryInfo,
-            getModuleNames(), suppressUnknownModuleWarnings, keepConditional);
+    /**
+     * The returned tree is a copy of the one cached for this server, which is only parsed again when the configuration
+     * files changed or the process was restarted.
+     */
+    public ApacheDirectiveTree parseRuntimeConfiguration(final boolean suppressUnknownModuleWarnings,
+        final boolean keepConditional) {
+        final String httpdConfPath = getHttpdConfFile().getAbsolutePath();
+        final ProcessInfo processInfo = resourceContext.getNativeProcess();
+
+        // the runtime configuration also depends on the command line of the process
+        String key = "runtime," + suppressUnknownModuleWarnings + "," + keepConditional + ","
+            + ((processInfo != null) ? processInfo.getPid() : "");
+        return configCache.getTree(key, new ApacheConfigCache.TreeBuilder() {
+            public ApacheDirectiveTree build() {
+                return ApacheServerDiscoveryComponent.parseRuntimeConfiguration(httpdConfPath, processInfo,
+                    binaryInfo, getModuleNames(), suppressUnknownModuleWarnings, keepConditional, configCache);
+            }
+        });
     }
 
     public boolean isAugeasEnabled() {
@@ -55,6 +55,7 @@ import org.rhq.core.pluginapi.upgrade.ResourceUpgradeContext;
 import org.rhq.core.pluginapi.upgrade.ResourceUpgradeFacet;
 import org.rhq.core.pluginapi.util.FileUtils;
 import org.rhq.core.system.ProcessInfo;
+import org.rhq.plugins.apache.parser.ApacheConfigCache;
 import org.rhq.plugins.apache.parser.ApacheConfigReader;
 import org.rhq.plugins.apache.parser.ApacheDirective;
 import org.rhq.plugins.apache.parser.ApacheDirectiveTree;
@@ -653,9 +654,17 @@ public class ApacheServerDiscoveryComponent implements ResourceDiscoveryComponen
     }
 
     public static ApacheDirectiveTree parseFullConfiguration(String path, String serverRoot) {
+        return parseFullConfiguration(path, serverRoot, null);
+    }
+
+    /**
+     * @param configCache the cache to read the configuration files through, or null to read them directly
+     */
+    public static ApacheDirectiveTree parseFullConfiguration(String path, String serverRoot,
+        ApacheConfigCache configCache) {
         ApacheDirectiveTree tree = new ApacheDirectiveTree();
-        ApacheParser parser = new ApacheParserImpl(tree, serverRoot, null);
-        ApacheConfigReader.buildTree(path, parser);
+        ApacheParser parser = new ApacheParserImpl(tree, serverRoot, null, configCache);
+        ApacheConfigReader.buildTree(path, parser, configCache);
         return tree;
     }
 
@@ -670,6 +679,16 @@ public class ApacheServerDiscoveryComponent implements ResourceDiscoveryComponen
 
     public static ApacheDirectiveTree parseRuntimeConfiguration(String path, ProcessInfo processInfo,
         ApacheBinaryInfo binaryInfo, Map<String, String> moduleNames, boolean suppressUnknownModuleWarnings, boolean keepConditional) {
+        return parseRuntimeConfiguration(path, processInfo, binaryInfo, moduleNames, suppressUnknownModuleWarnings,
+            keepConditional, null);
+    }
+
+    /**
+     * @param configCache the cache to read the configuration files through, or null to read them directly
+     */
+    public static ApacheDirectiveTree parseRuntimeConfiguration(String path, ProcessInfo processInfo,
+        ApacheBinaryInfo binaryInfo, Map<String, String> moduleNames, boolean suppressUnknownModuleWarnings,
+        boolean keepConditional, ApacheConfigCache configCache) {
         String defaultServerRoot = binaryInfo.getRoot();
 
         RuntimeApacheConfiguration.NodeInspector insp =
@@ -677,8 +696,8 @@ public class ApacheServerDiscoveryComponent implements ResourceDiscoveryComponen
                 suppressUnknownModuleWarnings, keepConditional);
 
         ApacheDirectiveTree tree = new ApacheDirectiveTree();
-        ApacheParser parser = new ApacheParserImpl(tree, defaultServerRoot, insp);
-        ApacheConfigReader.buildTree(path, parser);
+        ApacheParser parser = new ApacheParserImpl(tree, defaultServerRoot, insp, configCache);
+        ApacheConfigReader.buildTree(path, parser, configCache);
         return tree;
     }
 
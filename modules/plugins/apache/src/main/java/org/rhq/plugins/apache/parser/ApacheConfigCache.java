@@ -0,0 +1,204 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.plugins.apache.parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches the parsed httpd configuration of one Apache server, so that discovery, configuration reads and
+ * availability of the server and its child resources do not read and parse the whole configuration each time.
+ * <p/>
+ * Two levels are cached:
+ * <ul>
+ * <li>the directives of each configuration file, which are only read and parsed again when the modification time or
+ * the size of the file changed;</li>
+ * <li>the configuration trees built from them, by key (e.g. runtime or full configuration), which are only built again
+ * when one of the files they were built from changed, or one of the directories their includes were matched in
+ * (i.e. an included file was added or removed).</li>
+ * </ul>
+ * Trees are handed out as copies, which callers are free to modify.
+ */
+public class ApacheConfigCache {
+
+    /**
+     * Trees are built again after this long whatever their files, in case an include matches files in a directory
+     * which did not exist or was not matched before.
+     */
+    static final long TREE_MAX_AGE = 5 * 60 * 1000L;
+
+    /**
+     * Builds a configuration tree; the {@link ApacheParserImpl parser} it uses must be given the cache, so that the
+     * files are read through it.
+     */
+    public interface TreeBuilder {
+        ApacheDirectiveTree build();
+    }
+
+    private final Map<String, CachedFile> files = new HashMap<String, CachedFile>();
+    private final Map<String, CachedTree> trees = new HashMap<String, CachedTree>();
+
+    // the files and directories the tree being built depends on
+    private Map<File, FileStamp> currentDependencies;
+
+    /**
+     * Returns a copy of the tree cached under the given key, after building it if it is not cached or not up to date.
+     * Trees are built one at a time.
+     *
+     * @param key the key of the tree, which must identify everything but the files the tree depends on
+     * @param builder the builder to call if the tree has to be built
+     * @return a copy of the tree
+     */
+    public synchronized ApacheDirectiveTree getTree(String key, TreeBuilder builder) {
+        CachedTree cachedTree = trees.get(key);
+        if (cachedTree == null || !cachedTree.isUpToDate()) {
+            trees.remove(key);
+            currentDependencies = new HashMap<File, FileStamp>();
+            try {
+                ApacheDirectiveTree tree = builder.build();
+                cachedTree = new CachedTree(tree, currentDependencies, System.currentTimeMillis() + TREE_MAX_AGE);
+            } finally {
+                currentDependencies = null;
+            }
+            trees.put(key, cachedTree);
+            evictUnusedFiles();
+        }
+        return cachedTree.tree.clone();
+    }
+
+    /**
+     * Drops everything, e.g. after the configuration was written to.
+     */
+    public synchronized void invalidate() {
+        files.clear();
+        trees.clear();
+    }
+
+    /**
+     * Returns copies of the directives of a configuration file (comments excluded), reading the file again only if it
+     * changed since it was last read.
+     */
+    synchronized List<ApacheDirective> getDirectives(String path) {
+        File file = new File(path);
+        // take the stamp before reading, a change during the read is then caught by the next call
+        FileStamp stamp = new FileStamp(file);
+        CachedFile cachedFile = files.get(file.getPath());
+        if (cachedFile == null || !cachedFile.stamp.equals(stamp)) {
+            cachedFile = new CachedFile(stamp, ApacheConfigReader.readFile(path));
+            files.put(file.getPath(), cachedFile);
+        }
+        if (currentDependencies != null) {
+            currentDependencies.put(file, stamp);
+        }
+
+        // the parser links the directives into the tree, so it can't be given the cached ones
+        List<ApacheDirective> directives = new ArrayList<ApacheDirective>(cachedFile.directives.size());
+        for (ApacheDirective directive : cachedFile.directives) {
+            directives.add(directive.clone());
+        }
+        return directives;
+    }
+
+    /**
+     * Records a directory in which the files of an include were looked for, so that the tree being built is built
+     * again when files are added to or removed from it.
+     */
+    synchronized void addIncludeDirectory(File directory) {
+        if (currentDependencies != null && !currentDependencies.containsKey(directory)) {
+            currentDependencies.put(directory, new FileStamp(directory));
+        }
+    }
+
+    private void evictUnusedFiles() {
+        Set<String> usedPaths = new HashSet<String>();
+        for (CachedTree cachedTree : trees.values()) {
+            for (File file : cachedTree.dependencies.keySet()) {
+                usedPaths.add(file.getPath());
+            }
+        }
+        files.keySet().retainAll(usedPaths);
+    }
+
+    private static class FileStamp {
+        private final long lastModified;
+        private final long length;
+
+        private FileStamp(File file) {
+            // both are 0 if the file does not exist
+            this.lastModified = file.lastModified();
+            this.length = file.isDirectory() ? 0 : file.length();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof FileStamp)) {
+                return false;
+            }
+            FileStamp other = (FileStamp) obj;
+            return lastModified == other.lastModified && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (lastModified ^ (lastModified >>> 32)) + (int) (length ^ (length >>> 32));
+        }
+    }
+
+    private static class CachedFile {
+        private final FileStamp stamp;
+        private final List<ApacheDirective> directives;
+
+        private CachedFile(FileStamp stamp, List<ApacheDirective> directives) {
+            this.stamp = stamp;
+            this.directives = directives;
+        }
+    }
+
+    private static class CachedTree {
+        private final ApacheDirectiveTree tree;
+        private final Map<File, FileStamp> dependencies;
+        private final long expirationTime;
+
+        private CachedTree(ApacheDirectiveTree tree, Map<File, FileStamp> dependencies, long expirationTime) {
+            this.tree = tree;
+            this.dependencies = dependencies;
+            this.expirationTime = expirationTime;
+        }
+
+        private boolean isUpToDate() {
+            if (System.currentTimeMillis() >= expirationTime) {
+                return false;
+            }
+            for (Map.Entry<File, FileStamp> dependency : dependencies.entrySet()) {
+                if (!new FileStamp(dependency.getKey()).equals(dependency.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
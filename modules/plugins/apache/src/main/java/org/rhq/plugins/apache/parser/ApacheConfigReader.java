@@ -4,6 +4,8 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -19,13 +21,50 @@ public class ApacheConfigReader {
         searchFile(path, parser);
     }
 
+    /**
+     * @param cache the cache to read the files through, or null to read them directly
+     */
+    public static void buildTree(String path, ApacheParser parser, ApacheConfigCache cache) {
+        searchFile(path, parser, cache);
+    }
+
     public static void searchFile(String path, ApacheParser parser) {
+        searchFile(path, parser, null);
+    }
+
+    /**
+     * Feeds the directives of a configuration file to the parser.
+     *
+     * @param cache the cache to read the file through, or null to read it directly
+     */
+    public static void searchFile(String path, ApacheParser parser, ApacheConfigCache cache) {
+        List<ApacheDirective> directives = (cache != null) ? cache.getDirectives(path) : readFile(path);
+        try {
+            for (ApacheDirective dir : directives) {
+                String name = dir.getName();
+                if (name.startsWith("</"))
+                    parser.endNestedDirective(dir);
+                else if (name.startsWith("<"))
+                    parser.startNestedDirective(dir);
+                else
+                    parser.addDirective(dir);
+            }
+        } catch (Exception e) {
+            throw new ApacheParserException(e);
+        }
+    }
+
+    /**
+     * Reads the directives of a configuration file, leaving out empty lines and comments.
+     */
+    static List<ApacheDirective> readFile(String path) {
         File configFile = new File(path);
         if (!configFile.exists()) {
             log.warn("Apache configuration file " + path + " was not found.");
             throw new ApacheParserException("Apache configuration file " + path + " was not found.");
         }
 
+        List<ApacheDirective> directives = new ArrayList<ApacheDirective>();
         BufferedReader br = null;
 
         try {
@@ -38,14 +77,8 @@ public class ApacheConfigReader {
                 if (!matcher.matches()) {
                     ApacheDirective dir = new ApacheDirective(strLine);
                     dir.setFile(path);
-                    String name = dir.getName();
-                    if (!name.equals("#")) {
-                        if (name.startsWith("</"))
-                            parser.endNestedDirective(dir);
-                        else if (name.startsWith("<"))
-                            parser.startNestedDirective(dir);
-                        else
-                            parser.addDirective(dir);
+                    if (!dir.getName().equals("#")) {
+                        directives.add(dir);
                     }
                 }
             }
@@ -59,5 +92,6 @@ public class ApacheConfigReader {
             }
             throw new ApacheParserException(e);
         }
+        return directives;
     }
 }
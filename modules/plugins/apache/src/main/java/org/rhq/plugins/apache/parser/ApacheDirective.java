@@ -212,6 +212,7 @@ public class ApacheDirective implements Cloneable {
     public ApacheDirective clone() {
         try {
             ApacheDirective copy = (ApacheDirective) super.clone();
+            copy.values = new ArrayList<String>(values);
 
             List<ApacheDirective> newChildNodes = new ArrayList<ApacheDirective>(childNodes.size());
             for (ApacheDirective child : childNodes) {
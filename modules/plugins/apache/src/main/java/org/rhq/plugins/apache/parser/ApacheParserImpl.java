@@ -39,6 +39,7 @@ public class ApacheParserImpl implements ApacheParser {
     private ApacheDirectiveStack stack;
     private String serverRootPath;
     private RuntimeApacheConfiguration.NodeInspector nodeInspector;
+    private final ApacheConfigCache configCache;
     
     /**
      * 
@@ -48,11 +49,24 @@ public class ApacheParserImpl implements ApacheParser {
      */
     public ApacheParserImpl(ApacheDirectiveTree tree, String initialServerRootPath,
         RuntimeApacheConfiguration.NodeInspector nodeInspector) {
+        this(tree, initialServerRootPath, nodeInspector, null);
+    }
+
+    /**
+     * 
+     * @param tree the tree that this parser will fill in
+     * @param initialServerRootPath the initial server root path as detected by other means
+     * @param nodeInspector the node inspector to determine the runtime configuration or null, if full configuration tree is needed
+     * @param configCache the cache to read the included files through or null to read them directly
+     */
+    public ApacheParserImpl(ApacheDirectiveTree tree, String initialServerRootPath,
+        RuntimeApacheConfiguration.NodeInspector nodeInspector, ApacheConfigCache configCache) {
         stack = new ApacheDirectiveStack();
         this.serverRootPath = initialServerRootPath;
         this.tree = tree;
         stack.addDirective(this.tree.getRootNode());
         this.nodeInspector = nodeInspector;
+        this.configCache = configCache;
     }
 
     public void addDirective(ApacheDirective directive) throws Exception {
@@ -67,7 +81,7 @@ public class ApacheParserImpl implements ApacheParser {
             List<File> files = getIncludeFiles(directive.getValuesAsString());
             for (File fl : files) {
                 if (fl.exists() && fl.isFile()) {
-                    ApacheConfigReader.searchFile(fl.getAbsolutePath(), this);
+                    ApacheConfigReader.searchFile(fl.getAbsolutePath(), this, configCache);
                 }
             }
         } else if (directiveName.equals(SERVER_ROOT_DIRECTIVE)) {
@@ -143,6 +157,14 @@ public class ApacheParserImpl implements ApacheParser {
         File check = new File(foundInclude);
         File root = new File(check.isAbsolute() ? Glob.rootPortion(foundInclude) : serverRootPath);
 
-        return Glob.match(root, foundInclude, Glob.ALPHABETICAL_COMPARATOR);
+        List<File> files = Glob.match(root, foundInclude, Glob.ALPHABETICAL_COMPARATOR);
+        if (configCache != null) {
+            // a file added next to the included ones, or to the root if there are none, changes the configuration
+            configCache.addIncludeDirectory(root);
+            for (File file : files) {
+                configCache.addIncludeDirectory(file.getParentFile());
+            }
+        }
+        return files;
     }
 }
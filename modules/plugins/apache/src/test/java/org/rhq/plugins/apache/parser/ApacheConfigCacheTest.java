@@ -0,0 +1,137 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.plugins.apache.parser;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import org.rhq.core.pluginapi.util.FileUtils;
+import org.rhq.core.util.file.FileUtil;
+
+@Test
+public class ApacheConfigCacheTest {
+
+    private File serverRoot;
+    private File httpdConf;
+    private ApacheConfigCache cache;
+    private int builds;
+
+    @BeforeMethod
+    public void setup() throws Exception {
+        serverRoot = FileUtil.createTempDirectory("apache-config-cache-test", null, null);
+        httpdConf = new File(serverRoot, "httpd.conf");
+        write(httpdConf, "Listen 80\nInclude conf.d/*.conf\n");
+        write(new File(serverRoot, "conf.d/a.conf"), "Listen 81\n");
+        cache = new ApacheConfigCache();
+        builds = 0;
+    }
+
+    @AfterMethod
+    public void cleanup() throws IOException {
+        FileUtils.purge(serverRoot, true);
+    }
+
+    public void testTreeIsCached() {
+        ApacheDirectiveTree tree = getTree();
+        assertEquals(getListens(tree), asList("80", "81"));
+
+        ApacheDirectiveTree otherTree = getTree();
+        assertEquals(builds, 1, "The tree should not be built again while the files are unchanged");
+        assertNotSame(otherTree, tree);
+        assertNotSame(otherTree.getRootNode(), tree.getRootNode(), "Trees should be handed out as copies");
+
+        tree.search("/Listen").get(0).getValues().set(0, "8080");
+        assertEquals(getListens(getTree()), asList("80", "81"), "Changes to a copy should not reach the cache");
+    }
+
+    public void testChangedIncludedFile() throws Exception {
+        getTree();
+        File included = new File(serverRoot, "conf.d/a.conf");
+        write(included, "Listen 82\n");
+        included.setLastModified(included.lastModified() + 2000);
+
+        assertEquals(getListens(getTree()), asList("80", "82"));
+        assertEquals(builds, 2);
+    }
+
+    public void testAddedIncludedFile() throws Exception {
+        getTree();
+        File confDir = new File(serverRoot, "conf.d");
+        write(new File(confDir, "b.conf"), "Listen 83\n");
+        confDir.setLastModified(confDir.lastModified() + 2000);
+
+        assertEquals(getListens(getTree()), asList("80", "81", "83"));
+        assertEquals(builds, 2);
+    }
+
+    public void testInvalidate() {
+        getTree();
+        cache.invalidate();
+        getTree();
+        assertEquals(builds, 2);
+    }
+
+    private ApacheDirectiveTree getTree() {
+        return cache.getTree("full", new ApacheConfigCache.TreeBuilder() {
+            public ApacheDirectiveTree build() {
+                builds++;
+                ApacheDirectiveTree tree = new ApacheDirectiveTree();
+                ApacheParser parser = new ApacheParserImpl(tree, serverRoot.getAbsolutePath(), null, cache);
+                ApacheConfigReader.buildTree(httpdConf.getAbsolutePath(), parser, cache);
+                return tree;
+            }
+        });
+    }
+
+    private static List<String> getListens(ApacheDirectiveTree tree) {
+        List<String> listens = new ArrayList<String>();
+        for (ApacheDirective listen : tree.search("/Listen")) {
+            listens.add(listen.getValuesAsString());
+        }
+        return listens;
+    }
+
+    private static List<String> asList(String... values) {
+        List<String> list = new ArrayList<String>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}
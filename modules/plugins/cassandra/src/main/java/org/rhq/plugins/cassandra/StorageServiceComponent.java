@@ -49,6 +49,7 @@ import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
 import org.rhq.core.pluginapi.inventory.ResourceContext;
 import org.rhq.core.pluginapi.operation.OperationResult;
 import org.rhq.core.system.FileSystemInfo;
+import org.rhq.plugins.jmx.util.AttributeReadBatch;
 
 /**
  * @author John Sanda
@@ -145,11 +146,20 @@ public class StorageServiceComponent extends ComplexConfigurationResourceCompone
     protected void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> requests, EmsBean bean) {
         super.getValues(report, requests, bean);
 
-        EmsAttribute loadAttribute = bean.getAttribute(LOAD_NAME);
-        Object loadValue = loadAttribute.refresh();
+        // read the attributes the calculated metrics need at once
+        List<String> attributeNames = new ArrayList<String>(3);
+        attributeNames.add(LOAD_NAME);
+        attributeNames.add(DATA_FILE_LOCATIONS_NAME);
+        for (MeasurementScheduleRequest request : requests) {
+            if (OWNERSHIP_METRIC_NAME.equals(request.getName())) {
+                attributeNames.add(OWNERSHIP_METRIC_NAME);
+                break;
+            }
+        }
+        Map<String, EmsAttribute> attributes = AttributeReadBatch.refreshAttributes(bean, attributeNames);
 
-        EmsAttribute dataFileLocationAttribute = bean.getAttribute(DATA_FILE_LOCATIONS_NAME);
-        Object dataFileLocationValue = dataFileLocationAttribute.refresh();
+        Object loadValue = getValue(attributes, LOAD_NAME);
+        Object dataFileLocationValue = getValue(attributes, DATA_FILE_LOCATIONS_NAME);
 
         double load = 0;
         if (loadValue != null && dataFileLocationValue != null && dataFileLocationValue instanceof String[]) {
@@ -165,8 +175,7 @@ public class StorageServiceComponent extends ComplexConfigurationResourceCompone
             if (OWNERSHIP_METRIC_NAME.equals(request.getName()) && host != null) {
                 // this code would not be necessary and we could use "host:" prefix
                 // but we keep it for compatibility reasons (metric name is not changed)
-                EmsAttribute attribute = bean.getAttribute(OWNERSHIP_METRIC_NAME);
-                Object valueObject = attribute.refresh();
+                Object valueObject = getValue(attributes, OWNERSHIP_METRIC_NAME);
                 if (valueObject instanceof Map<?, ?>) {
                     @SuppressWarnings("unchecked")
                     Map<InetAddress, Float> ownership = (Map<InetAddress, Float>) valueObject;
@@ -196,6 +205,11 @@ public class StorageServiceComponent extends ComplexConfigurationResourceCompone
         }
     }
 
+    private static Object getValue(Map<String, EmsAttribute> attributes, String name) {
+        EmsAttribute attribute = attributes.get(name);
+        return (attribute == null) ? null : attribute.getValue();
+    }
+
     private double getDiskUsageMetric(MeasurementScheduleRequest request, double dataSize, String[] paths) {
         List<String> visitedMountPoints = new ArrayList<String>();
         long totalDiskSpace = 0;
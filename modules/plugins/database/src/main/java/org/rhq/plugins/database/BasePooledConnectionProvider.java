@@ -83,6 +83,11 @@ public abstract class BasePooledConnectionProvider implements PooledConnectionPr
      */
     public static final String TIMEOUT = "connectionTimeout";
 
+    /**
+     * Number of prepared statements cached per pooled connection.
+     */
+    public static final String STATEMENTS_CACHE_SIZE = "statementsCacheSize";
+
     protected final Configuration pluginConfig;
 
     /**
@@ -123,6 +128,8 @@ public abstract class BasePooledConnectionProvider implements PooledConnectionPr
         bconfig.setPassword(getPassword());
         bconfig.setUsername(getUsername());
         bconfig.setConnectionTimeoutInMs(getConnectionTimeout());
+        // Metrics are collected with the same queries over and over
+        bconfig.setStatementsCacheSize(getStatementsCacheSize());
         if (isTrack()) {
             bconfig.setCloseConnectionWatch(true);
             bconfig.setCloseConnectionWatchTimeout(10, TimeUnit.MINUTES);
@@ -217,6 +224,19 @@ public abstract class BasePooledConnectionProvider implements PooledConnectionPr
         return Long.parseLong(s);
     }
 
+    /**
+     * Return the number of prepared statements cached per pooled connection; statements prepared with the same SQL on
+     * a connection are then reused once closed.
+     * By default, returns the configuration item {@link #STATEMENTS_CACHE_SIZE}, or 50 if not set.
+     */
+    protected int getStatementsCacheSize() {
+        String s = pluginConfig.getSimpleValue(STATEMENTS_CACHE_SIZE);
+        if (s == null) {
+            return 50;
+        }
+        return Integer.parseInt(s);
+    }
+
     /**
      * Shutdown the connection pool.
      */
@@ -210,6 +210,71 @@ public class DatabasePluginUtil {
         return Collections.emptyMap();
     }
 
+    /**
+     * Executes a query returning one row per item (e.g. one per table), returning the numeric values of each row as a
+     * map where the keys are the column names, by the values of the key columns of the row. Note that depending on the
+     * database, the column names may be uppercase (Oracle) or lowercase.
+     *
+     * @param  component the component to execute on
+     * @param  query the sql query to run
+     * @param  keyColumns the names of the columns identifying a row
+     * @param  parameters any parameters to bind first
+     *
+     * @return the rows by the list of their key column values, as strings
+     */
+    public static Map<List<String>, Map<String, Double>> getNumericQueryValuesByKey(ResourceComponent component,
+        String query, List<String> keyColumns, Object... parameters) {
+
+        boolean componentHasConnectionPoolingSupport = hasConnectionPoolingSupport(component);
+        checkComponent(component, componentHasConnectionPoolingSupport);
+
+        Connection connection = null;
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            connection = getConnection0(component, componentHasConnectionPoolingSupport);
+            statement = connection.prepareStatement(query);
+            bindParameters(statement, parameters);
+
+            resultSet = statement.executeQuery();
+
+            Map<List<String>, Map<String, Double>> rows = new HashMap<List<String>, Map<String, Double>>();
+
+            ResultSetMetaData md = resultSet.getMetaData();
+            String[] names = getColumns(md);
+
+            while (resultSet.next()) {
+                List<String> key = new ArrayList<String>(keyColumns.size());
+                for (String keyColumn : keyColumns) {
+                    key.add(resultSet.getString(keyColumn));
+                }
+                Map<String, Double> row = new HashMap<String, Double>();
+                for (String name : names) {
+                    try {
+                        row.put(name, resultSet.getDouble(name));
+                    } catch (SQLException e) {
+                        // Ignore columns that can't be read as doubles
+                    }
+                }
+                rows.put(key, row);
+            }
+
+            return rows;
+        } catch (SQLException e) {
+            LOG.debug("Unable to read values", e);
+            if (!componentHasConnectionPoolingSupport) {
+                ((DatabaseComponent) component).removeConnection();
+            }
+        } finally {
+            safeClose(null, statement, resultSet);
+            if (componentHasConnectionPoolingSupport) {
+                safeClose(connection);
+            }
+        }
+
+        return Collections.emptyMap();
+    }
+
     /**
      * Returns the result of a query as a single Double value.
      * Returns {@link Double#NaN} if the query fails.
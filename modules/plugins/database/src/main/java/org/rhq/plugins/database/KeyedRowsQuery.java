@@ -0,0 +1,84 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation version 2 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA
+ */
+package org.rhq.plugins.database;
+
+import static org.rhq.plugins.database.DatabasePluginUtil.getNumericQueryValuesByKey;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.rhq.core.pluginapi.inventory.ResourceComponent;
+
+/**
+ * A set based query, returning one row per child resource (e.g. one per table of a database), shared by the child
+ * resource components: the query is run for all of them at most once per <code>maxAge</code>, then each component
+ * gets its own row by the values of the key columns. This replaces a query per child resource and per collection.
+ * <p/>
+ * Instances are meant to be held by the parent component.
+ */
+public class KeyedRowsQuery {
+
+    private final String query;
+    private final List<String> keyColumns;
+    private final long maxAge;
+
+    private Map<List<String>, Map<String, Double>> rows;
+    private long expirationTime;
+
+    /**
+     * @param query the sql query to run
+     * @param maxAge how long the rows are served before the query is run again, in milliseconds
+     * @param keyColumns the names of the columns identifying a row
+     */
+    public KeyedRowsQuery(String query, long maxAge, String... keyColumns) {
+        this.query = query;
+        this.maxAge = maxAge;
+        this.keyColumns = Arrays.asList(keyColumns);
+    }
+
+    /**
+     * @param component the component to execute the query on, if the rows have to be read again
+     * @param key the values of the key columns of the row
+     * @return the numeric values of the row by column name, or an empty map if there is no such row or the query
+     *         failed
+     */
+    public Map<String, Double> getNumericValues(ResourceComponent component, String... key) {
+        Map<String, Double> row = getRows(component).get(Arrays.asList(key));
+        return (row != null) ? row : Collections.<String, Double> emptyMap();
+    }
+
+    private synchronized Map<List<String>, Map<String, Double>> getRows(ResourceComponent component) {
+        long now = System.currentTimeMillis();
+        if (rows == null || now >= expirationTime) {
+            rows = getNumericQueryValuesByKey(component, query, keyColumns);
+            // do not keep an empty result, the query may have failed
+            expirationTime = rows.isEmpty() ? 0 : now + maxAge;
+        }
+        return rows;
+    }
+
+    /**
+     * Forces the query to be run again on next access.
+     */
+    public synchronized void invalidate() {
+        rows = null;
+    }
+}
@@ -24,6 +24,8 @@ import static org.testng.Assert.assertEquals;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -59,6 +61,7 @@ public class PluginTest extends ComponentTest {
         checkAllMetrics("Generic Query Non Pooling", level3);
 
         checkData(db);
+        checkKeyedRowsQuery(db);
     }
 
     private ResourceComponent add(String resourceType, ResourceComponent component) throws Exception {
@@ -103,4 +106,27 @@ public class PluginTest extends ComponentTest {
         System.out.println("grid = " + grid);
     }
 
+    private void checkKeyedRowsQuery(H2Database db) throws SQLException {
+        KeyedRowsQuery query = new KeyedRowsQuery("select 'table_a' as t, a, b from table_a "
+            + "union all select 'table_b' as t, a, b from table_b", 60 * 1000L, "T");
+        assertEquals(query.getNumericValues(db, "table_a").get("B"), 2.0);
+        assertEquals(query.getNumericValues(db, "table_b").get("A"), 3.0);
+        assertEquals(query.getNumericValues(db, "table_c"), Collections.emptyMap());
+
+        Connection connection = null;
+        try {
+            connection = db.getPooledConnectionProvider().getPooledConnection();
+            connection.prepareStatement("update table_b set a = 7").execute();
+        } finally {
+            DatabasePluginUtil.safeClose(connection);
+        }
+        assertEquals(query.getNumericValues(db, "table_b").get("A"), 3.0, "Rows should be read once per max age");
+        query.invalidate();
+        assertEquals(query.getNumericValues(db, "table_b").get("A"), 7.0);
+
+        Map<List<String>, Map<String, Double>> rows = DatabasePluginUtil.getNumericQueryValuesByKey(db,
+            "select a, b from table_a", Arrays.asList("A", "B"));
+        assertEquals(rows.keySet(), Collections.singleton(Arrays.asList("1", "2")));
+    }
+
 }
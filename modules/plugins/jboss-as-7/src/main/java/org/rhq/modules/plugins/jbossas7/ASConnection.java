@@ -28,6 +28,9 @@ import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -60,11 +63,17 @@ import org.codehaus.jackson.map.DeserializationConfig;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.SerializationConfig;
 
+import org.rhq.common.jbossas.ModelSnapshotCache;
+import org.rhq.common.jbossas.ModelSnapshotCache.CachedResult;
 import org.rhq.core.pluginapi.inventory.InvalidPluginConfigurationException;
 import org.rhq.core.util.StringUtil;
 import org.rhq.modules.plugins.jbossas7.helper.ServerPluginConfiguration;
+import org.rhq.modules.plugins.jbossas7.json.Address;
 import org.rhq.modules.plugins.jbossas7.json.ComplexResult;
+import org.rhq.modules.plugins.jbossas7.json.CompositeOperation;
 import org.rhq.modules.plugins.jbossas7.json.Operation;
+import org.rhq.modules.plugins.jbossas7.json.ReadChildrenResources;
+import org.rhq.modules.plugins.jbossas7.json.ReadResource;
 import org.rhq.modules.plugins.jbossas7.json.Result;
 
 /**
@@ -106,6 +115,7 @@ public class ASConnection {
     private final URI managementUri;
     private final DefaultHttpClient httpClient;
     private final ObjectMapper mapper;
+    private final ModelSnapshotCache modelSnapshotCache = new ModelSnapshotCache();
 
     private volatile long keepAliveTimeout;
     private volatile boolean shutdown;
@@ -276,6 +286,10 @@ public class ASConnection {
             return resultAsJsonNode(FAILURE, FAILURE_SHUTDOWN, null, FALSE);
         }
 
+        if (!isReadOnly(operation)) {
+            modelSnapshotCache.invalidate();
+        }
+
         long requestStartTime = System.nanoTime();
 
         if (addressPathContainsSpaces(operation) == TRUE) {
@@ -509,6 +523,17 @@ public class ASConnection {
      * @return ComplexResult of the execution
      */
     public Result execute(Operation op, boolean isComplex, int timeoutSec) {
+        if (!isComplex) {
+            CachedResult cachedResult = modelSnapshotCache.lookup(getSegments(op.getAddress()), op.getOperation(),
+                op.getAdditionalProperties());
+            if (cachedResult != null) {
+                Result result = new Result();
+                result.setOutcome(Result.SUCCESS);
+                result.setResult(cachedResult.getResult());
+                return result;
+            }
+        }
+
         JsonNode node = executeRaw(op, timeoutSec);
 
         if (node == null) {
@@ -549,6 +574,116 @@ public class ASConnection {
         }
     }
 
+    /**
+     * Reads the management model below the passed address with a recursive read-resource operation, unless that
+     * part of the model has been read recently. For a short while (see {@link ModelSnapshotCache}), read operations on
+     * the address and the addresses below it are then answered from this snapshot instead of the server. Any operation
+     * that may change the model drops the snapshots.
+     *
+     * This is meant to be called before reading many resources of a subtree, e.g. when discovering the children of a
+     * resource. The root of the model is never read as a whole.
+     *
+     * @param address the root of the subtree to read
+     */
+    public void cacheModelSnapshot(Address address) {
+        cacheModelSnapshot(address, null);
+    }
+
+    /**
+     * Like {@link #cacheModelSnapshot(Address)}, but only reads the children of the given type of the passed address,
+     * with a recursive read-children-resources operation. This may be the root of the model, e.g. to read its
+     * deployments.
+     *
+     * @param address the parent of the children to read
+     * @param childType the type of the children to read, or null to read the whole subtree below the address
+     */
+    public void cacheModelSnapshot(Address address, String childType) {
+        if (address == null || (address.isEmpty() && childType == null)) {
+            return;
+        }
+        List<String> segments = getSegments(address);
+        if (modelSnapshotCache.covers(segments, childType)) {
+            return;
+        }
+
+        // the description tells the child types of each resource apart from its attributes
+        Operation read;
+        Operation readDescription;
+        if (childType == null) {
+            read = new ReadResource(address);
+            readDescription = new Operation("read-resource-description", address);
+        } else {
+            read = new ReadChildrenResources(address, childType);
+            Address children = new Address(address);
+            children.add(childType, "*");
+            readDescription = new Operation("read-resource-description", children);
+        }
+        read.addAdditionalProperty("recursive", true);
+        readDescription.addAdditionalProperty("recursive", true);
+        CompositeOperation op = new CompositeOperation();
+        op.addStep(read);
+        op.addStep(readDescription);
+
+        Result result = execute(op);
+        Map<String, Object> node = null;
+        Map<String, Object> description = null;
+        if (result.isSuccess() && result.getResult() instanceof Map) {
+            Map<?, ?> steps = (Map<?, ?>) result.getResult();
+            node = getStepResult(steps.get("step-1"));
+            description = getStepResult(steps.get("step-2"));
+        }
+        if (node == null && verbose) {
+            LOG.info("Could not read a snapshot of " + address + (childType == null ? "" : " " + childType) + ": "
+                + result.getFailureDescription());
+        }
+        modelSnapshotCache.put(segments, childType, node, description);
+    }
+
+    /**
+     * @return the map result of a step of a composite operation; a wildcard read-resource-description results in the
+     *         list of the descriptions of the matching addresses, of which the first one is taken
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> getStepResult(Object step) {
+        Object result = (step instanceof Map) ? ((Map<?, ?>) step).get("result") : null;
+        if (result instanceof List && !((List<?>) result).isEmpty()) {
+            Object first = ((List<?>) result).get(0);
+            result = (first instanceof Map) ? ((Map<?, ?>) first).get("result") : null;
+        }
+        return (result instanceof Map) ? (Map<String, Object>) result : null;
+    }
+
+    private static List<String> getSegments(Address address) {
+        List<String> segments = new ArrayList<String>(address.size());
+        for (int i = 0; i < address.size(); i++) {
+            segments.add(address.get(i));
+        }
+        return segments;
+    }
+
+    /**
+     * @return true if the operation, or each step of a composite operation, is known not to change the model
+     */
+    private static boolean isReadOnly(Operation operation) {
+        if (operation instanceof CompositeOperation) {
+            CompositeOperation composite = (CompositeOperation) operation;
+            for (int i = 0; i < composite.numberOfSteps(); i++) {
+                if (!isReadOnly(composite.step(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return ModelSnapshotCache.isReadOnly(operation.getOperation());
+    }
+
+    /**
+     * Drops all the snapshots read by {@link #cacheModelSnapshot(Address)}.
+     */
+    public void invalidateModelSnapshots() {
+        modelSnapshotCache.invalidate();
+    }
+
     /**
      * @deprecated as of RHQ 4.10, use {@link #getAsConnectionParams()} instead
      */
@@ -95,6 +95,18 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
     static final String EXPRESSION_VALUE_KEY = "EXPRESSION_VALUE";
     static final int AVAIL_OP_TIMEOUT_SECONDS = 60;
 
+    /**
+     * Set this system property to false to read every metric of a resource with its own read-attribute operation.
+     */
+    static final String BATCHED_METRIC_READS_SYSPROP = "as7plugin.batchedMetricReads";
+    static final boolean BATCHED_METRIC_READS = Boolean.parseBoolean(System.getProperty(
+        BATCHED_METRIC_READS_SYSPROP, "true"));
+
+    /**
+     * For how long metrics are read one by one after a batched read of a resource failed, in milliseconds.
+     */
+    static final long BATCHED_METRIC_READS_RETRY_DELAY = 60 * 60 * 1000L;
+
     public static final String MANAGED_SERVER = "Managed Server";
 
     private static final String PROFILE_SUFFIX = " (Profile)";
@@ -117,6 +129,9 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
     private BaseServerComponent serverComponent;
     protected ASConnection testConnection;
 
+    // metrics are read one by one for a while after a batched read of this resource failed
+    private volatile long batchedMetricReadsDisabledUntil;
+
     /**
      * Start the resource connection
      * @see org.rhq.core.pluginapi.inventory.ResourceComponent#start(org.rhq.core.pluginapi.inventory.ResourceContext)
@@ -191,9 +206,57 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
     @Override
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) throws Exception {
 
+        Map<String, Object> attributes = readMetricAttributes(metrics);
+        for (MeasurementScheduleRequest req : metrics) {
+            getMetricValue(report, req, null, attributes);
+        }
+    }
+
+    /**
+     * Reads all the attributes of this resource, runtime attributes included, with a single read-resource operation
+     * if more than one of the requested metrics has to be read from the server. The values of the requested metrics
+     * are then taken from the result instead of being read one by one.
+     *
+     * @param metrics the requested metrics
+     * @return the attributes of this resource, or null if they were not read (in which case the metrics have to be
+     *         read one by one)
+     */
+    protected Map<String, Object> readMetricAttributes(Set<MeasurementScheduleRequest> metrics) {
+        if (!BATCHED_METRIC_READS || System.currentTimeMillis() < batchedMetricReadsDisabledUntil) {
+            return null;
+        }
+
+        int metricCount = 0;
         for (MeasurementScheduleRequest req : metrics) {
-            getMetricValue(report, req, null);
+            if (!req.getName().startsWith(INTERNAL)) {
+                metricCount++;
+            }
+        }
+        if (metricCount < 2) {
+            return null;
         }
+
+        ReadResource op = new ReadResource(address);
+        op.attributesOnly(true);
+        op.includeRuntime(true);
+
+        long start = System.currentTimeMillis();
+        Result res = getASConnection().execute(op);
+        long end = System.currentTimeMillis();
+        PluginStats.getInstance().addBatchedRead(metricCount, end - start);
+
+        if (res == null || !res.isSuccess() || !(res.getResult() instanceof Map)) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Batched read of the metrics at [" + address + "] failed, reading them one by one for now: "
+                    + ((res != null) ? res.getFailureDescription() : null));
+            }
+            batchedMetricReadsDisabledUntil = end + BATCHED_METRIC_READS_RETRY_DELAY;
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> attributes = (Map<String, Object>) res.getResult();
+        return attributes;
     }
 
     /**
@@ -205,6 +268,20 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
      */
     protected ReadMetricResult getMetricValue(MeasurementReport report, MeasurementScheduleRequest req,
         Set<String> explicitExpressions) {
+        return getMetricValue(report, req, explicitExpressions, null);
+    }
+
+    /**
+     * gets metric value for given request
+     * @param report
+     * @param req
+     * @param explicitExpressions set of metric names that could be represented by expression instead of value on AS7 (can be null)
+     * @param attributes the attributes of this resource as returned by {@link #readMetricAttributes(Set)}; the
+     * metric is read from the server if it is not among them (can be null)
+     * @return ReadMetricResult value that if different from 'Success' determines why we failed to read metric
+     */
+    protected ReadMetricResult getMetricValue(MeasurementReport report, MeasurementScheduleRequest req,
+        Set<String> explicitExpressions, Map<String, Object> attributes) {
         if (req.getName().startsWith(INTERNAL))
             processPluginStats(req, report);
         else {
@@ -220,15 +297,22 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
             }
 
             ComplexRequest complexRequest = null;
-            Operation op;
+            String attributeName;
             if (reqName.contains(":")) {
                 complexRequest = ComplexRequest.create(reqName);
-                op = new ReadAttribute(address, complexRequest.getProp());
+                attributeName = complexRequest.getProp();
             } else {
-                op = new ReadAttribute(address, reqName);
+                attributeName = reqName;
             }
 
-            Result res = getASConnection().execute(op);
+            Result res;
+            if (attributes != null && attributes.containsKey(attributeName)) {
+                res = new Result();
+                res.setOutcome(Result.SUCCESS);
+                res.setResult(attributes.get(attributeName));
+            } else {
+                res = getASConnection().execute(new ReadAttribute(address, attributeName));
+            }
             if (!res.isSuccess()) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Getting metric [" + req.getName() + "] at [ " + address + "] failed: "
@@ -339,6 +423,12 @@ public class BaseComponent<T extends ResourceComponent<?>> implements AS7Compone
             val = (double) stats.getRequestTime();
         } else if (name.equals("maxTime")) {
             val = (double) stats.getMaxTime();
+        } else if (name.equals("batchedReads")) {
+            val = (double) stats.getBatchedReadCount();
+        } else if (name.equals("batchedMetrics")) {
+            val = (double) stats.getBatchedMetricCount();
+        } else if (name.equals("batchedReadTime")) {
+            val = (double) stats.getBatchedReadTime();
         } else
             val = Double.NaN;
 
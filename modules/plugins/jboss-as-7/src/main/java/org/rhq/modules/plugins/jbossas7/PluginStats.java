@@ -32,6 +32,9 @@ public class PluginStats {
     AtomicLong requestCount = new AtomicLong();
     AtomicLong requestTime = new AtomicLong();
     AtomicLong maxTime = new AtomicLong();
+    AtomicLong batchedReadCount = new AtomicLong();
+    AtomicLong batchedMetricCount = new AtomicLong();
+    AtomicLong batchedReadTime = new AtomicLong();
 
     public static PluginStats getInstance() {
         return ourInstance;
@@ -52,6 +55,18 @@ public class PluginStats {
         } while (currentMax < time && !maxTime.compareAndSet(currentMax, time));
     }
 
+    /**
+     * Records a read-resource request that read several metrics of a resource at once.
+     *
+     * @param metricCount the number of metrics the request was made for
+     * @param time the time the request took, in milliseconds
+     */
+    public void addBatchedRead(int metricCount, long time) {
+        batchedReadCount.incrementAndGet();
+        batchedMetricCount.addAndGet(metricCount);
+        batchedReadTime.addAndGet(time);
+    }
+
     public long getRequestCount() {
         return requestCount.get();
     }
@@ -63,4 +78,16 @@ public class PluginStats {
     public long getMaxTime() {
         return maxTime.getAndSet(0);
     }
+
+    public long getBatchedReadCount() {
+        return batchedReadCount.get();
+    }
+
+    public long getBatchedMetricCount() {
+        return batchedMetricCount.get();
+    }
+
+    public long getBatchedReadTime() {
+        return batchedReadTime.get();
+    }
 }
@@ -19,13 +19,17 @@
 
 package org.rhq.modules.plugins.jbossas7;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.rhq.core.domain.measurement.DataType.MEASUREMENT;
 import static org.rhq.core.domain.measurement.DataType.TRAIT;
 import static org.rhq.modules.plugins.jbossas7.BaseComponent.EXPRESSION;
 import static org.rhq.modules.plugins.jbossas7.BaseComponent.EXPRESSION_VALUE_KEY;
 import static org.rhq.modules.plugins.jbossas7.BaseComponent.INTERNAL;
+import static org.rhq.modules.plugins.jbossas7.json.Result.FAILURE;
 import static org.rhq.modules.plugins.jbossas7.json.Result.SUCCESS;
 import static org.testng.Assert.assertEquals;
 
@@ -41,12 +45,15 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import org.rhq.core.domain.measurement.AvailabilityType;
 import org.rhq.core.domain.measurement.MeasurementDataNumeric;
 import org.rhq.core.domain.measurement.MeasurementDataTrait;
 import org.rhq.core.domain.measurement.MeasurementReport;
 import org.rhq.core.domain.measurement.MeasurementScheduleRequest;
 import org.rhq.modules.plugins.jbossas7.json.Address;
+import org.rhq.modules.plugins.jbossas7.json.Operation;
 import org.rhq.modules.plugins.jbossas7.json.ReadAttribute;
+import org.rhq.modules.plugins.jbossas7.json.ReadResource;
 import org.rhq.modules.plugins.jbossas7.json.ResolveExpression;
 import org.rhq.modules.plugins.jbossas7.json.Result;
 
@@ -170,6 +177,58 @@ public class BaseComponentMetricReportTest {
         assertEquals(trait.getValue(), traitValue);
     }
 
+    @Test
+    public void testBatchedMetricRead() throws Exception {
+        sampleComponent.address = address;
+        requests.add(newMeasurementRequest("pipo"));
+        requests.add(newMeasurementRequest("molo:sub"));
+        requests.add(newTraitRequest("name"));
+        Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("pipo", 13d);
+        Map<String, Object> complexAttribute = new HashMap<String, Object>();
+        complexAttribute.put("sub", 7);
+        attributes.put("molo", complexAttribute);
+        attributes.put("name", "marseille");
+        long batchedReadCount = PluginStats.getInstance().getBatchedReadCount();
+
+        when(asConnection.execute(readResource(address))).thenReturn(result(attributes));
+        sampleComponent.getValues(report, requests);
+
+        assertEquals(report.getNumericData().size(), 2);
+        for (MeasurementDataNumeric numericMetric : report.getNumericData()) {
+            assertEquals(numericMetric.getValue(), numericMetric.getName().equals("pipo") ? 13d : 7d);
+        }
+        assertEquals(report.getTraitData().size(), 1);
+        assertEquals(report.getTraitData().iterator().next().getValue(), "marseille");
+        assertEquals(PluginStats.getInstance().getBatchedReadCount(), batchedReadCount + 1);
+
+        // the successful read is proof enough that the resource is up
+        assertEquals(sampleComponent.getAvailability(), AvailabilityType.UP);
+        verify(asConnection, times(1)).execute(any(Operation.class));
+    }
+
+    @Test
+    public void testBatchedMetricReadFailure() throws Exception {
+        sampleComponent.address = address;
+        requests.add(newMeasurementRequest("pipo"));
+        requests.add(newMeasurementRequest("molo"));
+        Result failure = new Result();
+        failure.setOutcome(FAILURE);
+        failure.setFailureDescription("JBAS011111: boom");
+
+        when(asConnection.execute(readResource(address))).thenReturn(failure);
+        when(asConnection.execute(readAttribute(address, "pipo"))).thenReturn(result(13d));
+        when(asConnection.execute(readAttribute(address, "molo"))).thenReturn(result(7d));
+        sampleComponent.getValues(report, requests);
+        assertEquals(report.getNumericData().size(), 2);
+
+        // metrics are then read one by one without trying a batched read first
+        report = new MeasurementReport();
+        sampleComponent.getValues(report, requests);
+        assertEquals(report.getNumericData().size(), 2);
+        verify(asConnection, times(1)).execute(readResource(address));
+    }
+
     private class SampleComponent extends BaseComponent {
 
         private SampleComponent() {
@@ -200,6 +259,10 @@ public class BaseComponentMetricReportTest {
         return argThat(new IsReadAttribute(address, requestName));
     }
 
+    private static ReadResource readResource(Address address) {
+        return argThat(new IsReadResource(address));
+    }
+
     private static Object expression(String expression) {
         Map<String, String> map = new HashMap<String, String>();
         map.put(EXPRESSION_VALUE_KEY, expression);
@@ -231,6 +294,25 @@ public class BaseComponentMetricReportTest {
         }
     }
 
+    private static class IsReadResource extends ArgumentMatcher<ReadResource> {
+
+        private Address address;
+
+        private IsReadResource(Address address) {
+            this.address = address;
+        }
+
+        @Override
+        public boolean matches(Object argument) {
+            if (!(argument instanceof ReadResource)) {
+                return false;
+            }
+            ReadResource readResource = (ReadResource) argument;
+            return address.getPath().equals(readResource.getAddress().getPath())
+                && Boolean.TRUE.equals(readResource.getAdditionalProperties().get("include-runtime"));
+        }
+    }
+
     private static class IsResolveExpression extends ArgumentMatcher<ResolveExpression> {
 
         private String expressionValue;
@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -67,6 +68,8 @@ import org.rhq.core.pluginapi.measurement.MeasurementFacet;
 import org.rhq.core.pluginapi.operation.OperationFacet;
 import org.rhq.core.pluginapi.operation.OperationResult;
 import org.rhq.core.util.exception.ThrowableUtil;
+import org.rhq.plugins.jmx.util.AttributeReadBatch;
+import org.rhq.plugins.jmx.util.EmsBeanCache;
 
 /**
  * A generic JMX MBean resource component that can be used to manage a JMX MBean. The resource's plugin configuration
@@ -104,6 +107,11 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
     @Deprecated
     protected ResourceContext<T> resourceContext;
 
+    /**
+     * The other MBeans metrics are read from (see {@link #getValues(MeasurementReport, Set, EmsBean)}), by object name.
+     */
+    private final EmsBeanCache associatedBeans = new EmsBeanCache();
+
     /**
      * Stores the context and loads the MBean.
      * @see ResourceComponent#start(ResourceContext)
@@ -120,6 +128,7 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
     public void stop() {
         setResourceContext(null);
         setEmsBean(null);
+        associatedBeans.clear();
     }
 
     /**
@@ -265,6 +274,9 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
      * Supports {a.b} syntax for reading the b Java Bean property from the object value returned from the a jmx
      * property. For example,
      *
+     * The requests are grouped by MBean so that the attributes of each MBean are read with a single call, also when
+     * several bean name templates resolve to the same MBean.
+     *
      * @param report
      * @param requests
      * @param bean     the EmsBean on which to collect the metrics
@@ -293,15 +305,40 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
         }
 
         // First do the default properties against this component's main bean
-        getBeanProperties(report, bean, defaultBeanRequests);
+        if (!defaultBeanRequests.isEmpty()) {
+            getBeanProperties(report, bean, defaultBeanRequests);
+        }
 
-        for (String beanNameTemplate : beansMap.keySet()) {
-            String transformedbeanName = transformBeanName(beanNameTemplate);
-            EmsBean otherBean = getEmsConnection().getBean(transformedbeanName);
+        if (beansMap.isEmpty()) {
+            return;
+        }
+
+        // several templates may resolve to the same bean
+        Map<String, Set<MeasurementScheduleRequest>> byBean = new HashMap<String, Set<MeasurementScheduleRequest>>();
+        for (Map.Entry<String, Set<MeasurementScheduleRequest>> entry : beansMap.entrySet()) {
+            String transformedbeanName = transformBeanName(entry.getKey());
+            Set<MeasurementScheduleRequest> beanRequests = byBean.get(transformedbeanName);
+            if (beanRequests == null) {
+                byBean.put(transformedbeanName, entry.getValue());
+            } else {
+                beanRequests.addAll(entry.getValue());
+            }
+        }
+
+        EmsConnection emsConnection = getEmsConnection();
+        for (Map.Entry<String, Set<MeasurementScheduleRequest>> entry : byBean.entrySet()) {
+            String transformedbeanName = entry.getKey();
+            EmsBean otherBean = associatedBeans.getBean(emsConnection, transformedbeanName);
             if (otherBean == null) {
                 log.info("Unable to retrieve associated MBean: " + transformedbeanName);
             } else {
-                getBeanProperties(report, otherBean, beansMap.get(beanNameTemplate));
+                try {
+                    getBeanProperties(report, otherBean, entry.getValue());
+                } catch (RuntimeException e) {
+                    // the bean may be gone, look it up again next time
+                    associatedBeans.remove(transformedbeanName);
+                    throw e;
+                }
             }
         }
     }
@@ -367,7 +404,7 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
 
     protected void getBeanProperties(MeasurementReport report, EmsBean thisBean,
         Set<MeasurementScheduleRequest> requests) {
-        List<String> props = new ArrayList<String>();
+        Set<String> props = new LinkedHashSet<String>();
         for (MeasurementScheduleRequest request : requests) {
             Matcher m = PROPERTY_PATTERN.matcher(request.getName());
             if (m.matches()) {
@@ -379,7 +416,8 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
             }
         }
 
-        List<EmsAttribute> refreshedAttributes = thisBean.refreshAttributes(props);
+        // all the attributes are read with one call
+        Map<String, EmsAttribute> refreshedAttributes = AttributeReadBatch.refreshAttributes(thisBean, props);
 
         for (MeasurementScheduleRequest request : requests) {
             Matcher m = PROPERTY_PATTERN.matcher(request.getName());
@@ -393,13 +431,7 @@ public class MBeanResourceComponent<T extends JMXComponent<?>> implements Measur
                 attributeName = request.getName();
             }
 
-            EmsAttribute attribute = null;
-            for (EmsAttribute refreshedAttribute : refreshedAttributes) {
-                if (attributeName.equals(refreshedAttribute.getName())) {
-                    attribute = refreshedAttribute;
-                }
-            }
-
+            EmsAttribute attribute = refreshedAttributes.get(attributeName);
             if (attribute == null) {
                 log.debug("Unable to collect measurement, attribute [" + request.getName() + "] not found on ["
                     + this.resourceContext.getResourceKey() + "]");
@@ -0,0 +1,135 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.plugins.jmx.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mc4j.ems.connection.EmsConnection;
+import org.mc4j.ems.connection.bean.EmsBean;
+import org.mc4j.ems.connection.bean.attribute.EmsAttribute;
+
+/**
+ * Groups the attributes to read by MBean, so that all the attributes of an MBean are read with a single
+ * <code>getAttributes</code> call (see {@link EmsBean#refreshAttributes(List)}) instead of a remote call per
+ * attribute.
+ *
+ * Each attribute is added along with a key, typically the measurement request it is read for; {@link #read} returns
+ * the values by key. The same attribute can be added for several keys, it is only read once.
+ *
+ * @param <K> the type of the keys
+ */
+public class AttributeReadBatch<K> {
+    private static final Log LOG = LogFactory.getLog(AttributeReadBatch.class);
+
+    // object name -> attribute name -> keys
+    private final Map<String, Map<String, List<K>>> keysByBean = new LinkedHashMap<String, Map<String, List<K>>>();
+
+    public void add(String objectName, String attributeName, K key) {
+        Map<String, List<K>> keysByAttribute = keysByBean.get(objectName);
+        if (keysByAttribute == null) {
+            keysByAttribute = new LinkedHashMap<String, List<K>>();
+            keysByBean.put(objectName, keysByAttribute);
+        }
+        List<K> keys = keysByAttribute.get(attributeName);
+        if (keys == null) {
+            keys = new ArrayList<K>(1);
+            keysByAttribute.put(attributeName, keys);
+        }
+        keys.add(key);
+    }
+
+    public boolean isEmpty() {
+        return keysByBean.isEmpty();
+    }
+
+    /**
+     * Reads the attributes, with one call per MBean. MBeans that can't be found or read, and attributes they don't
+     * have, are logged and skipped, so their keys are missing from the result.
+     *
+     * @param connection the EMS connection to read from
+     * @param beanCache the cache to look the MBeans up in
+     * @return the attribute values by key; values can be null
+     */
+    public Map<K, Object> read(EmsConnection connection, EmsBeanCache beanCache) {
+        Map<K, Object> values = new HashMap<K, Object>();
+        for (Map.Entry<String, Map<String, List<K>>> beanEntry : keysByBean.entrySet()) {
+            String objectName = beanEntry.getKey();
+            Map<String, List<K>> keysByAttribute = beanEntry.getValue();
+
+            EmsBean bean = beanCache.getBean(connection, objectName);
+            if (bean == null) {
+                LOG.warn("Bean " + objectName + " not found, skipping ...");
+                continue;
+            }
+
+            Map<String, EmsAttribute> attributes;
+            try {
+                attributes = refreshAttributes(bean, keysByAttribute.keySet());
+            } catch (RuntimeException e) {
+                beanCache.remove(objectName);
+                LOG.error("Failed to read attributes " + keysByAttribute.keySet() + " of bean " + objectName, e);
+                continue;
+            }
+
+            for (Map.Entry<String, List<K>> attributeEntry : keysByAttribute.entrySet()) {
+                EmsAttribute attribute = attributes.get(attributeEntry.getKey());
+                if (attribute == null) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Attribute [" + attributeEntry.getKey() + "] not found on bean " + objectName);
+                    }
+                    continue;
+                }
+                Object value = attribute.getValue();
+                for (K key : attributeEntry.getValue()) {
+                    values.put(key, value);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Refreshes the given attributes of the bean with a single call.
+     *
+     * @param bean the bean to read from
+     * @param attributeNames the names of the attributes to read; duplicates are only read once
+     * @return the refreshed attributes by name; attributes the bean does not have are missing
+     */
+    public static Map<String, EmsAttribute> refreshAttributes(EmsBean bean, Collection<String> attributeNames) {
+        List<EmsAttribute> refreshedAttributes = bean.refreshAttributes(new ArrayList<String>(
+            new LinkedHashSet<String>(attributeNames)));
+        Map<String, EmsAttribute> attributes = new HashMap<String, EmsAttribute>();
+        for (EmsAttribute attribute : refreshedAttributes) {
+            attributes.put(attribute.getName(), attribute);
+        }
+        return attributes;
+    }
+}
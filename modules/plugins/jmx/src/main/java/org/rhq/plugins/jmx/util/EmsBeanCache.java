@@ -0,0 +1,88 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.plugins.jmx.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mc4j.ems.connection.EmsConnection;
+import org.mc4j.ems.connection.bean.EmsBean;
+
+/**
+ * Caches the {@link EmsBean}s a component looks up by object name, e.g. the other MBeans its metrics are read from,
+ * so that they are not looked up again at each collection.
+ *
+ * The beans are only valid for the EMS connection they were looked up on; the cache is emptied as soon as it is used
+ * with another connection (i.e. after the parent component reconnected). Beans that could not be found are not cached,
+ * and a bean that fails to be read from should be {@link #remove(String) removed}.
+ */
+public class EmsBeanCache {
+
+    private EmsConnection connection;
+    private final Map<String, EmsBean> beans = new HashMap<String, EmsBean>();
+
+    /**
+     * @param connection the current EMS connection
+     * @param objectName the object name of the bean
+     * @return the bean, or null if it could not be found
+     */
+    public synchronized EmsBean getBean(EmsConnection connection, String objectName) {
+        if (connection != this.connection) {
+            beans.clear();
+            this.connection = connection;
+        }
+        if (connection == null) {
+            return null;
+        }
+
+        EmsBean bean = beans.get(objectName);
+        if (bean == null) {
+            bean = loadBean(connection, objectName);
+            if (bean != null) {
+                beans.put(objectName, bean);
+            }
+        }
+        return bean;
+    }
+
+    /**
+     * Looks a bean up on the connection when it is not cached. Subclasses can override this to look beans up in
+     * another way.
+     *
+     * @param connection the current EMS connection
+     * @param objectName the object name of the bean
+     * @return the bean, or null if it could not be found
+     */
+    protected EmsBean loadBean(EmsConnection connection, String objectName) {
+        return connection.getBean(objectName);
+    }
+
+    public synchronized void remove(String objectName) {
+        beans.remove(objectName);
+    }
+
+    public synchronized void clear() {
+        beans.clear();
+        connection = null;
+    }
+}
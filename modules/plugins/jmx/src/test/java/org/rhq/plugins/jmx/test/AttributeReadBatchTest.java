@@ -0,0 +1,155 @@
+/*
+ * RHQ Management Platform
+ * Copyright (C) 2005-2014 Red Hat, Inc.
+ * All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License, version 2, as
+ * published by the Free Software Foundation, and/or the GNU Lesser
+ * General Public License, version 2.1, also as published by the Free
+ * Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License and the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * and the GNU Lesser General Public License along with this program;
+ * if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.rhq.plugins.jmx.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mc4j.ems.connection.EmsConnection;
+import org.mc4j.ems.connection.bean.EmsBean;
+import org.mc4j.ems.connection.bean.attribute.EmsAttribute;
+import org.testng.annotations.Test;
+
+import org.rhq.plugins.jmx.util.AttributeReadBatch;
+import org.rhq.plugins.jmx.util.EmsBeanCache;
+
+@Test
+public class AttributeReadBatchTest {
+
+    public void testOneReadPerBean() {
+        FakeConnection connection = new FakeConnection();
+        connection.addBean("a:type=A", "x", 1, "y", 2);
+        connection.addBean("a:type=B", "z", 3);
+
+        AttributeReadBatch<String> batch = new AttributeReadBatch<String>();
+        batch.add("a:type=A", "x", "ax");
+        batch.add("a:type=A", "y", "ay");
+        batch.add("a:type=A", "x", "ax-again");
+        batch.add("a:type=B", "z", "bz");
+        batch.add("a:type=B", "missing", "bmissing");
+        batch.add("a:type=C", "x", "cx");
+
+        Map<String, Object> values = batch.read(connection.proxy, new EmsBeanCache());
+
+        assertEquals(values.get("ax"), 1);
+        assertEquals(values.get("ax-again"), 1);
+        assertEquals(values.get("ay"), 2);
+        assertEquals(values.get("bz"), 3);
+        assertFalse(values.containsKey("bmissing"));
+        assertFalse(values.containsKey("cx"));
+
+        assertEquals(connection.reads, Arrays.asList("a:type=A" + Arrays.asList("x", "y"),
+            "a:type=B" + Arrays.asList("z", "missing")));
+    }
+
+    public void testBeanCache() {
+        FakeConnection connection = new FakeConnection();
+        connection.addBean("a:type=A", "x", 1);
+        EmsBeanCache cache = new EmsBeanCache();
+
+        EmsBean bean = cache.getBean(connection.proxy, "a:type=A");
+        assertSame(cache.getBean(connection.proxy, "a:type=A"), bean);
+        assertEquals(connection.lookups, 1);
+
+        assertNull(cache.getBean(connection.proxy, "a:type=B"));
+        assertNull(cache.getBean(connection.proxy, "a:type=B"));
+        assertEquals(connection.lookups, 3, "Missing beans should not be cached");
+
+        cache.remove("a:type=A");
+        cache.getBean(connection.proxy, "a:type=A");
+        assertEquals(connection.lookups, 4);
+
+        FakeConnection otherConnection = new FakeConnection();
+        otherConnection.addBean("a:type=A", "x", 1);
+        assertTrue(cache.getBean(otherConnection.proxy, "a:type=A") != bean,
+            "Beans of a previous connection should not be returned");
+    }
+
+    private static class FakeConnection implements InvocationHandler {
+        final EmsConnection proxy = proxy(EmsConnection.class, this);
+        final Map<String, EmsBean> beans = new HashMap<String, EmsBean>();
+        final List<String> reads = new ArrayList<String>();
+        int lookups;
+
+        void addBean(final String objectName, Object... attributeValues) {
+            final Map<String, Object> attributes = new HashMap<String, Object>();
+            for (int i = 0; i < attributeValues.length; i += 2) {
+                attributes.put((String) attributeValues[i], attributeValues[i + 1]);
+            }
+            beans.put(objectName, proxy(EmsBean.class, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("refreshAttributes")) {
+                        @SuppressWarnings("unchecked")
+                        List<String> names = (List<String>) args[0];
+                        reads.add(objectName + names);
+                        List<EmsAttribute> refreshed = new ArrayList<EmsAttribute>();
+                        for (String name : names) {
+                            if (attributes.containsKey(name)) {
+                                refreshed.add(newAttribute(name, attributes.get(name)));
+                            }
+                        }
+                        return refreshed;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            }));
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("getBean")) {
+                lookups++;
+                return beans.get(args[0]);
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+
+        private static EmsAttribute newAttribute(final String name, final Object value) {
+            return proxy(EmsAttribute.class, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("getName")) {
+                        return name;
+                    } else if (method.getName().equals("getValue")) {
+                        return value;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+        }
+    }
+}
@@ -23,6 +23,7 @@
 package org.rhq.plugins.platform;
 
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -40,27 +41,41 @@ import org.rhq.core.pluginapi.inventory.ResourceContext;
 import org.rhq.core.pluginapi.measurement.MeasurementFacet;
 import org.rhq.core.pluginapi.util.ObjectUtil;
 import org.rhq.core.system.CpuInformation;
+import org.rhq.core.system.ProcStats;
+import org.rhq.core.system.ProcStatsSampler;
 
 /**
  * A Resource component representing a CPU core.
+ *
+ * On Linux, the cpu times are read from the shared /proc snapshot (see {@link ProcStatsSampler}) rather than SIGAR,
+ * which is then only used for the static cpu information.
  */
 public class CpuComponent implements ResourceComponent<PlatformComponent>, MeasurementFacet {
+    private int cpuIndex;
     private CpuInformation cpuInformation = null;
+    private boolean useProcStats;
     private CpuEntry startCpuEntry = null;
 
     /** 
-     * A Map of cpu metric names to the last (Sigar) Cpu record used in calculations for that metric in getValues.
+     * A Map of cpu metric names to the last cpu times used in calculations for that metric in getValues.
      * This allows us to take proper cpu usage deltas for each metric, on different schedules. See
      * RHQ-245 for why this is necessary.
      */
     private Map<String, CpuEntry> cpuCache;
 
     public void start(ResourceContext<PlatformComponent> resourceContext) {
+        cpuIndex = Integer.parseInt(resourceContext.getResourceKey());
         if (resourceContext.getSystemInformation().isNative()) {
-            cpuInformation = resourceContext.getSystemInformation().getCpu(
-                Integer.parseInt(resourceContext.getResourceKey()));
+            cpuInformation = resourceContext.getSystemInformation().getCpu(cpuIndex);
+        }
+        long[] times = getProcStatsTimes();
+        useProcStats = (times != null);
+        if (!useProcStats && cpuInformation != null) {
+            times = toTimes(cpuInformation.getCpu());
+        }
+        if (times != null) {
             cpuCache = new HashMap<String, CpuEntry>();
-            startCpuEntry = new CpuEntry(cpuInformation.getCpu());
+            startCpuEntry = new CpuEntry(times);
         }
         return;
     }
@@ -70,7 +85,9 @@ public class CpuComponent implements ResourceComponent<PlatformComponent>, Measu
     }
 
     public AvailabilityType getAvailability() {
-        if (this.cpuInformation != null) {
+        if (useProcStats) {
+            return (getProcStatsTimes() != null) ? AvailabilityType.UP : AvailabilityType.DOWN;
+        } else if (this.cpuInformation != null) {
             this.cpuInformation.refresh();
             return (this.cpuInformation.isEnabled()) ? AvailabilityType.UP : AvailabilityType.DOWN;
         } else {
@@ -79,175 +96,168 @@ public class CpuComponent implements ResourceComponent<PlatformComponent>, Measu
     }
 
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) {
-        if (cpuInformation != null) {
+        if (cpuCache == null) {
+            return;
+        }
+        if (!useProcStats) {
             cpuInformation.refresh();
+        }
 
-            Cpu cpu = null;
-            CpuEntry currentCpu = null;
-            CpuInfo cpuInfo = null; // this is probably gonna be used for traits only
-
-            for (MeasurementScheduleRequest request : metrics) {
-                String property = request.getName();
-
-                if (property.startsWith("Cpu.")) {
-                    // Grab the current cpu info from SIGAR, only once for this cpu for all processed schedules
-                    if (cpu == null) {
-                        cpu = cpuInformation.getCpu();
-                    }
+        Cpu cpu = null;
+        CpuEntry currentCpu = null;
+        CpuInfo cpuInfo = null; // this is probably gonna be used for traits only
 
-                    property = property.substring(property.indexOf(".") + 1);
-                    Long longValue = (Long) ObjectUtil.lookupAttributeProperty(cpu, property);
-                    // A value of -1 indicates SIGAR does not support the metric on the Agent platform type.
-                    if (longValue != null && longValue != -1) {
-                        report.addData(new MeasurementDataNumeric(request, longValue.doubleValue()));
-                    }
-                } else if (property.startsWith("CpuPerc.")) {
+        for (MeasurementScheduleRequest request : metrics) {
+            String property = request.getName();
 
-                    /*
-                     * ! we no longer use the SIGAR CpuPerc object to report cpu percentage metrics. See
-                     * ! RHQ-245 for an explanation.  We now calculate our own percentages using
-                     * ! the current raw cpu info from Sigar and the previous cpu numbers, cached per metric.
-                     * ! This allows us to avoid the problem in RHQ-245 while handling perCpu-perMetric schedule
-                     * ! granularity. 
-                     */
+            if (property.startsWith("Cpu.")) {
+                property = property.substring(property.indexOf(".") + 1);
+                int column = ProcStats.getCpuColumn(property);
+                // Grab the current cpu times only once for this cpu for all processed schedules
+                if (column >= 0 && null == currentCpu) {
+                    currentCpu = getCurrentCpuEntry();
+                }
 
-                    // Grab the current cpu info from SIGAR, only once for this cpu for all processed schedules
-                    if (null == cpu) {
+                Long longValue = null;
+                if (column >= 0 && currentCpu != null) {
+                    longValue = currentCpu.getTimes()[column];
+                } else if (cpuInformation != null) {
+                    if (cpu == null) {
                         cpu = cpuInformation.getCpu();
                     }
-                    // Create a Cpu cacheEntry only once for this cpu for all processed schedules
-                    if (null == currentCpu) {
-                        currentCpu = new CpuEntry(cpu);
-                    }
-
-                    // Get the previous cpu numbers to be used for this metric and update the cache for the next go.
-                    CpuEntry previousCpu = cpuCache.put(property, currentCpu);
-                    previousCpu = (null == previousCpu) ? startCpuEntry : previousCpu;
-
-                    // if for some reason the delta time is excessive then toss the metric, since it depends 
-                    // on a reasonable interval between prev and curr. This can happen due to avail down or a newly
-                    // activated metric. Allow up to twice the metric interval. If the metric interval is
-                    // 0 (for a live data request) then just use a 10 minute interval.
-                    Number num = null;
-                    long deltaTime = currentCpu.getTimestamp() - previousCpu.getTimestamp();
-                    long metricInterval = (0 < request.getInterval()) ? request.getInterval() : 600000L;
+                    longValue = (Long) ObjectUtil.lookupAttributeProperty(cpu, property);
+                }
+                // A value of -1 indicates SIGAR does not support the metric on the Agent platform type.
+                if (longValue != null && longValue != -1) {
+                    report.addData(new MeasurementDataNumeric(request, longValue.doubleValue()));
+                }
+            } else if (property.startsWith("CpuPerc.")) {
+
+                /*
+                 * ! we no longer use the SIGAR CpuPerc object to report cpu percentage metrics. See
+                 * ! RHQ-245 for an explanation.  We now calculate our own percentages using
+                 * ! the current raw cpu times and the previous cpu numbers, cached per metric.
+                 * ! This allows us to avoid the problem in RHQ-245 while handling perCpu-perMetric schedule
+                 * ! granularity. 
+                 */
+
+                // Create a Cpu cacheEntry only once for this cpu for all processed schedules
+                if (null == currentCpu) {
+                    currentCpu = getCurrentCpuEntry();
+                }
+                int column = ProcStats.getCpuColumn(property.substring(property.lastIndexOf(".") + 1));
+                if (currentCpu == null || column < 0) {
+                    continue;
+                }
 
-                    if (deltaTime <= (2 * metricInterval)) {
-                        // Use the same calculation that SIGAR uses to generate the percentages. The difference is that
-                        // we use a safe "previous" cpu record.                      
-                        num = getPercentage(previousCpu.getCpu(), cpu, property);
-                    }
+                // Get the previous cpu numbers to be used for this metric and update the cache for the next go.
+                CpuEntry previousCpu = cpuCache.put(property, currentCpu);
+                previousCpu = (null == previousCpu) ? startCpuEntry : previousCpu;
+
+                // if for some reason the delta time is excessive then toss the metric, since it depends 
+                // on a reasonable interval between prev and curr. This can happen due to avail down or a newly
+                // activated metric. Allow up to twice the metric interval. If the metric interval is
+                // 0 (for a live data request) then just use a 10 minute interval.
+                Number num = null;
+                long deltaTime = currentCpu.getTimestamp() - previousCpu.getTimestamp();
+                long metricInterval = (0 < request.getInterval()) ? request.getInterval() : 600000L;
+
+                if (deltaTime <= (2 * metricInterval)) {
+                    // Use the same calculation that SIGAR uses to generate the percentages. The difference is that
+                    // we use a safe "previous" cpu record.                      
+                    num = ProcStats.getCpuPercentage(previousCpu.getTimes(), currentCpu.getTimes(), column);
+                }
 
-                    // Uncomment to see details about the calculations.
-                    //System.out.println("\nCPU-" + cpuInformation.getCpuIndex() + " Interval="
-                    //    + ((currentCpu.getTimestamp() - previousCpu.getTimestamp()) / 1000) + " " + property + "="
-                    //    + num + "\n   Prev=" + previousCpu + "\n   Curr=" + currentCpu);
+                // Uncomment to see details about the calculations.
+                //System.out.println("\nCPU-" + cpuIndex + " Interval="
+                //    + ((currentCpu.getTimestamp() - previousCpu.getTimestamp()) / 1000) + " " + property + "="
+                //    + num + "\n   Prev=" + previousCpu + "\n   Curr=" + currentCpu);
 
-                    if (num != null) {
-                        report.addData(new MeasurementDataNumeric(request, num.doubleValue()));
-                    }
-                } else if (property.startsWith("CpuInfo.")) {
-                    if (cpuInfo == null) {
-                        cpuInfo = cpuInformation.getCpuInfo();
-                    }
+                if (num != null && !Double.isNaN(num.doubleValue())) {
+                    report.addData(new MeasurementDataNumeric(request, num.doubleValue()));
+                }
+            } else if (property.startsWith("CpuInfo.")) {
+                if (cpuInformation == null) {
+                    continue;
+                }
+                if (cpuInfo == null) {
+                    cpuInfo = cpuInformation.getCpuInfo();
+                }
 
-                    property = property.substring(property.indexOf(".") + 1);
-                    Number num = ((Number) ObjectUtil.lookupAttributeProperty(cpuInfo, property));
-                    if (num != null) {
-                        report.addData(new MeasurementDataNumeric(request, num.doubleValue()));
-                    }
-                } else if (property.startsWith("CpuTrait.")) {
-                    if (cpuInfo == null) {
-                        cpuInfo = cpuInformation.getCpuInfo();
-                    }
-                    property = property.substring(property.indexOf(".") + 1);
-                    Object o = ObjectUtil.lookupAttributeProperty(cpuInfo, property);
-                    if (o != null) {
-                        String res;
-                        if ("model".equals(property) || "vendor".equals(property)) {
-                            res = (String) o;
-                        } else {
-                            res = String.valueOf(o);
-                        }
-                        report.addData(new MeasurementDataTrait(request, res));
+                property = property.substring(property.indexOf(".") + 1);
+                Number num = ((Number) ObjectUtil.lookupAttributeProperty(cpuInfo, property));
+                if (num != null) {
+                    report.addData(new MeasurementDataNumeric(request, num.doubleValue()));
+                }
+            } else if (property.startsWith("CpuTrait.")) {
+                if (cpuInformation == null) {
+                    continue;
+                }
+                if (cpuInfo == null) {
+                    cpuInfo = cpuInformation.getCpuInfo();
+                }
+                property = property.substring(property.indexOf(".") + 1);
+                Object o = ObjectUtil.lookupAttributeProperty(cpuInfo, property);
+                if (o != null) {
+                    String res;
+                    if ("model".equals(property) || "vendor".equals(property)) {
+                        res = (String) o;
+                    } else {
+                        res = String.valueOf(o);
                     }
+                    report.addData(new MeasurementDataTrait(request, res));
                 }
             }
         }
         return;
     }
 
+    private long[] getProcStatsTimes() {
+        ProcStats procStats = ProcStatsSampler.getInstance().getSnapshot();
+        return (procStats != null) ? procStats.getCpu(cpuIndex) : null;
+    }
+
     /**
-     * Calculate the percentage of CPU taken up by the requested cpu property (metric) for the interval
-     * defined by the prev and curr cpu numbers.  This algorithm is taken from SIGAR. See
-     * http://svn.hyperic.org/projects/sigar/trunk/src/sigar_format.c ( sigar_cpu_perc_calculate() ) 
+     * @return the current cpu times, either from /proc or from SIGAR, or null if they can't be read
      */
-    private Number getPercentage(Cpu prev, Cpu curr, String property) {
-        Number result = 0.0;
-
-        double diff_user, diff_sys, diff_nice, diff_idle;
-        double diff_wait, diff_irq, diff_soft_irq, diff_stolen;
-        double diff_total;
-
-        diff_user = curr.getUser() - prev.getUser();
-        diff_sys = curr.getSys() - prev.getSys();
-        diff_nice = curr.getNice() - prev.getNice();
-        diff_idle = curr.getIdle() - prev.getIdle();
-        diff_wait = curr.getWait() - prev.getWait();
-        diff_irq = curr.getIrq() - prev.getIrq();
-        diff_soft_irq = curr.getSoftIrq() - prev.getSoftIrq();
-        diff_stolen = curr.getStolen() - prev.getStolen();
-
-        // It's not exactly clear to me what SIGAR is doing here. It may be to handle a rollover of
-        // the cumulative cpu usage numbers. If so, this code could maybe be improved to still
-        // determine the total usage.
-        diff_user = diff_user < 0 ? 0 : diff_user;
-        diff_sys = diff_sys < 0 ? 0 : diff_sys;
-        diff_nice = diff_nice < 0 ? 0 : diff_nice;
-        diff_idle = diff_idle < 0 ? 0 : diff_idle;
-        diff_wait = diff_wait < 0 ? 0 : diff_wait;
-        diff_irq = diff_irq < 0 ? 0 : diff_irq;
-        diff_soft_irq = diff_soft_irq < 0 ? 0 : diff_soft_irq;
-        diff_stolen = diff_stolen < 0 ? 0 : diff_stolen;
-
-        diff_total = diff_user + diff_sys + diff_nice + diff_idle + diff_wait + diff_irq + diff_soft_irq + diff_stolen;
+    private CpuEntry getCurrentCpuEntry() {
+        long[] times = useProcStats ? getProcStatsTimes() : toTimes(cpuInformation.getCpu());
+        return (times != null) ? new CpuEntry(times) : null;
+    }
 
-        property = property.substring(property.lastIndexOf(".") + 1, property.length());
-        if ("idle".equals(property)) {
-            result = diff_idle / diff_total;
-        } else if ("sys".equals(property)) {
-            result = diff_sys / diff_total;
-        } else if ("user".equals(property)) {
-            result = diff_user / diff_total;
-        } else if ("wait".equals(property)) {
-            result = diff_wait / diff_total;
-        } else if ("nice".equals(property)) {
-            result = diff_nice / diff_total;
-        } else if ("irq".equals(property)) {
-            result = diff_irq / diff_total;
-        } else if ("softIrq".equals(property)) {
-            result = diff_soft_irq / diff_total;
-        } else if ("stolen".equals(property)) {
-            result = diff_stolen / diff_total;
+    /**
+     * @return the times of the SIGAR Cpu record, indexed as the cpu times of {@link ProcStats}
+     */
+    private static long[] toTimes(Cpu cpu) {
+        if (cpu == null) {
+            return null;
         }
-
-        return result;
+        long[] times = new long[ProcStats.CPU_STOLEN + 1];
+        times[ProcStats.CPU_USER] = cpu.getUser();
+        times[ProcStats.CPU_NICE] = cpu.getNice();
+        times[ProcStats.CPU_SYS] = cpu.getSys();
+        times[ProcStats.CPU_IDLE] = cpu.getIdle();
+        times[ProcStats.CPU_WAIT] = cpu.getWait();
+        times[ProcStats.CPU_IRQ] = cpu.getIrq();
+        times[ProcStats.CPU_SOFT_IRQ] = cpu.getSoftIrq();
+        times[ProcStats.CPU_STOLEN] = cpu.getStolen();
+        return times;
     }
 
     /**
-     * Just a private, immutable, utility class for associating a CPU and timestamp with the raw Cpu object from SIGAR.
+     * Just a private, immutable, utility class for associating a CPU and timestamp with the raw cpu times.
      */
     private class CpuEntry {
-        private Cpu cpu;
+        private long[] times;
         private long timestamp;
 
-        public CpuEntry(Cpu cpu) {
-            this.cpu = cpu;
+        public CpuEntry(long[] times) {
+            this.times = times;
             this.timestamp = System.currentTimeMillis();
         }
 
-        public Cpu getCpu() {
-            return cpu;
+        public long[] getTimes() {
+            return times;
         }
 
         public long getTimestamp() {
@@ -255,8 +265,8 @@ public class CpuComponent implements ResourceComponent<PlatformComponent>, Measu
         }
 
         public String toString() {
-            return "CPU-" + cpuInformation.getCpuIndex() + "[" + new SimpleDateFormat("HH:mm:ss").format(timestamp)
-                + "] = " + cpu;
+            return "CPU-" + cpuIndex + "[" + new SimpleDateFormat("HH:mm:ss").format(timestamp) + "] = "
+                + Arrays.toString(times);
         }
     }
 }
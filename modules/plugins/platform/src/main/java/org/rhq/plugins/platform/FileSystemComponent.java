@@ -38,6 +38,8 @@ import org.rhq.core.pluginapi.inventory.ResourceContext;
 import org.rhq.core.pluginapi.measurement.MeasurementFacet;
 import org.rhq.core.pluginapi.util.ObjectUtil;
 import org.rhq.core.system.FileSystemInfo;
+import org.rhq.core.system.ProcStats;
+import org.rhq.core.system.ProcStatsSampler;
 import org.rhq.core.system.SystemInfo;
 
  /**
@@ -69,6 +71,12 @@ public class FileSystemComponent implements ResourceComponent<PlatformComponent>
 
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> requests) throws Exception {
         FileSystemInfo fileSystemInfo = getFileSystemInfo();
+        // on Linux the disk counters of all the devices are read from /proc at once
+        long[] diskCounters = null;
+        ProcStats procStats = ProcStatsSampler.getInstance().getSnapshot();
+        if (procStats != null && fileSystemInfo != null && fileSystemInfo.getFileSystem() != null) {
+            diskCounters = procStats.getDiskCounters(fileSystemInfo.getFileSystem().getDevName());
+        }
         for (MeasurementScheduleRequest request : requests) {
             try {
                 switch (request.getDataType()) {
@@ -77,7 +85,9 @@ public class FileSystemComponent implements ResourceComponent<PlatformComponent>
                         report.addData(new MeasurementDataTrait(request, String.valueOf(object)));
                         break;
                     case MEASUREMENT:
-                        Double value = ObjectUtil.lookupDeepNumericAttributeProperty(fileSystemInfo, request.getName());
+                        int column = (diskCounters != null) ? getDiskColumn(request.getName()) : -1;
+                        Double value = (column >= 0) ? Double.valueOf(diskCounters[column]) : ObjectUtil
+                            .lookupDeepNumericAttributeProperty(fileSystemInfo, request.getName());
                         report.addData(new MeasurementDataNumeric(request, value));
                         break;
                     default:
@@ -90,6 +100,22 @@ public class FileSystemComponent implements ResourceComponent<PlatformComponent>
         }
     }
 
+    /**
+     * @return the {@link ProcStats} disk column of the metric, or -1 if it is not read from /proc
+     */
+    private static int getDiskColumn(String metricName) {
+        if ("fileSystemUsage.diskReads".equals(metricName)) {
+            return ProcStats.DISK_READS;
+        } else if ("fileSystemUsage.diskReadBytes".equals(metricName)) {
+            return ProcStats.DISK_READ_BYTES;
+        } else if ("fileSystemUsage.diskWrites".equals(metricName)) {
+            return ProcStats.DISK_WRITES;
+        } else if ("fileSystemUsage.diskWriteBytes".equals(metricName)) {
+            return ProcStats.DISK_WRITE_BYTES;
+        }
+        return -1;
+    }
+
     private FileSystemInfo getFileSystemInfo() {
         SystemInfo systemInfo = resourceContext.getSystemInformation();
         return systemInfo.getFileSystem(resourceContext.getResourceKey());
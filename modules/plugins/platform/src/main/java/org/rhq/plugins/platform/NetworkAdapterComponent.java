@@ -40,6 +40,8 @@ import org.rhq.core.pluginapi.measurement.MeasurementFacet;
 import org.rhq.core.pluginapi.util.ObjectUtil;
 import org.rhq.core.system.NetworkAdapterInfo;
 import org.rhq.core.system.NetworkAdapterStats;
+import org.rhq.core.system.ProcStats;
+import org.rhq.core.system.ProcStatsSampler;
 
 public class NetworkAdapterComponent implements ResourceComponent<PlatformComponent>, MeasurementFacet {
     private final Log log = LogFactory.getLog(NetworkAdapterComponent.class);
@@ -92,12 +94,27 @@ public class NetworkAdapterComponent implements ResourceComponent<PlatformCompon
     }
 
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) {
-        NetworkAdapterInfo info = getInfo();
-        NetworkAdapterStats stats = this.context.getSystemInformation().getNetworkAdapterStats(info.getName());
+        // on Linux the counters of all the adapters are read from /proc at once, the adapter info is only needed for
+        // the traits
+        NetworkAdapterInfo info = null;
+        NetworkAdapterStats stats = null;
+        ProcStats procStats = ProcStatsSampler.getInstance().getSnapshot();
+        if (procStats != null) {
+            stats = procStats.getNetworkAdapterStats(context.getResourceKey());
+        }
 
         for (MeasurementScheduleRequest request : metrics) {
             String property = request.getName();
 
+            if (property.startsWith("Trait.") && info == null) {
+                info = getInfo();
+            } else if (!property.startsWith("Trait.") && stats == null) {
+                if (info == null) {
+                    info = getInfo();
+                }
+                stats = this.context.getSystemInformation().getNetworkAdapterStats(info.getName());
+            }
+
             if (property.startsWith("Trait.net4.address")) // TODO
             { // this trait is supported regardless of having native support or not
                 List<InetAddress> addrs = info.getUnicastAddresses();
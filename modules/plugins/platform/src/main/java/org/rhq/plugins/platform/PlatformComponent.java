@@ -26,7 +26,9 @@ import java.beans.BeanInfo;
 import java.beans.Introspector;
 import java.beans.PropertyDescriptor;
 import java.lang.management.ManagementFactory;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.management.MBeanServer;
@@ -56,6 +58,8 @@ import org.rhq.core.pluginapi.measurement.MeasurementFacet;
 import org.rhq.core.pluginapi.operation.OperationFacet;
 import org.rhq.core.pluginapi.operation.OperationResult;
 import org.rhq.core.pluginapi.util.ObjectUtil;
+import org.rhq.core.system.ProcStats;
+import org.rhq.core.system.ProcStatsSampler;
 import org.rhq.core.system.ProcessInfo;
 import org.rhq.core.system.SigarAccess;
 import org.rhq.core.system.SystemInfo;
@@ -91,9 +95,16 @@ public class PlatformComponent implements ResourceComponent<PlatformComponent>,
     protected ResourceContext resourceContext;
     private SystemInfo sysinfo;
 
+    // the cpu times when the component started and, per metric, of the previous collection, when they are read
+    // from /proc; as in CpuComponent, each metric has its own interval (see RHQ-245)
+    private long[] startCpuTotal;
+    private Map<String, long[]> previousCpuTotals = new HashMap<String, long[]>();
+
     public void start(ResourceContext context) {
         this.resourceContext = context;
         this.sysinfo = context.getSystemInformation();
+        ProcStats procStats = ProcStatsSampler.getInstance().getSnapshot();
+        this.startCpuTotal = (procStats != null) ? procStats.getCpuTotal() : null;
     }
 
     public void stop() {
@@ -121,49 +132,84 @@ public class PlatformComponent implements ResourceComponent<PlatformComponent>,
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) {
         SystemInfo info = this.resourceContext.getSystemInformation();
         boolean isNative = info.isNative();
+        // on Linux, memory and cpu metrics are all served from one read of /proc rather than a SIGAR call each
+        ProcStats procStats = ProcStatsSampler.getInstance().getSnapshot();
+        if (procStats != null && !procStats.hasMemoryInfo()) {
+            procStats = null;
+        }
+        long[] cpuTotal = (procStats != null) ? procStats.getCpuTotal() : null;
         Mem platformMemoryInfo = null;
         Swap platformSwapInfo = null;
         CpuPerc cpuPerc = null;
-        try {
-            cpuPerc = SigarAccess.getSigar().getCpuPerc();
-        } catch (Exception e) {
-            // probably native api is unavailable, but getCpuPerc might also have a problem; in either case, nothing we can do
-        }
 
         for (MeasurementScheduleRequest request : metrics) {
             String property = request.getName();
 
             if (property.startsWith(NATIVE_INDICATOR)) {
-                // we cannot collect a native measurement without native support - go on to the next
-                if (!isNative) {
+                property = property.substring(NATIVE_INDICATOR.length());
+                // we cannot collect a native measurement without native support, unless it can be read from /proc
+                if (!isNative
+                    && (procStats == null || !(property.startsWith("MemoryInfo.") || property.startsWith("SwapInfo.")))) {
                     continue;
                 }
-                property = property.substring(NATIVE_INDICATOR.length());
             }
 
             if (property.startsWith(TRAIT_INDICATOR)) {
                 report.addData(getMeasurementDataTrait(request));
             } else if (property.startsWith("MemoryInfo.")) {
-                if (platformMemoryInfo == null) {
-                    platformMemoryInfo = info.getMemoryInfo();
-                }
-
                 property = property.substring(property.indexOf(".") + 1);
-                double memoryValue = ((Number) getObjectProperty(platformMemoryInfo, property)).doubleValue();
-                report.addData(new MeasurementDataNumeric(request, memoryValue));
+                Number memoryValue = (procStats != null) ? getMemoryValue(procStats, property) : null;
+                if (memoryValue == null) {
+                    if (platformMemoryInfo == null) {
+                        platformMemoryInfo = info.getMemoryInfo();
+                    }
+                    memoryValue = (Number) getObjectProperty(platformMemoryInfo, property);
+                }
+                report.addData(new MeasurementDataNumeric(request, memoryValue.doubleValue()));
             } else if (property.startsWith("SwapInfo.")) {
-                if (platformSwapInfo == null) {
-                    platformSwapInfo = info.getSwapInfo();
+                property = property.substring(property.indexOf(".") + 1);
+                Number swapValue = (procStats != null) ? getSwapValue(procStats, property) : null;
+                if (swapValue == null) {
+                    if (platformSwapInfo == null) {
+                        platformSwapInfo = info.getSwapInfo();
+                    }
+                    if (platformSwapInfo != null) {
+                        swapValue = (Number) getObjectProperty(platformSwapInfo, property);
+                    }
                 }
-                if (platformSwapInfo != null) {
-                    property = property.substring(property.indexOf(".") + 1);
-                    double swapValue = ((Number) getObjectProperty(platformSwapInfo, property)).doubleValue();
-                    report.addData(new MeasurementDataNumeric(request, swapValue));
+                if (swapValue != null) {
+                    report.addData(new MeasurementDataNumeric(request, swapValue.doubleValue()));
                 }
             } else if (property.startsWith("CpuPerc.")) {
+                property = property.substring(property.indexOf(".") + 1);
+                int column = ProcStats.getCpuColumn(property);
+                if (cpuTotal != null && column >= 0) {
+                    // the percentage is over the interval since the previous collection of the metric
+                    long[] previousCpuTotal = previousCpuTotals.get(property);
+                    if (previousCpuTotal == null) {
+                        previousCpuTotal = startCpuTotal;
+                    }
+                    if (previousCpuTotal == null) {
+                        previousCpuTotals.put(property, cpuTotal);
+                        continue;
+                    }
+                    // no time has passed if the snapshot has not been refreshed since, then the previous one is kept
+                    double percentage = ProcStats.getCpuPercentage(previousCpuTotal, cpuTotal, column);
+                    if (!Double.isNaN(percentage)) {
+                        report.addData(new MeasurementDataNumeric(request, percentage));
+                        previousCpuTotals.put(property, cpuTotal);
+                    }
+                    continue;
+                }
 
+                if (cpuPerc == null) {
+                    try {
+                        cpuPerc = SigarAccess.getSigar().getCpuPerc();
+                    } catch (Exception e) {
+                        // probably native api is unavailable, but getCpuPerc might also have a problem; in either case, nothing we can do
+                    }
+                }
                 if (cpuPerc != null) {
-                    property = property.substring(property.indexOf(".") + 1);
                     Number num = ((Number) ObjectUtil.lookupAttributeProperty(cpuPerc, property));
                     if (num != null) {
                         report.addData(new MeasurementDataNumeric(request, num.doubleValue()));
@@ -173,6 +219,38 @@ public class PlatformComponent implements ResourceComponent<PlatformComponent>,
         }
     }
 
+    /**
+     * @return the value of a property of SIGAR's <code>Mem</code> as read from /proc, or null if it is not read there
+     */
+    private static Number getMemoryValue(ProcStats procStats, String property) {
+        if ("total".equals(property)) {
+            return procStats.getMemTotal();
+        } else if ("free".equals(property)) {
+            return procStats.getMemFree();
+        } else if ("used".equals(property)) {
+            return procStats.getMemUsed();
+        } else if ("actualFree".equals(property)) {
+            return procStats.getMemActualFree();
+        } else if ("actualUsed".equals(property)) {
+            return procStats.getMemActualUsed();
+        }
+        return null;
+    }
+
+    /**
+     * @return the value of a property of SIGAR's <code>Swap</code> as read from /proc, or null if it is not read there
+     */
+    private static Number getSwapValue(ProcStats procStats, String property) {
+        if ("total".equals(property)) {
+            return procStats.getSwapTotal();
+        } else if ("free".equals(property)) {
+            return procStats.getSwapFree();
+        } else if ("used".equals(property)) {
+            return procStats.getSwapUsed();
+        }
+        return null;
+    }
+
     private Object getObjectProperty(Object object, String name) {
         try {
             BeanInfo info = Introspector.getBeanInfo(object.getClass());
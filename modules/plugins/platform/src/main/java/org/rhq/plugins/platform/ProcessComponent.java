@@ -47,6 +47,7 @@ import org.rhq.core.pluginapi.measurement.MeasurementFacet;
 import org.rhq.core.system.AggregateProcessInfo;
 import org.rhq.core.system.ProcessInfo;
 import org.rhq.core.system.ProcessInfo.ProcessInfoSnapshot;
+import org.rhq.core.system.ProcessTableSampler;
 import org.rhq.core.system.SystemInfo;
 
 /**
@@ -74,13 +75,17 @@ public class ProcessComponent implements ResourceComponent, MeasurementFacet {
     public void stop() {
         resourceContext = null;
         processComponentConfig = null;
-        process = null;
-
+        setProcess(null);
     }
 
     @Override
     public AvailabilityType getAvailability() {
         try {
+            // Liveness of the process we already know about is answered by the shared process table, the process
+            // info itself only has to be refreshed for metrics
+            if (process != null && ProcessTableSampler.getInstance().isRunning(process.getPid())) {
+                return UP;
+            }
             ProcessInfoSnapshot snapshot = getFreshSnapshot();
             return (snapshot != null && snapshot.isRunning()) ? UP : DOWN;
         } catch (Exception e) {
@@ -94,13 +99,24 @@ public class ProcessComponent implements ResourceComponent, MeasurementFacet {
     private ProcessInfoSnapshot getFreshSnapshot() throws Exception {
         ProcessInfoSnapshot snapshot = (process == null) ? null : process.freshSnapshot();
         if (snapshot == null || !snapshot.isRunning()) {
-            process = findProcess(processComponentConfig, resourceContext.getSystemInformation());
+            setProcess(findProcess(processComponentConfig, resourceContext.getSystemInformation()));
             // Safe to get prior snapshot here, we've just recreated the process info instance
             snapshot = (process == null) ? null : process.priorSnaphot();
         }
         return snapshot;
     }
 
+    private void setProcess(ProcessInfo process) {
+        ProcessTableSampler processTable = ProcessTableSampler.getInstance();
+        if (this.process != null) {
+            processTable.unsubscribe(this.process.getPid());
+        }
+        this.process = process;
+        if (process != null) {
+            processTable.subscribe(process.getPid());
+        }
+    }
+
     static ProcessInfo findProcess(ProcessComponentConfig processComponentConfig, SystemInfo systemInfo)
         throws Exception {
 
@@ -32,6 +32,7 @@ import org.rhq.core.pluginapi.configuration.ConfigurationUpdateReport;
 import org.rhq.core.pluginapi.inventory.ResourceContext;
 import org.rhq.core.system.ProcessInfo;
 import org.rhq.core.system.ProcessInfo.ProcessInfoSnapshot;
+import org.rhq.core.system.ProcessTableSampler;
 import org.rhq.plugins.augeas.AugeasConfigurationComponent;
 import org.rhq.plugins.augeas.helper.AugeasNode;
 
@@ -41,15 +42,18 @@ public class PostfixServerComponent extends AugeasConfigurationComponent {
 
     public void start(ResourceContext resourceContext) throws Exception {
         super.start(resourceContext);
-        processInfo = resourceContext.getNativeProcess();
+        setProcessInfo(resourceContext.getNativeProcess());
     }
 
     public void stop() {
-        processInfo = null;
+        setProcessInfo(null);
         super.stop();
     }
 
     public AvailabilityType getAvailability() {
+        if (processInfo != null && ProcessTableSampler.getInstance().isRunning(processInfo.getPid())) {
+            return UP;
+        }
         ProcessInfoSnapshot processInfoSnapshot = getProcessInfoSnapshot();
         return (processInfoSnapshot != null && processInfoSnapshot.isRunning()) ? UP : DOWN;
     }
@@ -57,13 +61,24 @@ public class PostfixServerComponent extends AugeasConfigurationComponent {
     private ProcessInfoSnapshot getProcessInfoSnapshot() {
         ProcessInfoSnapshot processInfoSnapshot = (processInfo == null) ? null : processInfo.freshSnapshot();
         if (processInfoSnapshot == null || !processInfoSnapshot.isRunning()) {
-            processInfo = getResourceContext().getNativeProcess();
+            setProcessInfo(getResourceContext().getNativeProcess());
             // Safe to get prior snapshot here, we've just recreated the process info instance
             processInfoSnapshot = (processInfo == null) ? null : processInfo.priorSnaphot();
         }
         return processInfoSnapshot;
     }
 
+    private void setProcessInfo(ProcessInfo processInfo) {
+        ProcessTableSampler processTable = ProcessTableSampler.getInstance();
+        if (this.processInfo != null) {
+            processTable.unsubscribe(this.processInfo.getPid());
+        }
+        this.processInfo = processInfo;
+        if (processInfo != null) {
+            processTable.subscribe(processInfo.getPid());
+        }
+    }
+
     public Configuration loadResourceConfiguration() throws Exception {
         return super.loadResourceConfiguration();
     }
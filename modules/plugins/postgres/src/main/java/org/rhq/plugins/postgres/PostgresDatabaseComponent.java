@@ -27,6 +27,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
@@ -50,6 +51,7 @@ import org.rhq.core.pluginapi.operation.OperationResult;
 import org.rhq.plugins.database.ConnectionPoolingSupport;
 import org.rhq.plugins.database.DatabaseComponent;
 import org.rhq.plugins.database.DatabasePluginUtil;
+import org.rhq.plugins.database.KeyedRowsQuery;
 import org.rhq.plugins.database.PooledConnectionProvider;
 
 import static org.rhq.core.domain.measurement.AvailabilityType.DOWN;
@@ -65,6 +67,18 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
 
     private static final String QUERY_DATABASE_SIZE = "SELECT *, pg_database_size(datname) AS size FROM pg_stat_database where datname = ?";
 
+    // stats of all the tables of the database, see getTableStats
+    private static final String QUERY_TABLE_STATS = "select ts.*, "
+        + "pg_relation_size(ts.relid) AS table_size, pg_total_relation_size(ts.relid) AS total_size, "
+        + "ios.heap_blks_read, ios.heap_blks_hit, ios.idx_blks_read, ios.idx_blks_hit, "
+        + "ios.toast_blks_read, ios.toast_blks_hit, ios.tidx_blks_read, ios.tidx_blks_hit, "
+        + "pgc.reltuples AS rows_approx "
+        + "from pg_stat_user_tables ts left join pg_statio_user_tables ios on ts.relid = ios.relid "
+        + "left join pg_class pgc on ts.relid = pgc.oid";
+
+    // long enough for the tables collected together to share the query, shorter than any collection interval
+    private static final long TABLE_STATS_MAX_AGE = 20 * 1000L;
+
     private ResourceContext<PostgresServerComponent<?>> resourceContext;
     private String databaseName;
     private PostgresServerComponent<?> postgresServerComponent;
@@ -72,6 +86,7 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
     @Deprecated
     private Connection databaseConnection;
     private PostgresPooledConnectionProvider pooledConnectionProvider;
+    private KeyedRowsQuery tableStats;
 
     @Override
     public void start(ResourceContext<PostgresServerComponent<?>> context) throws Exception {
@@ -84,6 +99,7 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
             buildDatabaseConnectionIfNeeded();
             pooledConnectionProvider = new PostgresPooledConnectionProvider(createDatabaseSpecificConfig());
         }
+        tableStats = new KeyedRowsQuery(QUERY_TABLE_STATS, TABLE_STATS_MAX_AGE, "schemaname", "relname");
     }
 
     @Override
@@ -91,6 +107,7 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
         this.resourceContext = null;
         databaseName = null;
         postgresServerComponent = null;
+        tableStats = null;
         if (useOwnJdbcConnections) {
             DatabasePluginUtil.safeClose(databaseConnection);
             databaseConnection = null;
@@ -173,6 +190,15 @@ public class PostgresDatabaseComponent implements DatabaseComponent<PostgresServ
         return databaseName;
     }
 
+    /**
+     * Returns the statistics of a table of this database, as read with one query for all the tables.
+     *
+     * @return the statistics by column name, or an empty map if the table or its statistics could not be found
+     */
+    public Map<String, Double> getTableStats(String schemaName, String tableName) {
+        return tableStats.getNumericValues(this, schemaName, tableName);
+    }
+
     @Override
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> metrics) {
         Connection jdbcConnection = null;
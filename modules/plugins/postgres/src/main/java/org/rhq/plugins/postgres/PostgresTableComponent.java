@@ -23,7 +23,6 @@ import static org.rhq.core.domain.measurement.AvailabilityType.DOWN;
 import static org.rhq.core.domain.measurement.AvailabilityType.UNKNOWN;
 import static org.rhq.core.domain.measurement.AvailabilityType.UP;
 import static org.rhq.core.util.StringUtil.isBlank;
-import static org.rhq.plugins.database.DatabasePluginUtil.getNumericQueryValues;
 import static org.rhq.plugins.database.DatabasePluginUtil.getSingleNumericQueryValue;
 import static org.rhq.plugins.database.DatabasePluginUtil.safeClose;
 import static org.rhq.plugins.postgres.PostgresTableDiscoveryComponent.SCHEMA_SEPARATOR;
@@ -77,17 +76,6 @@ public class PostgresTableComponent implements DatabaseComponent<PostgresDatabas
     private static final String TABLE_EXISTS_QUERY = "select 1 from pg_stat_user_tables "
         + "where schemaname = ? and relname = ?";
 
-    private static final String TABLE_STATS_QUERY = "select ts.*,  "
-        + "pg_relation_size(ts.relid) AS table_size, pg_total_relation_size(ts.relid) AS total_size, "
-        + "ios.heap_blks_read, ios.heap_blks_hit, ios.idx_blks_read, ios.idx_blks_hit, "
-        + "ios.toast_blks_read, ios.toast_blks_hit, ios.tidx_blks_read, ios.tidx_blks_hit "
-        + "from pg_stat_user_tables ts left join pg_statio_user_tables ios on ts.relid = ios.relid "
-        + "where ts.schemaname = ? and ts.relname = ?";
-
-    private static final String TABLE_ROW_COUNT_APPROX_QUERY = "select pgc.reltuples "
-        + "from pg_class pgc, pg_namespace pgn "
-        + "where pgn.nspname = ? and pgc.relname = ? and pgc.relnamespace = pgn.oid";
-
     /**
      * @deprecated as of RHQ4.11. No longer used (and shouldn't have been exposed anyway).
      */
@@ -192,14 +180,14 @@ public class PostgresTableComponent implements DatabaseComponent<PostgresDatabas
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> requests) {
         String tableName = getTableNameFromContext(resourceContext);
         String schemaName = getSchemaNameFromContext(resourceContext);
-        Map<String, Double> results = getNumericQueryValues(this, TABLE_STATS_QUERY, schemaName, tableName);
+        // Statistics of all the tables of the database are read at once
+        Map<String, Double> results = resourceContext.getParentResourceComponent().getTableStats(schemaName,
+            tableName);
         for (MeasurementScheduleRequest request : requests) {
             String metricName = request.getName();
             Double value;
             if (metricName.equals("rows")) {
                 value = getSingleNumericQueryValue(this, getCountQuery(schemaName, tableName));
-            } else if (metricName.equals("rows_approx")) {
-                value = getSingleNumericQueryValue(this, TABLE_ROW_COUNT_APPROX_QUERY, schemaName, tableName);
             } else {
                 value = results.get(metricName);
             }
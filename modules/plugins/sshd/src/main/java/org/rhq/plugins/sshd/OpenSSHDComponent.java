@@ -56,6 +56,7 @@ import org.rhq.core.system.AggregateProcessInfo;
 import org.rhq.core.system.NetworkStats;
 import org.rhq.core.system.ProcessInfo;
 import org.rhq.core.system.ProcessInfo.ProcessInfoSnapshot;
+import org.rhq.core.system.ProcessTableSampler;
 import org.rhq.core.util.exception.ThrowableUtil;
 
 /**
@@ -71,21 +72,25 @@ public class OpenSSHDComponent implements ResourceComponent, ConfigurationFacet,
     @Override
     public void start(ResourceContext resourceContext) throws InvalidPluginConfigurationException, Exception {
         this.resourceContext = resourceContext;
-        this.processInfo = getSSHDProcess();
+        setProcessInfo(getSSHDProcess());
     }
 
     @Override
     public void stop() {
+        setProcessInfo(null);
     }
 
     @Override
     public AvailabilityType getAvailability() {
         try {
+            if (this.processInfo != null && ProcessTableSampler.getInstance().isRunning(this.processInfo.getPid())) {
+                return AvailabilityType.UP;
+            }
             // Get a fresh snapshot of the process
             ProcessInfoSnapshot processInfoSnapshot = (this.processInfo == null) ? null : this.processInfo
                 .freshSnapshot();
             if (processInfoSnapshot == null || !processInfoSnapshot.isRunning()) {
-                this.processInfo = getSSHDProcess();
+                setProcessInfo(getSSHDProcess());
                 // Safe to get prior snapshot here, we've just recreated the process info instance
                 processInfoSnapshot = (this.processInfo == null) ? null : this.processInfo.priorSnaphot();
             }
@@ -99,6 +104,17 @@ public class OpenSSHDComponent implements ResourceComponent, ConfigurationFacet,
         }
     }
 
+    private void setProcessInfo(AggregateProcessInfo processInfo) {
+        ProcessTableSampler processTable = ProcessTableSampler.getInstance();
+        if (this.processInfo != null) {
+            processTable.unsubscribe(this.processInfo.getPid());
+        }
+        this.processInfo = processInfo;
+        if (processInfo != null) {
+            processTable.subscribe(processInfo.getPid());
+        }
+    }
+
     private AggregateProcessInfo getSSHDProcess() {
 
         List<ProcessInfo> procs = resourceContext.getSystemInformation().getProcesses(
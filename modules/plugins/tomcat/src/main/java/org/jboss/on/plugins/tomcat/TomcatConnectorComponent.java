@@ -23,6 +23,7 @@
 package org.jboss.on.plugins.tomcat;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.commons.logging.Log;
@@ -44,6 +45,8 @@ import org.rhq.core.pluginapi.configuration.ConfigurationUpdateReport;
 import org.rhq.core.pluginapi.inventory.InvalidPluginConfigurationException;
 import org.rhq.core.pluginapi.inventory.ResourceContext;
 import org.rhq.plugins.jmx.MBeanResourceComponent;
+import org.rhq.plugins.jmx.util.AttributeReadBatch;
+import org.rhq.plugins.jmx.util.EmsBeanCache;
 import org.rhq.plugins.jmx.util.ObjectNameQueryUtility;
 import org.rhq.core.util.exception.ThrowableUtil;
 
@@ -96,6 +99,13 @@ public class TomcatConnectorComponent extends MBeanResourceComponent<TomcatServe
 
     private final Log log = LogFactory.getLog(this.getClass());
 
+    private final EmsBeanCache metricBeans = new EmsBeanCache() {
+        @Override
+        protected EmsBean loadBean(EmsConnection connection, String objectName) {
+            return TomcatConnectorComponent.this.loadBean(objectName);
+        }
+    };
+
     @Override
     public AvailabilityType getAvailability() {
         // First, ensure the underlying mbean for the connector is active
@@ -128,8 +138,10 @@ public class TomcatConnectorComponent extends MBeanResourceComponent<TomcatServe
 
     @Override
     public void getValues(MeasurementReport report, Set<MeasurementScheduleRequest> requests) {
-        getEmsConnection(); // reload the EMS connection
+        EmsConnection connection = getEmsConnection(); // reload the EMS connection
 
+        // the metrics come from a few beans (request processor, thread pool, ...), read each of them at once
+        AttributeReadBatch<MeasurementScheduleRequest> batch = new AttributeReadBatch<MeasurementScheduleRequest>();
         for (MeasurementScheduleRequest request : requests) {
             String req = request.getName();
             req = switchConnectorThreadpoolName(req);
@@ -137,23 +149,16 @@ public class TomcatConnectorComponent extends MBeanResourceComponent<TomcatServe
 
             String beanName = req.substring(0, req.lastIndexOf(':'));
             String attributeName = req.substring(req.lastIndexOf(':') + 1);
+            batch.add(beanName, attributeName, request);
+        }
 
+        Map<MeasurementScheduleRequest, Object> values = batch.read(connection, metricBeans);
+        for (Map.Entry<MeasurementScheduleRequest, Object> entry : values.entrySet()) {
             try {
-                // Bean is cached by EMS, so no problem with getting the bean from the connection on each call
-                EmsBean eBean = loadBean(beanName);
-                if (eBean == null) {
-                    log.warn("Bean " + beanName + " not found, skipping ...");
-                    continue;
-                }
-
-                EmsAttribute attribute = eBean.getAttribute(attributeName);
-
-                Object valueObject = attribute.refresh();
-                Number value = (Number) valueObject;
-
-                report.addData(new MeasurementDataNumeric(request, value.doubleValue()));
+                Number value = (Number) entry.getValue();
+                report.addData(new MeasurementDataNumeric(entry.getKey(), value.doubleValue()));
             } catch (Exception e) {
-                log.error("Failed to obtain measurement [" + req + "]", e);
+                log.error("Failed to obtain measurement [" + entry.getKey().getName() + "]", e);
             }
         }
     }
@@ -95,6 +95,10 @@ public class ConfigurationLoadDelegate implements ConfigurationFacet {
          * that will be evaluated to look at a child resource or a special attribute or such
          */
         List<PropertyGroupDefinition> gdef = configurationDefinition.getGroupDefinitions();
+        if (!gdef.isEmpty()) {
+            // each group is read with an operation of its own, take them from one snapshot of the resource
+            connection.cacheModelSnapshot(address);
+        }
         for (PropertyGroupDefinition pgDef : gdef) {
             loadHandleGroup(config, pgDef);
         }
@@ -77,6 +77,8 @@ public class DomainDeploymentDiscovery implements ResourceDiscoveryComponent<Bas
         }
 
         Address addr = new Address(parentPath);
+        // the deployments of the server groups are discovered next, read the deployments with their content at once
+        connection.cacheModelSnapshot(addr, confPath);
         Result result = connection.execute(new ReadChildrenNames(addr, confPath));
 
         if (result.isSuccess()) {
@@ -145,6 +145,9 @@ public class SubsystemDiscovery implements ResourceDiscoveryComponent<BaseCompon
             for (String cpath : subTypes) {
 
                 Address addr = new Address(parentPath);
+                // the children and the resources below them are discovered next, so read their subtree at once
+                // rather than with requests per resource
+                connection.cacheModelSnapshot(addr, cpath);
                 Result result = connection.execute(new ReadChildrenNames(addr, cpath));
 
                 if (result.isSuccess()) {
@@ -186,6 +189,9 @@ public class SubsystemDiscovery implements ResourceDiscoveryComponent<BaseCompon
             path += "," + confPath;
             if (path.startsWith(","))
                 path = path.substring(1);
+            // the resources below the subsystem are discovered next, so read its subtree at once rather than with
+            // requests per resource
+            connection.cacheModelSnapshot(new Address(path));
             Result result = connection.execute(new ReadResource(new Address(path)));
             if (result.isSuccess()) {
 
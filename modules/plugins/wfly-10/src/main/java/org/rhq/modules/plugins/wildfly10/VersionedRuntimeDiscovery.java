@@ -32,6 +32,7 @@ import org.apache.commons.logging.LogFactory;
 import org.rhq.core.domain.configuration.Configuration;
 import org.rhq.core.pluginapi.inventory.DiscoveredResourceDetails;
 import org.rhq.core.pluginapi.inventory.ResourceDiscoveryContext;
+import org.rhq.modules.plugins.wildfly10.json.Address;
 
 /**
  * Discover subsystems. We need to distinguish two cases denoted by the path
@@ -64,6 +65,13 @@ public class VersionedRuntimeDiscovery extends AbstractVersionedSubsystemDiscove
     public Set<DiscoveredResourceDetails> discoverResources(ResourceDiscoveryContext<BaseComponent<?>> context)
         throws Exception {
 
+        // The runtime resources of a deployment are discovered type by type, read the whole subtree of the
+        // deployment at once rather than the subtree of each type
+        BaseComponent<?> parent = context.getParentResourceComponent();
+        if (parent.getPath() != null && !parent.getPath().isEmpty()) {
+            parent.getASConnection().cacheModelSnapshot(new Address(parent.getPath()));
+        }
+
         // Perform the standard discovery. This can return resources with versions in the name,
         // key and path.
         Set<DiscoveredResourceDetails> details = super.discoverResources(context);